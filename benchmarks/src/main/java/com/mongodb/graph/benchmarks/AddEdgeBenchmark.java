@@ -0,0 +1,79 @@
+package com.mongodb.graph.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.GraphEngine;
+
+/**
+ *	Time to add a single edge. The edges come from a generated graph so
+ *	that the vertex ids and the spread of edges over vertices are the same
+ *	for every engine. The read only snapshot engine is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddEdgeBenchmark {
+
+	@Param({"edgeindex", "graphlookup", "buckets", "caching"})
+	public String engine;
+
+	@Param({"ERDOS_RENYI", "BARABASI_ALBERT", "BIPARTITE"})
+	public GraphModel model;
+
+	@Param({"10000"})
+	public int vertexCount;
+
+	@Param({"4"})
+	public int degree;
+
+	@Param({"42"})
+	public long seed;
+
+	private BenchmarkBackend _backend;
+	private GraphEngine _engine;
+	private SyntheticGraph _graph;
+	private int _nextEdge;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		_graph = model.generate(vertexCount, degree, seed);
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws Exception {
+		// every iteration starts from an empty collection
+		_backend = new BenchmarkBackend(AddEdgeBenchmark.class.getSimpleName());
+		_engine = _backend.openEngine(engine);
+		_nextEdge = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() {
+		_backend.close();
+	}
+
+	@Benchmark
+	public DBObject addEdge() {
+		int edge = _nextEdge++ % _graph.getEdgeCount();
+		return _engine.addEdge(_graph.getSource(edge),
+				_graph.getTarget(edge), _graph.getEdgeData(edge));
+	}
+}
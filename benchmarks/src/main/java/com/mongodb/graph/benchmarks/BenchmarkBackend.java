@@ -0,0 +1,99 @@
+package com.mongodb.graph.benchmarks;
+
+import java.net.UnknownHostException;
+
+import com.mongodb.DB;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.impl.AdjacencyBucketGraphEngine;
+import com.mongodb.graph.impl.CachingGraphEngine;
+import com.mongodb.graph.impl.CsrSnapshotGraphEngine;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.GraphLookupGraphEngine;
+
+/**
+ *	Opens the database a benchmark runs against and builds the engine it
+ *	measures. The server comes from the graph.benchmark.uri system property,
+ *	so a real mongod, a local stand-in or an in-memory server speaking the
+ *	wire protocol can all serve as the backend.
+ *
+ *	Engines are named by the short names below or by the class name of any
+ *	other GraphEngine with a constructor taking a DB, as GraphTestBase
+ *	loads them.
+ */
+public class BenchmarkBackend {
+
+	public static final String URI_PROPERTY = "graph.benchmark.uri";
+	public static final String DEFAULT_URI = "mongodb://localhost/";
+
+	public static final String EDGE_INDEX = "edgeindex";
+	public static final String GRAPH_LOOKUP = "graphlookup";
+	public static final String BUCKETS = "buckets";
+	public static final String CACHING = "caching";
+	public static final String CSR = "csr";
+
+	private static final int LOAD_BATCH_SIZE = 1000;
+
+	private final MongoClient _client;
+	private final DB _db;
+
+	/**
+	 * Connect and start from an empty database.
+	 * @param databaseName the database to use, dropped first
+	 */
+	public BenchmarkBackend(String databaseName) throws UnknownHostException {
+
+		MongoClientURI uri = new MongoClientURI(
+				System.getProperty(URI_PROPERTY, DEFAULT_URI));
+		_client = new MongoClient(uri);
+		_db = _client.getDB(databaseName);
+		_db.dropDatabase();
+	}
+
+	public DB getDatabase() {
+		return _db;
+	}
+
+	/**
+	 * Create an engine over the empty database.
+	 */
+	public GraphEngine openEngine(String engineName) throws Exception {
+
+		if(EDGE_INDEX.equals(engineName))
+			return new EdgeIndexGraphEngine(_db);
+		if(GRAPH_LOOKUP.equals(engineName))
+			return new GraphLookupGraphEngine(_db);
+		if(BUCKETS.equals(engineName))
+			return new AdjacencyBucketGraphEngine(_db);
+		if(CACHING.equals(engineName))
+			return new CachingGraphEngine(new EdgeIndexGraphEngine(_db));
+		if(CSR.equals(engineName))
+			throw new UnsupportedOperationException("csr is a read only snapshot");
+
+		return Class.forName(engineName).asSubclass(GraphEngine.class)
+				.getConstructor(DB.class).newInstance(_db);
+	}
+
+	/**
+	 * Create an engine holding the given graph. The snapshot engine cannot
+	 * be written, so its graph is loaded through EdgeIndexGraphEngine and
+	 * the snapshot taken afterwards.
+	 */
+	public GraphEngine loadEngine(String engineName, SyntheticGraph graph) throws Exception {
+
+		if(CSR.equals(engineName)){
+			graph.load(new EdgeIndexGraphEngine(_db), LOAD_BATCH_SIZE);
+			return new CsrSnapshotGraphEngine(_db);
+		}
+
+		GraphEngine engine = openEngine(engineName);
+		graph.load(engine, LOAD_BATCH_SIZE);
+		return engine;
+	}
+
+	public void close() {
+		_db.dropDatabase();
+		_client.close();
+	}
+}
@@ -0,0 +1,93 @@
+package com.mongodb.graph.benchmarks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.Relationship;
+
+/**
+ *	Time to find every path of up to depth hops between two vertices.
+ *	The number of paths grows quickly with depth, most of all for the
+ *	bipartite model which is searched in both directions, so deep runs
+ *	are best selected with -p when comparing a single change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FindPathsBenchmark {
+
+	private static final int PATH_ENDS_SIZE = 256;
+
+	@Param({"edgeindex", "graphlookup", "buckets", "caching", "csr"})
+	public String engine;
+
+	@Param({"ERDOS_RENYI", "BARABASI_ALBERT", "BIPARTITE"})
+	public GraphModel model;
+
+	@Param({"2", "3", "4", "5", "6"})
+	public int depth;
+
+	@Param({"1000"})
+	public int vertexCount;
+
+	@Param({"2"})
+	public int degree;
+
+	@Param({"42"})
+	public long seed;
+
+	private BenchmarkBackend _backend;
+	private GraphEngine _engine;
+	private EdgeFilter _filter;
+	private DBObject[][] _pathEnds;
+	private int _nextPath;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		SyntheticGraph graph = model.generate(vertexCount, degree, seed);
+		_backend = new BenchmarkBackend(FindPathsBenchmark.class.getSimpleName());
+		_engine = _backend.loadEngine(engine, graph);
+		_filter = new EdgeFilter(model.getPathDirection());
+
+		Random random = new Random(seed);
+		_pathEnds = new DBObject[PATH_ENDS_SIZE][];
+		for(int i = 0; i < PATH_ENDS_SIZE; i++){
+			int[] ends = model.pickPathEnds(graph, random);
+			_pathEnds[i] = new DBObject[]{graph.getVertex(ends[0]), graph.getVertex(ends[1])};
+		}
+		_nextPath = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		_backend.close();
+	}
+
+	@Benchmark
+	public Collection<List<Relationship>> findPaths() {
+		DBObject[] ends = _pathEnds[_nextPath++ % PATH_ENDS_SIZE];
+		return _engine.findPaths(ends[0], ends[1], _filter, depth, null);
+	}
+}
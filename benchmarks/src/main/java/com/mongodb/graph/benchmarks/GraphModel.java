@@ -0,0 +1,73 @@
+package com.mongodb.graph.benchmarks;
+
+import java.util.Random;
+
+import com.mongodb.graph.Direction;
+
+/**
+ *	The shapes of synthetic graph the benchmarks run against. Each model
+ *	also knows which direction a path search should follow and how to
+ *	pick path ends that are likely to be connected.
+ */
+public enum GraphModel {
+
+	ERDOS_RENYI {
+		@Override
+		public SyntheticGraph generate(int vertexCount, int degree, long seed) {
+			return SyntheticGraph.erdosRenyi(vertexCount, degree, seed);
+		}
+	},
+
+	BARABASI_ALBERT {
+		@Override
+		public SyntheticGraph generate(int vertexCount, int degree, long seed) {
+			return SyntheticGraph.barabasiAlbert(vertexCount, degree, seed);
+		}
+
+		@Override
+		public int[] pickPathEnds(SyntheticGraph graph, Random random) {
+			// edges point from newer to older vertices
+			int[] ends = super.pickPathEnds(graph, random);
+			if(ends[0] < ends[1])
+				return new int[]{ends[1], ends[0]};
+			return ends;
+		}
+	},
+
+	BIPARTITE {
+		@Override
+		public SyntheticGraph generate(int vertexCount, int degree, long seed) {
+			return SyntheticGraph.bipartite(vertexCount, degree, seed);
+		}
+
+		@Override
+		public Direction getPathDirection() {
+			// people only reach each other through a shared company
+			return Direction.BOTH;
+		}
+
+		@Override
+		public int[] pickPathEnds(SyntheticGraph graph, Random random) {
+			int people = graph.getVertexCount() - Math.max(1, graph.getVertexCount() / 10);
+			return new int[]{random.nextInt(people), random.nextInt(people)};
+		}
+	};
+
+	/**
+	 * Generate a graph of this shape.
+	 * @param vertexCount the number of vertices
+	 * @param degree the average out degree, or the out degree of each
+	 * new vertex or person where the model fixes it
+	 * @param seed the seed for the generator
+	 */
+	public abstract SyntheticGraph generate(int vertexCount, int degree, long seed);
+
+	public Direction getPathDirection() {
+		return Direction.OUT;
+	}
+
+	public int[] pickPathEnds(SyntheticGraph graph, Random random) {
+		return new int[]{random.nextInt(graph.getVertexCount()),
+				random.nextInt(graph.getVertexCount())};
+	}
+}
@@ -0,0 +1,84 @@
+package com.mongodb.graph.benchmarks;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.Relationship;
+
+/**
+ *	Time to read the neighbors of a vertex in both directions, over graphs
+ *	of increasing degree. Vertices are visited in a fixed pseudo random
+ *	order, so hub vertices of the skewed models are read as often as they
+ *	would be by chance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NeighborBenchmark {
+
+	private static final int VISIT_ORDER_SIZE = 1024;
+
+	@Param({"edgeindex", "graphlookup", "buckets", "caching", "csr"})
+	public String engine;
+
+	@Param({"ERDOS_RENYI", "BARABASI_ALBERT", "BIPARTITE"})
+	public GraphModel model;
+
+	@Param({"1000"})
+	public int vertexCount;
+
+	@Param({"4", "32", "256"})
+	public int degree;
+
+	@Param({"42"})
+	public long seed;
+
+	private BenchmarkBackend _backend;
+	private GraphEngine _engine;
+	private DBObject[] _visitOrder;
+	private int _nextVisit;
+
+	@Setup(Level.Trial)
+	public void load() throws Exception {
+		SyntheticGraph graph = model.generate(vertexCount, degree, seed);
+		_backend = new BenchmarkBackend(NeighborBenchmark.class.getSimpleName());
+		_engine = _backend.loadEngine(engine, graph);
+
+		Random random = new Random(seed);
+		_visitOrder = new DBObject[VISIT_ORDER_SIZE];
+		for(int i = 0; i < VISIT_ORDER_SIZE; i++)
+			_visitOrder[i] = graph.getVertex(random.nextInt(graph.getVertexCount()));
+		_nextVisit = 0;
+	}
+
+	@TearDown(Level.Trial)
+	public void close() {
+		_backend.close();
+	}
+
+	@Benchmark
+	public Collection<Relationship> getNeighbors() {
+		DBObject vertex = _visitOrder[_nextVisit++ % VISIT_ORDER_SIZE];
+		return _engine.getNeighbors(vertex);
+	}
+}
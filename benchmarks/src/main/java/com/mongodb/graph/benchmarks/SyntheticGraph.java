@@ -0,0 +1,236 @@
+package com.mongodb.graph.benchmarks;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.BulkLoadResult;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphEngine;
+
+/**
+ *	A generated directed graph held in memory as vertex ids and edge
+ *	endpoint arrays, ready to be loaded into any GraphEngine. Generation
+ *	only depends on the parameters and seed, so every engine and every
+ *	run is measured against exactly the same graph.
+ *
+ *	Vertex ids look like those of the test helpers, a small document with
+ *	an _id and a _type, but the _id is the vertex number so that ids are
+ *	stable between runs.
+ */
+public class SyntheticGraph {
+
+	public static final String PERSON_TYPE = "Person";
+	public static final String COMPANY_TYPE = "Company";
+	public static final String NODE_TYPE = "Node";
+
+	private static final String ID_KEY = "_id";
+	private static final String TYPE_KEY = "_type";
+	private static final String START_KEY = "start_date";
+
+	private final DBObject[] _vertices;
+	private int[] _sources = new int[16];
+	private int[] _targets = new int[16];
+	private int _edgeCount = 0;
+	private boolean _datedEdges = false;
+
+	private SyntheticGraph(int vertexCount) {
+		_vertices = new DBObject[vertexCount];
+	}
+
+	/**
+	 * Generate a G(n, p) random graph where every ordered pair of distinct
+	 * vertices is an edge with the same probability.
+	 * @param vertexCount the number of vertices
+	 * @param averageDegree the expected number of out edges per vertex
+	 * @param seed the seed for the generator
+	 */
+	public static SyntheticGraph erdosRenyi(int vertexCount, double averageDegree, long seed) {
+
+		SyntheticGraph graph = new SyntheticGraph(vertexCount);
+		graph.nameVertices(0, vertexCount, NODE_TYPE);
+		if(vertexCount < 2)
+			return graph;
+
+		// Jump straight to the next edge instead of testing every pair,
+		// the gaps between edges are geometrically distributed
+		double p = Math.min(1.0, averageDegree / (vertexCount - 1));
+		if(p <= 0)
+			return graph;
+
+		Random random = new Random(seed);
+		long pairCount = (long) vertexCount * (vertexCount - 1);
+		double logMiss = Math.log(1.0 - p);
+		long pair = -1;
+		while(true){
+			long skip = p == 1.0 ? 0 :
+				(long) Math.floor(Math.log(1.0 - random.nextDouble()) / logMiss);
+			pair += 1 + skip;
+			if(pair >= pairCount || pair < 0)
+				break;
+
+			int source = (int) (pair / (vertexCount - 1));
+			int target = (int) (pair % (vertexCount - 1));
+			if(target >= source)
+				target++;
+			graph.addEdge(source, target);
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Generate a scale free graph by preferential attachment. Each new
+	 * vertex links to edgesPerVertex distinct earlier vertices, chosen with
+	 * probability proportional to their degree, so a few early vertices
+	 * become hubs with very high in degree.
+	 * @param vertexCount the number of vertices
+	 * @param edgesPerVertex the out edges added with each vertex
+	 * @param seed the seed for the generator
+	 */
+	public static SyntheticGraph barabasiAlbert(int vertexCount, int edgesPerVertex, long seed) {
+
+		SyntheticGraph graph = new SyntheticGraph(vertexCount);
+		graph.nameVertices(0, vertexCount, NODE_TYPE);
+
+		// Every edge endpoint is recorded once, picking a uniform entry
+		// from this list picks a vertex in proportion to its degree
+		int[] endpoints = new int[Math.max(16, 2 * vertexCount * edgesPerVertex)];
+		int endpointCount = 0;
+		int[] chosen = new int[edgesPerVertex];
+
+		Random random = new Random(seed);
+		for(int vertex = 1; vertex < vertexCount; vertex++){
+			int links = Math.min(edgesPerVertex, vertex);
+			for(int i = 0; i < links; i++){
+				int target;
+				do{
+					target = endpointCount == 0 ? random.nextInt(vertex) :
+						endpoints[random.nextInt(endpointCount)];
+				} while(contains(chosen, i, target));
+				chosen[i] = target;
+			}
+
+			for(int i = 0; i < links; i++){
+				graph.addEdge(vertex, chosen[i]);
+				endpoints[endpointCount++] = vertex;
+				endpoints[endpointCount++] = chosen[i];
+			}
+		}
+
+		return graph;
+	}
+
+	/**
+	 * Generate a people and companies graph like the one the tests build.
+	 * One vertex in ten is a company and every person has worksFor edges,
+	 * with a start_date, to jobsPerPerson distinct companies. Companies are
+	 * picked with a skew towards the lowest numbered ones so that a few
+	 * large employers have many incoming edges.
+	 * @param vertexCount the number of people and companies together
+	 * @param jobsPerPerson the out edges of each person
+	 * @param seed the seed for the generator
+	 */
+	public static SyntheticGraph bipartite(int vertexCount, int jobsPerPerson, long seed) {
+
+		int companyCount = Math.max(1, vertexCount / 10);
+		int personCount = vertexCount - companyCount;
+
+		SyntheticGraph graph = new SyntheticGraph(vertexCount);
+		graph.nameVertices(0, personCount, PERSON_TYPE);
+		graph.nameVertices(personCount, vertexCount, COMPANY_TYPE);
+		graph._datedEdges = true;
+
+		Random random = new Random(seed);
+		int jobs = Math.min(jobsPerPerson, companyCount);
+		int[] chosen = new int[jobs];
+		for(int person = 0; person < personCount; person++){
+			for(int i = 0; i < jobs; i++){
+				int company;
+				do{
+					// the square of a uniform value favours small numbers
+					double skewed = random.nextDouble();
+					company = personCount + (int) (skewed * skewed * companyCount);
+				} while(contains(chosen, i, company));
+				chosen[i] = company;
+				graph.addEdge(person, company);
+			}
+		}
+
+		return graph;
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for(int i = 0; i < count; i++)
+			if(values[i] == value)
+				return true;
+		return false;
+	}
+
+	private void nameVertices(int from, int to, String type) {
+		for(int i = from; i < to; i++)
+			_vertices[i] = new BasicDBObject(ID_KEY, i).append(TYPE_KEY, type);
+	}
+
+	private void addEdge(int source, int target) {
+		if(_edgeCount == _sources.length){
+			_sources = Arrays.copyOf(_sources, _edgeCount * 2);
+			_targets = Arrays.copyOf(_targets, _edgeCount * 2);
+		}
+		_sources[_edgeCount] = source;
+		_targets[_edgeCount] = target;
+		_edgeCount++;
+	}
+
+	public int getVertexCount() {
+		return _vertices.length;
+	}
+
+	public int getEdgeCount() {
+		return _edgeCount;
+	}
+
+	public DBObject getVertex(int vertex) {
+		return _vertices[vertex];
+	}
+
+	public DBObject getSource(int edge) {
+		return _vertices[_sources[edge]];
+	}
+
+	public DBObject getTarget(int edge) {
+		return _vertices[_targets[edge]];
+	}
+
+	/**
+	 * The data stored with an edge. A fresh object is returned each time
+	 * since engines add their own fields to it.
+	 */
+	public DBObject getEdgeData(int edge) {
+		BasicDBObject data = new BasicDBObject();
+		if(_datedEdges)
+			data.append(START_KEY, new Date(edge * 1000L));
+		return data;
+	}
+
+	/**
+	 * Load every edge of the graph through the bulk loading path of the
+	 * engine.
+	 */
+	public BulkLoadResult load(GraphEngine engine, int batchSize) {
+
+		EdgeWriter writer = engine.openEdgeWriter(new BulkLoadOptions(batchSize, null));
+		try{
+			for(int edge = 0; edge < _edgeCount; edge++)
+				writer.add(getSource(edge), getTarget(edge), getEdgeData(edge));
+		}
+		finally{
+			writer.close();
+		}
+
+		return writer.getResult();
+	}
+}
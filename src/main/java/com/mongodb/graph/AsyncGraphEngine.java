@@ -0,0 +1,86 @@
+package com.mongodb.graph;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.mongodb.DBObject;
+
+/**
+ * A non blocking counterpart to GraphEngine for callers which must not
+ * wait on the database, such as request handlers on an event loop. Each
+ * method returns at once with a future which completes with the result
+ * of the matching GraphEngine method, or exceptionally with its error.
+ *
+ * Cancelling the future of a findPaths call stops the search.
+ */
+public interface AsyncGraphEngine {
+
+	/**
+	 * Add a directed edge to the graph, as GraphEngine.addEdge.
+	 * @param sourceId the logical identifier of the source vertex
+	 * @param destinationId the logical identifier of the destination vertex
+	 * @param edgeData the data with which to annotate this edge
+	 * @return a future for the edge document created for this edge
+	 */
+	public CompletableFuture<DBObject> addEdge(
+			DBObject sourceId, DBObject destinationId, DBObject edgeData);
+
+	/**
+	 * Get all edges connected to a given vertex which also match the
+	 * provided filter, as GraphEngine.getEdges.
+	 * @param vertexId the identifier of the target vertex.
+	 * @param filter the EdgeFilter instance that constrains which edges
+	 * must be returned. If null, all edges are returned.
+	 * @return a future for the matching edges
+	 */
+	public CompletableFuture<Collection<DBObject>> getEdges(
+			DBObject vertexId, EdgeFilter filter);
+
+	/**
+	 * Get all neighbors connected to a given vertex which also match the
+	 * provided filter, as GraphEngine.getNeighbors.
+	 * @param vertexId the identifier of the target vertex.
+	 * @param filter the EdgeFilter instance that constrains which
+	 * relationships must be returned. If null, all neighbors are returned.
+	 * @return a future for one Relationship for each matching edge
+	 */
+	public CompletableFuture<Collection<Relationship>> getNeighbors(
+			DBObject vertexId, EdgeFilter filter);
+
+	/**
+	 * Get the neighbors of many vertices at once, as the batched
+	 * GraphEngine.getNeighbors.
+	 * @param vertexIds the identifiers of the vertices to look up.
+	 * @param filter the EdgeFilter instance that constrains which
+	 * relationships must be returned, applied to every vertex.
+	 * @return a future for the map from each vertex identifier to the
+	 * Relationships for that vertex
+	 */
+	public CompletableFuture<Map<DBObject, List<Relationship>>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter);
+
+	/**
+	 * Find paths between two vertices within limits on the work done, as
+	 * GraphEngine.findPaths. The listener receives paths as the search
+	 * finds them, on a thread of the engine rather than the caller's. The
+	 * search waits while the listener handles a path, so a listener which
+	 * is slow to take paths holds the search back rather than letting
+	 * paths pile up.
+	 * @param fromVertexId the vertex from which traversal begins
+	 * @param targetVertexId the vertex to which the paths are being found
+	 * @param filter an EdgeFilter which may be used to constrain the edges
+	 * investigated during the search, may be null.
+	 * @param degreeLimit the limit of number of degrees to perform the search.
+	 * @param options the limits on results, time and edges scanned. If null,
+	 * nothing is limited.
+	 * @param listener a delegate that receives paths and branches as they are
+	 * discovered and can steer the search, may be null.
+	 * @return a future for the paths discovered before the search completed
+	 * or stopped.
+	 */
+	public CompletableFuture<Collection<List<Relationship>>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener);
+}
@@ -0,0 +1,46 @@
+package com.mongodb.graph;
+
+import java.util.List;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ *	Describes a batch of edges which an EdgeWriter failed to write. Batches
+ *	are written unordered, so some of the edges may have been stored despite
+ *	the error. Engines which can check hold on only to the edges which were
+ *	not stored, others keep the whole batch. Each edge already carries the
+ *	_id it was written with, so the edges can be retried and any which were
+ *	stored will be rejected as duplicates rather than written twice.
+ */
+public class BatchFailure {
+
+	private final int _batchNumber;
+	private final List<DBObject> _edges;
+	private final MongoException _error;
+
+	public BatchFailure(int batchNumber, List<DBObject> edges, MongoException error) {
+		this._batchNumber = batchNumber;
+		this._edges = edges;
+		this._error = error;
+	}
+
+	/**
+	 * @return the position of the batch in the load, starting from zero
+	 */
+	public int getBatchNumber() {
+		return _batchNumber;
+	}
+
+	/**
+	 * @return the edge documents of the batch which were not stored, as
+	 * created by the engine
+	 */
+	public List<DBObject> getEdges() {
+		return _edges;
+	}
+
+	public MongoException getError() {
+		return _error;
+	}
+}
@@ -0,0 +1,74 @@
+package com.mongodb.graph;
+
+import com.mongodb.WriteConcern;
+
+/**
+ *	Used to configure an EdgeWriter obtained from GraphEngine.openEdgeWriter().
+ *	The defaults suit a load into a graph which is being queried at the same
+ *	time, large offline loads will usually want bigger batches and deferred
+ *	index builds.
+ */
+public class BulkLoadOptions {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private int _batchSize = DEFAULT_BATCH_SIZE;
+	private WriteConcern _writeConcern = null;
+	private boolean _deferIndexes = false;
+
+	/**
+	 * Construct options with the default batch size, the engine's default
+	 * write concern and indexes maintained throughout the load.
+	 */
+	public BulkLoadOptions() {
+	}
+
+	/**
+	 * Construct options with the given batch size and write concern.
+	 * @param batchSize the number of edges sent to the database in each batch
+	 * @param writeConcern the write concern for each batch. If null, the
+	 * default write concern of the engine is used.
+	 */
+	public BulkLoadOptions(int batchSize, WriteConcern writeConcern) {
+		setBatchSize(batchSize);
+		this._writeConcern = writeConcern;
+	}
+
+	public int getBatchSize() {
+		return _batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		if(batchSize <= 0)
+			throw new IllegalArgumentException("batchSize must be positive");
+		this._batchSize = batchSize;
+	}
+
+	public WriteConcern getWriteConcern() {
+		return _writeConcern;
+	}
+
+	public void setWriteConcern(WriteConcern writeConcern) {
+		this._writeConcern = writeConcern;
+	}
+
+	/**
+	 * Returns true if the engine should drop its edge indexes when the
+	 * writer is opened and build them again once it is closed. By default
+	 * this value is set to false.
+	 * @return true if index builds are deferred until the load completes
+	 */
+	public boolean getDeferIndexes() {
+		return _deferIndexes;
+	}
+
+	/**
+	 * Sets whether the engine should drop its edge indexes when the writer
+	 * is opened and build them again once it is closed. Building an index
+	 * once over the loaded data is much faster than maintaining it for every
+	 * insert, but queries will scan the whole edge store during the load.
+	 */
+	public void setDeferIndexes(boolean deferIndexes) {
+		this._deferIndexes = deferIndexes;
+	}
+}
@@ -0,0 +1,70 @@
+package com.mongodb.graph;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ *	A snapshot of the progress of a bulk load through an EdgeWriter.
+ */
+public class BulkLoadResult {
+
+	private final long _edgesWritten;
+	private final long _edgesFailed;
+	private final int _batchesWritten;
+	private final List<BatchFailure> _failures;
+	private final long _elapsedMillis;
+
+	public BulkLoadResult(long edgesWritten, long edgesFailed, int batchesWritten,
+			List<BatchFailure> failures, long elapsedMillis) {
+		this._edgesWritten = edgesWritten;
+		this._edgesFailed = edgesFailed;
+		this._batchesWritten = batchesWritten;
+		this._failures = Collections.unmodifiableList(failures);
+		this._elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the number of edges stored, counting those of failed batches
+	 * which were stored all the same
+	 */
+	public long getEdgesWritten() {
+		return _edgesWritten;
+	}
+
+	/**
+	 * @return the number of edges not stored, which all belong to failed
+	 * batches
+	 */
+	public long getEdgesFailed() {
+		return _edgesFailed;
+	}
+
+	/**
+	 * @return the number of batches sent to the database, including failures
+	 */
+	public int getBatchesWritten() {
+		return _batchesWritten;
+	}
+
+	/**
+	 * @return the batches that failed to write, in the order they were sent
+	 */
+	public List<BatchFailure> getFailures() {
+		return _failures;
+	}
+
+	/**
+	 * @return the time since the writer was opened, or the duration of the
+	 * load if the writer has been closed
+	 */
+	public long getElapsedMillis() {
+		return _elapsedMillis;
+	}
+
+	/**
+	 * @return the rate at which edges have been written over the load
+	 */
+	public double getEdgesPerSecond() {
+		return _elapsedMillis == 0 ? 0 : (_edgesWritten * 1000.0) / _elapsedMillis;
+	}
+}
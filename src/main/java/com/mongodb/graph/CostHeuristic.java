@@ -0,0 +1,22 @@
+package com.mongodb.graph;
+
+import com.mongodb.DBObject;
+
+/**
+ * 	Interface may be implemented by a user to guide GraphEngine.cheapestPath()
+ * 	towards the target, turning the search into an A* search. A good estimate
+ * 	means far fewer vertices are expanded. The estimate must never be more 
+ * 	than the true cost of the cheapest path to the target, and must not drop
+ * 	across an edge by more than the cost of that edge, or the path found may
+ * 	not be the cheapest.
+ */
+public interface CostHeuristic {
+
+	/**
+	 * Estimate the cost of the cheapest path from a vertex to the target.
+	 * @param vertexId the vertex reached by the search
+	 * @param targetVertexId the vertex the search is heading for
+	 * @return the estimated remaining cost, zero or more
+	 */
+	double estimate(DBObject vertexId, DBObject targetVertexId);
+}
@@ -0,0 +1,19 @@
+package com.mongodb.graph;
+
+import com.mongodb.DBObject;
+
+/**
+ * 	Interface may be implemented by a user to give the cost of following
+ * 	an edge in calls to GraphEngine.cheapestPath(). Costs must not be 
+ * 	negative. See FieldEdgeCost for costs read from a field of the edge.
+ */
+public interface EdgeCost {
+
+	/**
+	 * Returns the cost of following an edge, in either direction.
+	 * @param edge the edge document, as projected by the EdgeFilter of 
+	 * the query
+	 * @return the cost, zero or more
+	 */
+	double cost(DBObject edge);
+}
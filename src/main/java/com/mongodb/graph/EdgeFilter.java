@@ -84,4 +84,54 @@ public class EdgeFilter {
 		this._includeIds = includeIds ;
 	}
 
+	/**
+	 * Returns a copy of this filter which allows the given direction(s)
+	 * but otherwise has the same query, projection and edge ID setting.
+	 * @param allowedDirection the allowed direction(s) for the copy
+	 * @return a new EdgeFilter
+	 */
+	public EdgeFilter withDirection(Direction allowedDirection) {
+		EdgeFilter copy = new EdgeFilter(allowedDirection, _query, _projection);
+		copy.setIncludeEdgeIds(_includeIds);
+		return copy;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result
+				+ ((_allowedDirection == null) ? 0 : _allowedDirection.hashCode());
+		result = prime * result + (_includeIds ? 1231 : 1237);
+		result = prime * result
+				+ ((_projection == null) ? 0 : _projection.hashCode());
+		result = prime * result + ((_query == null) ? 0 : _query.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		EdgeFilter other = (EdgeFilter) obj;
+		if (_allowedDirection != other._allowedDirection)
+			return false;
+		if (_includeIds != other._includeIds)
+			return false;
+		if (_projection == null) {
+			if (other._projection != null)
+				return false;
+		} else if (!_projection.equals(other._projection))
+			return false;
+		if (_query == null) {
+			if (other._query != null)
+				return false;
+		} else if (!_query.equals(other._query))
+			return false;
+		return true;
+	}
 }
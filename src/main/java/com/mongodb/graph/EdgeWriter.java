@@ -0,0 +1,54 @@
+package com.mongodb.graph;
+
+import java.io.Closeable;
+
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+
+/**
+ * 	A streaming writer for loading large numbers of edges into a graph.
+ * 	Edges are buffered and written in batches rather than one at a time
+ * 	as with GraphEngine.addEdge(). A batch that fails to write is recorded
+ * 	in the BulkLoadResult and the load carries on with the next batch.
+ * 	Writers are not thread safe and must be closed to write the final batch.
+ */
+public interface EdgeWriter extends Closeable {
+
+	/**
+	 * Queue a directed edge for writing. The edge is created exactly as
+	 * it would be by GraphEngine.addEdge() but may not be visible to
+	 * queries until the batch containing it has been written.
+	 * @param sourceId the logical identifier of the source vertex
+	 * @param destinationId the logical identifier of the destination vertex
+	 * @param edgeData the data with which to annotate this edge
+	 */
+	void add(DBObject sourceId, DBObject destinationId, DBObject edgeData);
+
+	/**
+	 * Sets the write concern used for batches written after this call,
+	 * allowing a load to mix fast unacknowledged batches with periodic
+	 * acknowledged ones. Failures can only be reported for batches written
+	 * with an acknowledged write concern.
+	 * @param writeConcern the write concern for subsequent batches
+	 * @throws IllegalArgumentException if writeConcern is null
+	 */
+	void setWriteConcern(WriteConcern writeConcern);
+
+	/**
+	 * Write any buffered edges now, even if the batch is not full.
+	 */
+	void flush();
+
+	/**
+	 * Returns the progress of the load so far, including throughput and
+	 * any batches which failed to write.
+	 */
+	BulkLoadResult getResult();
+
+	/**
+	 * Write any buffered edges and complete the load, building any
+	 * indexes that were deferred by the BulkLoadOptions.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,48 @@
+package com.mongodb.graph;
+
+import com.mongodb.DBObject;
+
+/**
+ * 	An EdgeCost read from a numeric field of the edge data, such as a 
+ * 	distance or a price. The field must be included by the projection of 
+ * 	the EdgeFilter used for the query. Edges without a numeric value in 
+ * 	the field cost the default given on construction.
+ */
+public class FieldEdgeCost implements EdgeCost {
+
+	private final String _field;
+	private final double _defaultCost;
+
+	/**
+	 * Construct a cost where an edge without the field costs 1.
+	 * @param field the name of the edge field holding the cost
+	 */
+	public FieldEdgeCost(String field) {
+		this(field, 1.0);
+	}
+
+	/**
+	 * @param field the name of the edge field holding the cost
+	 * @param defaultCost the cost of edges without the field
+	 */
+	public FieldEdgeCost(String field, double defaultCost) {
+		if(defaultCost < 0)
+			throw new IllegalArgumentException("defaultCost must not be negative");
+		this._field = field;
+		this._defaultCost = defaultCost;
+	}
+
+	public String getField() {
+		return _field;
+	}
+
+	public double getDefaultCost() {
+		return _defaultCost;
+	}
+
+	@Override
+	public double cost(DBObject edge) {
+		Object value = edge.get(_field);
+		return value instanceof Number ? ((Number) value).doubleValue() : _defaultCost;
+	}
+}
@@ -0,0 +1,24 @@
+package com.mongodb.graph;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * 	A lazily evaluated stream of query results backed by a live database
+ * 	cursor. Results are fetched from the server in batches as the caller
+ * 	iterates and each one is decoded only when it is returned by next(),
+ * 	so memory use does not grow with the number of results. The cursor is
+ * 	released when it is exhausted, but callers that stop early must call
+ * 	close().
+ *
+ * @param <T> the type of result returned by the cursor
+ */
+public interface GraphCursor<T> extends Iterator<T>, Iterable<T>, Closeable {
+
+	/**
+	 * Release the underlying database cursor. Calling close on a cursor
+	 * which is already closed or exhausted has no effect.
+	 */
+	@Override
+	void close();
+}
@@ -2,6 +2,8 @@ package com.mongodb.graph;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+
 import com.mongodb.DBObject;
 
 /**
@@ -35,6 +37,16 @@ public interface GraphEngine{
 			DBObject sourceId, DBObject destinationId,
 			DBObject edgeData);
 	
+	/**
+	 * Open a writer for loading a large number of edges. Edges added to 
+	 * the writer are created exactly as by addEdge, but are written in
+	 * batches and a batch that fails does not abort the rest of the load.
+	 * @param options the batch size, write concern and index handling to 
+	 * use for the load. If null, default options are used.
+	 * @return an EdgeWriter which must be closed once all edges are added.
+	 */
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options);
+	
 	/**
 	 * Get all edges connected to the provided vertex identifier. This
 	 * unfiltered version will return all edges both incoming and outgoing.
@@ -57,6 +69,23 @@ public interface GraphEngine{
 	public Collection<DBObject> getEdges(
 			DBObject vertexId, EdgeFilter filter);
 	
+	/**
+	 * Stream the edges connected to a given vertex which also match the 
+	 * provided filter. Unlike getEdges, the results are not collected into
+	 * memory first, they are read from the database in batches as the 
+	 * caller iterates. This suits vertices with very many edges.
+	 * @param vertexId the identifier of the target vertex. 
+	 * @param filter the EdgeFilter instance that constrains which
+	 * edges must be returned. If null, all edges are returned.
+	 * @param batchSize the number of edges fetched from the database in each
+	 * round trip, or 0 to use the server default.
+	 * @param limit the maximum number of edges to return, or 0 for no limit.
+	 * @return a cursor over the matching edges, which must be closed if it
+	 * is not iterated to the end.
+	 */
+	public GraphCursor<DBObject> streamEdges(
+			DBObject vertexId, EdgeFilter filter, int batchSize, int limit);
+	
 	/**
 	 * Get all neighboring vertices to the provided vertex identifier. This
 	 * unfiltered version will return a relationship for all edges both 
@@ -84,6 +113,54 @@ public interface GraphEngine{
 	public Collection<Relationship> getNeighbors(
 			DBObject vertexId, EdgeFilter filter);
 	
+	/**
+	 * Get the neighbors of many vertices at once. This is equivalent to
+	 * calling getNeighbors for each vertex, but the edges for all of the
+	 * vertices are fetched together in as few round trips as possible.
+	 * @param vertexIds the identifiers of the vertices to look up. 
+	 * @param filter the EdgeFilter instance that constrains which
+	 * relationships must be returned, applied to every vertex. 
+	 * @return a map from each vertex identifier to the Relationships for
+	 * that vertex. Every requested vertex has an entry, which is an empty
+	 * list if the vertex has no neighbors matching the filter.
+	 */
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter);
+	
+	/**
+	 * Stream the neighbors of a given vertex which also match the provided
+	 * filter. Each Relationship is created as the caller iterates, from 
+	 * edges read in batches from the database.
+	 * @param vertexId the identifier of the target vertex. 
+	 * @param filter the EdgeFilter instance that constrains which
+	 * relationships must be returned. If null, all neighbors are returned.
+	 * @param batchSize the number of edges fetched from the database in each
+	 * round trip, or 0 to use the server default.
+	 * @param limit the maximum number of neighbors to return, or 0 for no limit.
+	 * @return a cursor over the matching relationships, which must be closed 
+	 * if it is not iterated to the end.
+	 */
+	public GraphCursor<Relationship> streamNeighbors(
+			DBObject vertexId, EdgeFilter filter, int batchSize, int limit);
+	
+	/**
+	 * Get one page of the neighbors of a given vertex which also match the
+	 * provided filter. Pages are read in index order, so fetching a page 
+	 * costs the same however far into the neighbors it is. This allows the
+	 * neighbors of a vertex to be read in full, past the limit applied to
+	 * getNeighbors.
+	 * @param vertexId the identifier of the target vertex. 
+	 * @param filter the EdgeFilter instance that constrains which
+	 * relationships must be returned. If null, all neighbors are returned.
+	 * @param pageSize the maximum number of relationships in the page.
+	 * @param continuationToken the token from the previous page, or null
+	 * to fetch the first page.
+	 * @return the page of relationships, along with the token for the next
+	 * page if there may be more.
+	 */
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter, 
+			int pageSize, String continuationToken);
+	
 	/**
 	 * Find paths between two specified vertices in the graph. The graph is 
 	 * traversed to return paths consisting of multiple degrees. This may be
@@ -105,6 +182,90 @@ public interface GraphEngine{
 	 * the filter criteria and degree limit.
 	 */
 	public Collection<List<Relationship>> findPaths(
-			DBObject fromVertexId, DBObject targetVertexId, 
+			DBObject fromVertexId, DBObject targetVertexId,
 			EdgeFilter filter, int degreeLimit, PathListener listener);
+
+	/**
+	 * Find paths between two specified vertices in the graph, within limits
+	 * on the work done. This behaves as the findPaths above, except that the
+	 * search stops as soon as any limit in the options is reached, or when
+	 * the listener asks it to, and returns the paths found up to then. The
+	 * listener may also prune branches of the search as they are reached.
+	 * @param fromVertexId the vertex from which traversal begins
+	 * @param targetVertexId the vertex to which the paths are being found
+	 * @param filter an EdgeFilter which may be used to constrain the edges
+	 * investigated during the search. If null, then default behavior is a 
+	 * directed search of all outgoing edges unfiltered by value.
+	 * @param degreeLimit the limit of number of degrees to perform the search.
+	 * @param options the limits on results, time and edges scanned. If null, 
+	 * nothing is limited.
+	 * @param listener a delegate that receives paths and branches as they are
+	 * discovered and can steer the search, may be null.
+	 * @return the paths discovered before the search completed or stopped.
+	 */
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener);
+
+	/**
+	 * Find a path with the fewest hops between two vertices. The graph is 
+	 * searched breadth first and the search ends on the first level which
+	 * reaches the target, however large the degree limit. As for findPaths,
+	 * only outgoing edges are followed unless the filter allows otherwise.
+	 * @param fromVertexId the vertex from which traversal begins
+	 * @param targetVertexId the vertex to which the path is being found
+	 * @param filter an EdgeFilter which may be used to constrain the edges
+	 * investigated during the search, may be null.
+	 * @param degreeLimit the most hops the path may have.
+	 * @return the shortest path, or null if the target cannot be reached
+	 * within the degree limit.
+	 */
+	public List<Relationship> shortestPath(DBObject fromVertexId, 
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit);
+
+	/**
+	 * Find the k simple paths with the fewest hops between two vertices. 
+	 * Paths are discovered in order of length, level by level, and the 
+	 * search ends as soon as the k-th path is found.
+	 * @param fromVertexId the vertex from which traversal begins
+	 * @param targetVertexId the vertex to which the paths are being found
+	 * @param k the number of paths wanted, at least 1
+	 * @param filter an EdgeFilter which may be used to constrain the edges
+	 * investigated during the search, may be null.
+	 * @param degreeLimit the most hops a path may have.
+	 * @return up to k paths, shortest first. Paths of equal length come in 
+	 * no particular order.
+	 */
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId, 
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit);
+
+	/**
+	 * Find the path of lowest total cost between two vertices, where each 
+	 * edge has a cost given by an EdgeCost such as a FieldEdgeCost. This is
+	 * a Dijkstra search, or an A* search when a heuristic is given. As for
+	 * findPaths, only outgoing edges are followed unless the filter allows
+	 * otherwise.
+	 * @param fromVertexId the vertex from which traversal begins
+	 * @param targetVertexId the vertex to which the path is being found
+	 * @param filter an EdgeFilter which may be used to constrain the edges
+	 * investigated during the search, may be null. Its projection must keep
+	 * any edge data the cost is computed from.
+	 * @param cost the cost of each edge, none of which may be negative. If
+	 * null, every edge costs 1.
+	 * @param heuristic an estimate of the remaining cost from each vertex 
+	 * which guides the search towards the target, or null for none.
+	 * @return the cheapest path and its cost, or null if the target cannot
+	 * be reached.
+	 */
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic);
+
+	/**
+	 * Set the receiver for measurements of the work done by this engine,
+	 * such as round trips to the database and edges scanned. Engines with
+	 * no metrics set skip the measurement entirely.
+	 * @param metrics the receiver for subsequent measurements, or null to
+	 * stop measuring.
+	 */
+	public void setMetrics(GraphMetrics metrics);
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package com.mongodb.graph;
+
+/**
+ * 	Receives measurements from a GraphEngine as it works, so the cost of a
+ * 	query can be broken down into round trips to the database, documents
+ * 	read and the shape of a path search. Set on an engine with
+ * 	GraphEngine.setMetrics(). Engines without metrics set do no counting
+ * 	at all.
+ *
+ * 	Calls are made on the thread running the query, from inside the engine,
+ * 	so implementations must be quick and must not call back into the engine.
+ * 	A parallel path search calls them from its worker threads, one at a
+ * 	time.
+ */
+public interface GraphMetrics {
+
+	/**
+	 * Called for a request to the database which does not read documents
+	 * back, such as a write.
+	 */
+	void roundTrip();
+
+	/**
+	 * Called for each batch of documents read from a database cursor. Each
+	 * batch is one round trip.
+	 * @param documents the number of documents decoded from the batch
+	 */
+	void batchFetched(int documents);
+
+	/**
+	 * Called with the number of edges examined by the engine while answering
+	 * a query, including those it did not return, such as edges leading back
+	 * into the current path.
+	 * @param edges the number of edges examined
+	 */
+	void edgesScanned(int edges);
+
+	/**
+	 * Called as a path search expands vertices to find their neighbors.
+	 * @param level the number of hops from the start vertex, which is level 0
+	 * @param vertices the number of vertices expanded at that level
+	 */
+	void verticesExpanded(int level, int vertices);
+}
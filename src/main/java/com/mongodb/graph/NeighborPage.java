@@ -0,0 +1,37 @@
+package com.mongodb.graph;
+
+import java.util.List;
+
+/**
+ * 	One page of the neighbors of a vertex, as returned by
+ * 	GraphEngine.getNeighborPage(). The continuation token is an opaque
+ * 	value which is passed back to the engine to fetch the following page.
+ */
+public class NeighborPage {
+
+	private final List<Relationship> _relationships;
+	private final String _continuationToken;
+
+	public NeighborPage(List<Relationship> relationships, String continuationToken) {
+		this._relationships = relationships;
+		this._continuationToken = continuationToken;
+	}
+
+	public List<Relationship> getRelationships() {
+		return _relationships;
+	}
+
+	/**
+	 * Returns the token for the page following this one, or null if this
+	 * is the last page. The token is only valid for the same vertex and
+	 * filter that produced it.
+	 * @return the continuation token for the next page
+	 */
+	public String getContinuationToken() {
+		return _continuationToken;
+	}
+
+	public boolean hasMore() {
+		return _continuationToken != null;
+	}
+}
@@ -0,0 +1,121 @@
+package com.mongodb.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 	The measurements collected for a single call to a GraphEngine. A trace
+ * 	is filled in by an instrumented engine while the call runs and can then
+ * 	be read to see where the time went. Traces are not thread safe and
+ * 	belong to the query that created them.
+ */
+public class QueryTrace implements GraphMetrics {
+
+	private final String _operation;
+	private long _roundTrips = 0;
+	private long _batchFetches = 0;
+	private long _documentsDecoded = 0;
+	private long _edgesScanned = 0;
+	private final List<Long> _verticesPerLevel = new ArrayList<Long>();
+	private long _startNanos = 0;
+	private long _elapsedNanos = 0;
+
+	public QueryTrace(String operation) {
+		this._operation = operation;
+	}
+
+	@Override
+	public void roundTrip() {
+		_roundTrips++;
+	}
+
+	@Override
+	public void batchFetched(int documents) {
+		_roundTrips++;
+		_batchFetches++;
+		_documentsDecoded += documents;
+	}
+
+	@Override
+	public void edgesScanned(int edges) {
+		_edgesScanned += edges;
+	}
+
+	@Override
+	public void verticesExpanded(int level, int vertices) {
+		while(_verticesPerLevel.size() <= level)
+			_verticesPerLevel.add(0L);
+		_verticesPerLevel.set(level, _verticesPerLevel.get(level) + vertices);
+	}
+
+	/**
+	 * Mark the start of the traced call. Time spent between calls to start
+	 * and stop is added to the elapsed time, so a trace can cover a cursor
+	 * which is read a little at a time.
+	 */
+	public void start() {
+		_startNanos = System.nanoTime();
+	}
+
+	public void stop() {
+		_elapsedNanos += System.nanoTime() - _startNanos;
+	}
+
+	/**
+	 * Returns the name of the GraphEngine method which was traced.
+	 */
+	public String getOperation() {
+		return _operation;
+	}
+
+	/**
+	 * Returns every request sent to the database, including cursor batches.
+	 */
+	public long getRoundTrips() {
+		return _roundTrips;
+	}
+
+	public long getBatchFetches() {
+		return _batchFetches;
+	}
+
+	public long getDocumentsDecoded() {
+		return _documentsDecoded;
+	}
+
+	public long getEdgesScanned() {
+		return _edgesScanned;
+	}
+
+	/**
+	 * Returns the total number of vertices expanded by a path search.
+	 */
+	public long getVerticesExpanded() {
+		long total = 0;
+		for(Long vertices : _verticesPerLevel)
+			total += vertices;
+		return total;
+	}
+
+	/**
+	 * Returns the number of vertices expanded at each level of a path
+	 * search, starting with the start vertex at level 0. Empty for calls
+	 * which are not path searches.
+	 */
+	public List<Long> getVerticesExpandedPerLevel() {
+		return Collections.unmodifiableList(_verticesPerLevel);
+	}
+
+	public long getElapsedNanos() {
+		return _elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return _operation + " [roundTrips=" + _roundTrips + ", batchFetches=" + _batchFetches
+				+ ", documentsDecoded=" + _documentsDecoded + ", edgesScanned=" + _edgesScanned
+				+ ", verticesExpanded=" + _verticesPerLevel
+				+ ", elapsedMicros=" + _elapsedNanos / 1000 + "]";
+	}
+}
@@ -0,0 +1,49 @@
+package com.mongodb.graph;
+
+import java.util.List;
+
+/**
+ * 	PathListener which carries a QueryTrace for the findPaths call it is
+ * 	passed to. When the call runs through an InstrumentedGraphEngine the
+ * 	trace is filled in as the search runs, so it can be read from
+ * 	handlePath to follow the search or once the query is complete.
+ * 	Paths are passed on to an optional delegate listener.
+ */
+public class TracingPathListener implements PathListener {
+
+	private final PathListener _delegate;
+	private final QueryTrace _trace = new QueryTrace("findPaths");
+	private int _pathCount = 0;
+
+	public TracingPathListener() {
+		this(null);
+	}
+
+	public TracingPathListener(PathListener delegate) {
+		this._delegate = delegate;
+	}
+
+	public QueryTrace getTrace() {
+		return _trace;
+	}
+
+	/**
+	 * Returns the number of paths received so far.
+	 */
+	public int getPathCount() {
+		return _pathCount;
+	}
+
+	@Override
+	public void handlePath(List<Relationship> path) {
+		_pathCount++;
+		if(_delegate != null)
+			_delegate.handlePath(path);
+	}
+
+	@Override
+	public void complete() {
+		if(_delegate != null)
+			_delegate.complete();
+	}
+}
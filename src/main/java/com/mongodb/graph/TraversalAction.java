@@ -0,0 +1,26 @@
+package com.mongodb.graph;
+
+/*
+ * Enumeration returned by a TraversalListener to steer a path
+ * search from inside it.
+ */
+public enum TraversalAction {
+
+	/*
+	 * Carry on searching as normal.
+	 */
+	CONTINUE,
+
+	/*
+	 * Do not extend the branch just reported, the rest of the
+	 * search carries on. Has the same effect as CONTINUE when
+	 * returned for a complete path.
+	 */
+	PRUNE,
+
+	/*
+	 * End the search now. Paths already found are returned and
+	 * any open database cursors are closed.
+	 */
+	STOP
+}
@@ -0,0 +1,38 @@
+package com.mongodb.graph;
+
+import java.util.List;
+
+/**
+ * 	Receives the progress of a path search started with
+ * 	GraphEngine.findPaths() and TraversalOptions, and decides as it goes
+ * 	whether the search carries on. Unlike a PathListener it can end the
+ * 	search early, or cut off branches which cannot lead anywhere useful.
+ */
+public interface TraversalListener {
+
+	/**
+	 * Called for each path to the target as it is found.
+	 * @param path the discovered path represented as a List of Relationships
+	 * @return STOP to end the search, otherwise the search carries on
+	 */
+	TraversalAction handlePath(List<Relationship> path);
+
+	/**
+	 * Called for a partial path which has not reached the target, before
+	 * the search extends it by another hop. Searches which work from both
+	 * ends at once only report the branches grown from the start vertex.
+	 * @param branch the hops from the start vertex so far, which the
+	 * listener may keep
+	 * @return PRUNE to leave this branch unexplored, STOP to end the search
+	 * or CONTINUE to extend it
+	 */
+	TraversalAction handleBranch(List<Relationship> branch);
+
+	/**
+	 * Called once the search is over.
+	 * @param exhaustive true if every path within the degree limit was
+	 * found, false if the search ended early because of the listener or a
+	 * limit in the TraversalOptions
+	 */
+	void complete(boolean exhaustive);
+}
@@ -0,0 +1,92 @@
+package com.mongodb.graph;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *	Limits on the work done by a single call to GraphEngine.findPaths(). A
+ *	search which reaches any of the limits stops straight away and returns
+ *	the paths found so far, so interactive queries can trade completeness
+ *	for a bounded response time. By default nothing is limited.
+ */
+public class TraversalOptions {
+
+	private int _maxResults = 0;
+	private long _timeLimitMillis = 0;
+	private long _maxEdgesScanned = 0;
+	private Future<?> _cancellation = null;
+
+	/**
+	 * Construct options with no limits.
+	 */
+	public TraversalOptions() {
+	}
+
+	/**
+	 * Construct options which stop the search after a number of paths.
+	 * @param maxResults the most paths to find, or 0 for no limit
+	 */
+	public TraversalOptions(int maxResults) {
+		setMaxResults(maxResults);
+	}
+
+	public int getMaxResults() {
+		return _maxResults;
+	}
+
+	/**
+	 * Sets the number of paths after which the search stops.
+	 * @param maxResults the most paths to find, or 0 for no limit
+	 */
+	public void setMaxResults(int maxResults) {
+		if(maxResults < 0)
+			throw new IllegalArgumentException("maxResults must not be negative");
+		this._maxResults = maxResults;
+	}
+
+	public long getTimeLimitMillis() {
+		return _timeLimitMillis;
+	}
+
+	/**
+	 * Sets how long the search may run, measured from the call to
+	 * findPaths. Engines also pass the time left to each database query
+	 * they make where they can, so a slow query is cut short on the server.
+	 * @param timeLimit the longest the search may run, or 0 for no limit
+	 * @param unit the unit of the time limit
+	 */
+	public void setTimeLimit(long timeLimit, TimeUnit unit) {
+		if(timeLimit < 0)
+			throw new IllegalArgumentException("timeLimit must not be negative");
+		this._timeLimitMillis = unit.toMillis(timeLimit);
+	}
+
+	public long getMaxEdgesScanned() {
+		return _maxEdgesScanned;
+	}
+
+	/**
+	 * Sets the number of edges the search may examine before it stops,
+	 * counting every edge read whether or not it ends up on a path.
+	 * @param maxEdgesScanned the most edges to examine, or 0 for no limit
+	 */
+	public void setMaxEdgesScanned(long maxEdgesScanned) {
+		if(maxEdgesScanned < 0)
+			throw new IllegalArgumentException("maxEdgesScanned must not be negative");
+		this._maxEdgesScanned = maxEdgesScanned;
+	}
+
+	public Future<?> getCancellation() {
+		return _cancellation;
+	}
+
+	/**
+	 * Sets a future whose cancellation stops the search, checked before
+	 * each edge the search examines. The future is only watched, the
+	 * search never completes or cancels it.
+	 * @param cancellation the future to watch, or null for none
+	 */
+	public void setCancellation(Future<?> cancellation) {
+		this._cancellation = cancellation;
+	}
+}
@@ -0,0 +1,32 @@
+package com.mongodb.graph;
+
+import java.util.List;
+
+/**
+ * 	The cheapest path between two vertices along with its total cost, as
+ * 	returned by GraphEngine.cheapestPath().
+ */
+public class WeightedPath {
+
+	private final List<Relationship> _path;
+	private final double _cost;
+
+	public WeightedPath(List<Relationship> path, double cost) {
+		this._path = path;
+		this._cost = cost;
+	}
+
+	/**
+	 * Returns the hops of the path, each relative to the previous vertex.
+	 */
+	public List<Relationship> getPath() {
+		return _path;
+	}
+
+	/**
+	 * Returns the sum of the costs of the edges on the path.
+	 */
+	public double getCost() {
+		return _cost;
+	}
+}
@@ -0,0 +1,657 @@
+package com.mongodb.graph.impl;
+
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.DEFAULT_RESULT_LIMIT;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.DEST_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.ID_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.SOURCE_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.applyFilterQuery;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.buildProjection;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.getAllowedDirection;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.relationshipFromEdge;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	GraphEngine which stores the edges of each vertex together in bucket
+ *	documents rather than one document per edge. Every edge is stored
+ *	twice, in an OUT bucket of its source and an IN bucket of its
+ *	destination. Buckets hold up to BUCKET_SIZE edges and are keyed by
+ *	(vertex, direction, sequence), so reading a vertex with many edges is
+ *	a few sequential document reads instead of one index entry and one
+ *	document per edge.
+ *
+ *	Edges are appended with an atomic $push upsert to the newest bucket of
+ *	a vertex. A full bucket fails the upsert on the unique bucket key and
+ *	the edge goes to a new bucket instead. The two copies of an edge are
+ *	written separately, so a failure between them leaves the edge visible
+ *	from one end only. Edge ids are generated on the client and, unlike
+ *	EdgeIndexGraphEngine, their uniqueness is not enforced.
+ */
+public class AdjacencyBucketGraphEngine implements GraphEngine
+{
+	public static final int BUCKET_SIZE = 500;
+
+	private static final int DEFAULT_BATCH_SIZE = 100;
+	private static final int DEFAULT_FRONTIER_CHUNK_SIZE = 500;
+	private static final int DEFAULT_FRONTIER_BATCH_SIZE = 1000;
+	private static final String DEFAULT_BUCKET_COLLECTION = "graph_buckets";
+	private static final String VERTEX_KEY = "_v";
+	private static final String DIRECTION_KEY = "_dir";
+	private static final String SEQUENCE_KEY = "_seq";
+	private static final String COUNT_KEY = "_count";
+	private static final String EDGES_KEY = "_edges";
+	private static final String INDEX_KEY = "_i";
+	private static final String PAGE_PHASE_KEY = "p";
+	private static final String PAGE_SEQUENCE_KEY = "s";
+	private static final String PAGE_INDEX_KEY = "i";
+
+	private DB _db = null;
+	private DBCollection _bucketColl = null;
+	private GraphMetrics _metrics = null;
+
+	public AdjacencyBucketGraphEngine(DB db){
+
+		_db = db;
+		_bucketColl = _db.getCollection(DEFAULT_BUCKET_COLLECTION);
+
+		// the unique key is what moves appends on from a full bucket
+		_bucketColl.ensureIndex(new BasicDBObject(VERTEX_KEY, 1)
+				.append(DIRECTION_KEY, 1).append(SEQUENCE_KEY, 1),
+				new BasicDBObject("unique", true));
+	}
+
+	@Override
+	public void setMetrics(GraphMetrics metrics) {
+		this._metrics = metrics;
+	}
+
+	@Override
+	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
+
+		DBObject newEdge = buildEdge(sourceVertexId, targetVertexId, edgeData);
+		List<DBObject> edges = new ArrayList<DBObject>(1);
+		edges.add(newEdge);
+
+		WriteConcern writeConcern = _bucketColl.getWriteConcern();
+		appendEdges(sourceVertexId, Direction.OUT, edges, writeConcern);
+		appendEdges(targetVertexId, Direction.IN, edges, writeConcern);
+		return newEdge;
+	}
+
+	/**
+	 * Open a writer which appends each batch with one $push per bucket.
+	 * Bucket indexes are needed to place edges, so the deferIndexes
+	 * option has no effect on this engine.
+	 */
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+
+		return new BatchingEdgeWriter(options, _bucketColl.getWriteConcern()){
+
+			@Override
+			protected DBObject createEdge(
+					DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+				return buildEdge(sourceId, destinationId, edgeData);
+			}
+
+			@Override
+			protected void writeBatch(List<DBObject> batch, WriteConcern writeConcern) {
+
+				// group the batch by the bucket chain each copy belongs to
+				Map<DBObject, List<DBObject>> chains =
+						new LinkedHashMap<DBObject, List<DBObject>>();
+				for(DBObject edge : batch){
+					addToChain(chains, (DBObject) edge.get(SOURCE_KEY), Direction.OUT, edge);
+					addToChain(chains, (DBObject) edge.get(DEST_KEY), Direction.IN, edge);
+				}
+
+				for(Map.Entry<DBObject, List<DBObject>> chain : chains.entrySet()){
+					appendEdges((DBObject) chain.getKey().get(VERTEX_KEY),
+							Direction.valueOf((String) chain.getKey().get(DIRECTION_KEY)),
+							chain.getValue(), writeConcern);
+				}
+			}
+		};
+	}
+
+	private void addToChain(Map<DBObject, List<DBObject>> chains,
+			DBObject vertexId, Direction direction, DBObject edge) {
+
+		DBObject chainKey = new BasicDBObject(VERTEX_KEY, vertexId)
+				.append(DIRECTION_KEY, direction.name());
+		List<DBObject> edges = chains.get(chainKey);
+		if(edges == null){
+			edges = new ArrayList<DBObject>();
+			chains.put(chainKey, edges);
+		}
+		edges.add(edge);
+	}
+
+	private DBObject buildEdge(DBObject sourceVertexId,
+			DBObject targetVertexId, DBObject edgeData) {
+
+		BasicDBObject newEdge = new BasicDBObject();
+		newEdge.putAll(edgeData);
+		newEdge.append(SOURCE_KEY, sourceVertexId);
+		newEdge.append(DEST_KEY, targetVertexId);
+
+		// there is no insert to assign an id, so do it here
+		if(newEdge.get(ID_KEY) == null)
+			newEdge.append(ID_KEY, new ObjectId());
+
+		return newEdge;
+	}
+
+	private void appendEdges(DBObject vertexId, Direction direction,
+			List<DBObject> edges, WriteConcern writeConcern) {
+
+		// a full bucket is only detected through an acknowledged write
+		if(writeConcern.callGetLastError() == false)
+			writeConcern = WriteConcern.ACKNOWLEDGED;
+
+		int sequence = lastSequence(vertexId, direction);
+		for(int start = 0; start < edges.size(); start += BUCKET_SIZE){
+			List<DBObject> chunk = edges.subList(start,
+					Math.min(start + BUCKET_SIZE, edges.size()));
+
+			BasicDBObject append = new BasicDBObject("$push",
+					new BasicDBObject(EDGES_KEY, new BasicDBObject("$each", chunk)))
+					.append("$inc", new BasicDBObject(COUNT_KEY, chunk.size()));
+
+			while(true){
+				// only matches the bucket if the whole chunk fits
+				BasicDBObject bucketQuery = bucketQuery(vertexId, direction)
+						.append(SEQUENCE_KEY, sequence)
+						.append(COUNT_KEY, new BasicDBObject("$lte", BUCKET_SIZE - chunk.size()));
+				try{
+					if(_metrics != null) _metrics.roundTrip();
+					_bucketColl.update(bucketQuery, append, true, false, writeConcern);
+					break;
+				}
+				catch(MongoException.DuplicateKey e){
+					// the bucket exists but is full, start the next one
+					sequence++;
+				}
+			}
+		}
+	}
+
+	private int lastSequence(DBObject vertexId, Direction direction) {
+
+		DBCursor outCursor = null;
+		try{
+			outCursor = _bucketColl.find(bucketQuery(vertexId, direction),
+					new BasicDBObject(SEQUENCE_KEY, true));
+			outCursor.sort(new BasicDBObject(VERTEX_KEY, 1)
+					.append(DIRECTION_KEY, 1).append(SEQUENCE_KEY, -1));
+			outCursor.limit(1);
+			return outCursor.hasNext() ?
+					((Number) outCursor.next().get(SEQUENCE_KEY)).intValue() : 0;
+		}
+		finally{
+			if(outCursor != null)
+				DBGraphCursor.close(outCursor, _metrics, 0);
+		}
+	}
+
+	private BasicDBObject bucketQuery(Object vertexMatch, Direction direction) {
+		return new BasicDBObject(VERTEX_KEY, vertexMatch)
+				.append(DIRECTION_KEY, direction.name());
+	}
+
+	@Override
+	public List<DBObject> getEdges(DBObject vertexId){
+
+		return this.getEdges(vertexId, null);
+	}
+
+	@Override
+	public List<DBObject> getEdges(DBObject vertexId, EdgeFilter filter){
+
+		List<DBObject> resultList = new ArrayList<DBObject>();
+
+		GraphCursor<DBObject> edges = streamEdges(
+				vertexId, filter, DEFAULT_BATCH_SIZE, DEFAULT_RESULT_LIMIT);
+		try{
+			// exhaust cursor
+			for(DBObject edge : edges)
+				resultList.add(edge);
+		}
+		finally{
+			edges.close();
+		}
+
+		return resultList;
+	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(
+			DBObject vertexId, EdgeFilter filter, int batchSize, int limit){
+
+		return new PhaseCursor(vertexId, filter, batchSize, limit);
+	}
+
+	@Override
+	public List<Relationship> getNeighbors(DBObject vertexId){
+
+		return this.getNeighbors(vertexId, null);
+	}
+
+	@Override
+	public List<Relationship> getNeighbors(DBObject vertexId, EdgeFilter filter){
+
+		List<Relationship> resultList = new ArrayList<Relationship>();
+
+		GraphCursor<Relationship> neighbors = streamNeighbors(
+				vertexId, filter, DEFAULT_BATCH_SIZE, DEFAULT_RESULT_LIMIT);
+		try{
+			// exhaust cursor
+			for(Relationship neighbor : neighbors)
+				resultList.add(neighbor);
+		}
+		finally{
+			neighbors.close();
+		}
+
+		return resultList;
+	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter){
+
+		// Find all edges by default
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+
+		// Every vertex gets an entry, even if it has no matching edges
+		Map<DBObject, List<Relationship>> expansion =
+				new LinkedHashMap<DBObject, List<Relationship>>();
+		for(DBObject vertexId : vertexIds)
+			expansion.put(vertexId, new ArrayList<Relationship>());
+
+		// Large frontiers are split so that no single $in grows unbounded
+		List<DBObject> chunk = new ArrayList<DBObject>(DEFAULT_FRONTIER_CHUNK_SIZE);
+		Iterator<DBObject> vertexIter = expansion.keySet().iterator();
+		while(vertexIter.hasNext()){
+			chunk.add(vertexIter.next());
+			if(chunk.size() == DEFAULT_FRONTIER_CHUNK_SIZE || vertexIter.hasNext() == false){
+
+				// One pipeline per direction, self loops only reported once
+				if(direction != Direction.IN)
+					expandChunk(chunk, filter, Direction.OUT, false, expansion);
+				if(direction != Direction.OUT)
+					expandChunk(chunk, filter, Direction.IN,
+							direction == Direction.BOTH, expansion);
+				chunk.clear();
+			}
+		}
+
+		return expansion;
+	}
+
+	private void expandChunk(List<DBObject> chunk, EdgeFilter filter,
+			Direction phase, boolean skipSelfLoops,
+			Map<DBObject, List<Relationship>> expansion){
+
+		String vertexField = phase == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		List<DBObject> pipeline = buildPipeline(
+				new BasicDBObject("$in", chunk), phase, filter, null, null, false, 0);
+
+		AggregationCursor outCursor = new AggregationCursor(
+				_bucketColl, pipeline, DEFAULT_FRONTIER_BATCH_SIZE, _metrics);
+		int scanned = 0;
+		try{
+			// group each edge under the requested vertex it belongs to
+			for(DBObject edge : outCursor){
+				scanned++;
+				if(skipSelfLoops && edge.get(SOURCE_KEY).equals(edge.get(DEST_KEY)))
+					continue;
+
+				DBObject vertexId = (DBObject) edge.get(vertexField);
+				List<Relationship> hops = expansion.get(vertexId);
+
+				// honor the same per vertex limit as a single vertex query
+				if(hops != null && hops.size() < DEFAULT_RESULT_LIMIT)
+					hops.add(relationshipFromEdge(edge, vertexId));
+			}
+		}
+		finally{
+			outCursor.close();
+			if(_metrics != null) _metrics.edgesScanned(scanned);
+		}
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(
+			final DBObject vertexId, EdgeFilter filter, int batchSize, int limit){
+
+		final PhaseCursor edges = new PhaseCursor(vertexId, filter, batchSize, limit);
+		return new GraphCursor<Relationship>(){
+
+			@Override
+			public boolean hasNext() {
+				return edges.hasNext();
+			}
+
+			@Override
+			public Relationship next() {
+				return relationshipFromEdge(edges.next(), vertexId);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("GraphCursor is read only");
+			}
+
+			@Override
+			public Iterator<Relationship> iterator() {
+				return this;
+			}
+
+			@Override
+			public void close() {
+				edges.close();
+			}
+		};
+	}
+
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter,
+			int pageSize, String continuationToken){
+
+		if(pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		// A position is the direction being read and the bucket and array
+		// index of the last edge returned, which never move once written
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+		BSONObject position = continuationToken != null ?
+				ContinuationTokens.decode(continuationToken) :
+				new BasicBSONObject(PAGE_PHASE_KEY,
+						(direction == Direction.IN ? Direction.IN : Direction.OUT).name());
+
+		List<Relationship> page = new ArrayList<Relationship>(pageSize);
+		String nextToken = null;
+		boolean readingPhases = true;
+
+		while(readingPhases){
+			Direction phase = Direction.valueOf((String) position.get(PAGE_PHASE_KEY));
+
+			// read one more than needed to find out if the page is the last
+			List<DBObject> pipeline = buildPipeline(vertexId, phase, filter,
+					direction == Direction.BOTH ? vertexId : null,
+					position, true, pageSize - page.size() + 1);
+			AggregationCursor outCursor = new AggregationCursor(
+					_bucketColl, pipeline, pageSize + 1, _metrics);
+			boolean phaseHasMore = false;
+			int scanned = 0;
+			try{
+				for(DBObject edge : outCursor){
+					scanned++;
+					if(page.size() == pageSize){
+						phaseHasMore = true;
+						break;
+					}
+
+					position = new BasicBSONObject(PAGE_PHASE_KEY, phase.name())
+							.append(PAGE_SEQUENCE_KEY, edge.removeField(SEQUENCE_KEY))
+							.append(PAGE_INDEX_KEY, edge.removeField(INDEX_KEY));
+					page.add(relationshipFromEdge(edge, vertexId));
+				}
+			}
+			finally{
+				outCursor.close();
+				if(_metrics != null) _metrics.edgesScanned(scanned);
+			}
+
+			if(phaseHasMore){
+				nextToken = ContinuationTokens.encode(position);
+				readingPhases = false;
+			}
+			else if(phase == Direction.OUT && direction == Direction.BOTH){
+				// outgoing edges are done, carry on with the incoming ones
+				position = new BasicBSONObject(PAGE_PHASE_KEY, Direction.IN.name());
+			}
+			else{
+				readingPhases = false;
+			}
+		}
+
+		return new NeighborPage(page, nextToken);
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, PathListener listener){
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(listener));
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener){
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(options, listener));
+	}
+
+	private Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, TraversalControl control){
+
+		// level by level, each level is one pipeline per direction
+		new FrontierPathFinder(this, _metrics).findPathsBreadthFirst(fromVertexId,
+				targetVertexId, filter, degreeLimit, control);
+
+		return control.complete();
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit){
+		return new FrontierPathFinder(this, _metrics).findShortestPath(
+				fromVertexId, targetVertexId, filter, degreeLimit);
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit){
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		return new FrontierPathFinder(this, _metrics).findShortestPaths(
+				fromVertexId, targetVertexId, k, filter, degreeLimit);
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic){
+		return new WeightedPathFinder(this, _metrics).findCheapestPath(
+				fromVertexId, targetVertexId, filter, cost, heuristic);
+	}
+
+	/**
+	 * Build the pipeline which reads the edges of one direction.
+	 * @param vertexMatch a vertex id or an expression matching vertex ids
+	 * @param phase the direction of the buckets to read
+	 * @param filter the filter for edges, may be null
+	 * @param selfLoopVertex if not null, a vertex whose self loops are left
+	 * out because they were read with its outgoing edges
+	 * @param position if not null, the page position to resume after
+	 * @param withPositions true to add the bucket and array index of each
+	 * edge to the results
+	 * @param limit the most edges to return, or 0 for no limit
+	 */
+	private List<DBObject> buildPipeline(Object vertexMatch, Direction phase,
+			EdgeFilter filter, DBObject selfLoopVertex, BSONObject position,
+			boolean withPositions, int limit){
+
+		List<DBObject> pipeline = new ArrayList<DBObject>();
+
+		BasicDBObject bucketQuery = bucketQuery(vertexMatch, phase);
+		Object lastSequence = position != null ? position.get(PAGE_SEQUENCE_KEY) : null;
+		if(lastSequence != null)
+			bucketQuery.append(SEQUENCE_KEY, new BasicDBObject("$gte", lastSequence));
+		pipeline.add(new BasicDBObject("$match", bucketQuery));
+		pipeline.add(new BasicDBObject("$sort", new BasicDBObject(SEQUENCE_KEY, 1)));
+		pipeline.add(new BasicDBObject("$unwind", new BasicDBObject("path", "$" + EDGES_KEY)
+				.append("includeArrayIndex", INDEX_KEY)));
+
+		// skip what was already read from the first bucket of the page
+		if(lastSequence != null){
+			List<DBObject> orList = new ArrayList<DBObject>(2);
+			orList.add(new BasicDBObject(SEQUENCE_KEY, new BasicDBObject("$gt", lastSequence)));
+			orList.add(new BasicDBObject(INDEX_KEY,
+					new BasicDBObject("$gt", position.get(PAGE_INDEX_KEY))));
+			pipeline.add(new BasicDBObject("$match", new BasicDBObject("$or", orList)));
+		}
+
+		Object newRoot = "$" + EDGES_KEY;
+		if(withPositions){
+			List<Object> merged = new ArrayList<Object>(2);
+			merged.add(newRoot);
+			merged.add(new BasicDBObject(SEQUENCE_KEY, "$" + SEQUENCE_KEY)
+					.append(INDEX_KEY, "$" + INDEX_KEY));
+			newRoot = new BasicDBObject("$mergeObjects", merged);
+		}
+		pipeline.add(new BasicDBObject("$replaceRoot", new BasicDBObject("newRoot", newRoot)));
+
+		BasicDBObject edgeQuery = new BasicDBObject();
+		if(selfLoopVertex != null && phase == Direction.IN)
+			edgeQuery.append(SOURCE_KEY, new BasicDBObject("$ne", selfLoopVertex));
+		edgeQuery = applyFilterQuery(edgeQuery, filter);
+		if(edgeQuery.isEmpty() == false)
+			pipeline.add(new BasicDBObject("$match", edgeQuery));
+
+		if(limit > 0)
+			pipeline.add(new BasicDBObject("$limit", limit));
+
+		// positions are kept through an inclusion projection
+		BasicDBObject projection = buildProjection(filter);
+		if(withPositions && filter != null && filter.hasProjection())
+			projection.append(SEQUENCE_KEY, true).append(INDEX_KEY, true);
+		if(projection.isEmpty() == false)
+			pipeline.add(new BasicDBObject("$project", projection));
+
+		return pipeline;
+	}
+
+	/**
+	 * Reads the edges of a vertex one direction at a time, outgoing first,
+	 * sharing a single limit across both.
+	 */
+	private class PhaseCursor implements GraphCursor<DBObject> {
+
+		private final DBObject _vertexId;
+		private final EdgeFilter _filter;
+		private final Direction _direction;
+		private final int _batchSize;
+		private final int _limit;
+		private Direction _phase;
+		private AggregationCursor _phaseCursor = null;
+		private int _returned = 0;
+		private int _reported = 0;
+
+		PhaseCursor(DBObject vertexId, EdgeFilter filter, int batchSize, int limit) {
+			this._vertexId = vertexId;
+			this._filter = filter;
+			this._direction = getAllowedDirection(filter, Direction.BOTH);
+			this._batchSize = batchSize;
+			this._limit = limit;
+			this._phase = _direction == Direction.IN ? Direction.IN : Direction.OUT;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(_phase != null){
+				if(_limit > 0 && _returned >= _limit){
+					close();
+					return false;
+				}
+
+				// the pipeline is only run once the caller starts iterating
+				if(_phaseCursor == null){
+					_phaseCursor = new AggregationCursor(_bucketColl,
+							buildPipeline(_vertexId, _phase, _filter,
+									_direction == Direction.BOTH ? _vertexId : null,
+									null, false, _limit > 0 ? _limit - _returned : 0),
+							_batchSize, _metrics);
+				}
+
+				if(_phaseCursor.hasNext())
+					return true;
+
+				_phaseCursor = null;
+				_phase = _phase == Direction.OUT && _direction == Direction.BOTH ?
+						Direction.IN : null;
+			}
+
+			return false;
+		}
+
+		@Override
+		public DBObject next() {
+			if(hasNext() == false)
+				throw new NoSuchElementException();
+
+			_returned++;
+			return _phaseCursor.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("GraphCursor is read only");
+		}
+
+		@Override
+		public Iterator<DBObject> iterator() {
+			return this;
+		}
+
+		@Override
+		public void close() {
+			if(_phaseCursor != null)
+				_phaseCursor.close();
+			_phaseCursor = null;
+			_phase = null;
+
+			if(_metrics != null && _returned > _reported){
+				_metrics.edgesScanned(_returned - _reported);
+				_reported = _returned;
+			}
+		}
+	}
+}
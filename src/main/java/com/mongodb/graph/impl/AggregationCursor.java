@@ -0,0 +1,127 @@
+package com.mongodb.graph.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphMetrics;
+
+/**
+ *	GraphCursor over the results of an aggregation pipeline. The pipeline is
+ *	run with the cursor form of the aggregate command, which newer servers
+ *	require, and further batches are read with getMore. The server cursor
+ *	is killed if the caller closes this one before it is exhausted. Each
+ *	batch is reported to the metrics as it arrives.
+ */
+class AggregationCursor implements GraphCursor<DBObject> {
+
+	private final DBCollection _collection;
+	private final int _batchSize;
+	private final GraphMetrics _metrics;
+	private Iterator<?> _batch;
+	private long _cursorId;
+	private boolean _closed = false;
+
+	/**
+	 * Run the pipeline and read the first batch of results.
+	 * @param metrics the receiver for the batches read, may be null
+	 */
+	AggregationCursor(DBCollection collection, List<DBObject> pipeline,
+			int batchSize, GraphMetrics metrics) {
+		this(collection, pipeline, batchSize, 0, metrics);
+	}
+
+	/**
+	 * Run the pipeline within a time limit and read the first batch of
+	 * results. The limit covers the reads of later batches too, a read
+	 * past it throws a MongoException with the server's error code.
+	 * @param maxTimeMillis the longest the server may spend on the
+	 * pipeline, or 0 for no limit
+	 * @param metrics the receiver for the batches read, may be null
+	 */
+	AggregationCursor(DBCollection collection, List<DBObject> pipeline,
+			int batchSize, long maxTimeMillis, GraphMetrics metrics) {
+		this._collection = collection;
+		this._batchSize = batchSize;
+		this._metrics = metrics;
+
+		BasicDBObject command = new BasicDBObject("aggregate", collection.getName())
+				.append("pipeline", pipeline)
+				.append("cursor", new BasicDBObject("batchSize", batchSize));
+		if(maxTimeMillis > 0)
+			command.append("maxTimeMS", maxTimeMillis);
+		CommandResult result = collection.getDB().command(command);
+		result.throwOnError();
+		readBatch(result, "firstBatch");
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(_closed)
+			return false;
+
+		while(_batch.hasNext() == false){
+			if(_cursorId == 0){
+				close();
+				return false;
+			}
+
+			CommandResult result = _collection.getDB().command(
+					new BasicDBObject("getMore", _cursorId)
+							.append("collection", _collection.getName())
+							.append("batchSize", _batchSize));
+			result.throwOnError();
+			readBatch(result, "nextBatch");
+		}
+
+		return true;
+	}
+
+	@Override
+	public DBObject next() {
+		if(hasNext() == false)
+			throw new NoSuchElementException();
+
+		return (DBObject) _batch.next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("GraphCursor is read only");
+	}
+
+	@Override
+	public Iterator<DBObject> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(_closed == false){
+			_closed = true;
+			_batch = Collections.emptyList().iterator();
+
+			// best effort, an abandoned cursor also times out on the server
+			if(_cursorId != 0){
+				_collection.getDB().command(new BasicDBObject("killCursors", _collection.getName())
+						.append("cursors", Collections.singletonList(_cursorId)));
+				_cursorId = 0;
+			}
+		}
+	}
+
+	private void readBatch(CommandResult result, String batchField) {
+		DBObject cursor = (DBObject) result.get("cursor");
+		_cursorId = ((Number) cursor.get("id")).longValue();
+		List<?> batch = (List<?>) cursor.get(batchField);
+		_batch = batch.iterator();
+		if(_metrics != null)
+			_metrics.batchFetched(batch.size());
+	}
+}
@@ -0,0 +1,145 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.BatchFailure;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.BulkLoadResult;
+import com.mongodb.graph.EdgeWriter;
+
+/**
+ *	Base EdgeWriter which buffers edges into batches and keeps the load
+ *	statistics. Engines supply the edge document format and the write of a
+ *	complete batch, a failed batch is recorded and the load continues.
+ */
+abstract class BatchingEdgeWriter implements EdgeWriter {
+
+	private final int _batchSize;
+	private final long _startTime;
+	private WriteConcern _writeConcern;
+	private List<DBObject> _batch;
+	private List<BatchFailure> _failures = new ArrayList<BatchFailure>();
+	private long _edgesWritten = 0;
+	private long _edgesFailed = 0;
+	private int _batchesWritten = 0;
+	private long _endTime = -1;
+
+	BatchingEdgeWriter(BulkLoadOptions options, WriteConcern defaultWriteConcern) {
+		if(options == null)
+			options = new BulkLoadOptions();
+
+		this._batchSize = options.getBatchSize();
+		this._writeConcern = options.getWriteConcern() != null ?
+				options.getWriteConcern() : defaultWriteConcern;
+		this._batch = new ArrayList<DBObject>(_batchSize);
+		this._startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Create the document that will be stored for a single edge.
+	 */
+	protected abstract DBObject createEdge(
+			DBObject sourceId, DBObject destinationId, DBObject edgeData);
+
+	/**
+	 * Write a complete batch of edge documents. Any MongoException thrown
+	 * is recorded as a failure of this batch only.
+	 */
+	protected abstract void writeBatch(List<DBObject> batch, WriteConcern writeConcern);
+
+	/**
+	 * Returns the edges of a failed batch which were not stored. Batches are
+	 * written unordered, so engines which can tell which edges got through
+	 * override this. By default the whole batch is counted as failed.
+	 */
+	protected List<DBObject> unwrittenEdges(List<DBObject> batch) {
+		return batch;
+	}
+
+	/**
+	 * Called once after the final batch has been written.
+	 */
+	protected void finish() {
+	}
+
+	@Override
+	public void add(DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+		checkOpen();
+		_batch.add(createEdge(sourceId, destinationId, edgeData));
+		if(_batch.size() >= _batchSize)
+			flush();
+	}
+
+	@Override
+	public void setWriteConcern(WriteConcern writeConcern) {
+		if(writeConcern == null)
+			throw new IllegalArgumentException("writeConcern must not be null");
+		this._writeConcern = writeConcern;
+	}
+
+	@Override
+	public void flush() {
+		checkOpen();
+		if(_batch.isEmpty())
+			return;
+
+		// hand over the buffer so failures can keep hold of their edges
+		List<DBObject> batch = _batch;
+		_batch = new ArrayList<DBObject>(_batchSize);
+
+		try{
+			writeBatch(batch, _writeConcern);
+			_edgesWritten += batch.size();
+		}
+		catch(MongoException e){
+			List<DBObject> failed;
+			try{
+				failed = unwrittenEdges(batch);
+			}
+			catch(MongoException checkError){
+				failed = batch;
+			}
+			_failures.add(new BatchFailure(_batchesWritten, failed, e));
+			_edgesWritten += batch.size() - failed.size();
+			_edgesFailed += failed.size();
+		}
+		finally{
+			_batchesWritten++;
+		}
+	}
+
+	@Override
+	public BulkLoadResult getResult() {
+		long endTime = _endTime >= 0 ? _endTime : System.currentTimeMillis();
+		return new BulkLoadResult(_edgesWritten, _edgesFailed, _batchesWritten,
+				new ArrayList<BatchFailure>(_failures), endTime - _startTime);
+	}
+
+	@Override
+	public void close() {
+		if(_endTime >= 0)
+			return;
+
+		// deferred indexes are rebuilt even if the last batch fails
+		try{
+			flush();
+		}
+		finally{
+			try{
+				finish();
+			}
+			finally{
+				_endTime = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if(_endTime >= 0)
+			throw new IllegalStateException("EdgeWriter has been closed");
+	}
+}
@@ -0,0 +1,585 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.BulkLoadResult;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	GraphEngine decorator which keeps the neighbor lists of recently used
+ *	vertices in memory, keyed by vertex and EdgeFilter. The cache is bounded
+ *	by a number of entries, the least recently used entry being evicted
+ *	first, and entries may also expire after a fixed time to live.
+ *
+ *	Edges added through this engine, or through a writer it opened, drop the
+ *	cached entries of both of their endpoints. Changes made to the graph by
+ *	any other means are only seen once the affected entries expire.
+ *
+ *	getEdges and getNeighbors are answered from the same cached entries, and
+ *	findPaths expands each level of its search through the cache. A filter
+ *	with a query or projection is also answered from the entry cached for
+ *	its direction alone, by evaluating it in memory with EdgeFilterCompiler.
+ *	Streaming and paged reads go straight to the underlying engine.
+ *
+ *	The lists returned are the caller's own, but the Relationships in them
+ *	and their edge documents are the cached ones, shared by every caller
+ *	until the entry goes, so they must not be changed.
+ */
+public class CachingGraphEngine implements GraphEngine
+{
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+	public static final long DEFAULT_TTL_MILLIS = 60000;
+
+	private final GraphEngine _delegate;
+	private final int _maxEntries;
+	private final long _ttlMillis;
+	private final LinkedHashMap<CacheKey, CacheEntry> _cache;
+	private final Map<DBObject, Set<CacheKey>> _keysByVertex =
+			new HashMap<DBObject, Set<CacheKey>>();
+
+	private GraphMetrics _metrics = null;
+	private long _invalidations = 0;
+	private long _hitCount = 0;
+	private long _missCount = 0;
+	private long _evictionCount = 0;
+	private long _expirationCount = 0;
+
+	public CachingGraphEngine(GraphEngine delegate) {
+		this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+	}
+
+	/**
+	 * Construct a cache in front of another engine.
+	 * @param delegate the engine which answers cache misses and writes
+	 * @param maxEntries the most neighbor lists kept at once
+	 * @param ttlMillis how long a neighbor list may be served from the
+	 * cache, or zero if entries never expire
+	 */
+	public CachingGraphEngine(GraphEngine delegate, int maxEntries, long ttlMillis) {
+
+		if(maxEntries <= 0)
+			throw new IllegalArgumentException("maxEntries must be positive");
+
+		_delegate = delegate;
+		_maxEntries = maxEntries;
+		_ttlMillis = ttlMillis;
+
+		// access order, so the eldest entry is the least recently used
+		_cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+				if(size() > _maxEntries){
+					unindexKey(eldest.getKey());
+					_evictionCount++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public GraphEngine getDelegate() {
+		return _delegate;
+	}
+
+	/**
+	 * Sets the metrics of this engine and of the engine behind it, so
+	 * cache hits show up as calls which made no round trips.
+	 */
+	@Override
+	public void setMetrics(GraphMetrics metrics) {
+		this._metrics = metrics;
+		_delegate.setMetrics(metrics);
+	}
+
+	public synchronized long getHitCount() {
+		return _hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return _missCount;
+	}
+
+	/**
+	 * Returns the number of entries removed to keep the cache within
+	 * its maximum size.
+	 * @return the eviction count
+	 */
+	public synchronized long getEvictionCount() {
+		return _evictionCount;
+	}
+
+	/**
+	 * Returns the number of entries which were found but not used
+	 * because their time to live had passed.
+	 * @return the expiration count
+	 */
+	public synchronized long getExpirationCount() {
+		return _expirationCount;
+	}
+
+	public synchronized int size() {
+		return _cache.size();
+	}
+
+	/**
+	 * Drop every cached neighbor list. Counters are not reset.
+	 */
+	public synchronized void clear() {
+		_cache.clear();
+		_keysByVertex.clear();
+		_invalidations++;
+	}
+
+	/**
+	 * Drop the cached neighbor lists of one vertex, under every filter.
+	 * This is needed when the edges of the vertex are changed other
+	 * than through this engine.
+	 * @param vertexId the vertex whose entries are removed
+	 */
+	public synchronized void invalidate(DBObject vertexId) {
+		Set<CacheKey> keys = _keysByVertex.remove(vertexId);
+		if(keys != null){
+			for(CacheKey key : keys)
+				_cache.remove(key);
+		}
+		_invalidations++;
+	}
+
+	@Override
+	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
+
+		DBObject edge = _delegate.addEdge(sourceVertexId, targetVertexId, edgeData);
+		invalidate(sourceVertexId);
+		invalidate(targetVertexId);
+		return edge;
+	}
+
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+
+		final EdgeWriter writer = _delegate.openEdgeWriter(options);
+		return new EdgeWriter(){
+
+			// endpoints of edges which may still be buffered in the writer
+			private final Set<DBObject> _pending = new HashSet<DBObject>();
+
+			@Override
+			public void add(DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+				writer.add(sourceId, destinationId, edgeData);
+				_pending.add(sourceId);
+				_pending.add(destinationId);
+				invalidate(sourceId);
+				invalidate(destinationId);
+			}
+
+			@Override
+			public void setWriteConcern(WriteConcern writeConcern) {
+				writer.setWriteConcern(writeConcern);
+			}
+
+			@Override
+			public void flush() {
+				writer.flush();
+				invalidatePending();
+			}
+
+			@Override
+			public BulkLoadResult getResult() {
+				return writer.getResult();
+			}
+
+			@Override
+			public void close() {
+				writer.close();
+				invalidatePending();
+			}
+
+			private void invalidatePending() {
+				// reads between add and flush may have cached the old lists
+				for(DBObject vertexId : _pending)
+					invalidate(vertexId);
+				_pending.clear();
+			}
+		};
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId) {
+		return getEdges(vertexId, null);
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId, EdgeFilter filter) {
+
+		Collection<Relationship> neighbors = getNeighbors(vertexId, filter);
+		List<DBObject> edges = new ArrayList<DBObject>(neighbors.size());
+		for(Relationship neighbor : neighbors)
+			edges.add(neighbor.getEdge());
+
+		return edges;
+	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+		return _delegate.streamEdges(vertexId, filter, batchSize, limit);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId) {
+		return getNeighbors(vertexId, null);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId, EdgeFilter filter) {
+
+		CacheKey key = new CacheKey(vertexId, filter);
+		List<Relationship> neighbors = lookup(key, compile(filter));
+		if(neighbors == null){
+			long generation = getInvalidations();
+			neighbors = new ArrayList<Relationship>(_delegate.getNeighbors(vertexId, filter));
+			store(key, neighbors, generation);
+		}
+
+		return new ArrayList<Relationship>(neighbors);
+	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter) {
+
+		Map<DBObject, List<Relationship>> expansion =
+				new LinkedHashMap<DBObject, List<Relationship>>();
+		List<DBObject> missing = new ArrayList<DBObject>();
+		CompiledEdgeFilter compiled = compile(filter);
+		for(DBObject vertexId : vertexIds){
+			if(expansion.containsKey(vertexId))
+				continue;
+
+			List<Relationship> neighbors = lookup(new CacheKey(vertexId, filter), compiled);
+			if(neighbors == null)
+				missing.add(vertexId);
+			expansion.put(vertexId, neighbors == null ?
+					null : new ArrayList<Relationship>(neighbors));
+		}
+
+		// all of the misses are fetched together in one batched call
+		if(missing.isEmpty() == false){
+			long generation = getInvalidations();
+			Map<DBObject, List<Relationship>> fetched =
+					_delegate.getNeighbors(missing, filter);
+			for(DBObject vertexId : missing){
+				List<Relationship> neighbors = fetched.get(vertexId);
+				if(neighbors == null)
+					neighbors = new ArrayList<Relationship>();
+
+				store(new CacheKey(vertexId, filter),
+						new ArrayList<Relationship>(neighbors), generation);
+				expansion.put(vertexId, neighbors);
+			}
+		}
+
+		return expansion;
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+		return _delegate.streamNeighbors(vertexId, filter, batchSize, limit);
+	}
+
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter,
+			int pageSize, String continuationToken) {
+		return _delegate.getNeighborPage(vertexId, filter, pageSize, continuationToken);
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, PathListener listener) {
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(listener));
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener) {
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(options, listener));
+	}
+
+	private Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, TraversalControl control) {
+
+		// level by level, so each frontier is one batched call on a miss
+		new FrontierPathFinder(this, _metrics).findPathsBreadthFirst(fromVertexId,
+				targetVertexId, filter, degreeLimit, control);
+
+		return control.complete();
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit) {
+		return new FrontierPathFinder(this, _metrics).findShortestPath(
+				fromVertexId, targetVertexId, filter, degreeLimit);
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit) {
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		return new FrontierPathFinder(this, _metrics).findShortestPaths(
+				fromVertexId, targetVertexId, k, filter, degreeLimit);
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic) {
+		return new WeightedPathFinder(this, _metrics).findCheapestPath(
+				fromVertexId, targetVertexId, filter, cost, heuristic);
+	}
+
+	private synchronized long getInvalidations() {
+		return _invalidations;
+	}
+
+	/**
+	 * Returns the cached neighbors for a key, or null on a miss.
+	 * @param compiled the compiled filter of the key, used to answer it from
+	 * the unfiltered entry of the same direction, or null if it cannot be
+	 */
+	private synchronized List<Relationship> lookup(CacheKey key, CompiledEdgeFilter compiled) {
+
+		CacheEntry entry = liveEntry(key);
+		if(entry != null){
+			_hitCount++;
+			return entry._neighbors;
+		}
+
+		if(compiled != null){
+			for(CacheKey unfilteredKey : key.unfilteredKeys()){
+				CacheEntry unfiltered = liveEntry(unfilteredKey);
+				// engines return at most this many neighbors of a vertex, so a
+				// list this long may be incomplete and is not filtered in memory
+				if(unfiltered != null && unfiltered._neighbors.size() 
+						< EdgeIndexGraphEngine.DEFAULT_RESULT_LIMIT){
+					_hitCount++;
+					return applyFilter(unfiltered._neighbors, compiled);
+				}
+			}
+		}
+
+		_missCount++;
+		return null;
+	}
+
+	private CacheEntry liveEntry(CacheKey key) {
+
+		CacheEntry entry = _cache.get(key);
+		if(entry != null && entry.isExpired(System.currentTimeMillis())){
+			_cache.remove(key);
+			unindexKey(key);
+			_expirationCount++;
+			entry = null;
+		}
+		return entry;
+	}
+
+	private static List<Relationship> applyFilter(
+			List<Relationship> neighbors, CompiledEdgeFilter compiled) {
+
+		List<Relationship> filtered = new ArrayList<Relationship>();
+		for(Relationship neighbor : neighbors){
+			if(compiled.matches(neighbor.getEdge())){
+				filtered.add(new Relationship(neighbor.getRelatedId(),
+						compiled.project(neighbor.getEdge()), neighbor.getDirection()));
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Compile the query and projection of a filter, or return null if it has
+	 * neither, or uses operators which can only be evaluated by the server.
+	 */
+	private static CompiledEdgeFilter compile(EdgeFilter filter) {
+
+		if(filter == null || (filter.getQuery() == null && filter.hasProjection() == false))
+			return null;
+
+		// cached edges only carry their ids if the filter asked for them
+		if(filter.getQuery() != null && filter.getQuery().containsField(EdgeIndexGraphEngine.ID_KEY))
+			return null;
+		try{
+			return EdgeFilterCompiler.compile(filter);
+		}
+		catch(IllegalArgumentException e){
+			return null;
+		}
+	}
+
+	private synchronized void store(CacheKey key,
+			List<Relationship> neighbors, long generation) {
+
+		// a write since the fetch began may have made the result stale
+		if(generation != _invalidations)
+			return;
+
+		key = key.copy();
+
+		long expiresAt = _ttlMillis > 0 ?
+				System.currentTimeMillis() + _ttlMillis : Long.MAX_VALUE;
+
+		Set<CacheKey> keys = _keysByVertex.get(key._vertexId);
+		if(keys == null){
+			keys = new HashSet<CacheKey>();
+			_keysByVertex.put(key._vertexId, keys);
+		}
+		keys.add(key);
+		_cache.put(key, new CacheEntry(neighbors, expiresAt));
+	}
+
+	private void unindexKey(CacheKey key) {
+		Set<CacheKey> keys = _keysByVertex.get(key._vertexId);
+		if(keys != null){
+			keys.remove(key);
+			if(keys.isEmpty())
+				_keysByVertex.remove(key._vertexId);
+		}
+	}
+
+	private static class CacheKey {
+
+		private final DBObject _vertexId;
+		private final EdgeFilter _filter;
+
+		CacheKey(DBObject vertexId, EdgeFilter filter) {
+			this._vertexId = vertexId;
+			this._filter = filter;
+		}
+
+		/**
+		 * Returns a key holding its own deep copies of the vertex id, query
+		 * and projection, so that the caller changing its objects after a
+		 * call does not move an entry already in the cache. Keys used only
+		 * to look entries up share the caller's objects.
+		 */
+		CacheKey copy() {
+
+			if(_filter == null)
+				return new CacheKey(copyOf(_vertexId), null);
+
+			EdgeFilter filter = new EdgeFilter(_filter.getAllowedDirection(),
+					copyOf(_filter.getQuery()), copyOf(_filter.getProjection()));
+			filter.setIncludeEdgeIds(_filter.getIncludeEdgeIds());
+			return new CacheKey(copyOf(_vertexId), filter);
+		}
+
+		private static DBObject copyOf(DBObject object) {
+			if(object == null)
+				return null;
+
+			BasicDBObject copy = object instanceof BasicDBObject ?
+					(BasicDBObject) object : new BasicDBObject(object.toMap());
+			return (DBObject) copy.copy();
+		}
+
+		/**
+		 * Returns the keys of entries holding every edge this key's filter
+		 * could match, which are those with the same direction and no query
+		 * or projection.
+		 */
+		List<CacheKey> unfilteredKeys() {
+
+			List<CacheKey> keys = new ArrayList<CacheKey>(2);
+			EdgeFilter unfiltered = new EdgeFilter(_filter.getAllowedDirection());
+			unfiltered.setIncludeEdgeIds(_filter.getIncludeEdgeIds());
+			keys.add(new CacheKey(_vertexId, unfiltered));
+
+			// no filter at all reads both ways without ids
+			Direction direction = _filter.getAllowedDirection();
+			if((direction == null || direction == Direction.BOTH) &&
+					_filter.getIncludeEdgeIds() == false)
+				keys.add(new CacheKey(_vertexId, null));
+			return keys;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((_filter == null) ? 0 : _filter.hashCode());
+			result = prime * result + ((_vertexId == null) ? 0 : _vertexId.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			if (_filter == null) {
+				if (other._filter != null)
+					return false;
+			} else if (!_filter.equals(other._filter))
+				return false;
+			if (_vertexId == null) {
+				if (other._vertexId != null)
+					return false;
+			} else if (!_vertexId.equals(other._vertexId))
+				return false;
+			return true;
+		}
+	}
+
+	private static class CacheEntry {
+
+		private final List<Relationship> _neighbors;
+		private final long _expiresAt;
+
+		CacheEntry(List<Relationship> neighbors, long expiresAt) {
+			this._neighbors = neighbors;
+			this._expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= _expiresAt;
+		}
+	}
+}
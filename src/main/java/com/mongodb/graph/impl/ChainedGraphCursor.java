@@ -0,0 +1,80 @@
+package com.mongodb.graph.impl;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.mongodb.graph.GraphCursor;
+
+/**
+ *	GraphCursor which returns the results of several cursors one after
+ *	the other, up to a limit on the total. Each cursor is only iterated,
+ *	and so only sends its query, once the ones before it are exhausted.
+ */
+class ChainedGraphCursor<T> implements GraphCursor<T> {
+
+	private final List<GraphCursor<T>> _cursors;
+	private final int _limit;
+	private int _current = 0;
+	private int _returned = 0;
+
+	/**
+	 * @param cursors the cursors to read in order, none yet iterated
+	 * @param limit the most results to return in total, or 0 for no limit
+	 */
+	ChainedGraphCursor(List<GraphCursor<T>> cursors, int limit) {
+		this._cursors = cursors;
+		this._limit = limit;
+	}
+
+	/**
+	 * Returns a cursor over the given cursors in order, which is the only
+	 * cursor itself if there is just one.
+	 */
+	static <T> GraphCursor<T> chain(List<GraphCursor<T>> cursors, int limit) {
+		if(cursors.size() == 1)
+			return cursors.get(0);
+		return new ChainedGraphCursor<T>(cursors, limit);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(_limit > 0 && _returned >= _limit){
+			close();
+			return false;
+		}
+
+		while(_current < _cursors.size()){
+			if(_cursors.get(_current).hasNext())
+				return true;
+			_current++;
+		}
+
+		return false;
+	}
+
+	@Override
+	public T next() {
+		if(hasNext() == false)
+			throw new NoSuchElementException();
+
+		_returned++;
+		return _cursors.get(_current).next();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("GraphCursor is read only");
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		for(GraphCursor<T> cursor : _cursors)
+			cursor.close();
+	}
+}
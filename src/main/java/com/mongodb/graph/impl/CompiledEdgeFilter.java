@@ -0,0 +1,66 @@
+package com.mongodb.graph.impl;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.EdgeFilter;
+
+/**
+ *	An EdgeFilter turned into Java objects by EdgeFilterCompiler, which
+ *	matches and projects edge documents held in memory the way the server
+ *	would, without a round trip. A compiled filter keeps no state between
+ *	calls and may be shared by any number of threads.
+ */
+public class CompiledEdgeFilter {
+
+	private final EdgeFilter _filter;
+	private final EdgeFilterCompiler.Matcher _matcher;
+	private final EdgeFilterCompiler.Projector _projector;
+
+	CompiledEdgeFilter(EdgeFilter filter, EdgeFilterCompiler.Matcher matcher,
+			EdgeFilterCompiler.Projector projector) {
+		this._filter = filter;
+		this._matcher = matcher;
+		this._projector = projector;
+	}
+
+	/**
+	 * @return the filter this was compiled from
+	 */
+	public EdgeFilter getFilter() {
+		return _filter;
+	}
+
+	/**
+	 * @return true if the filter has a query, so that some edges may not
+	 * match
+	 */
+	public boolean hasQuery() {
+		return _matcher != null;
+	}
+
+	/**
+	 * @return true if the filter has a projection, so that edges returned
+	 * are copies holding only some of their fields
+	 */
+	public boolean hasProjection() {
+		return _projector != null;
+	}
+
+	/**
+	 * Returns true if the edge matches the query of the filter. Every edge
+	 * matches a filter without a query.
+	 * @param edge an edge document, with its _s and _d vertex ids
+	 */
+	public boolean matches(DBObject edge) {
+		return _matcher == null || _matcher.matches(edge);
+	}
+
+	/**
+	 * Returns the edge as the projection of the filter would return it. The
+	 * vertex ids are always kept, as they are by the engines. Without a
+	 * projection the edge itself is returned, not a copy.
+	 * @param edge an edge document, with its _s and _d vertex ids
+	 */
+	public DBObject project(DBObject edge) {
+		return _projector == null ? edge : _projector.project(edge);
+	}
+}
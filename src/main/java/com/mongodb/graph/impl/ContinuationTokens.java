@@ -0,0 +1,35 @@
+package com.mongodb.graph.impl;
+
+import java.nio.charset.Charset;
+import java.util.Base64;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+
+/**
+ *	Converts the position an engine has reached in a paged query to and
+ *	from the opaque string handed to callers. Positions are encoded as BSON
+ *	so vertex and edge values keep their exact types, which matters when
+ *	they are used again as range bounds in a query.
+ */
+class ContinuationTokens {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private ContinuationTokens() {
+	}
+
+	static String encode(BSONObject position) {
+		byte[] bytes = BSON.encode(position);
+		return new String(Base64.getUrlEncoder().withoutPadding().encode(bytes), ASCII);
+	}
+
+	static BSONObject decode(String token) {
+		try{
+			return BSON.decode(Base64.getUrlDecoder().decode(token.getBytes(ASCII)));
+		}
+		catch(RuntimeException e){
+			throw new IllegalArgumentException("Invalid continuation token", e);
+		}
+	}
+}
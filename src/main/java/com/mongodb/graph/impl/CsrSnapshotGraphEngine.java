@@ -0,0 +1,678 @@
+package com.mongodb.graph.impl;
+
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.COMPACT_DEST_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.COMPACT_SOURCE_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.DEFAULT_EDGE_COLLECTION;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.DEST_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.ID_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.SOURCE_KEY;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	Read only GraphEngine over an in memory snapshot of an edge collection,
+ *	laid out in compressed sparse row (CSR) form. Vertex ids are interned to
+ *	ints and the edges of vertex v are the slots offsets[v] to offsets[v+1]
+ *	of flat int arrays, once sorted by source for outgoing edges and once by
+ *	destination for incoming edges. Queries make no round trips to the
+ *	server and traversals only allocate for the paths they return.
+ *
+ *	The snapshot reflects the collection at the time it was built and
+ *	cannot be modified. Edge documents returned by queries are shared by
+ *	every caller and must not be changed. The queries and projections of
+ *	filters are compiled by EdgeFilterCompiler and evaluated in memory, so
+ *	they may only use the operators it supports. Edge ids are held apart
+ *	from the edges, so queries may not match on _id.
+ */
+public class CsrSnapshotGraphEngine implements GraphEngine
+{
+	private static final int SCAN_BATCH_SIZE = 1000;
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final String PAGE_OFFSET_KEY = "o";
+
+	private final DBObject[] _vertices;
+	private final Map<DBObject, Integer> _vertexIndex;
+	private final DBObject[] _edges;
+	private final Object[] _edgeIds;
+
+	// slots of outgoing edges, grouped by source
+	private final int[] _outOffsets;
+	private final int[] _outTargets;
+	private final int[] _outEdges;
+
+	// slots of incoming edges, grouped by destination
+	private final int[] _inOffsets;
+	private final int[] _inTargets;
+	private final int[] _inEdges;
+
+	private GraphMetrics _metrics = null;
+
+	/**
+	 * Build a snapshot of the edge collection used by EdgeIndexGraphEngine.
+	 * @param db the database holding the edges
+	 */
+	public CsrSnapshotGraphEngine(DB db){
+		this(db.getCollection(DEFAULT_EDGE_COLLECTION));
+	}
+
+	/**
+	 * Build a snapshot from a single scan of an edge collection.
+	 * @param edgeColl a collection of edges with _s and _d vertex ids
+	 */
+	public CsrSnapshotGraphEngine(DBCollection edgeColl){
+
+		Map<DBObject, Integer> vertexIndex = new HashMap<DBObject, Integer>();
+		List<DBObject> vertices = new ArrayList<DBObject>();
+		List<DBObject> edges = new ArrayList<DBObject>();
+		List<Object> edgeIds = new ArrayList<Object>();
+		int[] sources = new int[INITIAL_CAPACITY];
+		int[] destinations = new int[INITIAL_CAPACITY];
+
+		DBCursor scanCursor = null;
+		try{
+			// the compact keys of an edge index engine are not part of an edge
+			scanCursor = edgeColl.find(new BasicDBObject(), new BasicDBObject(
+					COMPACT_SOURCE_KEY, false).append(COMPACT_DEST_KEY, false));
+			scanCursor.batchSize(SCAN_BATCH_SIZE);
+
+			// intern each endpoint as it is seen
+			while(scanCursor.hasNext()){
+				DBObject edge = scanCursor.next();
+				int edgeNumber = edges.size();
+				if(edgeNumber == sources.length){
+					sources = Arrays.copyOf(sources, edgeNumber * 2);
+					destinations = Arrays.copyOf(destinations, edgeNumber * 2);
+				}
+
+				sources[edgeNumber] = intern((DBObject) edge.get(SOURCE_KEY), vertexIndex, vertices);
+				destinations[edgeNumber] = intern((DBObject) edge.get(DEST_KEY), vertexIndex, vertices);
+				edgeIds.add(edge.removeField(ID_KEY));
+				edges.add(edge);
+			}
+		}
+		finally{
+			if(scanCursor != null)
+				scanCursor.close();
+		}
+
+		_vertexIndex = vertexIndex;
+		_vertices = vertices.toArray(new DBObject[vertices.size()]);
+		_edges = edges.toArray(new DBObject[edges.size()]);
+		_edgeIds = edgeIds.toArray();
+
+		int vertexCount = _vertices.length;
+		int edgeCount = _edges.length;
+		_outOffsets = new int[vertexCount + 1];
+		_outTargets = new int[edgeCount];
+		_outEdges = new int[edgeCount];
+		_inOffsets = new int[vertexCount + 1];
+		_inTargets = new int[edgeCount];
+		_inEdges = new int[edgeCount];
+
+		fillRows(sources, destinations, edgeCount, _outOffsets, _outTargets, _outEdges);
+		fillRows(destinations, sources, edgeCount, _inOffsets, _inTargets, _inEdges);
+	}
+
+	public int getVertexCount() {
+		return _vertices.length;
+	}
+
+	public int getEdgeCount() {
+		return _edges.length;
+	}
+
+	/**
+	 * Sets the receiver for measurements of queries. Reads never go to the
+	 * database, so only edges scanned and vertices expanded are reported.
+	 */
+	@Override
+	public void setMetrics(GraphMetrics metrics) {
+		this._metrics = metrics;
+	}
+
+	@Override
+	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
+		throw new UnsupportedOperationException("CSR snapshot is read only");
+	}
+
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+		throw new UnsupportedOperationException("CSR snapshot is read only");
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId) {
+		return getEdges(vertexId, null);
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId, EdgeFilter filter) {
+
+		List<DBObject> resultList = new ArrayList<DBObject>();
+		for(Relationship neighbor : openSlots(vertexId, filter, 0))
+			resultList.add(neighbor.getEdge());
+
+		return resultList;
+	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+
+		final SlotCursor slots = openSlots(vertexId, filter, limit);
+		return new GraphCursor<DBObject>(){
+
+			@Override
+			public boolean hasNext() {
+				return slots.hasNext();
+			}
+
+			@Override
+			public DBObject next() {
+				return slots.next().getEdge();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("GraphCursor is read only");
+			}
+
+			@Override
+			public Iterator<DBObject> iterator() {
+				return this;
+			}
+
+			@Override
+			public void close() {
+				slots.close();
+			}
+		};
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId) {
+		return getNeighbors(vertexId, null);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId, EdgeFilter filter) {
+
+		List<Relationship> resultList = new ArrayList<Relationship>();
+		for(Relationship neighbor : openSlots(vertexId, filter, 0))
+			resultList.add(neighbor);
+
+		return resultList;
+	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter) {
+
+		// Every vertex gets an entry, even if it has no matching edges
+		Map<DBObject, List<Relationship>> expansion =
+				new LinkedHashMap<DBObject, List<Relationship>>();
+		CompiledEdgeFilter compiled = compile(filter);
+		for(DBObject vertexId : vertexIds){
+			if(expansion.containsKey(vertexId) == false){
+				List<Relationship> hops = new ArrayList<Relationship>();
+				for(Relationship neighbor : openSlots(vertexId, filter, compiled, 0))
+					hops.add(neighbor);
+				expansion.put(vertexId, hops);
+			}
+		}
+
+		return expansion;
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+		return openSlots(vertexId, filter, limit);
+	}
+
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter,
+			int pageSize, String continuationToken) {
+
+		if(pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		// The snapshot never changes, so a position is just an offset
+		int offset = 0;
+		if(continuationToken != null){
+			BSONObject position = ContinuationTokens.decode(continuationToken);
+			offset = ((Number) position.get(PAGE_OFFSET_KEY)).intValue();
+		}
+
+		SlotCursor slots = openSlots(vertexId, filter, 0);
+		for(int skipped = 0; skipped < offset && slots.hasNext(); skipped++)
+			slots.skip();
+
+		List<Relationship> page = new ArrayList<Relationship>(pageSize);
+		while(page.size() < pageSize && slots.hasNext())
+			page.add(slots.next());
+
+		String nextToken = null;
+		if(slots.hasNext()){
+			nextToken = ContinuationTokens.encode(
+					new BasicBSONObject(PAGE_OFFSET_KEY, offset + page.size()));
+		}
+		slots.close();
+
+		return new NeighborPage(page, nextToken);
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, PathListener listener) {
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(listener));
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener) {
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(options, listener));
+	}
+
+	private Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, TraversalControl control) {
+
+		Direction direction = getAllowedDirection(filter, Direction.OUT);
+		Integer start = fromVertexId == null ? null : _vertexIndex.get(fromVertexId);
+		Integer target = targetVertexId == null ? null : _vertexIndex.get(targetVertexId);
+
+		if(start != null && target != null && degreeLimit > 0){
+			Search search = new Search(target, direction, degreeLimit,
+					includeIds(filter), compile(filter), control);
+			search._onPath[start] = true;
+			search.processLevel(start, 0);
+		}
+
+		return control.complete();
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit) {
+		return new FrontierPathFinder(this, _metrics).findShortestPath(
+				fromVertexId, targetVertexId, filter, degreeLimit);
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit) {
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		return new FrontierPathFinder(this, _metrics).findShortestPaths(
+				fromVertexId, targetVertexId, k, filter, degreeLimit);
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic) {
+		return new WeightedPathFinder(this, _metrics).findCheapestPath(
+				fromVertexId, targetVertexId, filter, cost, heuristic);
+	}
+
+	/**
+	 * The state of one depth first search. Hops are kept on int stacks
+	 * indexed by depth and only turned into Relationships for results, or
+	 * for branches when a listener watches them.
+	 */
+	private class Search {
+
+		private final int _target;
+		private final Direction _direction;
+		private final int _degrees;
+		private final boolean _includeIds;
+		private final CompiledEdgeFilter _compiled;
+		private final TraversalControl _control;
+
+		private final boolean[] _onPath;
+		private final int[] _hopTargets;
+		private final int[] _hopEdges;
+		private final boolean[] _hopOutgoing;
+
+		Search(int target, Direction direction, int degrees, boolean includeIds,
+				CompiledEdgeFilter compiled, TraversalControl control) {
+			this._target = target;
+			this._direction = direction;
+			this._degrees = degrees;
+			this._includeIds = includeIds;
+			this._compiled = compiled;
+			this._control = control;
+
+			this._onPath = new boolean[_vertices.length];
+			this._hopTargets = new int[degrees];
+			this._hopEdges = new int[degrees];
+			this._hopOutgoing = new boolean[degrees];
+		}
+
+		void processLevel(int vertex, int depth) {
+
+			if(_metrics != null){
+				_metrics.verticesExpanded(depth, 1);
+				_metrics.edgesScanned(
+						(_direction != Direction.IN ? _outOffsets[vertex + 1] - _outOffsets[vertex] : 0)
+						+ (_direction != Direction.OUT ? _inOffsets[vertex + 1] - _inOffsets[vertex] : 0));
+			}
+
+			if(_direction != Direction.IN){
+				for(int slot = _outOffsets[vertex]; slot < _outOffsets[vertex + 1]; slot++){
+					if(visit(_outTargets[slot], _outEdges[slot], true, depth) == false)
+						return;
+				}
+			}
+
+			if(_direction != Direction.OUT){
+				for(int slot = _inOffsets[vertex]; slot < _inOffsets[vertex + 1]; slot++){
+					// self loops were already followed as outgoing edges
+					if(_direction == Direction.BOTH && _inTargets[slot] == vertex)
+						continue;
+					if(visit(_inTargets[slot], _inEdges[slot], false, depth) == false)
+						return;
+				}
+			}
+		}
+
+		/**
+		 * Follow one edge slot.
+		 * @return false once the search has stopped
+		 */
+		private boolean visit(int related, int edge, boolean outgoing, int depth) {
+
+			if(_control.scanEdge() == false)
+				return false;
+			if(_onPath[related])
+				return true;
+			if(_compiled != null && _compiled.matches(_edges[edge]) == false)
+				return true;
+
+			// push the current hop to the path
+			_hopTargets[depth] = related;
+			_hopEdges[depth] = edge;
+			_hopOutgoing[depth] = outgoing;
+
+			if(related == _target){
+				// This is a result add it !
+				return _control.foundPath(toPath(depth));
+			}
+			else if(depth + 1 < _degrees && (_control.watchesBranches() == false
+					|| _control.extendBranch(toPath(depth)))){
+				// This is a path to investigate
+				_onPath[related] = true;
+				processLevel(related, depth + 1);
+				_onPath[related] = false;
+			}
+
+			return _control.isStopped() == false;
+		}
+
+		private List<Relationship> toPath(int depth) {
+			List<Relationship> path = new ArrayList<Relationship>(depth + 1);
+			for(int hop = 0; hop <= depth; hop++){
+				path.add(relationship(_hopTargets[hop], _hopEdges[hop],
+						_hopOutgoing[hop], _includeIds, _compiled));
+			}
+			return path;
+		}
+	}
+
+	/**
+	 * Iterates the edge slots of one vertex, outgoing slots first and then
+	 * incoming slots, decoding each one into a Relationship. Slots whose
+	 * edges do not match the compiled filter are passed over.
+	 */
+	private class SlotCursor implements GraphCursor<Relationship> {
+
+		private final int _vertex;
+		private final boolean _skipSelfLoops;
+		private final boolean _includeIds;
+		private final CompiledEdgeFilter _compiled;
+		private int _outSlot;
+		private final int _outEnd;
+		private int _inSlot;
+		private final int _inEnd;
+		private int _remaining;
+		private int _scanned = 0;
+
+		SlotCursor(int vertex, Direction direction, boolean includeIds,
+				CompiledEdgeFilter compiled, int limit) {
+			this._vertex = vertex;
+			this._skipSelfLoops = direction == Direction.BOTH;
+			this._includeIds = includeIds;
+			this._compiled = compiled;
+			this._remaining = limit > 0 ? limit : Integer.MAX_VALUE;
+
+			boolean out = vertex >= 0 && direction != Direction.IN;
+			boolean in = vertex >= 0 && direction != Direction.OUT;
+			this._outSlot = out ? _outOffsets[vertex] : 0;
+			this._outEnd = out ? _outOffsets[vertex + 1] : 0;
+			this._inSlot = in ? _inOffsets[vertex] : 0;
+			this._inEnd = in ? _inOffsets[vertex + 1] : 0;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(_remaining <= 0){
+				close();
+				return false;
+			}
+
+			while(_outSlot < _outEnd){
+				if(_compiled == null || _compiled.matches(_edges[_outEdges[_outSlot]]))
+					return true;
+				_outSlot++;
+				_scanned++;
+			}
+
+			while(_inSlot < _inEnd){
+				// self loops were already returned with the outgoing edges
+				if(_skipSelfLoops && _inTargets[_inSlot] == _vertex){
+					_inSlot++;
+				}
+				else if(_compiled != null && _compiled.matches(_edges[_inEdges[_inSlot]]) == false){
+					_inSlot++;
+					_scanned++;
+				}
+				else{
+					return true;
+				}
+			}
+
+			close();
+			return false;
+		}
+
+		@Override
+		public Relationship next() {
+			if(hasNext() == false)
+				throw new NoSuchElementException();
+
+			_remaining--;
+			_scanned++;
+			if(_outSlot < _outEnd){
+				int slot = _outSlot++;
+				return relationship(_outTargets[slot], _outEdges[slot], true,
+						_includeIds, _compiled);
+			}
+
+			// a self loop is reported as outgoing, as it is by the collection
+			int slot = _inSlot++;
+			return relationship(_inTargets[slot], _inEdges[slot],
+					_inTargets[slot] == _vertex, _includeIds, _compiled);
+		}
+
+		void skip() {
+			if(hasNext()){
+				_remaining--;
+				_scanned++;
+				if(_outSlot < _outEnd)
+					_outSlot++;
+				else
+					_inSlot++;
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("GraphCursor is read only");
+		}
+
+		@Override
+		public Iterator<Relationship> iterator() {
+			return this;
+		}
+
+		@Override
+		public void close() {
+			_remaining = 0;
+			if(_metrics != null && _scanned > 0){
+				_metrics.edgesScanned(_scanned);
+				_scanned = 0;
+			}
+		}
+	}
+
+	private SlotCursor openSlots(DBObject vertexId, EdgeFilter filter, int limit) {
+		return openSlots(vertexId, filter, compile(filter), limit);
+	}
+
+	private SlotCursor openSlots(DBObject vertexId, EdgeFilter filter,
+			CompiledEdgeFilter compiled, int limit) {
+
+		// Find all edges by default
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+		Integer vertex = vertexId == null ? null : _vertexIndex.get(vertexId);
+		return new SlotCursor(vertex == null ? -1 : vertex.intValue(),
+				direction, includeIds(filter), compiled, limit);
+	}
+
+	/**
+	 * Compile the query and projection of a filter, or return null if it
+	 * has neither and every edge is returned whole.
+	 */
+	private static CompiledEdgeFilter compile(EdgeFilter filter) {
+		if(filter == null || (filter.getQuery() == null && filter.hasProjection() == false))
+			return null;
+		if(filter.getQuery() != null && matchesId(filter.getQuery()))
+			throw new IllegalArgumentException("snapshot queries cannot match on " + ID_KEY);
+		return EdgeFilterCompiler.compile(filter);
+	}
+
+	/**
+	 * Returns true if the query matches on the edge id, at the top or in
+	 * any of its $and, $or and $nor branches.
+	 */
+	private static boolean matchesId(DBObject query) {
+
+		for(String field : query.keySet()){
+			if(field.equals(ID_KEY) || field.startsWith(ID_KEY + "."))
+				return true;
+
+			Object branches = query.get(field);
+			if(field.startsWith("$") && branches instanceof List){
+				for(Object branch : (List<?>) branches){
+					if(branch instanceof DBObject && matchesId((DBObject) branch))
+						return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private Relationship relationship(int related, int edge, boolean outgoing,
+			boolean includeIds, CompiledEdgeFilter compiled) {
+		return new Relationship(_vertices[related], edgeDocument(edge, includeIds, compiled),
+				outgoing ? Direction.OUT : Direction.IN);
+	}
+
+	private DBObject edgeDocument(int edge, boolean includeIds, CompiledEdgeFilter compiled) {
+
+		DBObject document = compiled == null ? _edges[edge] : compiled.project(_edges[edge]);
+		if(includeIds == false || _edgeIds[edge] == null)
+			return document;
+
+		BasicDBObject withId = new BasicDBObject(ID_KEY, _edgeIds[edge]);
+		withId.putAll(document);
+		return withId;
+	}
+
+	private boolean includeIds(EdgeFilter filter) {
+		return filter != null && filter.getIncludeEdgeIds();
+	}
+
+	private Direction getAllowedDirection(
+			EdgeFilter filter, Direction defaultDirection) {
+		return (filter == null || filter.getAllowedDirection() == null) ?
+				defaultDirection : filter.getAllowedDirection();
+	}
+
+	private static int intern(DBObject vertexId,
+			Map<DBObject, Integer> vertexIndex, List<DBObject> vertices) {
+
+		Integer vertex = vertexIndex.get(vertexId);
+		if(vertex == null){
+			vertex = vertices.size();
+			vertexIndex.put(vertexId, vertex);
+			vertices.add(vertexId);
+		}
+
+		return vertex.intValue();
+	}
+
+	private static void fillRows(int[] rows, int[] targets, int edgeCount,
+			int[] offsets, int[] rowTargets, int[] rowEdges) {
+
+		// count the edges of each row, then turn the counts into offsets
+		for(int edge = 0; edge < edgeCount; edge++)
+			offsets[rows[edge] + 1]++;
+		for(int row = 1; row < offsets.length; row++)
+			offsets[row] += offsets[row - 1];
+
+		// place edges in scan order within each row
+		int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+		for(int edge = 0; edge < edgeCount; edge++){
+			int slot = next[rows[edge]]++;
+			rowTargets[slot] = targets[edge];
+			rowEdges[slot] = edge;
+		}
+	}
+}
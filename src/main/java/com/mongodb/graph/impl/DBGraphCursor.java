@@ -0,0 +1,86 @@
+package com.mongodb.graph.impl;
+
+import java.util.Iterator;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphMetrics;
+
+/**
+ *	GraphCursor which wraps a DBCursor and converts each document as it is
+ *	read. The DBCursor is closed as soon as it is exhausted, and the batches
+ *	it fetched and the edges read from it are reported to the metrics then.
+ */
+abstract class DBGraphCursor<T> implements GraphCursor<T> {
+
+	private final DBCursor _cursor;
+	private final GraphMetrics _metrics;
+	private int _edgesRead = 0;
+	private boolean _closed = false;
+
+	/**
+	 * @param cursor the query to read, not yet iterated
+	 * @param metrics the receiver for the reads made, may be null
+	 */
+	DBGraphCursor(DBCursor cursor, GraphMetrics metrics) {
+		this._cursor = cursor;
+		this._metrics = metrics;
+	}
+
+	/**
+	 * Convert a document read from the cursor into a result.
+	 */
+	protected abstract T decode(DBObject document);
+
+	@Override
+	public boolean hasNext() {
+		if(_closed)
+			return false;
+
+		boolean hasNext = _cursor.hasNext();
+		if(hasNext == false)
+			close();
+
+		return hasNext;
+	}
+
+	@Override
+	public T next() {
+		DBObject document = _cursor.next();
+		_edgesRead++;
+		return decode(document);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("GraphCursor is read only");
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(_closed == false){
+			_closed = true;
+			close(_cursor, _metrics, _edgesRead);
+		}
+	}
+
+	/**
+	 * Close a cursor of edges, reporting each batch it fetched from the
+	 * server and the edges which were read from it.
+	 */
+	static void close(DBCursor cursor, GraphMetrics metrics, int edgesRead) {
+		// only a cursor which was iterated has sent its query
+		if(metrics != null && cursor.getServerAddress() != null){
+			for(Integer batchSize : cursor.getSizes())
+				metrics.batchFetched(batchSize);
+			metrics.edgesScanned(edgesRead);
+		}
+		cursor.close();
+	}
+}
@@ -0,0 +1,541 @@
+package com.mongodb.graph.impl;
+
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.DEST_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.ID_KEY;
+import static com.mongodb.graph.impl.EdgeIndexGraphEngine.SOURCE_KEY;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.EdgeFilter;
+
+/**
+ *	Compiles the query and projection of an EdgeFilter into a
+ *	CompiledEdgeFilter, so engines which hold edges in memory can filter
+ *	them without sending the query to the server. Each part of the query is
+ *	turned into a matcher once, leaving only field lookups and comparisons
+ *	for each edge.
+ *
+ *	Queries may use $and, $or, $nor, $eq, $ne, $gt, $gte, $lt, $lte, $in,
+ *	$nin and $exists, with dotted paths into embedded documents and arrays.
+ *	Values compare as the server compares them within a type, numbers of
+ *	any type with each other, and strings, dates, booleans and ObjectIds
+ *	with their own kind. A regular expression given as a value matches
+ *	strings. Projections may include or exclude fields, but not both, and
+ *	always keep the _s and _d vertex ids. Anything else is rejected when
+ *	the filter is compiled.
+ */
+public class EdgeFilterCompiler {
+
+	private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+	private static final ValueTest ANY_VALUE = new ValueTest(){
+		public boolean test(Object value) {
+			return true;
+		}
+	};
+
+	private EdgeFilterCompiler() {
+	}
+
+	/**
+	 * Compile the query and projection of a filter.
+	 * @param filter the filter, which may be null
+	 * @return the compiled filter
+	 * @throws IllegalArgumentException if the filter uses an operator or
+	 * projection which cannot be evaluated in memory
+	 */
+	public static CompiledEdgeFilter compile(EdgeFilter filter) {
+
+		Matcher matcher = filter == null || filter.getQuery() == null ?
+				null : compileQuery(filter.getQuery());
+		Projector projector = filter == null || filter.hasProjection() == false ?
+				null : compileProjection(filter.getProjection());
+		return new CompiledEdgeFilter(filter, matcher, projector);
+	}
+
+	/**
+	 * Tests a whole document.
+	 */
+	interface Matcher {
+		boolean matches(BSONObject document);
+	}
+
+	/**
+	 * Copies the projected fields of a document.
+	 */
+	interface Projector {
+		DBObject project(DBObject document);
+	}
+
+	/**
+	 * Tests one of the values found at a path.
+	 */
+	private interface ValueTest {
+		boolean test(Object value);
+	}
+
+	static Matcher compileQuery(DBObject query) {
+
+		List<Matcher> clauses = new ArrayList<Matcher>();
+		for(String field : query.keySet()){
+			Object operand = query.get(field);
+			if(field.equals("$and"))
+				clauses.add(all(compileClauses(field, operand)));
+			else if(field.equals("$or"))
+				clauses.add(any(compileClauses(field, operand)));
+			else if(field.equals("$nor"))
+				clauses.add(not(any(compileClauses(field, operand))));
+			else if(field.startsWith("$"))
+				throw new IllegalArgumentException("Unsupported query operator " + field);
+			else
+				clauses.add(compileField(field, operand));
+		}
+
+		return clauses.size() == 1 ? clauses.get(0) : all(clauses);
+	}
+
+	private static List<Matcher> compileClauses(String operator, Object operand) {
+
+		if(operand instanceof List == false || ((List<?>) operand).isEmpty())
+			throw new IllegalArgumentException(operator + " needs a list of queries");
+
+		List<Matcher> clauses = new ArrayList<Matcher>();
+		for(Object clause : (List<?>) operand){
+			if(clause instanceof DBObject == false)
+				throw new IllegalArgumentException(operator + " needs a list of queries");
+			clauses.add(compileQuery((DBObject) clause));
+		}
+		return clauses;
+	}
+
+	private static Matcher compileField(String field, Object operand) {
+
+		String[] path = field.split("\\.");
+		if(isOperatorDocument(operand) == false)
+			return equalTo(path, operand);
+
+		DBObject operators = (DBObject) operand;
+		List<Matcher> conditions = new ArrayList<Matcher>();
+		for(String operator : operators.keySet()){
+			Object value = operators.get(operator);
+			if(operator.equals("$eq"))
+				conditions.add(equalTo(path, value));
+			else if(operator.equals("$ne"))
+				conditions.add(not(equalTo(path, value)));
+			else if(operator.equals("$gt"))
+				conditions.add(compared(path, value, operator, 1, 1));
+			else if(operator.equals("$gte"))
+				conditions.add(compared(path, value, operator, 0, 1));
+			else if(operator.equals("$lt"))
+				conditions.add(compared(path, value, operator, -1, -1));
+			else if(operator.equals("$lte"))
+				conditions.add(compared(path, value, operator, -1, 0));
+			else if(operator.equals("$in"))
+				conditions.add(in(path, value));
+			else if(operator.equals("$nin"))
+				conditions.add(not(in(path, value)));
+			else if(operator.equals("$exists"))
+				conditions.add(isTrue(value) ? exists(path) : not(exists(path)));
+			else
+				throw new IllegalArgumentException("Unsupported query operator " + operator);
+		}
+
+		return conditions.size() == 1 ? conditions.get(0) : all(conditions);
+	}
+
+	private static boolean isOperatorDocument(Object operand) {
+
+		if(operand instanceof DBObject == false || operand instanceof List)
+			return false;
+
+		boolean operators = false;
+		boolean fields = false;
+		for(String key : ((DBObject) operand).keySet()){
+			if(key.startsWith("$"))
+				operators = true;
+			else
+				fields = true;
+		}
+		if(operators && fields)
+			throw new IllegalArgumentException("Cannot mix operators and fields in " + operand);
+		return operators;
+	}
+
+	private static Matcher equalTo(final String[] path, final Object operand) {
+
+		final ValueTest test = equalsTest(operand);
+		final boolean matchesMissing = operand == null;
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				if(matchesMissing && anyMatch(document, path, 0, ANY_VALUE) == false)
+					return true;
+				return anyMatch(document, path, 0, test);
+			}
+		};
+	}
+
+	private static Matcher in(final String[] path, Object operand) {
+
+		if(operand instanceof Collection == false)
+			throw new IllegalArgumentException("$in needs a list of values");
+
+		final List<ValueTest> tests = new ArrayList<ValueTest>();
+		boolean hasNull = false;
+		for(Object value : (Collection<?>) operand){
+			tests.add(equalsTest(value));
+			hasNull |= value == null;
+		}
+
+		final boolean matchesMissing = hasNull;
+		final ValueTest test = new ValueTest(){
+			public boolean test(Object value) {
+				for(ValueTest candidate : tests){
+					if(candidate.test(value))
+						return true;
+				}
+				return false;
+			}
+		};
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				if(matchesMissing && anyMatch(document, path, 0, ANY_VALUE) == false)
+					return true;
+				return anyMatch(document, path, 0, test);
+			}
+		};
+	}
+
+	/**
+	 * A range condition, met by values whose comparison with the operand
+	 * falls between low and high.
+	 */
+	private static Matcher compared(final String[] path, final Object operand,
+			String operator, final int low, final int high) {
+
+		if(operand == null || operand instanceof DBObject)
+			throw new IllegalArgumentException(operator + " needs a single value");
+
+		final ValueTest test = new ValueTest(){
+			public boolean test(Object value) {
+				int comparison = compare(value, operand);
+				return comparison != INCOMPARABLE && comparison >= low && comparison <= high;
+			}
+		};
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				return anyMatch(document, path, 0, test);
+			}
+		};
+	}
+
+	private static Matcher exists(final String[] path) {
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				return anyMatch(document, path, 0, ANY_VALUE);
+			}
+		};
+	}
+
+	private static Matcher all(final List<Matcher> clauses) {
+		final Matcher[] matchers = clauses.toArray(new Matcher[clauses.size()]);
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				for(Matcher matcher : matchers){
+					if(matcher.matches(document) == false)
+						return false;
+				}
+				return true;
+			}
+		};
+	}
+
+	private static Matcher any(final List<Matcher> clauses) {
+		final Matcher[] matchers = clauses.toArray(new Matcher[clauses.size()]);
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				for(Matcher matcher : matchers){
+					if(matcher.matches(document))
+						return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	private static Matcher not(final Matcher matcher) {
+		return new Matcher(){
+			public boolean matches(BSONObject document) {
+				return matcher.matches(document) == false;
+			}
+		};
+	}
+
+	private static ValueTest equalsTest(final Object operand) {
+
+		if(operand instanceof Pattern){
+			final Pattern pattern = (Pattern) operand;
+			return new ValueTest(){
+				public boolean test(Object value) {
+					return value instanceof String && pattern.matcher((String) value).find();
+				}
+			};
+		}
+
+		return new ValueTest(){
+			public boolean test(Object value) {
+				if(value == null || operand == null)
+					return value == operand;
+				int comparison = compare(value, operand);
+				return comparison != INCOMPARABLE ? comparison == 0 : value.equals(operand);
+			}
+		};
+	}
+
+	/**
+	 * Returns true if any value at the path passes the test. As with the
+	 * server, a path runs through every document of an array it meets, and
+	 * an array at the end of the path is tested both whole and element by
+	 * element. A missing field has no values at all.
+	 */
+	private static boolean anyMatch(Object current, String[] path, int index, ValueTest test) {
+
+		if(index == path.length){
+			if(test.test(current))
+				return true;
+			if(current instanceof List){
+				for(Object element : (List<?>) current){
+					if(test.test(element))
+						return true;
+				}
+			}
+			return false;
+		}
+
+		if(current instanceof List){
+			List<?> elements = (List<?>) current;
+			int position = arrayIndex(path[index]);
+			if(position >= 0 && position < elements.size() &&
+					anyMatch(elements.get(position), path, index + 1, test))
+				return true;
+			for(Object element : elements){
+				if(element instanceof BSONObject && element instanceof List == false &&
+						anyMatch(element, path, index, test))
+					return true;
+			}
+			return false;
+		}
+
+		if(current instanceof BSONObject){
+			BSONObject document = (BSONObject) current;
+			if(document.containsField(path[index]))
+				return anyMatch(document.get(path[index]), path, index + 1, test);
+		}
+		return false;
+	}
+
+	private static int arrayIndex(String part) {
+		for(int i = 0; i < part.length(); i++){
+			if(Character.isDigit(part.charAt(i)) == false)
+				return -1;
+		}
+		return part.isEmpty() || part.length() > 9 ? -1 : Integer.parseInt(part);
+	}
+
+	/**
+	 * Compares two values of the same kind, or returns INCOMPARABLE.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compare(Object value, Object operand) {
+
+		if(value instanceof Number && operand instanceof Number){
+			if(isIntegral(value) && isIntegral(operand)){
+				long a = ((Number) value).longValue();
+				long b = ((Number) operand).longValue();
+				return a < b ? -1 : (a > b ? 1 : 0);
+			}
+			double a = ((Number) value).doubleValue();
+			double b = ((Number) operand).doubleValue();
+			return a < b ? -1 : (a > b ? 1 : (a == b ? 0 : INCOMPARABLE));
+		}
+
+		if((value instanceof String && operand instanceof String) ||
+				(value instanceof Date && operand instanceof Date) ||
+				(value instanceof Boolean && operand instanceof Boolean) ||
+				(value instanceof ObjectId && operand instanceof ObjectId)){
+			int comparison = ((Comparable) value).compareTo(operand);
+			return comparison < 0 ? -1 : (comparison > 0 ? 1 : 0);
+		}
+
+		return INCOMPARABLE;
+	}
+
+	private static boolean isIntegral(Object number) {
+		return number instanceof Integer || number instanceof Long ||
+				number instanceof Short || number instanceof Byte;
+	}
+
+	private static boolean isTrue(Object value) {
+		if(value instanceof Boolean)
+			return ((Boolean) value).booleanValue();
+		if(value instanceof Number)
+			return ((Number) value).doubleValue() != 0;
+		return value != null;
+	}
+
+	static Projector compileProjection(DBObject projection) {
+
+		// the id is the only field which may be excluded from an inclusion
+		Boolean inclusion = null;
+		boolean excludeId = false;
+		Map<String, Object> tree = new LinkedHashMap<String, Object>();
+		for(String field : projection.keySet()){
+			Object value = projection.get(field);
+			if(value instanceof Boolean == false && value instanceof Number == false)
+				throw new IllegalArgumentException("Unsupported projection of " + field);
+
+			boolean include = isTrue(value);
+			if(field.equals(ID_KEY)){
+				excludeId = include == false;
+				continue;
+			}
+			if(field.equals(SOURCE_KEY) || field.equals(DEST_KEY))
+				continue;
+			if(inclusion != null && inclusion.booleanValue() != include)
+				throw new IllegalArgumentException("Cannot mix included and excluded fields");
+			inclusion = include;
+			addPath(tree, field.split("\\."));
+		}
+
+		if(inclusion == null || inclusion.booleanValue() == false){
+			if(excludeId)
+				tree.put(ID_KEY, Boolean.TRUE);
+			final Map<String, Object> excluded = tree;
+			return new Projector(){
+				public DBObject project(DBObject document) {
+					return exclude(document, excluded);
+				}
+			};
+		}
+
+		final Map<String, Object> included = tree;
+		final boolean keepId = excludeId == false;
+		return new Projector(){
+			public DBObject project(DBObject document) {
+				BasicDBObject projected = new BasicDBObject();
+				if(keepId && document.containsField(ID_KEY))
+					projected.put(ID_KEY, document.get(ID_KEY));
+				projected.put(SOURCE_KEY, document.get(SOURCE_KEY));
+				projected.put(DEST_KEY, document.get(DEST_KEY));
+				include(document, included, projected);
+				return projected;
+			}
+		};
+	}
+
+	/**
+	 * Add a path to a tree of nested maps, whose leaves are Boolean.TRUE.
+	 */
+	@SuppressWarnings("unchecked")
+	private static void addPath(Map<String, Object> tree, String[] path) {
+
+		Map<String, Object> node = tree;
+		for(int i = 0; i < path.length; i++){
+			Object child = node.get(path[i]);
+			if(child == Boolean.TRUE)
+				return;
+			if(i == path.length - 1){
+				node.put(path[i], Boolean.TRUE);
+			}
+			else{
+				if(child == null){
+					child = new LinkedHashMap<String, Object>();
+					node.put(path[i], child);
+				}
+				node = (Map<String, Object>) child;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void include(BSONObject source, Map<String, Object> tree, BSONObject target) {
+
+		for(Map.Entry<String, Object> entry : tree.entrySet()){
+			if(source.containsField(entry.getKey()) == false)
+				continue;
+
+			Object value = source.get(entry.getKey());
+			if(entry.getValue() == Boolean.TRUE){
+				target.put(entry.getKey(), value);
+			}
+			else{
+				Object nested = includeNested(value, (Map<String, Object>) entry.getValue());
+				if(nested != null)
+					target.put(entry.getKey(), nested);
+			}
+		}
+	}
+
+	private static Object includeNested(Object value, Map<String, Object> tree) {
+
+		if(value instanceof List){
+			// only the documents of an array can hold the projected fields
+			BasicDBList elements = new BasicDBList();
+			for(Object element : (List<?>) value){
+				if(element instanceof BSONObject)
+					elements.add(includeNested(element, tree));
+			}
+			return elements;
+		}
+
+		if(value instanceof BSONObject){
+			BasicDBObject projected = new BasicDBObject();
+			include((BSONObject) value, tree, projected);
+			return projected;
+		}
+
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static DBObject exclude(BSONObject source, Map<String, Object> tree) {
+
+		BasicDBObject projected = new BasicDBObject();
+		for(String field : source.keySet()){
+			Object excluded = tree.get(field);
+			if(excluded == Boolean.TRUE)
+				continue;
+
+			Object value = source.get(field);
+			if(excluded != null)
+				value = excludeNested(value, (Map<String, Object>) excluded);
+			projected.put(field, value);
+		}
+		return projected;
+	}
+
+	private static Object excludeNested(Object value, Map<String, Object> tree) {
+
+		if(value instanceof List){
+			BasicDBList elements = new BasicDBList();
+			for(Object element : (List<?>) value)
+				elements.add(excludeNested(element, tree));
+			return elements;
+		}
+
+		if(value instanceof BSONObject)
+			return exclude((BSONObject) value, tree);
+		return value;
+	}
+}
@@ -1,51 +1,486 @@
 package com.mongodb.graph.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
 
 import com.mongodb.*;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.CostHeuristic;
 import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeCost;
 import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
 import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
 import com.mongodb.graph.PathListener;
 import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
 
 public class EdgeIndexGraphEngine implements GraphEngine 
 {
 	private static final int DEFAULT_BATCH_SIZE = 100;
-	private static final int DEFAULT_RESULT_LIMIT = 1000;
-	private static final String DEFAULT_EDGE_COLLECTION = "graph_edges";
-	private static final String SOURCE_KEY = "_s";
-	private static final String DEST_KEY = "_d";
-	private static final String ID_KEY = "_id";	
+	static final int DEFAULT_RESULT_LIMIT = 1000;
+	private static final int DEFAULT_FRONTIER_CHUNK_SIZE = 500;
+	private static final int DEFAULT_FRONTIER_BATCH_SIZE = 1000;
+	static final int DEFAULT_FETCH_CHUNK_SIZE = 500;
+	static final String DEFAULT_EDGE_COLLECTION = "graph_edges";
+	static final String SOURCE_KEY = "_s";
+	static final String DEST_KEY = "_d";
+	static final String COMPACT_SOURCE_KEY = "_sk";
+	static final String COMPACT_DEST_KEY = "_dk";
+	static final String ID_KEY = "_id";	
+	private static final String PAGE_PHASE_KEY = "p";
+	private static final String PAGE_LAST_KEY = "k";
+	private static final String PAGE_TIES_KEY = "n";
+	static final int EXCEEDED_TIME_LIMIT = 50;
+	private static final int DEFAULT_MAX_CONCURRENT_QUERIES = 8;
 		
 	private DB _db = null;
 	private DBCollection _edgeColl = null;
+	private TraversalMode _traversalMode = TraversalMode.DEPTH_FIRST;
+	private GraphMetrics _metrics = null;
+	private volatile VertexBloomFilter _vertexFilter = null;
+	private volatile IndexAdvisor _indexAdvisor = null;
+	private boolean _compactKeys = false;
+	private boolean _twoPhaseTraversal = false;
+	private boolean _splitDirectionScans = false;
+	private volatile int _maxConcurrentQueries = DEFAULT_MAX_CONCURRENT_QUERIES;
+	private volatile Semaphore _querySlots = new Semaphore(DEFAULT_MAX_CONCURRENT_QUERIES);
 	
 	public EdgeIndexGraphEngine(DB db){
+		this(db, DEFAULT_EDGE_COLLECTION);
+	}
+
+	/**
+	 * Construct an engine over edges kept in a collection other than the
+	 * default graph_edges, so that several graphs can share a database.
+	 * @param db the database holding the edges
+	 * @param edgeCollectionName the collection holding the edges
+	 */
+	public EdgeIndexGraphEngine(DB db, String edgeCollectionName){
 		
 		_db = db;
-		_edgeColl = _db.getCollection(DEFAULT_EDGE_COLLECTION);	
+		_edgeColl = _db.getCollection(edgeCollectionName);	
+		
+		// the storage mode is kept by which indexes the collection has
+		_compactKeys = hasEdgeIndex(compactIndexKeys(COMPACT_SOURCE_KEY, COMPACT_DEST_KEY));
+		ensureEdgeIndexes();
+	}
+
+	DBCollection getEdgeCollection() {
+		return _edgeColl;
+	}
+
+	GraphMetrics getMetrics() {
+		return _metrics;
+	}
+
+	@Override
+	public void setMetrics(GraphMetrics metrics) {
+		this._metrics = metrics;
+	}
+
+	/**
+	 * Returns the strategy used by findPaths to traverse the graph. By
+	 * default this is TraversalMode.DEPTH_FIRST.
+	 * @return the current traversal mode
+	 */
+	public TraversalMode getTraversalMode() {
+		return _traversalMode;
+	}
+
+	/**
+	 * Sets the strategy used by findPaths to traverse the graph. All modes
+	 * discover the same paths and fire the same PathListener callbacks, 
+	 * however TraversalMode.BREADTH_FIRST expands each level of the search
+	 * with one batched query rather than one query per visited vertex, and
+	 * delivers paths in order of increasing length. TraversalMode.BIDIRECTIONAL
+	 * batches in the same way but searches from both ends at once, which
+	 * only needs half the degree limit on each side. TraversalMode.PARALLEL
+	 * runs the depth first search with sibling branches queried at the same 
+	 * time, up to the limit set by setMaxConcurrentQueries. Its listeners and
+	 * GraphMetrics may be called from any thread, though never from two at
+	 * once. When maxResults or maxEdgesScanned cut it short, which paths it
+	 * returns depends on which branches were read first.
+	 * @param traversalMode the traversal mode to use for subsequent queries
+	 */
+	public void setTraversalMode(TraversalMode traversalMode) {
+		this._traversalMode = traversalMode;
+	}
+
+	/**
+	 * Returns true if depth first searches read only the ids and ends of
+	 * the edges they follow. By default this is false.
+	 */
+	public boolean isTwoPhaseTraversal() {
+		return _twoPhaseTraversal;
+	}
+
+	/**
+	 * Sets whether the TraversalMode.DEPTH_FIRST search of findPaths runs in
+	 * two phases. The first phase follows edges reading only their id and 
+	 * ends, the second fetches the edges on the paths found, with the filter
+	 * projection, in batches by id. Edges on branches which never reach the
+	 * target are then never read in full, at the cost of a round trip for
+	 * each batch of results. Paths are reported once their edges are fetched,
+	 * so a listener's branches hold only the ids and ends of their edges.
+	 * @param twoPhaseTraversal true to fetch full edges only for results
+	 */
+	public void setTwoPhaseTraversal(boolean twoPhaseTraversal) {
+		this._twoPhaseTraversal = twoPhaseTraversal;
+	}
+
+	/**
+	 * Returns true if edges in both directions are read with a separate
+	 * query for each direction. By default this is false.
+	 */
+	public boolean isSplitDirectionScans() {
+		return _splitDirectionScans;
+	}
+
+	/**
+	 * Sets whether edges in both directions of a vertex are read with one 
+	 * $or query, or with a query for the outgoing edges followed by one for
+	 * the incoming edges. Each split query is hinted to the edge index that
+	 * leads with its end of the edge, so it is always a range scan of that
+	 * index however the server would have planned the $or, in particular 
+	 * once an EdgeFilter query is added. Self loops are only read with the 
+	 * outgoing edges. Splitting costs a second round trip for each vertex.
+	 * Batched lookups of many vertices are always split.
+	 * @param splitDirectionScans true to read each direction separately
+	 */
+	public void setSplitDirectionScans(boolean splitDirectionScans) {
+		this._splitDirectionScans = splitDirectionScans;
+	}
+
+	/**
+	 * Returns the most queries a TraversalMode.PARALLEL search runs at 
+	 * once. By default this is 8.
+	 */
+	public int getMaxConcurrentQueries() {
+		return _maxConcurrentQueries;
+	}
+
+	/**
+	 * Sets the most queries a TraversalMode.PARALLEL search runs at once,
+	 * shared by every such search on this engine. This should leave room 
+	 * in the connection pool of the MongoClient for other work.
+	 * @param maxConcurrentQueries the number of queries, at least 1
+	 */
+	public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+		if(maxConcurrentQueries < 1)
+			throw new IllegalArgumentException(
+					"maxConcurrentQueries must be at least 1 : " + maxConcurrentQueries);
+		
+		this._maxConcurrentQueries = maxConcurrentQueries;
+		this._querySlots = new Semaphore(maxConcurrentQueries);
+	}
+
+	/**
+	 * Keep a Bloom filter of every vertex with an edge, so that queries 
+	 * about vertices which have never had an edge return straight away 
+	 * without a round trip. The filter is persisted alongside the edges 
+	 * and updated as edges are added through this engine. If no filter of
+	 * the same size was persisted, it is built from the existing edges.
+	 * Only one engine should add edges while the filter is enabled, other
+	 * engines using it see new vertices after reloadVertexFilter().
+	 * @param expectedVertices the number of vertices the filter is sized for
+	 * @param falsePositiveRate the chance that a vertex without edges is 
+	 * still looked up, for example 0.01
+	 */
+	public void enableVertexFilter(long expectedVertices, double falsePositiveRate) {
+		
+		VertexBloomFilter filter = new VertexBloomFilter(
+				_db.getCollection(vertexFilterCollectionName()), 
+				expectedVertices, falsePositiveRate);
+		if(filter.load() == false)
+			filter.rebuild(_edgeColl, SOURCE_KEY, DEST_KEY);
+		
+		_vertexFilter = filter;
+	}
+	
+	private String vertexFilterCollectionName() {
+		// each edge collection has a filter of its own
+		String name = _edgeColl.getName();
+		return name.equals(DEFAULT_EDGE_COLLECTION) ? 
+				VertexBloomFilter.DEFAULT_FILTER_COLLECTION : name + "_vertex_filter";
+	}
+
+	/**
+	 * Stop checking and updating the vertex filter. The persisted filter
+	 * is left in place, but is stale once edges are added without it.
+	 */
+	public void disableVertexFilter() {
+		_vertexFilter = null;
+	}
+	
+	public boolean isVertexFilterEnabled() {
+		return _vertexFilter != null;
+	}
+	
+	/**
+	 * Read the persisted vertex filter again, to see vertices added by 
+	 * another engine.
+	 */
+	public void reloadVertexFilter() {
+		VertexBloomFilter filter = _vertexFilter;
+		if(filter != null && filter.load() == false)
+			filter.rebuild(_edgeColl, SOURCE_KEY, DEST_KEY);
+	}
+	
+	/**
+	 * Returns false if the vertex certainly has no edges. Without a vertex
+	 * filter every vertex may have edges.
+	 */
+	boolean mayHaveEdges(DBObject vertexId) {
+		VertexBloomFilter filter = _vertexFilter;
+		return filter == null || vertexId == null || filter.mightContain(vertexId);
+	}
+
+	/**
+	 * Start recording the filtered queries this engine runs, so an index
+	 * advisor can recommend indexes for them. The advisor is kept until
+	 * disabled, so calling this again returns the same one.
+	 * @return the advisor watching this engine's queries
+	 */
+	public synchronized IndexAdvisor enableIndexAdvisor() {
+		if(_indexAdvisor == null)
+			_indexAdvisor = new IndexAdvisor(this);
+		return _indexAdvisor;
+	}
+
+	/**
+	 * Stop recording queries. Indexes already built are left in place.
+	 */
+	public synchronized void disableIndexAdvisor() {
+		_indexAdvisor = null;
+	}
+
+	/**
+	 * @return the advisor watching this engine's queries, or null
+	 */
+	public IndexAdvisor getIndexAdvisor() {
+		return _indexAdvisor;
+	}
+
+	/**
+	 * Returns true if edges carry compact keys for their vertices and the
+	 * edge indexes are built on those keys.
+	 */
+	public boolean isCompactKeys() {
+		return _compactKeys;
+	}
+	
+	/**
+	 * Switch the edge collection to compact keys. Every edge gets a 64 bit
+	 * key for its source and destination, stored next to the full ids, and
+	 * the edge indexes are rebuilt on the keys rather than the ids. Index
+	 * entries are then a fixed 16 bytes however large the vertex ids are. 
+	 * Queries still match the full ids, so vertices which share a key are
+	 * told apart, and traversals compare the keys before the ids.
+	 * Edges already in the collection are given keys first, which takes a 
+	 * write per edge. Other engines on the same collection pick up the mode
+	 * when they are constructed.
+	 */
+	public void enableCompactKeys() {
 		
-        this._edgeColl.ensureIndex(
-                new BasicDBObject(SOURCE_KEY, 1).append(DEST_KEY, 1));
-        this._edgeColl.ensureIndex(
-                new BasicDBObject(DEST_KEY, 1).append(SOURCE_KEY, 1));	
+		if(_compactKeys)
+			return;
+		
+		// add the keys to the edges written without them
+		DBCursor edges = _edgeColl.find(
+				new BasicDBObject(COMPACT_SOURCE_KEY, new BasicDBObject("$exists", false)),
+				new BasicDBObject(SOURCE_KEY, true).append(DEST_KEY, true));
+		try{
+			for(DBObject edge : edges){
+				_edgeColl.update(new BasicDBObject(ID_KEY, edge.get(ID_KEY)), 
+						new BasicDBObject("$set", new BasicDBObject(
+						COMPACT_SOURCE_KEY, VertexKeys.keyOf((DBObject) edge.get(SOURCE_KEY)))
+						.append(COMPACT_DEST_KEY, VertexKeys.keyOf((DBObject) edge.get(DEST_KEY)))));
+			}
+		}
+		finally{
+			edges.close();
+		}
+		
+		dropEdgeIndexes();
+		_compactKeys = true;
+		ensureEdgeIndexes();
 	}
 
 	@Override
 	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
 		
+		VertexBloomFilter filter = _vertexFilter;
+		if(filter != null)
+			filter.add(Arrays.asList(sourceVertexId, targetVertexId));
+		
+		DBObject newEdge = buildEdge(sourceVertexId, targetVertexId, edgeData);
+		this._edgeColl.insert(newEdge);		
+		if(_metrics != null) _metrics.roundTrip();
+		
+		return withoutCompactKeys(newEdge);
+	}
+
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+		
+		final boolean deferIndexes = options != null && options.getDeferIndexes();
+		if(deferIndexes)
+			dropEdgeIndexes();
+		
+		return new BatchingEdgeWriter(options, _edgeColl.getWriteConcern()){
+			
+			@Override
+			protected DBObject createEdge(
+					DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+				return buildEdge(sourceId, destinationId, edgeData);
+			}
+
+			@Override
+			protected void writeBatch(List<DBObject> batch, WriteConcern writeConcern) {
+				
+				VertexBloomFilter filter = _vertexFilter;
+				if(filter != null){
+					List<DBObject> vertexIds = new ArrayList<DBObject>(batch.size() * 2);
+					for(DBObject edge : batch){
+						vertexIds.add((DBObject) edge.get(SOURCE_KEY));
+						vertexIds.add((DBObject) edge.get(DEST_KEY));
+					}
+					filter.add(vertexIds);
+				}
+				
+				// unordered, so one bad edge does not stop the rest of the batch
+				_edgeColl.insert(batch, writeConcern.continueOnErrorForInsert(true));
+				if(_metrics != null) _metrics.roundTrip();
+			}
+
+			@Override
+			protected List<DBObject> unwrittenEdges(List<DBObject> batch) {
+				
+				// the driver gave each edge its _id before the insert, the edge
+				// is stored if that _id joins its ends rather than an older edge's.
+				// Some values, such as floats, do not read back equal to what was
+				// written, so only the ends are compared
+				List<Object> ids = new ArrayList<Object>(batch.size());
+				for(DBObject edge : batch)
+					ids.add(edge.get(ID_KEY));
+				
+				Map<Object, DBObject> stored = new HashMap<Object, DBObject>();
+				DBCursor cursor = _edgeColl.find(
+						new BasicDBObject(ID_KEY, new BasicDBObject("$in", ids)),
+						new BasicDBObject(SOURCE_KEY, true).append(DEST_KEY, true));
+				try{
+					while(cursor.hasNext()){
+						DBObject edge = cursor.next();
+						stored.put(edge.get(ID_KEY), edge);
+					}
+				}
+				finally{
+					cursor.close();
+				}
+				if(_metrics != null) _metrics.roundTrip();
+				
+				List<DBObject> unwritten = new ArrayList<DBObject>();
+				for(DBObject edge : batch){
+					DBObject storedEdge = stored.get(edge.get(ID_KEY));
+					if(storedEdge == null 
+							|| edge.get(SOURCE_KEY).equals(storedEdge.get(SOURCE_KEY)) == false
+							|| edge.get(DEST_KEY).equals(storedEdge.get(DEST_KEY)) == false)
+						unwritten.add(edge);
+				}
+				return unwritten;
+			}
+
+			@Override
+			protected void finish() {
+				if(deferIndexes)
+					ensureEdgeIndexes();
+			}
+		};
+	}
+
+	private DBObject buildEdge(DBObject sourceVertexId, 
+			DBObject targetVertexId, DBObject edgeData) {
+		
 		BasicDBObject newEdge = new BasicDBObject();
 		newEdge.putAll(edgeData);
 		newEdge.append(SOURCE_KEY, sourceVertexId);
 		newEdge.append(DEST_KEY, targetVertexId);				
-		this._edgeColl.insert(newEdge);		
-		
+		if(_compactKeys){
+			newEdge.append(COMPACT_SOURCE_KEY, VertexKeys.keyOf(sourceVertexId));
+			newEdge.append(COMPACT_DEST_KEY, VertexKeys.keyOf(targetVertexId));
+		}
 		return newEdge;
 	}
+
+	/**
+	 * Returns the index on the given vertex field followed by the other
+	 * end of the edge, on the keys or the ids depending on the mode.
+	 */
+	private BasicDBObject edgeIndexKeys(String vertexField, String otherField) {
+		return _compactKeys ? compactIndexKeys(vertexField, otherField) :
+			new BasicDBObject(vertexField, 1).append(otherField, 1);
+	}
+
+	private static BasicDBObject compactIndexKeys(String vertexField, String otherField) {
+		return new BasicDBObject(compactField(vertexField), 1).append(compactField(otherField), 1);
+	}
+
+	/**
+	 * Returns the field holding the compact key for an id field.
+	 */
+	static String compactField(String idField) {
+		if(idField.equals(SOURCE_KEY) || idField.equals(COMPACT_SOURCE_KEY))
+			return COMPACT_SOURCE_KEY;
+		return COMPACT_DEST_KEY;
+	}
+
+	private boolean hasEdgeIndex(DBObject indexKeys) {
+		for(DBObject index : this._edgeColl.getIndexInfo()){
+			if(indexKeys.equals(index.get("key")))
+				return true;
+		}
+		return false;
+	}
+
+	private void ensureEdgeIndexes() {
+		
+        this._edgeColl.ensureIndex(edgeIndexKeys(SOURCE_KEY, DEST_KEY));
+        this._edgeColl.ensureIndex(edgeIndexKeys(DEST_KEY, SOURCE_KEY));	
+	}
+
+	private void dropEdgeIndexes() {
+		
+		List<BasicDBObject> edgeIndexes = new ArrayList<BasicDBObject>(2);
+		edgeIndexes.add(edgeIndexKeys(SOURCE_KEY, DEST_KEY));
+		edgeIndexes.add(edgeIndexKeys(DEST_KEY, SOURCE_KEY));
+		
+		// only drop what is there, dropping a missing index is an error
+		for(DBObject index : this._edgeColl.getIndexInfo()){
+			if(edgeIndexes.contains(index.get("key")))
+				this._edgeColl.dropIndex((String) index.get("name"));
+		}
+	}
 	
 	@Override
 	public List<DBObject> getEdges(DBObject vertexId){
@@ -55,33 +490,44 @@ public class EdgeIndexGraphEngine implements GraphEngine
 		
 	@Override
 	public List<DBObject> getEdges(DBObject vertexId, EdgeFilter filter){
-		
-		// Setup the query components based on filter
-		Direction direction = getAllowedDirection(filter, Direction.BOTH);
-		BasicDBObject projection = buildProjection(filter);	
-		BasicDBObject edgeQuery = buildEdgeQuery(vertexId, filter, direction);
 			
 		// In this call, we just need the edges as documents
 		List<DBObject> resultList = new ArrayList<DBObject>();
 		
-		DBCursor outCursor = null;
+		GraphCursor<DBObject> edges = streamEdges(
+				vertexId, filter, DEFAULT_BATCH_SIZE, DEFAULT_RESULT_LIMIT);
 		try{
-			// run query and exhaust cursor
-			outCursor = _edgeColl.find(edgeQuery, projection);
-			outCursor.batchSize(DEFAULT_BATCH_SIZE);
-			outCursor.limit(DEFAULT_RESULT_LIMIT);
-			
 			// exhaust cursor
-			while(outCursor.hasNext())
-				resultList.add(outCursor.next());
+			for(DBObject edge : edges)
+				resultList.add(edge);
 		}
 		finally{
-			if(outCursor != null)
-				outCursor.close();
+			edges.close();
 		}
 
 		return resultList;		
 	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(
+			DBObject vertexId, EdgeFilter filter, int batchSize, int limit){
+		
+		if(mayHaveEdges(vertexId) == false)
+			return new EmptyGraphCursor<DBObject>();
+		
+		List<GraphCursor<DBObject>> cursors = new ArrayList<GraphCursor<DBObject>>(2);
+		for(DBCursor cursor : openEdgeCursors(vertexId, filter, batchSize, limit)){
+			cursors.add(new DBGraphCursor<DBObject>(cursor, _metrics){
+				
+				@Override
+				protected DBObject decode(DBObject edge) {
+					return withoutCompactKeys(edge);
+				}
+			});
+		}
+		
+		return ChainedGraphCursor.chain(cursors, limit);
+	}
 	
 	@Override
 	public List<Relationship> getNeighbors(DBObject vertexId){
@@ -90,114 +536,937 @@ public class EdgeIndexGraphEngine implements GraphEngine
 	
 	@Override
 	public List<Relationship> getNeighbors(DBObject vertexId, EdgeFilter filter){
-		
-		// Find all edges by default
-		Direction direction = getAllowedDirection(filter, Direction.BOTH);
-		BasicDBObject projection = buildProjection(filter);	
-		BasicDBObject edgeQuery = buildEdgeQuery(vertexId, filter, direction);
 			
 		// In this call, we need to construct relationships
 		List<Relationship> resultList = new ArrayList<Relationship>();
 		
-		DBCursor outCursor = null;
+		GraphCursor<Relationship> neighbors = streamNeighbors(
+				vertexId, filter, DEFAULT_BATCH_SIZE, DEFAULT_RESULT_LIMIT);
 		try{
-			// run query and exhaust cursor
-			outCursor = _edgeColl.find(edgeQuery, projection);
-			outCursor.batchSize(DEFAULT_BATCH_SIZE);
-			outCursor.limit(DEFAULT_RESULT_LIMIT);
-			
 			// exhaust cursor
-			while(outCursor.hasNext())
-				resultList.add(relationshipFromEdge(outCursor.next(), vertexId));
+			for(Relationship neighbor : neighbors)
+				resultList.add(neighbor);
 		}
 		finally{
-			if(outCursor != null)
-				outCursor.close();
+			neighbors.close();
 		}
 		
 		return resultList;		
 	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter){
+		
+		// Find all edges by default
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+		return expandFrontier(vertexIds, filter, direction);
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(
+			final DBObject vertexId, EdgeFilter filter, int batchSize, int limit){
+		
+		if(mayHaveEdges(vertexId) == false)
+			return new EmptyGraphCursor<Relationship>();
+		
+		List<GraphCursor<Relationship>> cursors = new ArrayList<GraphCursor<Relationship>>(2);
+		for(DBCursor cursor : openEdgeCursors(vertexId, filter, batchSize, limit)){
+			cursors.add(new DBGraphCursor<Relationship>(cursor, _metrics){
+				
+				@Override
+				protected Relationship decode(DBObject edge) {
+					return relationshipFromEdge(edge, vertexId);
+				}
+			});
+		}
+		
+		return ChainedGraphCursor.chain(cursors, limit);
+	}
+
+	private List<DBCursor> openEdgeCursors(DBObject vertexId, EdgeFilter filter, 
+			int batchSize, int limit){
+		
+		// Find all edges by default
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+		BasicDBObject projection = edgeProjection(filter);	
+		
+		// the queries are only sent once the caller starts iterating
+		List<DBCursor> cursors = new ArrayList<DBCursor>(2);
+		for(LevelQuery query : levelQueries(filter, direction)){
+			DBCursor outCursor = query.find(vertexId, projection, _metrics);
+			outCursor.batchSize(batchSize);
+			outCursor.limit(limit);
+			cursors.add(outCursor);
+		}
+		return cursors;
+	}
+	
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter, 
+			int pageSize, String continuationToken){
+		
+		if(pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be positive");
+		if(mayHaveEdges(vertexId) == false)
+			return new NeighborPage(new ArrayList<Relationship>(0), null);
+		
+		// A position is the direction being read, the last index key 
+		// returned and how many edges have been returned with that key
+		Direction direction = getAllowedDirection(filter, Direction.BOTH);
+		BSONObject position = continuationToken != null ? 
+				ContinuationTokens.decode(continuationToken) : 
+				firstPagePosition(direction == Direction.IN ? Direction.IN : Direction.OUT);
+		
+		List<Relationship> page = new ArrayList<Relationship>(pageSize);
+		String nextToken = null;
+		boolean readingPhases = true;
+		
+		while(readingPhases){
+			Direction phase = Direction.valueOf((String) position.get(PAGE_PHASE_KEY));
+			String keyField = phase == Direction.OUT ? DEST_KEY : SOURCE_KEY;
+			if(_compactKeys)
+				keyField = compactField(keyField);
+			Object lastKey = position.get(PAGE_LAST_KEY);
+			int ties = position.containsField(PAGE_TIES_KEY) ? 
+					((Number) position.get(PAGE_TIES_KEY)).intValue() : 0;
+			
+			// read one more than needed to find out if the page is the last
+			DBCursor outCursor = null;
+			boolean phaseHasMore = false;
+			int scanned = 0;
+			try{
+				outCursor = openPageCursor(vertexId, filter, direction, phase, 
+						lastKey, ties, pageSize - page.size() + 1);
+				while(outCursor.hasNext()){
+					DBObject edge = outCursor.next();
+					scanned++;
+					if(page.size() == pageSize){
+						phaseHasMore = true;
+						break;
+					}
+					
+					Object key = edge.get(keyField);
+					page.add(relationshipFromEdge(edge, vertexId));
+					if(key.equals(lastKey)){
+						ties++;
+					}
+					else{
+						lastKey = key;
+						ties = 1;
+					}
+				}
+			}
+			finally{
+				if(outCursor != null)
+					DBGraphCursor.close(outCursor, _metrics, scanned);
+			}
+			
+			if(phaseHasMore){
+				position = new BasicBSONObject(PAGE_PHASE_KEY, phase.name())
+						.append(PAGE_LAST_KEY, lastKey).append(PAGE_TIES_KEY, ties);
+				nextToken = ContinuationTokens.encode(position);
+				readingPhases = false;
+			}
+			else if(direction == Direction.BOTH && phase == Direction.OUT){
+				// outgoing edges are done, carry on with the incoming ones
+				position = firstPagePosition(Direction.IN);
+				if(page.size() == pageSize){
+					nextToken = ContinuationTokens.encode(position);
+					readingPhases = false;
+				}
+			}
+			else{
+				readingPhases = false;
+			}
+		}
+		
+		return new NeighborPage(page, nextToken);
+	}
+
+	private BSONObject firstPagePosition(Direction phase) {
+		return new BasicBSONObject(PAGE_PHASE_KEY, phase.name());
+	}
+
+	private DBCursor openPageCursor(DBObject vertexId, EdgeFilter filter, 
+			Direction direction, Direction phase, Object lastKey, int ties, int limit){
+		
+		// Seek into the compound index of the phase, after the last key
+		String vertexField = phase == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		String otherField = phase == Direction.OUT ? DEST_KEY : SOURCE_KEY;
+		BasicDBObject indexKeys = edgeIndexKeys(vertexField, otherField);
+		String keyField = _compactKeys ? compactField(otherField) : otherField;
+		
+		BasicDBObject edgeQuery = vertexClause(new BasicDBObject(), vertexField, vertexId);
+		BasicDBObject keyRange = new BasicDBObject();
+		if(lastKey != null)
+			keyRange.append("$gte", lastKey);
+		
+		// self loops were already returned with the outgoing edges, and are
+		// told apart by the full id, a key may belong to other vertices too
+		BasicDBObject selfLoops = null;
+		if(direction == Direction.BOTH && phase == Direction.IN)
+			selfLoops = new BasicDBObject("$ne", vertexId);
+		if(selfLoops != null && _compactKeys == false){
+			keyRange.append("$ne", vertexId);
+			selfLoops = null;
+		}
+		
+		if(keyRange.isEmpty() == false)
+			edgeQuery.append(keyField, keyRange);
+		if(selfLoops != null)
+			edgeQuery.append(otherField, selfLoops);
+		
+		// pages must seek on the edge index, so they are not shown to the
+		// index advisor, no other index could serve them
+		DBCursor outCursor = _edgeColl.find(
+				applyFilterQuery(edgeQuery, filter), edgeProjection(filter));
+		outCursor.hint(indexKeys);
+		outCursor.sort(indexKeys);
+		outCursor.skip(ties);
+		outCursor.limit(limit);
+		return outCursor;
+	}
 	
 	@Override
 	public Collection<List<Relationship>> findPaths(
 			DBObject fromVertexId, DBObject targetVertexId, 
 			EdgeFilter filter, int degreeLimit, PathListener listener){
 		
-		List<List<Relationship>> resultList = new LinkedList<List<Relationship>>();
-		List<Relationship> currentPath = new ArrayList<Relationship>(degreeLimit);
+		return startFindPaths(fromVertexId, targetVertexId, filter, degreeLimit, 
+				new TraversalControl(listener));
+	}
+	
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter, 
+			int degreeLimit, TraversalOptions options, TraversalListener listener){
+		
+		return startFindPaths(fromVertexId, targetVertexId, filter, degreeLimit, 
+				new TraversalControl(options, listener));
+	}
+	
+	private Collection<List<Relationship>> startFindPaths(
+			DBObject fromVertexId, DBObject targetVertexId, 
+			EdgeFilter filter, int degreeLimit, TraversalControl control){
+		
+		// no path can start or end at a vertex without edges
+		if(mayHaveEdges(fromVertexId) == false || mayHaveEdges(targetVertexId) == false)
+			return control.complete();
+		
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit, control);
+	}
+	
+	Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, 
+			EdgeFilter filter, int degreeLimit, TraversalControl control){
+		
+		if(_traversalMode == TraversalMode.BREADTH_FIRST){
+			new FrontierPathFinder(this, _metrics).findPathsBreadthFirst(fromVertexId, 
+					targetVertexId, filter, degreeLimit, control);
+		}
+		else if(_traversalMode == TraversalMode.BIDIRECTIONAL){
+			new FrontierPathFinder(this, _metrics).findPathsBidirectional(fromVertexId, 
+					targetVertexId, filter, degreeLimit, control);
+		}
+		else if(_traversalMode == TraversalMode.PARALLEL){
+			if(fromVertexId != null && targetVertexId != null && degreeLimit > 0){
+				// the results in depth first order, rather than as found
+				List<List<Relationship>> resultList = new ParallelSearch(
+						targetVertexId, filter, degreeLimit, control).run(fromVertexId);
+				control.complete();
+				return resultList;
+			}
+		}
+		else{
+			if(fromVertexId != null && targetVertexId != null && degreeLimit > 0)
+				new Search(fromVertexId, targetVertexId, filter, degreeLimit, control)
+						.run(fromVertexId);
+		}
+		
+		return control.complete();
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit){
+		if(mayHaveEdges(fromVertexId) == false || mayHaveEdges(targetVertexId) == false)
+			return null;
+		return new FrontierPathFinder(this, _metrics).findShortestPath(
+				fromVertexId, targetVertexId, filter, degreeLimit);
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit){
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		if(mayHaveEdges(fromVertexId) == false || mayHaveEdges(targetVertexId) == false)
+			return new ArrayList<List<Relationship>>(0);
+		return new FrontierPathFinder(this, _metrics).findShortestPaths(
+				fromVertexId, targetVertexId, k, filter, degreeLimit);
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic){
+		if(mayHaveEdges(fromVertexId) == false || mayHaveEdges(targetVertexId) == false)
+			return null;
+		return new WeightedPathFinder(this, _metrics).findCheapestPath(
+				fromVertexId, targetVertexId, filter, cost, heuristic);
+	}
+
+	private Map<DBObject, List<Relationship>> expandFrontier(
+			Collection<DBObject> vertexIds, EdgeFilter filter, Direction direction){
+		
+		// Every vertex gets an entry, even if it has no matching edges
+		Map<DBObject, List<Relationship>> expansion = 
+				new LinkedHashMap<DBObject, List<Relationship>>();
+		for(DBObject vertexId : vertexIds)
+			expansion.put(vertexId, new ArrayList<Relationship>());
+		
+		BasicDBObject projection = edgeProjection(filter);	
+		
+		// Large frontiers are split so that no single $in grows unbounded 
+		List<DBObject> chunk = new ArrayList<DBObject>(DEFAULT_FRONTIER_CHUNK_SIZE);
+		Iterator<DBObject> vertexIter = expansion.keySet().iterator();
+		while(vertexIter.hasNext()){
+			// vertices known to have no edges keep their empty entry
+			DBObject vertexId = vertexIter.next();
+			if(mayHaveEdges(vertexId))
+				chunk.add(vertexId);
+			
+			if(chunk.size() == DEFAULT_FRONTIER_CHUNK_SIZE || 
+					(vertexIter.hasNext() == false && chunk.isEmpty() == false)){
+				
+				// One query per direction, each on its own compound index.
+				// Self loops are only reported once when both ways are allowed
+				if(direction != Direction.IN)
+					expandChunk(chunk, filter, Direction.OUT, false, projection, expansion);
+				if(direction != Direction.OUT)
+					expandChunk(chunk, filter, Direction.IN, 
+							direction == Direction.BOTH, projection, expansion);
+				chunk.clear();
+			}
+		}
 		
-		// Add the id for the start into the current path
-		processLevel(fromVertexId, fromVertexId, targetVertexId, filter,  
-				degreeLimit, currentPath, resultList, listener);
-		if(listener != null) listener.complete();
-		return resultList;
+		return expansion;
 	}
 
-	private void processLevel(
-			DBObject startVertex, DBObject levelVertexId, DBObject targetVertexId, 
-			EdgeFilter filter, int degrees, List<Relationship> currentPath,
-			List<List<Relationship>> resultList, PathListener listener){
+	private void expandChunk(List<DBObject> chunk, EdgeFilter filter, 
+			Direction phase, boolean skipSelfLoops, BasicDBObject projection, 
+			Map<DBObject, List<Relationship>> expansion){
 		
-		if(degrees > 0 && levelVertexId != null && targetVertexId != null){	
+		String vertexField = phase == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		BasicDBObject edgeQuery = applyFilterQuery(
+				vertexClause(new BasicDBObject(), vertexField, chunk), filter);
+		IndexAdvisor advisor = _indexAdvisor;
+		if(advisor != null)
+			advisor.record(advisor.track(vertexField, filter), chunk, filter, _metrics);
+		
+		DBCursor outCursor = null;
+		int scanned = 0;
+		try{
+			// run query and exhaust cursor
+			outCursor = _edgeColl.find(edgeQuery, projection);
+			outCursor.batchSize(DEFAULT_FRONTIER_BATCH_SIZE);
+			
+			// group each edge under the requested vertex it belongs to
+			while(outCursor.hasNext()){
+				DBObject edge = outCursor.next();
+				scanned++;
+				if(skipSelfLoops && edge.get(SOURCE_KEY).equals(edge.get(DEST_KEY)))
+					continue;
+				
+				DBObject vertexId = (DBObject) edge.get(vertexField);
+				List<Relationship> hops = expansion.get(vertexId);
+				
+				// honor the same per vertex limit as a single vertex query
+				if(hops != null && hops.size() < DEFAULT_RESULT_LIMIT)
+					hops.add(relationshipFromEdge(edge, vertexId));
+			}
+		}
+		finally{
+			if(outCursor != null)
+				DBGraphCursor.close(outCursor, _metrics, scanned);
+		}
+	}
+
+	/**
+	 * The state of one depth first search. Every vertex reached is interned
+	 * to an int, so the cycle check and the target match for an edge are a
+	 * single hash lookup. With compact keys nothing is interned, the key
+	 * read from the edge is compared with the keys of the target and of the
+	 * vertices on the path, and the ids are only compared when the keys
+	 * are the same. The query for each depth is built once and only
+	 * has its vertex swapped, and hops are kept on a stack indexed by depth
+	 * which is only copied for results. In two phases, results wait in a 
+	 * batch until their edges are fetched.
+	 */
+	private class Search {
+
+		private final EdgeFilter _filter;
+		private final int _degrees;
+		private final TraversalControl _control;
+		private final BasicDBObject _projection;
+
+		private final Map<DBObject, Integer> _vertexIndex = new HashMap<DBObject, Integer>();
+		private final BitSet _onPath = new BitSet();
+		private final int _target;
+		private final Relationship[] _hops;
+		private final LevelQuery[][] _levelQueries;
+		private final long[] _levelKeys;
+		private final DBObject[] _levelVertices;
+		private final DBObject _targetId;
+		private final long _targetKey;
+		private final List<List<Relationship>> _pendingPaths;
+
+		Search(DBObject startVertex, DBObject targetVertexId, EdgeFilter filter, 
+				int degrees, TraversalControl control) {
 			
-			// Find all edges by default
+			this._filter = filter;
+			this._degrees = degrees;
+			this._control = control;
+			this._projection = _twoPhaseTraversal ? stubProjection() : edgeProjection(filter);
+			this._pendingPaths = _twoPhaseTraversal ? new ArrayList<List<Relationship>>() : null;
+
+			this._hops = new Relationship[degrees];
+			this._levelQueries = new LevelQuery[degrees][];
 			Direction direction = getAllowedDirection(filter, Direction.OUT);
-			BasicDBObject projection = buildProjection(filter);	
-			BasicDBObject edgeQuery = buildEdgeQuery(levelVertexId, filter, direction);
-							
+			for(int depth = 0; depth < degrees; depth++)
+				_levelQueries[depth] = levelQueries(filter, direction);
+			
+			// with compact keys the vertex at each depth is compared by key first
+			this._targetId = targetVertexId;
+			if(_compactKeys){
+				this._levelKeys = new long[degrees];
+				this._levelVertices = new DBObject[degrees];
+				this._levelKeys[0] = VertexKeys.keyOf(startVertex);
+				this._levelVertices[0] = startVertex;
+				this._targetKey = VertexKeys.keyOf(targetVertexId);
+				this._target = -1;
+			}
+			else{
+				this._levelKeys = null;
+				this._levelVertices = null;
+				this._targetKey = 0;
+				this._target = intern(targetVertexId);
+				this._onPath.set(intern(startVertex));
+			}
+		}
+
+		void run(DBObject startVertex) {
+			processLevel(startVertex, 0);
+			if(_pendingPaths != null)
+				reportPending();
+		}
+
+		void processLevel(DBObject levelVertexId, int depth) {
+			
+			if(_control.isStopped())
+				return;
+			
+			if(_metrics != null) _metrics.verticesExpanded(depth, 1);
+			
+			// split scans read the outgoing edges, then the incoming ones
+			for(LevelQuery query : _levelQueries[depth]){
+				if(_control.isStopped())
+					return;
+				scanLevel(levelVertexId, depth, query);
+			}
+		}
+
+		private void scanLevel(DBObject levelVertexId, int depth, LevelQuery query) {
+			
 			DBCursor outCursor = null;
+			int scanned = 0;
 			try{
 				// run query and exhaust cursor
-				outCursor = _edgeColl.find(edgeQuery, projection);
+				outCursor = query.find(levelVertexId, _projection, _metrics);
 				outCursor.batchSize(DEFAULT_BATCH_SIZE);
 				outCursor.limit(DEFAULT_RESULT_LIMIT);
 				
-				// exhaust cursor
+				// let the server give up on the query with the search
+				long remainingMillis = _control.getRemainingMillis();
+				if(remainingMillis > 0)
+					outCursor.addSpecial("$maxTimeMS", remainingMillis);
+				
+				// exhaust cursor, unless the search stops first
 				while(outCursor.hasNext()){
-					Relationship current = relationshipFromEdge(
-							outCursor.next(), levelVertexId);
+					if(_control.scanEdge() == false)
+						break;
+					
+					DBObject edge = outCursor.next();
+					scanned++;
+					
+					boolean outgoing = query.getDirection() == Direction.OUT || (query.getDirection() 
+							== Direction.BOTH && isSource(edge, levelVertexId, depth));
+					DBObject relatedId = (DBObject) edge.get(outgoing ? DEST_KEY : SOURCE_KEY);
+					int related = -1;
+					long relatedKey = 0;
+					boolean isTarget;
+					if(_levelKeys != null){
+						// the key of the next vertex is read before the edge is 
+						// pushed to the path without its keys
+						relatedKey = ((Number) edge.get(
+								outgoing ? COMPACT_DEST_KEY : COMPACT_SOURCE_KEY)).longValue();
+						if(isOnPath(relatedKey, relatedId, depth))
+							continue;
+						isTarget = relatedKey == _targetKey && _targetId.equals(relatedId);
+					}
+					else{
+						related = intern(relatedId);
+						if(_onPath.get(related))
+							continue;
+						isTarget = related == _target;
+					}
+					
+					_hops[depth] = new Relationship(relatedId, withoutCompactKeys(edge), 
+							outgoing ? Direction.OUT : Direction.IN);
 					
-					if(pathHasVertex(startVertex, currentPath, 
-							current.getRelatedId()) == false){
-						
-						// push the current hop to the path
-						currentPath.add(current);
-						
-						if(idMatch(targetVertexId, current.getRelatedId())){
-							// This is a result add it !
-							ArrayList<Relationship> resultPath = new ArrayList<Relationship>(currentPath);
-							resultList.add(resultPath);
-							if(listener != null) listener.handlePath(resultPath);
+					if(isTarget){
+						// This is a result add it !
+						if(_pendingPaths == null){
+							_control.foundPath(copyPath(depth + 1));
 						}
 						else{
-							// This is a path to investigate
-							processLevel(startVertex, current.getRelatedId(), targetVertexId, filter, 
-									degrees - 1, currentPath, resultList, listener);
+							_pendingPaths.add(copyPath(depth + 1));
+							int remaining = _control.getRemainingResults();
+							if(_pendingPaths.size() >= DEFAULT_FETCH_CHUNK_SIZE 
+									|| (remaining > 0 && _pendingPaths.size() >= remaining))
+								reportPending();
+						}
+					}
+					else if(depth + 1 < _degrees && (_control.watchesBranches() == false 
+							|| _control.extendBranch(copyPath(depth + 1)))){
+						// This is a path to investigate
+						if(_levelKeys != null){
+							_levelKeys[depth + 1] = relatedKey;
+							_levelVertices[depth + 1] = relatedId;
+							processLevel(relatedId, depth + 1);
+						}
+						else{
+							_onPath.set(related);
+							processLevel(relatedId, depth + 1);
+							_onPath.clear(related);
 						}
-					
-						// pop the current hop off 
-						currentPath.remove(currentPath.size() - 1);
 					}
 				}
 			}
+			catch(MongoException e){
+				// the server ran out of the time left for the search
+				if(e.getCode() != EXCEEDED_TIME_LIMIT)
+					throw e;
+				_control.stop();
+			}
 			finally{
 				if(outCursor != null)
-					outCursor.close();
+					DBGraphCursor.close(outCursor, _metrics, scanned);
 			}
-		}		
+		}
+
+		/**
+		 * Returns true if the vertex is on the path up to the given depth,
+		 * comparing ids only for the vertices with the same key.
+		 */
+		private boolean isOnPath(long key, DBObject vertexId, int depth) {
+			for(int i = 0; i <= depth; i++){
+				if(_levelKeys[i] == key && _levelVertices[i].equals(vertexId))
+					return true;
+			}
+			return false;
+		}
+
+		private boolean isSource(DBObject edge, DBObject levelVertexId, int depth) {
+			
+			// only a source with the same key needs its id compared
+			if(_levelKeys != null && ((Number) edge.get(COMPACT_SOURCE_KEY)).longValue() 
+					!= _levelKeys[depth])
+				return false;
+			return levelVertexId.equals(edge.get(SOURCE_KEY));
+		}
+
+		/**
+		 * Fetch the edges of the waiting results and report each result
+		 * whose edges are all still there.
+		 */
+		private void reportPending() {
+			
+			Set<Object> edgeIds = new LinkedHashSet<Object>();
+			for(List<Relationship> path : _pendingPaths){
+				for(Relationship hop : path)
+					edgeIds.add(hop.getEdge().get(ID_KEY));
+			}
+			
+			Map<Object, DBObject> edges = fetchEdges(edgeIds, _filter);
+			for(List<Relationship> path : _pendingPaths){
+				List<Relationship> resultPath = new ArrayList<Relationship>(path.size());
+				for(Relationship hop : path){
+					// edges removed since they were followed break the path
+					DBObject edge = edges.get(hop.getEdge().get(ID_KEY));
+					if(edge == null){
+						resultPath = null;
+						break;
+					}
+					resultPath.add(new Relationship(hop.getRelatedId(), edge, hop.getDirection()));
+				}
+				
+				if(resultPath != null && _control.foundPath(resultPath) == false)
+					break;
+			}
+			_pendingPaths.clear();
+		}
+
+		private int intern(DBObject vertexId) {
+			Integer index = _vertexIndex.get(vertexId);
+			if(index == null){
+				index = _vertexIndex.size();
+				_vertexIndex.put(vertexId, index);
+			}
+			return index;
+		}
+
+		private List<Relationship> copyPath(int length) {
+			List<Relationship> path = new ArrayList<Relationship>(length);
+			for(int i = 0; i < length; i++)
+				path.add(_hops[i]);
+			return path;
+		}
 	}
 
-	private boolean pathHasVertex(DBObject startVertex, 
-			List<Relationship> currentPath, DBObject relatedId) {
-		for(Relationship step : currentPath){
-			if(step.getRelatedId().equals(relatedId))
+	/**
+	 * The state of one parallel depth first search. Each branch is a task
+	 * which reads the edges of its vertex, then forks a task for every hop
+	 * to investigate and joins them in edge order, so the results come out
+	 * in the same order as the serial search. A task holds a query slot
+	 * only while it reads, never while it waits for its children.
+	 */
+	private class ParallelSearch {
+
+		private final DBObject _target;
+		private final EdgeFilter _filter;
+		private final Direction _direction;
+		private final int _degrees;
+		private final TraversalControl _control;
+		private final BasicDBObject _projection;
+		private final Semaphore _slots;
+		private final GraphMetrics _searchMetrics;
+
+		ParallelSearch(DBObject targetVertexId, EdgeFilter filter, 
+				int degrees, TraversalControl control) {
+			this._target = targetVertexId;
+			this._filter = filter;
+			this._direction = getAllowedDirection(filter, Direction.OUT);
+			this._degrees = degrees;
+			this._control = control;
+			this._projection = edgeProjection(filter);
+			this._slots = _querySlots;
+			this._searchMetrics = control.serialize(_metrics);
+		}
+
+		List<List<Relationship>> run(DBObject startVertex) {
+			return ForkJoinPool.commonPool().invoke(new BranchTask(new PathNode(startVertex)));
+		}
+
+		private class BranchTask extends RecursiveTask<List<List<Relationship>>> {
+
+			private static final long serialVersionUID = 1L;
+			private final PathNode _branch;
+
+			BranchTask(PathNode branch) {
+				this._branch = branch;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			protected List<List<Relationship>> compute() {
+				
+				List<List<Relationship>> resultList = new ArrayList<List<Relationship>>();
+				if(_control.isStopped())
+					return resultList;
+				
+				EdgeRead read = new EdgeRead(_branch);
+				try{
+					ForkJoinPool.managedBlock(read);
+				}
+				catch(InterruptedException e){
+					Thread.currentThread().interrupt();
+					_control.stop();
+					return resultList;
+				}
+				
+				// each result or child in the order of its edge
+				DBObject levelVertexId = _branch.getVertexId();
+				List<Object> slots = new ArrayList<Object>(read._edges.size());
+				for(DBObject edge : read._edges){
+					if(_control.scanEdge() == false)
+						break;
+					
+					boolean outgoing = _direction == Direction.OUT || (_direction == Direction.BOTH 
+							&& levelVertexId.equals(edge.get(SOURCE_KEY)));
+					DBObject relatedId = (DBObject) edge.get(outgoing ? DEST_KEY : SOURCE_KEY);
+					if(_branch.contains(relatedId))
+						continue;
+					
+					PathNode next = new PathNode(_branch, new Relationship(relatedId, 
+							withoutCompactKeys(edge), outgoing ? Direction.OUT : Direction.IN));
+					if(_target.equals(relatedId)){
+						// This is a result add it !
+						List<Relationship> path = next.toPath();
+						if(_control.offerPath(path))
+							slots.add(path);
+					}
+					else if(next.length() < _degrees && (_control.watchesBranches() == false 
+							|| _control.extendBranch(next.toPath()))){
+						// This is a path to investigate
+						BranchTask child = new BranchTask(next);
+						child.fork();
+						slots.add(child);
+					}
+				}
+				
+				for(Object slot : slots){
+					if(slot instanceof BranchTask)
+						resultList.addAll(((BranchTask) slot).join());
+					else
+						resultList.add((List<Relationship>) slot);
+				}
+				return resultList;
+			}
+		}
+
+		/**
+		 * Reads the edges of a branch's vertex once a query slot is free,
+		 * letting the pool run other tasks while this one waits.
+		 */
+		private class EdgeRead implements ForkJoinPool.ManagedBlocker {
+
+			private final PathNode _branch;
+			private List<DBObject> _edges = null;
+
+			EdgeRead(PathNode branch) {
+				this._branch = branch;
+			}
+
+			public boolean block() throws InterruptedException {
+				
+				_slots.acquire();
+				try{
+					_edges = readEdges(_branch);
+				}
+				finally{
+					_slots.release();
+				}
 				return true;
+			}
+
+			public boolean isReleasable() {
+				return _edges != null;
+			}
+		}
+
+		private List<DBObject> readEdges(PathNode branch) {
+			
+			List<DBObject> edges = new ArrayList<DBObject>();
+			if(_searchMetrics != null) _searchMetrics.verticesExpanded(branch.length(), 1);
+			
+			// queries are not shared between tasks, as they are rebound
+			for(LevelQuery query : levelQueries(_filter, _direction)){
+				if(_control.isStopped())
+					break;
+				
+				DBCursor outCursor = null;
+				int scanned = 0;
+				try{
+					// run query and exhaust cursor
+					outCursor = query.find(branch.getVertexId(), _projection, _searchMetrics);
+					outCursor.batchSize(DEFAULT_BATCH_SIZE);
+					outCursor.limit(DEFAULT_RESULT_LIMIT);
+					
+					// let the server give up on the query with the search
+					long remainingMillis = _control.getRemainingMillis();
+					if(remainingMillis > 0)
+						outCursor.addSpecial("$maxTimeMS", remainingMillis);
+					
+					while(outCursor.hasNext() && _control.isStopped() == false){
+						edges.add(outCursor.next());
+						scanned++;
+					}
+				}
+				catch(MongoException e){
+					// the server ran out of the time left for the search
+					if(e.getCode() != EXCEEDED_TIME_LIMIT)
+						throw e;
+					_control.stop();
+				}
+				finally{
+					if(outCursor != null)
+						DBGraphCursor.close(outCursor, _searchMetrics, scanned);
+				}
+			}
+			
+			return edges;
+		}
+	}
+
+	/**
+	 * The projection for the first phase of a search, which reads only 
+	 * what is needed to follow an edge and fetch it later.
+	 */
+	BasicDBObject stubProjection() {
+		
+		BasicDBObject projection = new BasicDBObject(ID_KEY, true)
+				.append(SOURCE_KEY, true).append(DEST_KEY, true);
+		if(_compactKeys)
+			projection.append(COMPACT_SOURCE_KEY, true).append(COMPACT_DEST_KEY, true);
+		return projection;
+	}
+
+	/**
+	 * Fetch edges by id in batches, with the projection of the filter.
+	 * @return a map from id to edge for the edges which still exist. The
+	 * edges only keep their ids if the filter asks for them.
+	 */
+	Map<Object, DBObject> fetchEdges(Collection<Object> edgeIds, EdgeFilter filter){
+
+		// ids are needed to match edges to hops, then dropped if unwanted
+		BasicDBObject projection = edgeProjection(filter);
+		projection.remove(ID_KEY);
+		boolean includeIds = filter != null && filter.getIncludeEdgeIds();
+
+		Map<Object, DBObject> edges = new HashMap<Object, DBObject>();
+		List<Object> chunk = new ArrayList<Object>(DEFAULT_FETCH_CHUNK_SIZE);
+		Iterator<Object> idIter = edgeIds.iterator();
+		while(idIter.hasNext()){
+			chunk.add(idIter.next());
+			if(chunk.size() == DEFAULT_FETCH_CHUNK_SIZE || idIter.hasNext() == false){
+				DBCursor outCursor = null;
+				try{
+					outCursor = _edgeColl.find(
+							new BasicDBObject(ID_KEY, new BasicDBObject("$in", chunk)), projection);
+					while(outCursor.hasNext()){
+						DBObject edge = outCursor.next();
+						Object id = includeIds ? edge.get(ID_KEY) : edge.removeField(ID_KEY);
+						edges.put(id, withoutCompactKeys(edge));
+					}
+				}
+				finally{
+					// the edges were counted when the search reached them
+					if(outCursor != null)
+						DBGraphCursor.close(outCursor, _metrics, 0);
+				}
+				chunk.clear();
+			}
 		}
+
+		return edges;
+	}
+
+	/**
+	 * Returns the queries which read the edges of a vertex in the given 
+	 * direction, one for each direction if both are read separately.
+	 */
+	private LevelQuery[] levelQueries(EdgeFilter filter, Direction direction) {
 		
-		return startVertex.equals(relatedId);
+		if(direction == Direction.BOTH && _splitDirectionScans)
+			return new LevelQuery[]{new LevelQuery(filter, Direction.OUT, false), 
+					new LevelQuery(filter, Direction.IN, true)};
+		return new LevelQuery[]{new LevelQuery(filter, direction, false)};
+	}
+
+	/**
+	 * An edge query which can be bound to one vertex after another. The
+	 * query is built once, binding only replaces the vertex in its clauses.
+	 * A query in use by an open cursor must not be bound again.
+	 */
+	private class LevelQuery {
+
+		private final Direction _direction;
+		private final BasicDBObject _query;
+		private final BasicDBObject[] _clauses;
+		private final String[] _idFields;
+		private final BasicDBObject _hint;
+		private final boolean _skipSelfLoops;
+		private final EdgeFilter _filter;
+		private final IndexAdvisor _advisor;
+		private final IndexAdvisor.Usage[] _usages;
+
+		/**
+		 * @param filter the filter of the edges read, may be null
+		 * @param direction the edges read
+		 * @param skipSelfLoops true to leave out edges from the vertex to 
+		 * itself, which only a single direction query can do
+		 */
+		LevelQuery(EdgeFilter filter, Direction direction, boolean skipSelfLoops) {
+			
+			this._direction = direction;
+			this._skipSelfLoops = skipSelfLoops;
+			this._filter = filter;
+			this._advisor = _indexAdvisor;
+			
+			// Based on the allowed direction, add a clause to 
+			// specify the source/destination we expect
+			if(direction == Direction.BOTH ){
+				_clauses = new BasicDBObject[]{new BasicDBObject(), new BasicDBObject()};
+				_idFields = new String[]{SOURCE_KEY, DEST_KEY};
+				List<BasicDBObject> orList = new ArrayList<BasicDBObject>(2);
+				orList.add(_clauses[0]);
+				orList.add(_clauses[1]);
+				_query = applyFilterQuery(new BasicDBObject("$or", orList), filter);
+				_hint = null;
+			}
+			else{
+				_clauses = new BasicDBObject[]{new BasicDBObject()};
+				_idFields = new String[]{direction == Direction.OUT ? SOURCE_KEY : DEST_KEY};
+				_query = applyFilterQuery(_clauses[0], filter);
+				
+				// split scans always range scan their own index
+				_hint = _splitDirectionScans ? edgeIndexKeys(_idFields[0], otherField()) : null;
+			}
+			
+			// the shape of the query is only looked up once, not per vertex.
+			// Hinted queries would not use an index the advisor recommends
+			_usages = new IndexAdvisor.Usage[_idFields.length];
+			if(_advisor != null && _hint == null){
+				for(int i = 0; i < _idFields.length; i++)
+					_usages[i] = _advisor.track(_idFields[i], filter);
+			}
+		}
+
+		Direction getDirection() {
+			return _direction;
+		}
+
+		BasicDBObject bind(DBObject vertexId, GraphMetrics metrics) {
+			for(int i = 0; i < _clauses.length; i++)
+				vertexClause(_clauses[i], _idFields[i], vertexId);
+			if(_skipSelfLoops)
+				_clauses[0].put(otherField(), new BasicDBObject("$ne", vertexId));
+			if(_advisor != null){
+				for(IndexAdvisor.Usage usage : _usages)
+					_advisor.record(usage, vertexId, _filter, metrics);
+			}
+			return _query;
+		}
+
+		/**
+		 * Bind the query to a vertex and open a cursor for it, which only
+		 * sends the query once it is iterated.
+		 * @param metrics the metrics of the search, may be null
+		 */
+		DBCursor find(DBObject vertexId, DBObject projection, GraphMetrics metrics) {
+			DBCursor outCursor = _edgeColl.find(bind(vertexId, metrics), projection);
+			if(_hint != null)
+				outCursor.hint(_hint);
+			return outCursor;
+		}
+
+		private String otherField() {
+			return _idFields[0].equals(SOURCE_KEY) ? DEST_KEY : SOURCE_KEY;
+		}
 	}
 
-	private Relationship relationshipFromEdge(DBObject edge, DBObject relativeTo) {
+	static Relationship relationshipFromEdge(DBObject edge, DBObject relativeTo) {
 		DBObject relatedId = (DBObject) edge.get(SOURCE_KEY);
 		Direction edgeDirection = Direction.IN;
 		
@@ -207,30 +1476,70 @@ public class EdgeIndexGraphEngine implements GraphEngine
 			edgeDirection = Direction.OUT;
 		}
 
-		return new Relationship(relatedId, edge, edgeDirection);		
+		return new Relationship(relatedId, withoutCompactKeys(edge), edgeDirection);		
+	}
+
+	/**
+	 * Drop the compact keys from an edge before it is handed to a caller.
+	 * They only repeat the vertex ids for the indexes, so any use of them
+	 * must come before this.
+	 */
+	static DBObject withoutCompactKeys(DBObject edge) {
+		edge.removeField(COMPACT_SOURCE_KEY);
+		edge.removeField(COMPACT_DEST_KEY);
+		return edge;
 	}
 
-	private BasicDBObject buildEdgeQuery(DBObject vertexId, 
-			EdgeFilter filter, Direction direction) {
+	/**
+	 * Add the terms matching a vertex in one id field. With compact keys
+	 * the key is matched through the index and the full id then rules out
+	 * any other vertex with the same key.
+	 */
+	private BasicDBObject vertexClause(BasicDBObject query, String idField, Object vertexIds) {
 		
-		// Initialize query with terms for direction
-		BasicDBObject edgeQuery = new BasicDBObject();
-			
-		// Based on the allowed direction, add a clause to 
-		// specify the source/destination we expect
-		if(direction == Direction.BOTH ){
-			List<BasicDBObject> orList = new ArrayList<BasicDBObject>(2);
-			orList.add(new BasicDBObject(SOURCE_KEY, vertexId));
-			orList.add(new BasicDBObject(DEST_KEY, vertexId));			
-			edgeQuery.append("$or", orList);
-		} 
-		else if(direction == Direction.OUT){
-			edgeQuery.append(SOURCE_KEY, vertexId);			
+		if(_compactKeys){
+			Object keys;
+			if(vertexIds instanceof Collection){
+				List<Long> keyList = new ArrayList<Long>();
+				for(Object vertexId : (Collection<?>) vertexIds)
+					keyList.add(VertexKeys.keyOf((DBObject) vertexId));
+				keys = new BasicDBObject("$in", keyList);
+				vertexIds = new BasicDBObject("$in", vertexIds);
+			}
+			else{
+				keys = VertexKeys.keyOf((DBObject) vertexIds);
+			}
+			query.append(compactField(idField), keys);
 		}
-		else {// direction == Direction.IN 
-			edgeQuery.append(DEST_KEY, vertexId);			
+		else if(vertexIds instanceof Collection){
+			vertexIds = new BasicDBObject("$in", vertexIds);
 		}
 		
+		return query.append(idField, vertexIds);
+	}
+
+	/**
+	 * Returns a query matching the edges of a vertex, or of a collection
+	 * of vertices, in one id field.
+	 */
+	BasicDBObject vertexQuery(String idField, Object vertexIds) {
+		return vertexClause(new BasicDBObject(), idField, vertexIds);
+	}
+
+	/**
+	 * The projection for edges read by this engine, which keeps the compact
+	 * keys when only some fields are returned.
+	 */
+	private BasicDBObject edgeProjection(EdgeFilter filter) {
+		
+		BasicDBObject projection = buildProjection(filter);
+		if(_compactKeys && filter != null && filter.hasProjection())
+			projection.append(COMPACT_SOURCE_KEY, true).append(COMPACT_DEST_KEY, true);
+		return projection;
+	}
+
+	static BasicDBObject applyFilterQuery(BasicDBObject edgeQuery, EdgeFilter filter) {
+		
 		if(filter != null && filter.getQuery() != null){
 			// need explicit $and to avoid $or clashes in user query
 			List<DBObject> andList = new ArrayList<DBObject>(2);
@@ -243,7 +1552,7 @@ public class EdgeIndexGraphEngine implements GraphEngine
 	}
 
 	
-	private BasicDBObject buildProjection(EdgeFilter filter) {
+	static BasicDBObject buildProjection(EdgeFilter filter) {
 
 		BasicDBObject projection = new BasicDBObject(ID_KEY, false);	
 		if(filter != null){
@@ -260,13 +1569,9 @@ public class EdgeIndexGraphEngine implements GraphEngine
 	}
 
 
-	private Direction getAllowedDirection(
+	static Direction getAllowedDirection(
 			EdgeFilter filter, Direction defaultDirection) {
 		return (filter == null || filter.getAllowedDirection() == null) ? 
 				defaultDirection : filter.getAllowedDirection();
 	}
-		
-	private boolean idMatch(DBObject original, DBObject subject) {
-		return original.equals(subject);
-	}
 }
\ No newline at end of file
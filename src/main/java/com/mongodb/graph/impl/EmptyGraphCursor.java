@@ -0,0 +1,37 @@
+package com.mongodb.graph.impl;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.mongodb.graph.GraphCursor;
+
+/**
+ *	GraphCursor with no results, for queries which are answered without
+ *	asking the database.
+ */
+class EmptyGraphCursor<T> implements GraphCursor<T> {
+
+	@Override
+	public boolean hasNext() {
+		return false;
+	}
+
+	@Override
+	public T next() {
+		throw new NoSuchElementException();
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("GraphCursor is read only");
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,188 @@
+package com.mongodb.graph.impl;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.AsyncGraphEngine;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+
+/**
+ *	AsyncGraphEngine which runs each call of a blocking GraphEngine on an
+ *	Executor. The callers never block, however many calls are in flight,
+ *	while the threads doing the work stay within the executor's bounds.
+ *	Calls beyond that queue in the executor rather than holding threads,
+ *	which suits the connection pool of the MongoClient, as only so many
+ *	queries can use it at once anyway.
+ *
+ *	A findPaths call which is cancelled stops its search before the next
+ *	edge the search examines.
+ */
+public class ExecutorAsyncGraphEngine implements AsyncGraphEngine
+{
+	private final GraphEngine _engine;
+	private final Executor _executor;
+	private final ExecutorService _ownedExecutor;
+
+	/**
+	 * Run calls on an executor owned by the caller.
+	 * @param engine the engine which answers the calls
+	 * @param executor the executor to run them on
+	 */
+	public ExecutorAsyncGraphEngine(GraphEngine engine, Executor executor) {
+		this._engine = engine;
+		this._executor = executor;
+		this._ownedExecutor = null;
+	}
+
+	/**
+	 * Run calls on a pool of daemon threads of the given size, which is
+	 * shut down by shutdown().
+	 * @param engine the engine which answers the calls
+	 * @param threads the number of calls which may run at once
+	 */
+	public ExecutorAsyncGraphEngine(GraphEngine engine, int threads) {
+		this._engine = engine;
+		this._ownedExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private final AtomicInteger _count = new AtomicInteger();
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "graph-async-" + _count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this._executor = _ownedExecutor;
+	}
+
+	/**
+	 * Returns the engine which answers the calls.
+	 */
+	public GraphEngine getEngine() {
+		return _engine;
+	}
+
+	/**
+	 * Stop the pool created for this engine once the calls already made
+	 * are done. An executor passed in by the caller is left alone.
+	 */
+	public void shutdown() {
+		if(_ownedExecutor != null)
+			_ownedExecutor.shutdown();
+	}
+
+	@Override
+	public CompletableFuture<DBObject> addEdge(final DBObject sourceId,
+			final DBObject destinationId, final DBObject edgeData) {
+		return submit(new Callable<DBObject>(){
+			public DBObject call() {
+				return _engine.addEdge(sourceId, destinationId, edgeData);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<DBObject>> getEdges(
+			final DBObject vertexId, final EdgeFilter filter) {
+		return submit(new Callable<Collection<DBObject>>(){
+			public Collection<DBObject> call() {
+				return _engine.getEdges(vertexId, filter);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<Relationship>> getNeighbors(
+			final DBObject vertexId, final EdgeFilter filter) {
+		return submit(new Callable<Collection<Relationship>>(){
+			public Collection<Relationship> call() {
+				return _engine.getNeighbors(vertexId, filter);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Map<DBObject, List<Relationship>>> getNeighbors(
+			final Collection<DBObject> vertexIds, final EdgeFilter filter) {
+		return submit(new Callable<Map<DBObject, List<Relationship>>>(){
+			public Map<DBObject, List<Relationship>> call() {
+				return _engine.getNeighbors(vertexIds, filter);
+			}
+		});
+	}
+
+	@Override
+	public CompletableFuture<Collection<List<Relationship>>> findPaths(
+			final DBObject fromVertexId, final DBObject targetVertexId, final EdgeFilter filter,
+			final int degreeLimit, final TraversalOptions options, final TraversalListener listener) {
+
+		final CompletableFuture<Collection<List<Relationship>>> future =
+				new CompletableFuture<Collection<List<Relationship>>>();
+		final TraversalOptions cancellable = cancellableOptions(options, future);
+		run(future, new Callable<Collection<List<Relationship>>>(){
+			public Collection<List<Relationship>> call() {
+				return _engine.findPaths(fromVertexId, targetVertexId, filter,
+						degreeLimit, cancellable, listener);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Copy the caller's options, which may be shared by other calls, adding
+	 * the future whose cancellation stops the search.
+	 */
+	private static TraversalOptions cancellableOptions(TraversalOptions options,
+			CompletableFuture<?> future) {
+
+		TraversalOptions cancellable = new TraversalOptions();
+		if(options != null){
+			cancellable.setMaxResults(options.getMaxResults());
+			cancellable.setTimeLimit(options.getTimeLimitMillis(), TimeUnit.MILLISECONDS);
+			cancellable.setMaxEdgesScanned(options.getMaxEdgesScanned());
+		}
+		cancellable.setCancellation(future);
+		return cancellable;
+	}
+
+	private <T> CompletableFuture<T> submit(Callable<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		run(future, call);
+		return future;
+	}
+
+	private <T> void run(final CompletableFuture<T> future, final Callable<T> call) {
+		try{
+			_executor.execute(new Runnable(){
+				public void run() {
+					// cancelled before it started
+					if(future.isDone())
+						return;
+
+					try{
+						future.complete(call.call());
+					}
+					catch(Throwable e){
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		}
+		catch(RuntimeException e){
+			// the executor is shut down or full
+			future.completeExceptionally(e);
+		}
+	}
+}
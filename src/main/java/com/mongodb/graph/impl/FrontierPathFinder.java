@@ -0,0 +1,336 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalOptions;
+
+/**
+ *	Level synchronous path search which expands a whole frontier of vertices
+ *	with one call to GraphEngine.getNeighbors(Collection, EdgeFilter). It
+ *	holds no state of its own, so any engine (or a decorator around one)
+ *	which can answer batched neighbor lookups can use it to find paths.
+ */
+class FrontierPathFinder {
+
+	private final GraphEngine _engine;
+	private final GraphMetrics _metrics;
+
+	/**
+	 * @param engine the engine which answers each level
+	 * @param metrics the receiver for the size of each level, may be null
+	 */
+	FrontierPathFinder(GraphEngine engine, GraphMetrics metrics) {
+		this._engine = engine;
+		this._metrics = metrics;
+	}
+
+	/**
+	 * Find every simple path of at most the given number of hops, one
+	 * level at a time from the start vertex, until the control stops.
+	 */
+	void findPathsBreadthFirst(DBObject startVertex, DBObject targetVertexId,
+			EdgeFilter filter, int degrees, TraversalControl control){
+
+		if(startVertex == null || targetVertexId == null)
+			return;
+
+		EdgeFilter levelFilter = directedFilter(filter, getAllowedDirection(filter));
+		List<PathNode> frontier = new ArrayList<PathNode>();
+		frontier.add(new PathNode(startVertex));
+
+		for(int level = 1; level <= degrees && frontier.isEmpty() == false; level++){
+			if(control.isStopped())
+				return;
+
+			// Expand every distinct vertex at the end of a branch at once
+			Set<DBObject> levelVertices = new LinkedHashSet<DBObject>();
+			for(PathNode branch : frontier)
+				levelVertices.add(branch.getVertexId());
+
+			if(_metrics != null)
+				_metrics.verticesExpanded(level - 1, levelVertices.size());
+			Map<DBObject, List<Relationship>> levelHops =
+					_engine.getNeighbors(levelVertices, levelFilter);
+
+			List<PathNode> nextFrontier = new ArrayList<PathNode>();
+			for(PathNode branch : frontier){
+				List<Relationship> hops = levelHops.get(branch.getVertexId());
+				if(hops == null)
+					continue;
+
+				for(Relationship current : hops){
+					if(control.scanEdge() == false)
+						return;
+
+					if(branch.contains(current.getRelatedId()) == false){
+						PathNode next = new PathNode(branch, current);
+
+						if(idMatch(targetVertexId, current.getRelatedId())){
+							// This is a result add it !
+							if(control.foundPath(next.toPath()) == false)
+								return;
+						}
+						else if(level < degrees && (control.watchesBranches() == false
+								|| control.extendBranch(next.toPath()))){
+							// This is a path to investigate on the next level
+							nextFrontier.add(next);
+						}
+					}
+				}
+			}
+
+			frontier = nextFrontier;
+		}
+	}
+
+	/**
+	 * Find one path with the fewest hops. Each vertex is only expanded on
+	 * the level it is first reached, so the search touches every vertex
+	 * within the shortest distance at most once.
+	 * @return the path, or null if there is none of at most degrees hops
+	 */
+	List<Relationship> findShortestPath(DBObject startVertex, DBObject targetVertexId,
+			EdgeFilter filter, int degrees){
+
+		if(startVertex == null || targetVertexId == null)
+			return null;
+
+		EdgeFilter levelFilter = directedFilter(filter, getAllowedDirection(filter));
+		Set<DBObject> reached = new HashSet<DBObject>();
+		reached.add(startVertex);
+		Map<DBObject, PathNode> frontier = new LinkedHashMap<DBObject, PathNode>();
+		frontier.put(startVertex, new PathNode(startVertex));
+
+		for(int level = 1; level <= degrees && frontier.isEmpty() == false; level++){
+
+			if(_metrics != null)
+				_metrics.verticesExpanded(level - 1, frontier.size());
+			Map<DBObject, List<Relationship>> levelHops =
+					_engine.getNeighbors(frontier.keySet(), levelFilter);
+
+			Map<DBObject, PathNode> nextFrontier = new LinkedHashMap<DBObject, PathNode>();
+			for(PathNode branch : frontier.values()){
+				List<Relationship> hops = levelHops.get(branch.getVertexId());
+				if(hops == null)
+					continue;
+
+				for(Relationship current : hops){
+					if(reached.add(current.getRelatedId()) == false)
+						continue;
+
+					PathNode next = new PathNode(branch, current);
+					if(idMatch(targetVertexId, current.getRelatedId()))
+						return next.toPath();
+					nextFrontier.put(current.getRelatedId(), next);
+				}
+			}
+
+			frontier = nextFrontier;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Find the k simple paths with the fewest hops. Paths are found in
+	 * order of length, so the search ends on the level where the k-th path
+	 * turns up rather than running to the degree limit.
+	 */
+	List<List<Relationship>> findShortestPaths(DBObject startVertex, DBObject targetVertexId,
+			int k, EdgeFilter filter, int degrees){
+
+		if(k == 1){
+			// a single path needs no branches, only the first way to each vertex
+			List<List<Relationship>> resultList = new ArrayList<List<Relationship>>(1);
+			List<Relationship> path = findShortestPath(startVertex, targetVertexId, filter, degrees);
+			if(path != null)
+				resultList.add(path);
+			return resultList;
+		}
+
+		TraversalControl control = new TraversalControl(new TraversalOptions(k), null);
+		findPathsBreadthFirst(startVertex, targetVertexId, filter, degrees, control);
+		return control.complete();
+	}
+
+	/**
+	 * Find every simple path of at most the given number of hops by
+	 * growing branches from both ends and joining them where they meet,
+	 * until the control stops.
+	 */
+	void findPathsBidirectional(DBObject startVertex, DBObject targetVertexId,
+			EdgeFilter filter, int degrees, TraversalControl control){
+
+		if(startVertex == null || targetVertexId == null)
+			return;
+
+		// The target side walks the same edges against their direction
+		Direction direction = getAllowedDirection(filter);
+		List<List<PathNode>> forward = growBranches(startVertex, targetVertexId,
+				directedFilter(filter, direction), (degrees + 1) / 2, control, true);
+		List<List<PathNode>> backward = growBranches(targetVertexId, startVertex,
+				directedFilter(filter, reverseDirection(direction)), degrees / 2, control, false);
+
+		for(int length = 1; length <= degrees; length++){
+
+			// Every path is split so the forward half has the extra hop when
+			// the length is odd, which means each path is only joined once
+			int forwardLength = (length + 1) / 2;
+			int backwardLength = length / 2;
+			if(forwardLength >= forward.size() || backwardLength >= backward.size()
+					|| control.isStopped())
+				break;
+
+			Map<DBObject, List<PathNode>> meetingPoints =
+					new HashMap<DBObject, List<PathNode>>();
+			for(PathNode branch : backward.get(backwardLength)){
+				List<PathNode> branches = meetingPoints.get(branch.getVertexId());
+				if(branches == null){
+					branches = new ArrayList<PathNode>();
+					meetingPoints.put(branch.getVertexId(), branches);
+				}
+				branches.add(branch);
+			}
+
+			for(PathNode forwardBranch : forward.get(forwardLength)){
+				List<PathNode> backwardBranches =
+						meetingPoints.get(forwardBranch.getVertexId());
+				if(backwardBranches == null)
+					continue;
+
+				for(PathNode backwardBranch : backwardBranches){
+					if(branchesDisjoint(forwardBranch, backwardBranch)){
+						// This is a result add it !
+						if(control.foundPath(joinBranches(forwardBranch, backwardBranch)) == false)
+							return;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grow every simple branch from a root, level by level. Only branches
+	 * from the start vertex are offered to the listener, the others run
+	 * against the direction of the path.
+	 */
+	private List<List<PathNode>> growBranches(DBObject rootVertex, DBObject stopVertex,
+			EdgeFilter levelFilter, int degrees, TraversalControl control, boolean forward){
+
+		// Element i of the result holds every simple branch of i hops
+		List<List<PathNode>> levels = new ArrayList<List<PathNode>>(degrees + 1);
+		List<PathNode> frontier = new ArrayList<PathNode>();
+		frontier.add(new PathNode(rootVertex));
+		levels.add(frontier);
+
+		for(int level = 1; level <= degrees && frontier.isEmpty() == false; level++){
+			if(control.isStopped())
+				break;
+
+			// Branches reaching the far end can only be joined, not extended
+			Set<DBObject> levelVertices = new LinkedHashSet<DBObject>();
+			for(PathNode branch : frontier){
+				if(idMatch(stopVertex, branch.getVertexId()) == false)
+					levelVertices.add(branch.getVertexId());
+			}
+
+			if(_metrics != null)
+				_metrics.verticesExpanded(level - 1, levelVertices.size());
+			Map<DBObject, List<Relationship>> levelHops =
+					_engine.getNeighbors(levelVertices, levelFilter);
+
+			List<PathNode> nextFrontier = new ArrayList<PathNode>();
+			for(PathNode branch : frontier){
+				List<Relationship> hops = levelHops.get(branch.getVertexId());
+				if(hops == null)
+					continue;
+
+				for(Relationship current : hops){
+					if(control.scanEdge() == false)
+						break;
+					if(branch.contains(current.getRelatedId()))
+						continue;
+
+					PathNode next = new PathNode(branch, current);
+					if(forward && control.watchesBranches()
+							&& idMatch(stopVertex, current.getRelatedId()) == false
+							&& control.extendBranch(next.toPath()) == false)
+						continue;
+					nextFrontier.add(next);
+				}
+			}
+
+			levels.add(nextFrontier);
+			frontier = nextFrontier;
+		}
+
+		return levels;
+	}
+
+	private boolean branchesDisjoint(PathNode forwardBranch, PathNode backwardBranch) {
+
+		// The branches share their end vertex, but no other
+		Set<DBObject> forwardVertices = new HashSet<DBObject>();
+		for(PathNode node = forwardBranch.getParent(); node != null; node = node.getParent())
+			forwardVertices.add(node.getVertexId());
+
+		for(PathNode node = backwardBranch.getParent(); node != null; node = node.getParent()){
+			if(forwardVertices.contains(node.getVertexId()))
+				return false;
+		}
+
+		return true;
+	}
+
+	private List<Relationship> joinBranches(PathNode forwardBranch, PathNode backwardBranch) {
+
+		List<Relationship> path = forwardBranch.toPath();
+
+		// Walk back to the target, restating each hop relative to the
+		// vertex nearer the start so the path reads start to target
+		for(PathNode node = backwardBranch; node.getParent() != null; node = node.getParent()){
+			Relationship hop = node.getRelationship();
+			path.add(new Relationship(node.getParent().getVertexId(),
+					hop.getEdge(), reverseDirection(hop.getDirection())));
+		}
+
+		return path;
+	}
+
+	static EdgeFilter directedFilter(EdgeFilter filter, Direction direction) {
+
+		// The engine must not apply its own default direction to a level
+		return filter == null ? new EdgeFilter(direction) : filter.withDirection(direction);
+	}
+
+	static Direction reverseDirection(Direction direction) {
+		if(direction == Direction.OUT)
+			return Direction.IN;
+		else if(direction == Direction.IN)
+			return Direction.OUT;
+
+		return direction;
+	}
+
+	static Direction getAllowedDirection(EdgeFilter filter) {
+		return (filter == null || filter.getAllowedDirection() == null) ?
+				Direction.OUT : filter.getAllowedDirection();
+	}
+
+	private boolean idMatch(DBObject original, DBObject subject) {
+		return original.equals(subject);
+	}
+}
@@ -0,0 +1,356 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.graph.Direction;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.Relationship;
+
+/**
+ *	EdgeIndexGraphEngine which hands multi hop queries to the server as a
+ *	single $graphLookup aggregation, so their latency does not grow with
+ *	the number of hops. The pipeline collects the id, endpoints and depth
+ *	of every edge reachable within the degree limit, paths are rebuilt
+ *	from those on the client, and only the edges on a result path are
+ *	then fetched in full.
+ *
+ *	$graphLookup follows edges one way only, so filters allowing both
+ *	directions fall back to the traversal of the parent engine. With compact
+ *	keys the lookup connects edges on the keys, and any edges it reaches
+ *	through vertices sharing a key are left out when the paths are rebuilt
+ *	from the full ids. The server
+ *	holds the whole set of reachable edges in memory while the pipeline
+ *	runs, which bounds how large a neighborhood can be searched.
+ */
+public class GraphLookupGraphEngine extends EdgeIndexGraphEngine
+{
+	private static final int DEFAULT_LOOKUP_BATCH_SIZE = 1000;
+	private static final String REACHED_KEY = "reached";
+	private static final String DEPTH_KEY = "depth";
+
+	public GraphLookupGraphEngine(DB db){
+		super(db);
+	}
+
+	public GraphLookupGraphEngine(DB db, String edgeCollectionName){
+		super(db, edgeCollectionName);
+	}
+
+	@Override
+	Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, TraversalControl control){
+
+		Direction direction = getAllowedDirection(filter, Direction.OUT);
+		if(direction == Direction.BOTH)
+			return super.findPaths(fromVertexId, targetVertexId, filter, degreeLimit, control);
+
+		if(fromVertexId != null && targetVertexId != null && degreeLimit > 0){
+
+			// group the reachable edges under the vertex they lead away from
+			String nearField = direction == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+			Map<DBObject, List<DBObject>> hopsByVertex = new HashMap<DBObject, List<DBObject>>();
+			for(DBObject edge : lookupReachableEdges(fromVertexId, filter, direction, degreeLimit, control)){
+				DBObject nearVertex = (DBObject) edge.get(nearField);
+				List<DBObject> hops = hopsByVertex.get(nearVertex);
+				if(hops == null){
+					hops = new ArrayList<DBObject>();
+					hopsByVertex.put(nearVertex, hops);
+				}
+				hops.add(edge);
+			}
+
+			List<List<DBObject>> edgePaths = new ArrayList<List<DBObject>>();
+			Set<DBObject> pathVertices = new HashSet<DBObject>();
+			pathVertices.add(fromVertexId);
+			processLevel(fromVertexId, targetVertexId, direction, degreeLimit, hopsByVertex,
+					new ArrayList<DBObject>(degreeLimit), pathVertices, edgePaths, control);
+
+			// paths found before a stop are still returned in full
+			if(edgePaths.isEmpty() == false){
+				Map<Object, DBObject> edges = fetchEdges(edgePaths, filter);
+				for(List<DBObject> edgePath : edgePaths){
+					List<Relationship> resultPath = new ArrayList<Relationship>(edgePath.size());
+					DBObject nearVertex = fromVertexId;
+					for(DBObject hop : edgePath){
+						// edges removed since the lookup break the path
+						DBObject edge = edges.get(hop.get(ID_KEY));
+						if(edge == null){
+							resultPath = null;
+							break;
+						}
+
+						Relationship current = relationshipFromEdge(edge, nearVertex);
+						resultPath.add(current);
+						nearVertex = current.getRelatedId();
+					}
+
+					if(resultPath != null){
+						// This is a result add it !
+						if(control.foundPath(resultPath) == false)
+							break;
+					}
+				}
+			}
+		}
+
+		return control.complete();
+	}
+
+	/**
+	 * Find every vertex reachable from a vertex within a number of hops,
+	 * along with the fewest hops needed to reach it. The start vertex is
+	 * not included.
+	 * @param vertexId the vertex to start from
+	 * @param filter the edges which may be followed, by default outgoing
+	 * edges only
+	 * @param maxHops the most hops to follow
+	 * @return a map of reached vertex to distance in hops, nearest first
+	 */
+	public Map<DBObject, Integer> getNeighborhood(
+			DBObject vertexId, EdgeFilter filter, int maxHops){
+
+		Map<DBObject, Integer> neighborhood = new LinkedHashMap<DBObject, Integer>();
+		if(vertexId == null || maxHops <= 0 || mayHaveEdges(vertexId) == false)
+			return neighborhood;
+
+		Direction direction = getAllowedDirection(filter, Direction.OUT);
+		if(direction == Direction.BOTH)
+			return expandNeighborhood(vertexId, filter, maxHops);
+
+		// an edge at depth d leads on from a vertex first reached on hop d,
+		// edges reached through a vertex sharing its key lead from no such vertex
+		String nearField = direction == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		String farField = direction == Direction.OUT ? DEST_KEY : SOURCE_KEY;
+		List<DBObject> edges = lookupReachableEdges(vertexId, filter, direction, maxHops, null);
+		for(int depth = 0; depth < maxHops; depth++){
+			for(DBObject edge : edges){
+				if(((Number) edge.get(DEPTH_KEY)).intValue() != depth)
+					continue;
+				
+				DBObject nearVertex = (DBObject) edge.get(nearField);
+				boolean reached = depth == 0 ? nearVertex.equals(vertexId) :
+						Integer.valueOf(depth).equals(neighborhood.get(nearVertex));
+				DBObject farVertex = (DBObject) edge.get(farField);
+				if(reached && neighborhood.containsKey(farVertex) == false
+						&& farVertex.equals(vertexId) == false)
+					neighborhood.put(farVertex, depth + 1);
+			}
+		}
+
+		return neighborhood;
+	}
+
+	/**
+	 * Returns true if the target can be reached from a vertex within a
+	 * number of hops. Every vertex can reach itself.
+	 * @param fromVertexId the vertex to start from
+	 * @param targetVertexId the vertex to reach
+	 * @param filter the edges which may be followed, by default outgoing
+	 * edges only
+	 * @param maxHops the most hops to follow
+	 * @return true if the target is reachable
+	 */
+	public boolean isReachable(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int maxHops){
+
+		if(fromVertexId == null || targetVertexId == null)
+			return false;
+
+		return fromVertexId.equals(targetVertexId) ||
+				getNeighborhood(fromVertexId, filter, maxHops).containsKey(targetVertexId);
+	}
+
+	/**
+	 * Run the lookup, within the time left to the search if there is one.
+	 * A lookup which runs out of time stops the search.
+	 * @param control the search the lookup is for, may be null
+	 */
+	private List<DBObject> lookupReachableEdges(DBObject vertexId,
+			EdgeFilter filter, Direction direction, int maxHops, TraversalControl control){
+
+		DBCollection edgeColl = getEdgeCollection();
+		String nearField = direction == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		String farField = direction == Direction.OUT ? DEST_KEY : SOURCE_KEY;
+		Object seedVertex = vertexId;
+		if(isCompactKeys()){
+			nearField = compactField(nearField);
+			farField = compactField(farField);
+			seedVertex = VertexKeys.keyOf(vertexId);
+		}
+
+		// The search walks from the far end of each edge to the near end
+		// of the next, so it is seeded with a document whose far end is
+		// the start vertex. Any edge will do as the base for the seed.
+		BasicDBObject seed = new BasicDBObject(ID_KEY, false)
+				.append(farField, new BasicDBObject("$literal", seedVertex));
+
+		BasicDBObject graphLookup = new BasicDBObject("from", edgeColl.getName())
+				.append("startWith", "$" + farField)
+				.append("connectFromField", farField)
+				.append("connectToField", nearField)
+				.append("as", REACHED_KEY)
+				.append("maxDepth", maxHops - 1)
+				.append("depthField", DEPTH_KEY);
+		if(filter != null && filter.getQuery() != null)
+			graphLookup.append("restrictSearchWithMatch", filter.getQuery());
+
+		// Only what is needed to rebuild paths comes back, one edge per
+		// document so the results stream through a cursor
+		BasicDBObject stub = new BasicDBObject(ID_KEY, true)
+				.append(SOURCE_KEY, true)
+				.append(DEST_KEY, true)
+				.append(DEPTH_KEY, true);
+
+		List<DBObject> pipeline = new ArrayList<DBObject>(6);
+		pipeline.add(new BasicDBObject("$limit", 1));
+		pipeline.add(new BasicDBObject("$project", seed));
+		pipeline.add(new BasicDBObject("$graphLookup", graphLookup));
+		pipeline.add(new BasicDBObject("$unwind", "$" + REACHED_KEY));
+		pipeline.add(new BasicDBObject("$replaceRoot",
+				new BasicDBObject("newRoot", "$" + REACHED_KEY)));
+		pipeline.add(new BasicDBObject("$project", stub));
+
+		List<DBObject> reached = new ArrayList<DBObject>();
+		AggregationCursor outCursor = null;
+		try{
+			// let the server give up on the lookup with the search
+			long remainingMillis = control != null ? control.getRemainingMillis() : 0;
+			outCursor = new AggregationCursor(edgeColl, pipeline,
+					DEFAULT_LOOKUP_BATCH_SIZE, remainingMillis, getMetrics());
+			
+			// exhaust cursor
+			for(DBObject edge : outCursor)
+				reached.add(edge);
+		}
+		catch(MongoException e){
+			// the server ran out of the time left for the search
+			if(control == null || e.getCode() != EXCEEDED_TIME_LIMIT)
+				throw e;
+			control.stop();
+		}
+		finally{
+			if(outCursor != null)
+				outCursor.close();
+		}
+
+		if(getMetrics() != null)
+			getMetrics().edgesScanned(reached.size());
+
+		return reached;
+	}
+
+	private void processLevel(DBObject levelVertexId, DBObject targetVertexId,
+			Direction direction, int degrees, Map<DBObject, List<DBObject>> hopsByVertex,
+			List<DBObject> currentPath, Set<DBObject> pathVertices, List<List<DBObject>> edgePaths,
+			TraversalControl control){
+
+		List<DBObject> hops = hopsByVertex.get(levelVertexId);
+		if(hops == null)
+			return;
+
+		// the results are only reported once their edges are fetched
+		int maxPaths = control.getRemainingResults();
+
+		// the search itself runs over the reached edges held in memory
+		if(getMetrics() != null)
+			getMetrics().verticesExpanded(currentPath.size(), 1);
+
+		String farField = direction == Direction.OUT ? DEST_KEY : SOURCE_KEY;
+		for(DBObject hop : hops){
+			if((maxPaths > 0 && edgePaths.size() >= maxPaths) || control.scanEdge() == false)
+				return;
+
+			// an edge is never nearer the start than the depth it was found at
+			if(((Number) hop.get(DEPTH_KEY)).intValue() > currentPath.size())
+				continue;
+
+			DBObject relatedId = (DBObject) hop.get(farField);
+			if(pathVertices.contains(relatedId))
+				continue;
+
+			// push the current hop to the path
+			currentPath.add(hop);
+
+			if(targetVertexId.equals(relatedId)){
+				edgePaths.add(new ArrayList<DBObject>(currentPath));
+			}
+			else if(currentPath.size() < degrees && (control.watchesBranches() == false
+					|| control.extendBranch(branchFromHops(currentPath, direction)))){
+				// This is a path to investigate
+				pathVertices.add(relatedId);
+				processLevel(relatedId, targetVertexId, direction, degrees,
+						hopsByVertex, currentPath, pathVertices, edgePaths, control);
+				pathVertices.remove(relatedId);
+			}
+
+			// pop the current hop off
+			currentPath.remove(currentPath.size() - 1);
+		}
+	}
+
+	/**
+	 * Build the relationships of a branch from the edge stubs returned by
+	 * the lookup, which only carry the edge endpoints.
+	 */
+	private List<Relationship> branchFromHops(List<DBObject> hops, Direction direction){
+
+		String nearField = direction == Direction.OUT ? SOURCE_KEY : DEST_KEY;
+		List<Relationship> branch = new ArrayList<Relationship>(hops.size());
+		for(DBObject hop : hops)
+			branch.add(relationshipFromEdge(hop, (DBObject) hop.get(nearField)));
+		return branch;
+	}
+
+	private Map<Object, DBObject> fetchEdges(List<List<DBObject>> edgePaths, EdgeFilter filter){
+
+		Set<Object> edgeIds = new LinkedHashSet<Object>();
+		for(List<DBObject> edgePath : edgePaths){
+			for(DBObject hop : edgePath)
+				edgeIds.add(hop.get(ID_KEY));
+		}
+
+		return fetchEdges(edgeIds, filter);
+	}
+
+	private Map<DBObject, Integer> expandNeighborhood(
+			DBObject vertexId, EdgeFilter filter, int maxHops){
+
+		// Both ways at once is one batched query per level instead
+		Map<DBObject, Integer> neighborhood = new LinkedHashMap<DBObject, Integer>();
+		Set<DBObject> frontier = new LinkedHashSet<DBObject>();
+		frontier.add(vertexId);
+
+		for(int hop = 1; hop <= maxHops && frontier.isEmpty() == false; hop++){
+			if(getMetrics() != null)
+				getMetrics().verticesExpanded(hop - 1, frontier.size());
+			Set<DBObject> nextFrontier = new LinkedHashSet<DBObject>();
+			for(List<Relationship> hops : getNeighbors(frontier, filter).values()){
+				for(Relationship current : hops){
+					DBObject relatedId = current.getRelatedId();
+					if(neighborhood.containsKey(relatedId) == false
+							&& relatedId.equals(vertexId) == false){
+						neighborhood.put(relatedId, hop);
+						nextFrontier.add(relatedId);
+					}
+				}
+			}
+			frontier = nextFrontier;
+		}
+
+		return neighborhood;
+	}
+}
@@ -0,0 +1,292 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.GraphMetrics;
+
+/**
+ *	Watches the filtered edge queries of an EdgeIndexGraphEngine and
+ *	recommends the compound indexes which would answer them. Queries are
+ *	grouped by shape, the vertex field they read through and the fields
+ *	their EdgeFilter query matches. For each shape it counts the queries,
+ *	and for one query in every sample interval it also counts the edges of
+ *	the queried vertices with and without the filter. Those two counts give
+ *	the share of the documents examined which the filter throws away.
+ *
+ *	Recommended indexes start with the vertex field, followed by the fields
+ *	matched exactly and then those matched by range or any other operator,
+ *	such as {_s:1, type:1, start_date:1}. Fields under $or and $nor are left
+ *	out, as no single index serves them. Queries hinted to the edge index,
+ *	which are neighbor pages and split direction scans, are not watched, as
+ *	they would not use a recommended index.
+ *
+ *	Obtained from EdgeIndexGraphEngine.enableIndexAdvisor().
+ */
+public class IndexAdvisor {
+
+	public static final int DEFAULT_SAMPLE_INTERVAL = 100;
+
+	private final EdgeIndexGraphEngine _engine;
+	private final Map<List<String>, Usage> _usages = new LinkedHashMap<List<String>, Usage>();
+	private volatile int _sampleInterval = DEFAULT_SAMPLE_INTERVAL;
+
+	IndexAdvisor(EdgeIndexGraphEngine engine) {
+		this._engine = engine;
+	}
+
+	public int getSampleInterval() {
+		return _sampleInterval;
+	}
+
+	/**
+	 * Sets how often the selectivity of a query is measured. Each sample
+	 * costs two counts on the edge collection, run by the thread making the
+	 * query, so a short interval slows down the queries being watched. The
+	 * first query of every shape is always sampled.
+	 * @param sampleInterval the number of queries of a shape per sample
+	 */
+	public void setSampleInterval(int sampleInterval) {
+		if(sampleInterval < 1)
+			throw new IllegalArgumentException("sampleInterval must be at least 1");
+		this._sampleInterval = sampleInterval;
+	}
+
+	/**
+	 * Returns the index recommended for each shape of query seen so far,
+	 * those wasting the most documents first.
+	 * @return the recommendations, including those already indexed
+	 */
+	public List<IndexRecommendation> getRecommendations() {
+
+		List<DBObject> existing = new ArrayList<DBObject>();
+		for(DBObject index : _engine.getEdgeCollection().getIndexInfo())
+			existing.add((DBObject) index.get("key"));
+
+		List<IndexRecommendation> recommendations = new ArrayList<IndexRecommendation>();
+		synchronized(this){
+			for(Usage usage : _usages.values()){
+				DBObject indexKeys = usage.indexKeys(_engine.isCompactKeys());
+				recommendations.add(new IndexRecommendation(indexKeys,
+						usage._fields.subList(1, usage._fields.size()), usage._queries,
+						usage._samples, usage._examined, usage._matched,
+						isIndexed(existing, indexKeys)));
+			}
+		}
+
+		Collections.sort(recommendations, new Comparator<IndexRecommendation>(){
+			public int compare(IndexRecommendation a, IndexRecommendation b) {
+				return Double.compare(wasted(b), wasted(a));
+			}
+			private double wasted(IndexRecommendation recommendation) {
+				return recommendation.getQueryCount() * recommendation.getWastedRatio();
+			}
+		});
+		return recommendations;
+	}
+
+	/**
+	 * Returns true if one of the indexes has the same keys in the same
+	 * order. DBObject equality ignores the order, which an index does not.
+	 */
+	private static boolean isIndexed(List<DBObject> indexes, DBObject indexKeys) {
+
+		List<String> fields = new ArrayList<String>(indexKeys.keySet());
+		for(DBObject index : indexes){
+			if(fields.equals(new ArrayList<String>(index.keySet())) == false)
+				continue;
+
+			boolean same = true;
+			for(String field : fields){
+				Object order = index.get(field);
+				Object wanted = indexKeys.get(field);
+				if(order instanceof Number && wanted instanceof Number ?
+						((Number) order).doubleValue() != ((Number) wanted).doubleValue() :
+						wanted.equals(order) == false){
+					same = false;
+					break;
+				}
+			}
+			if(same)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Build the recommended indexes which are missing and whose queries
+	 * throw away at least the given share of the documents they examine.
+	 * @param minWastedRatio the least wasted ratio worth an index, for
+	 * example 0.5
+	 * @return the recommendations which were indexed by this call
+	 */
+	public List<IndexRecommendation> createIndexes(double minWastedRatio) {
+
+		DBCollection edgeColl = _engine.getEdgeCollection();
+		List<IndexRecommendation> created = new ArrayList<IndexRecommendation>();
+		for(IndexRecommendation recommendation : getRecommendations()){
+			if(recommendation.isIndexed() == false && recommendation.getSampleCount() > 0 &&
+					recommendation.getWastedRatio() >= minWastedRatio){
+				edgeColl.ensureIndex(recommendation.getIndexKeys());
+				created.add(recommendation);
+			}
+		}
+		return created;
+	}
+
+	/**
+	 * Forget every query seen so far.
+	 */
+	public synchronized void reset() {
+		_usages.clear();
+	}
+
+	/**
+	 * Returns the usage of queries on one vertex field with the given
+	 * filter, or null if the filter matches no field an index could serve.
+	 */
+	Usage track(String vertexField, EdgeFilter filter) {
+
+		if(filter == null || filter.getQuery() == null)
+			return null;
+
+		List<String> equality = new ArrayList<String>();
+		List<String> range = new ArrayList<String>();
+		predicateFields(filter.getQuery(), equality, range);
+		if(equality.isEmpty() && range.isEmpty())
+			return null;
+
+		List<String> fields = new ArrayList<String>(1 + equality.size() + range.size());
+		fields.add(vertexField);
+		fields.addAll(equality);
+		for(String field : range){
+			if(fields.contains(field) == false)
+				fields.add(field);
+		}
+
+		synchronized(this){
+			Usage usage = _usages.get(fields);
+			if(usage == null){
+				usage = new Usage(fields);
+				_usages.put(fields, usage);
+			}
+			return usage;
+		}
+	}
+
+	/**
+	 * Count a query of a tracked shape, measuring its selectivity if it is
+	 * due a sample.
+	 * @param usage the shape of the query, may be null
+	 * @param vertexIds the vertex, or collection of vertices, queried
+	 * @param filter the filter of the query
+	 * @param metrics the metrics the sample counts are reported to, may
+	 * be null
+	 */
+	void record(Usage usage, Object vertexIds, EdgeFilter filter, GraphMetrics metrics) {
+
+		if(usage == null)
+			return;
+
+		boolean sample;
+		synchronized(this){
+			sample = usage._queries++ % _sampleInterval == 0;
+		}
+		if(sample == false)
+			return;
+
+		DBCollection edgeColl = _engine.getEdgeCollection();
+		BasicDBObject vertexQuery = _engine.vertexQuery(usage._fields.get(0), vertexIds);
+		long examined = edgeColl.count(vertexQuery);
+		long matched = edgeColl.count(EdgeIndexGraphEngine.applyFilterQuery(
+				_engine.vertexQuery(usage._fields.get(0), vertexIds), filter));
+		if(metrics != null){
+			metrics.roundTrip();
+			metrics.roundTrip();
+		}
+
+		synchronized(this){
+			usage._samples++;
+			usage._examined += examined;
+			usage._matched += matched;
+		}
+	}
+
+	/**
+	 * Sort the fields of a query into those matched exactly and the rest,
+	 * in the order they appear.
+	 */
+	static void predicateFields(DBObject query, List<String> equality, List<String> range) {
+
+		for(String field : query.keySet()){
+			Object value = query.get(field);
+			if(field.equals("$and") && value instanceof List){
+				for(Object clause : (List<?>) value){
+					if(clause instanceof DBObject)
+						predicateFields((DBObject) clause, equality, range);
+				}
+			}
+			else if(field.startsWith("$")){
+				// $or, $nor and the like need an index per branch
+				continue;
+			}
+			else if(isEquality(value)){
+				if(equality.contains(field) == false)
+					equality.add(field);
+				range.remove(field);
+			}
+			else if(equality.contains(field) == false && range.contains(field) == false){
+				range.add(field);
+			}
+		}
+	}
+
+	private static boolean isEquality(Object value) {
+
+		if(value instanceof DBObject == false || value instanceof List)
+			return true;
+
+		// an embedded document is matched whole, unless it holds operators
+		for(String operator : ((DBObject) value).keySet()){
+			if(operator.startsWith("$") == false)
+				return true;
+			if(operator.equals("$eq") == false && operator.equals("$in") == false)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The counts kept for one shape of query. The first field is the
+	 * vertex field, the rest are in the order of the index.
+	 */
+	static class Usage {
+
+		private final List<String> _fields;
+		private long _queries = 0;
+		private int _samples = 0;
+		private long _examined = 0;
+		private long _matched = 0;
+
+		Usage(List<String> fields) {
+			this._fields = fields;
+		}
+
+		DBObject indexKeys(boolean compactKeys) {
+			String vertexField = _fields.get(0);
+			BasicDBObject keys = new BasicDBObject(compactKeys ?
+					EdgeIndexGraphEngine.compactField(vertexField) : vertexField, 1);
+			for(String field : _fields.subList(1, _fields.size()))
+				keys.append(field, 1);
+			return keys;
+		}
+	}
+}
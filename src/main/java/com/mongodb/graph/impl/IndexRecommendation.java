@@ -0,0 +1,107 @@
+package com.mongodb.graph.impl;
+
+import java.util.List;
+
+import com.mongodb.DBObject;
+
+/**
+ *	The usage of one shape of filtered edge query, as seen by an
+ *	IndexAdvisor, along with the compound index which would answer it.
+ *	The documents examined are those the query reads through the edge
+ *	index on its vertex alone, so the wasted ratio is what the query pays
+ *	without the recommended index.
+ */
+public class IndexRecommendation {
+
+	private final DBObject _indexKeys;
+	private final List<String> _fields;
+	private final long _queryCount;
+	private final int _sampleCount;
+	private final long _docsExamined;
+	private final long _docsMatched;
+	private final boolean _indexed;
+
+	IndexRecommendation(DBObject indexKeys, List<String> fields, long queryCount,
+			int sampleCount, long docsExamined, long docsMatched, boolean indexed) {
+		this._indexKeys = indexKeys;
+		this._fields = fields;
+		this._queryCount = queryCount;
+		this._sampleCount = sampleCount;
+		this._docsExamined = docsExamined;
+		this._docsMatched = docsMatched;
+		this._indexed = indexed;
+	}
+
+	/**
+	 * @return the keys of the recommended index, the vertex field first,
+	 * then the fields matched exactly, then the fields matched by range
+	 */
+	public DBObject getIndexKeys() {
+		return _indexKeys;
+	}
+
+	/**
+	 * @return the edge data fields the filter queries use
+	 */
+	public List<String> getFields() {
+		return _fields;
+	}
+
+	/**
+	 * @return the number of queries of this shape run by the engine
+	 */
+	public long getQueryCount() {
+		return _queryCount;
+	}
+
+	/**
+	 * @return the number of those queries whose selectivity was measured
+	 */
+	public int getSampleCount() {
+		return _sampleCount;
+	}
+
+	/**
+	 * @return the edges of the queried vertices over the sampled queries
+	 */
+	public long getDocsExamined() {
+		return _docsExamined;
+	}
+
+	/**
+	 * @return the edges which also matched the filter over the sampled
+	 * queries
+	 */
+	public long getDocsMatched() {
+		return _docsMatched;
+	}
+
+	/**
+	 * @return the share of the edges examined which matched the filter
+	 */
+	public double getSelectivity() {
+		return _docsExamined == 0 ? 1.0 : (double) _docsMatched / _docsExamined;
+	}
+
+	/**
+	 * @return the share of the edges examined which were read only to be
+	 * filtered out
+	 */
+	public double getWastedRatio() {
+		return 1.0 - getSelectivity();
+	}
+
+	/**
+	 * @return true if the edge collection already has the recommended index
+	 */
+	public boolean isIndexed() {
+		return _indexed;
+	}
+
+	@Override
+	public String toString() {
+		return _indexKeys + " queries=" + _queryCount + " examined=" + _docsExamined +
+				" matched=" + _docsMatched + " wasted=" + String.format("%.2f", getWastedRatio()) +
+				(_indexed ? " indexed" : "");
+	}
+}
@@ -0,0 +1,133 @@
+package com.mongodb.graph.impl;
+
+import java.util.Arrays;
+
+/**
+ *	Binary min heap of int slots ordered by a double key, held in primitive
+ *	arrays so the search queue allocates nothing per entry. Each slot is in
+ *	the heap at most once and its key can be lowered in place, which is the
+ *	decrease-key step of Dijkstra's algorithm.
+ */
+class IndexedMinHeap {
+
+	private int[] _heap;
+	private double[] _keys;
+	private int[] _positions;
+	private int _size = 0;
+
+	IndexedMinHeap(int capacity) {
+		capacity = Math.max(16, capacity);
+		_heap = new int[capacity];
+		_keys = new double[capacity];
+		_positions = new int[capacity];
+		Arrays.fill(_positions, -1);
+	}
+
+	boolean isEmpty() {
+		return _size == 0;
+	}
+
+	int size() {
+		return _size;
+	}
+
+	boolean contains(int slot) {
+		return slot < _positions.length && _positions[slot] >= 0;
+	}
+
+	/**
+	 * Add a slot with the given key, or lower the key of a slot already in
+	 * the heap. A key higher than the current one is ignored.
+	 */
+	void offer(int slot, double key) {
+
+		if(slot >= _positions.length){
+			int oldLength = _positions.length;
+			int newLength = Math.max(slot + 1, oldLength * 2);
+			_keys = Arrays.copyOf(_keys, newLength);
+			_positions = Arrays.copyOf(_positions, newLength);
+			Arrays.fill(_positions, oldLength, newLength, -1);
+		}
+
+		int position = _positions[slot];
+		if(position < 0){
+			if(_size == _heap.length)
+				_heap = Arrays.copyOf(_heap, _size * 2);
+			position = _size++;
+			_heap[position] = slot;
+			_positions[slot] = position;
+		}
+		else if(key >= _keys[slot]){
+			return;
+		}
+
+		_keys[slot] = key;
+		siftUp(position);
+	}
+
+	/**
+	 * Remove and return the slot with the lowest key.
+	 */
+	int poll() {
+
+		int slot = _heap[0];
+		_positions[slot] = -1;
+		_size--;
+		if(_size > 0){
+			_heap[0] = _heap[_size];
+			_positions[_heap[0]] = 0;
+			siftDown(0);
+		}
+
+		return slot;
+	}
+
+	/**
+	 * Returns the slot at a position in the heap array. The first positions
+	 * hold the slots with the lowest keys, though not in order, which makes
+	 * them the likeliest to be polled soon.
+	 */
+	int slotAt(int position) {
+		return _heap[position];
+	}
+
+	private void siftUp(int position) {
+
+		int slot = _heap[position];
+		double key = _keys[slot];
+		while(position > 0){
+			int parent = (position - 1) >>> 1;
+			int parentSlot = _heap[parent];
+			if(_keys[parentSlot] <= key)
+				break;
+			_heap[position] = parentSlot;
+			_positions[parentSlot] = position;
+			position = parent;
+		}
+
+		_heap[position] = slot;
+		_positions[slot] = position;
+	}
+
+	private void siftDown(int position) {
+
+		int slot = _heap[position];
+		double key = _keys[slot];
+		int half = _size >>> 1;
+		while(position < half){
+			int child = 2 * position + 1;
+			int right = child + 1;
+			if(right < _size && _keys[_heap[right]] < _keys[_heap[child]])
+				child = right;
+			int childSlot = _heap[child];
+			if(key <= _keys[childSlot])
+				break;
+			_heap[position] = childSlot;
+			_positions[childSlot] = position;
+			position = child;
+		}
+
+		_heap[position] = slot;
+		_positions[slot] = position;
+	}
+}
@@ -0,0 +1,575 @@
+package com.mongodb.graph.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.BulkLoadResult;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.QueryTrace;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TracingPathListener;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	GraphEngine decorator which measures every call made through it. Each
+ *	call gets a QueryTrace which collects the round trips, documents, edges
+ *	and path search levels reported by the underlying engine while the call
+ *	runs, and the finished trace is added to the OperationStats of its
+ *	operation. A TracingPathListener passed to findPaths receives the trace
+ *	of that search.
+ *
+ *	Measurements are attributed to a call by thread, so work the underlying
+ *	engine hands to other threads is not counted. Streams and writers are
+ *	traced from when they are opened until they are closed or exhausted.
+ *	Once disabled, calls go straight to the underlying engine, which is
+ *	left with no metrics to report to.
+ */
+public class InstrumentedGraphEngine implements GraphEngine
+{
+	public static final String ADD_EDGE = "addEdge";
+	public static final String WRITE_EDGES = "writeEdges";
+	public static final String GET_EDGES = "getEdges";
+	public static final String STREAM_EDGES = "streamEdges";
+	public static final String GET_NEIGHBORS = "getNeighbors";
+	public static final String GET_NEIGHBORS_BATCH = "getNeighborsBatch";
+	public static final String STREAM_NEIGHBORS = "streamNeighbors";
+	public static final String GET_NEIGHBOR_PAGE = "getNeighborPage";
+	public static final String FIND_PATHS = "findPaths";
+	public static final String SHORTEST_PATH = "shortestPath";
+	public static final String K_SHORTEST_PATHS = "kShortestPaths";
+	public static final String CHEAPEST_PATH = "cheapestPath";
+
+	private static final String MBEAN_DOMAIN = "com.mongodb.graph";
+
+	private final GraphEngine _delegate;
+	private final Map<String, OperationStats> _stats;
+	private final ThreadLocal<QueryTrace> _currentTrace = new ThreadLocal<QueryTrace>();
+	private final GraphMetrics _dispatcher = new TraceDispatcher();
+	private final List<ObjectName> _mbeanNames = new ArrayList<ObjectName>();
+
+	private volatile boolean _enabled = true;
+	private volatile GraphMetrics _metrics = null;
+
+	public InstrumentedGraphEngine(GraphEngine delegate) {
+
+		_delegate = delegate;
+
+		Map<String, OperationStats> stats = new LinkedHashMap<String, OperationStats>();
+		for(String operation : new String[]{ADD_EDGE, WRITE_EDGES, GET_EDGES, STREAM_EDGES,
+				GET_NEIGHBORS, GET_NEIGHBORS_BATCH, STREAM_NEIGHBORS, GET_NEIGHBOR_PAGE, FIND_PATHS,
+				SHORTEST_PATH, K_SHORTEST_PATHS, CHEAPEST_PATH})
+			stats.put(operation, new OperationStats(operation));
+		_stats = Collections.unmodifiableMap(stats);
+
+		_delegate.setMetrics(_dispatcher);
+	}
+
+	public GraphEngine getDelegate() {
+		return _delegate;
+	}
+
+	public boolean isEnabled() {
+		return _enabled;
+	}
+
+	/**
+	 * Turn measurement on or off. Calls already running finish as they
+	 * started.
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		_enabled = enabled;
+		_delegate.setMetrics(enabled ? _dispatcher : _metrics);
+	}
+
+	/**
+	 * Also pass every measurement on to another receiver, for example to
+	 * feed an existing metrics library.
+	 */
+	@Override
+	public synchronized void setMetrics(GraphMetrics metrics) {
+		_metrics = metrics;
+		if(_enabled == false)
+			_delegate.setMetrics(metrics);
+	}
+
+	/**
+	 * Returns the totals for one operation, named by one of the operation
+	 * constants of this class.
+	 */
+	public OperationStats getStats(String operation) {
+		return _stats.get(operation);
+	}
+
+	public Collection<OperationStats> getAllStats() {
+		return _stats.values();
+	}
+
+	/**
+	 * Register the OperationStats of every operation with the platform
+	 * MBean server, under com.mongodb.graph:type=GraphEngine with the
+	 * given name and the operation as keys.
+	 * @param name distinguishes this engine from others in the same process
+	 */
+	public synchronized void registerMBeans(String name) throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(OperationStats stats : _stats.values()){
+			ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=GraphEngine,name="
+					+ ObjectName.quote(name) + ",operation=" + stats.getOperation());
+			server.registerMBean(stats, objectName);
+			_mbeanNames.add(objectName);
+		}
+	}
+
+	public synchronized void unregisterMBeans() throws JMException {
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(ObjectName objectName : _mbeanNames){
+			if(server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		}
+		_mbeanNames.clear();
+	}
+
+	@Override
+	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
+
+		if(_enabled == false)
+			return _delegate.addEdge(sourceVertexId, targetVertexId, edgeData);
+
+		QueryTrace trace = new QueryTrace(ADD_EDGE);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.addEdge(sourceVertexId, targetVertexId, edgeData);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+
+		if(_enabled == false)
+			return _delegate.openEdgeWriter(options);
+
+		final QueryTrace trace = new QueryTrace(WRITE_EDGES);
+		final EdgeWriter writer;
+		QueryTrace outer = resume(trace);
+		try{
+			writer = _delegate.openEdgeWriter(options);
+		}
+		finally{
+			suspend(trace, outer);
+		}
+
+		return new EdgeWriter(){
+
+			@Override
+			public void add(DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+				QueryTrace outer = resume(trace);
+				try{
+					writer.add(sourceId, destinationId, edgeData);
+				}
+				finally{
+					suspend(trace, outer);
+				}
+			}
+
+			@Override
+			public void setWriteConcern(WriteConcern writeConcern) {
+				writer.setWriteConcern(writeConcern);
+			}
+
+			@Override
+			public void flush() {
+				QueryTrace outer = resume(trace);
+				try{
+					writer.flush();
+				}
+				finally{
+					suspend(trace, outer);
+				}
+			}
+
+			@Override
+			public BulkLoadResult getResult() {
+				return writer.getResult();
+			}
+
+			@Override
+			public void close() {
+				QueryTrace outer = resume(trace);
+				try{
+					writer.close();
+				}
+				finally{
+					complete(trace, outer);
+				}
+			}
+		};
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId) {
+		return getEdges(vertexId, null);
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId, EdgeFilter filter) {
+
+		if(_enabled == false)
+			return _delegate.getEdges(vertexId, filter);
+
+		QueryTrace trace = new QueryTrace(GET_EDGES);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.getEdges(vertexId, filter);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+
+		if(_enabled == false)
+			return _delegate.streamEdges(vertexId, filter, batchSize, limit);
+
+		QueryTrace trace = new QueryTrace(STREAM_EDGES);
+		QueryTrace outer = resume(trace);
+		try{
+			return new TracedCursor<DBObject>(
+					_delegate.streamEdges(vertexId, filter, batchSize, limit), trace);
+		}
+		finally{
+			suspend(trace, outer);
+		}
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId) {
+		return getNeighbors(vertexId, null);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId, EdgeFilter filter) {
+
+		if(_enabled == false)
+			return _delegate.getNeighbors(vertexId, filter);
+
+		QueryTrace trace = new QueryTrace(GET_NEIGHBORS);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.getNeighbors(vertexId, filter);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			Collection<DBObject> vertexIds, EdgeFilter filter) {
+
+		if(_enabled == false)
+			return _delegate.getNeighbors(vertexIds, filter);
+
+		QueryTrace trace = new QueryTrace(GET_NEIGHBORS_BATCH);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.getNeighbors(vertexIds, filter);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+
+		if(_enabled == false)
+			return _delegate.streamNeighbors(vertexId, filter, batchSize, limit);
+
+		QueryTrace trace = new QueryTrace(STREAM_NEIGHBORS);
+		QueryTrace outer = resume(trace);
+		try{
+			return new TracedCursor<Relationship>(
+					_delegate.streamNeighbors(vertexId, filter, batchSize, limit), trace);
+		}
+		finally{
+			suspend(trace, outer);
+		}
+	}
+
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter,
+			int pageSize, String continuationToken) {
+
+		if(_enabled == false)
+			return _delegate.getNeighborPage(vertexId, filter, pageSize, continuationToken);
+
+		QueryTrace trace = new QueryTrace(GET_NEIGHBOR_PAGE);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.getNeighborPage(vertexId, filter, pageSize, continuationToken);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, PathListener listener) {
+
+		if(_enabled == false)
+			return _delegate.findPaths(fromVertexId, targetVertexId, filter, degreeLimit, listener);
+
+		// the caller can follow the search through the trace it passed in
+		QueryTrace trace = listener instanceof TracingPathListener ?
+				((TracingPathListener) listener).getTrace() : new QueryTrace(FIND_PATHS);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.findPaths(fromVertexId, targetVertexId, filter, degreeLimit, listener);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener) {
+
+		if(_enabled == false)
+			return _delegate.findPaths(fromVertexId, targetVertexId, filter, degreeLimit, options, listener);
+
+		QueryTrace trace = new QueryTrace(FIND_PATHS);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.findPaths(fromVertexId, targetVertexId, filter, degreeLimit, options, listener);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit) {
+
+		if(_enabled == false)
+			return _delegate.shortestPath(fromVertexId, targetVertexId, filter, degreeLimit);
+
+		QueryTrace trace = new QueryTrace(SHORTEST_PATH);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.shortestPath(fromVertexId, targetVertexId, filter, degreeLimit);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit) {
+
+		if(_enabled == false)
+			return _delegate.kShortestPaths(fromVertexId, targetVertexId, k, filter, degreeLimit);
+
+		QueryTrace trace = new QueryTrace(K_SHORTEST_PATHS);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.kShortestPaths(fromVertexId, targetVertexId, k, filter, degreeLimit);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic) {
+
+		if(_enabled == false)
+			return _delegate.cheapestPath(fromVertexId, targetVertexId, filter, cost, heuristic);
+
+		QueryTrace trace = new QueryTrace(CHEAPEST_PATH);
+		QueryTrace outer = resume(trace);
+		try{
+			return _delegate.cheapestPath(fromVertexId, targetVertexId, filter, cost, heuristic);
+		}
+		finally{
+			complete(trace, outer);
+		}
+	}
+
+	/**
+	 * Make the trace current on this thread and start its clock.
+	 * @return the trace which was current before, to restore afterwards
+	 */
+	private QueryTrace resume(QueryTrace trace) {
+		QueryTrace outer = _currentTrace.get();
+		_currentTrace.set(trace);
+		trace.start();
+		return outer;
+	}
+
+	private void suspend(QueryTrace trace, QueryTrace outer) {
+		trace.stop();
+		if(outer == null)
+			_currentTrace.remove();
+		else
+			_currentTrace.set(outer);
+	}
+
+	private void complete(QueryTrace trace, QueryTrace outer) {
+		suspend(trace, outer);
+		OperationStats stats = _stats.get(trace.getOperation());
+		if(stats != null)
+			stats.record(trace);
+	}
+
+	/**
+	 * Passes measurements on to the trace of the call running on the
+	 * current thread.
+	 */
+	private class TraceDispatcher implements GraphMetrics {
+
+		@Override
+		public void roundTrip() {
+			QueryTrace trace = _currentTrace.get();
+			if(trace != null) trace.roundTrip();
+			GraphMetrics metrics = _metrics;
+			if(metrics != null) metrics.roundTrip();
+		}
+
+		@Override
+		public void batchFetched(int documents) {
+			QueryTrace trace = _currentTrace.get();
+			if(trace != null) trace.batchFetched(documents);
+			GraphMetrics metrics = _metrics;
+			if(metrics != null) metrics.batchFetched(documents);
+		}
+
+		@Override
+		public void edgesScanned(int edges) {
+			QueryTrace trace = _currentTrace.get();
+			if(trace != null) trace.edgesScanned(edges);
+			GraphMetrics metrics = _metrics;
+			if(metrics != null) metrics.edgesScanned(edges);
+		}
+
+		@Override
+		public void verticesExpanded(int level, int vertices) {
+			QueryTrace trace = _currentTrace.get();
+			if(trace != null) trace.verticesExpanded(level, vertices);
+			GraphMetrics metrics = _metrics;
+			if(metrics != null) metrics.verticesExpanded(level, vertices);
+		}
+	}
+
+	/**
+	 * Runs each step of a stream under its trace, which is complete once
+	 * the stream is closed or exhausted.
+	 */
+	private class TracedCursor<T> implements GraphCursor<T> {
+
+		private final GraphCursor<T> _cursor;
+		private final QueryTrace _trace;
+		private boolean _completed = false;
+
+		TracedCursor(GraphCursor<T> cursor, QueryTrace trace) {
+			this._cursor = cursor;
+			this._trace = trace;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(_completed)
+				return false;
+
+			QueryTrace outer = resume(_trace);
+			boolean hasNext = false;
+			try{
+				hasNext = _cursor.hasNext();
+			}
+			finally{
+				if(hasNext){
+					suspend(_trace, outer);
+				}
+				else{
+					_cursor.close();
+					_completed = true;
+					complete(_trace, outer);
+				}
+			}
+			return hasNext;
+		}
+
+		@Override
+		public T next() {
+			QueryTrace outer = resume(_trace);
+			try{
+				return _cursor.next();
+			}
+			finally{
+				suspend(_trace, outer);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("GraphCursor is read only");
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			return this;
+		}
+
+		@Override
+		public void close() {
+			if(_completed == false){
+				_completed = true;
+				QueryTrace outer = resume(_trace);
+				try{
+					_cursor.close();
+				}
+				finally{
+					complete(_trace, outer);
+				}
+			}
+		}
+	}
+}
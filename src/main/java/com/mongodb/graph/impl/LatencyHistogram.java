@@ -0,0 +1,116 @@
+package com.mongodb.graph.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *	Fixed size histogram of latencies in nanoseconds, laid out like an
+ *	HdrHistogram. Values below 256 are counted exactly and larger values in
+ *	buckets 1/128th the width of their power of two, so any percentile is
+ *	reported within 1% of the true value. Recording is lock free and
+ *	needs no allocation, so many threads can share one histogram.
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 7;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int EXACT_LIMIT = SUB_BUCKET_COUNT * 2;
+
+	// the widest buckets cover values up to 2^48ns, about three days
+	private static final int MAX_SHIFT = 40;
+	private static final int BUCKET_COUNT = EXACT_LIMIT + MAX_SHIFT * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong _totalCount = new AtomicLong();
+	private final AtomicLong _totalNanos = new AtomicLong();
+	private final AtomicLong _maxNanos = new AtomicLong();
+
+	void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+
+		_counts.incrementAndGet(indexOf(nanos));
+		_totalCount.incrementAndGet();
+		_totalNanos.addAndGet(nanos);
+
+		long max = _maxNanos.get();
+		while(nanos > max && _maxNanos.compareAndSet(max, nanos) == false)
+			max = _maxNanos.get();
+	}
+
+	long getCount() {
+		return _totalCount.get();
+	}
+
+	long getMaxNanos() {
+		return _maxNanos.get();
+	}
+
+	double getMeanNanos() {
+		long count = _totalCount.get();
+		return count == 0 ? 0.0 : (double) _totalNanos.get() / count;
+	}
+
+	/**
+	 * Returns the latency which the given percentage of recorded values
+	 * are at or below, or 0 if nothing has been recorded.
+	 * @param percentile a percentage from 0 to 100
+	 */
+	long getNanosAtPercentile(double percentile) {
+
+		long count = _totalCount.get();
+		if(count == 0)
+			return 0;
+		if(percentile >= 100.0)
+			return _maxNanos.get();
+
+		long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * count);
+		rank = Math.max(1, rank);
+
+		long seen = 0;
+		for(int index = 0; index < BUCKET_COUNT; index++){
+			seen += _counts.get(index);
+			if(seen >= rank)
+				return Math.min(valueOf(index), _maxNanos.get());
+		}
+
+		return _maxNanos.get();
+	}
+
+	/**
+	 * Forget every recorded value. Values recorded while the reset runs
+	 * may be partly kept.
+	 */
+	void reset() {
+		for(int index = 0; index < BUCKET_COUNT; index++)
+			_counts.set(index, 0);
+		_totalCount.set(0);
+		_totalNanos.set(0);
+		_maxNanos.set(0);
+	}
+
+	private static int indexOf(long value) {
+
+		if(value < EXACT_LIMIT)
+			return (int) value;
+
+		// keep the top eight bits of the value, the first is always set
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		if(shift > MAX_SHIFT)
+			return BUCKET_COUNT - 1;
+
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return EXACT_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	private static long valueOf(int index) {
+
+		if(index < EXACT_LIMIT)
+			return index;
+
+		// the middle of the range of values counted in the bucket
+		int shift = (index - EXACT_LIMIT) / SUB_BUCKET_COUNT + 1;
+		long subBucket = (index - EXACT_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return (subBucket << shift) + (1L << (shift - 1));
+	}
+}
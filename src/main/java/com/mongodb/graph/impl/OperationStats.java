@@ -0,0 +1,118 @@
+package com.mongodb.graph.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.graph.QueryTrace;
+
+/**
+ *	Running totals and a latency histogram for every call an
+ *	InstrumentedGraphEngine has made of one operation. Safe to read while
+ *	calls are being recorded.
+ */
+public class OperationStats implements OperationStatsMBean {
+
+	private final String _operation;
+	private final AtomicLong _roundTrips = new AtomicLong();
+	private final AtomicLong _batchFetches = new AtomicLong();
+	private final AtomicLong _documentsDecoded = new AtomicLong();
+	private final AtomicLong _edgesScanned = new AtomicLong();
+	private final AtomicLong _verticesExpanded = new AtomicLong();
+	private final LatencyHistogram _latency = new LatencyHistogram();
+
+	OperationStats(String operation) {
+		this._operation = operation;
+	}
+
+	void record(QueryTrace trace) {
+		_roundTrips.addAndGet(trace.getRoundTrips());
+		_batchFetches.addAndGet(trace.getBatchFetches());
+		_documentsDecoded.addAndGet(trace.getDocumentsDecoded());
+		_edgesScanned.addAndGet(trace.getEdgesScanned());
+		_verticesExpanded.addAndGet(trace.getVerticesExpanded());
+		_latency.record(trace.getElapsedNanos());
+	}
+
+	@Override
+	public String getOperation() {
+		return _operation;
+	}
+
+	@Override
+	public long getCount() {
+		return _latency.getCount();
+	}
+
+	@Override
+	public long getRoundTrips() {
+		return _roundTrips.get();
+	}
+
+	@Override
+	public long getBatchFetches() {
+		return _batchFetches.get();
+	}
+
+	@Override
+	public long getDocumentsDecoded() {
+		return _documentsDecoded.get();
+	}
+
+	@Override
+	public long getEdgesScanned() {
+		return _edgesScanned.get();
+	}
+
+	@Override
+	public long getVerticesExpanded() {
+		return _verticesExpanded.get();
+	}
+
+	@Override
+	public double getMeanLatencyMicros() {
+		return _latency.getMeanNanos() / 1000.0;
+	}
+
+	@Override
+	public long getMedianLatencyMicros() {
+		return getLatencyMicrosAtPercentile(50.0);
+	}
+
+	@Override
+	public long get99thPercentileLatencyMicros() {
+		return getLatencyMicrosAtPercentile(99.0);
+	}
+
+	@Override
+	public long get999thPercentileLatencyMicros() {
+		return getLatencyMicrosAtPercentile(99.9);
+	}
+
+	@Override
+	public long getMaxLatencyMicros() {
+		return _latency.getMaxNanos() / 1000;
+	}
+
+	@Override
+	public long getLatencyMicrosAtPercentile(double percentile) {
+		return _latency.getNanosAtPercentile(percentile) / 1000;
+	}
+
+	@Override
+	public void reset() {
+		_roundTrips.set(0);
+		_batchFetches.set(0);
+		_documentsDecoded.set(0);
+		_edgesScanned.set(0);
+		_verticesExpanded.set(0);
+		_latency.reset();
+	}
+
+	@Override
+	public String toString() {
+		return _operation + " [count=" + getCount() + ", roundTrips=" + getRoundTrips()
+				+ ", edgesScanned=" + getEdgesScanned()
+				+ ", p50=" + getMedianLatencyMicros() + "us"
+				+ ", p99=" + get99thPercentileLatencyMicros() + "us"
+				+ ", max=" + getMaxLatencyMicros() + "us]";
+	}
+}
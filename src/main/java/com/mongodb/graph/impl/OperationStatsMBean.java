@@ -0,0 +1,36 @@
+package com.mongodb.graph.impl;
+
+/**
+ *	Management interface of OperationStats, through which the totals for
+ *	one GraphEngine operation are exported to JMX.
+ */
+public interface OperationStatsMBean {
+
+	String getOperation();
+
+	long getCount();
+
+	long getRoundTrips();
+
+	long getBatchFetches();
+
+	long getDocumentsDecoded();
+
+	long getEdgesScanned();
+
+	long getVerticesExpanded();
+
+	double getMeanLatencyMicros();
+
+	long getMedianLatencyMicros();
+
+	long get99thPercentileLatencyMicros();
+
+	long get999thPercentileLatencyMicros();
+
+	long getMaxLatencyMicros();
+
+	long getLatencyMicrosAtPercentile(double percentile);
+
+	void reset();
+}
@@ -0,0 +1,655 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.bson.BSONObject;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.BatchFailure;
+import com.mongodb.graph.BulkLoadOptions;
+import com.mongodb.graph.BulkLoadResult;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.EdgeWriter;
+import com.mongodb.graph.GraphCursor;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.NeighborPage;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	GraphEngine which keeps edges in one collection per value of a partition
+ *	key, such as the type of the edge, each collection being searched by an
+ *	EdgeIndexGraphEngine of its own. Edges without the key stay in the
+ *	default graph_edges collection. The partition of each value is recorded
+ *	in the graph_partitions collection, so every engine opened with the same
+ *	key finds the same partitions.
+ *
+ *	A query whose EdgeFilter matches the key to a value, or to a list of
+ *	values with $in, only reads the partitions of those values. Any other
+ *	query reads every partition, all of them at once. Numbers pick the same
+ *	partition whatever their type, as they match the same edges. Paths are
+ *	searched breadth first across partitions, unless the filter names one
+ *	partition, in which case the search is left to that partition's engine.
+ *
+ *	A value without a known partition is looked up in graph_partitions, so
+ *	partitions added by other engines are found when they are queried. If
+ *	graph_edges already held edges with the key when the engine was opened
+ *	or last refreshed, for example from before the graph was partitioned,
+ *	it is read by every query along with the partitions.
+ */
+public class PartitionedGraphEngine implements GraphEngine
+{
+	public static final String DEFAULT_PARTITION_COLLECTION = "graph_partitions";
+	private static final String PARTITION_NAME_KEY = "collection";
+	private static final String PAGE_PARTITION_KEY = "c";
+	private static final String PAGE_TOKEN_KEY = "t";
+
+	private final DB _db;
+	private final String _partitionKey;
+	private final DBCollection _partitionColl;
+	private final EdgeIndexGraphEngine _defaultPartition;
+	private final Map<Object, EdgeIndexGraphEngine> _partitions =
+			new HashMap<Object, EdgeIndexGraphEngine>();
+	private boolean _defaultHasKeyedEdges = false;
+	private GraphMetrics _metrics = null;
+
+	/**
+	 * Construct an engine partitioning edges by one field of their data.
+	 * @param db the database holding the partitions
+	 * @param partitionKey the edge data field whose value picks the
+	 * partition of an edge, for example "type"
+	 */
+	public PartitionedGraphEngine(DB db, String partitionKey) {
+
+		_db = db;
+		_partitionKey = partitionKey;
+		_partitionColl = db.getCollection(DEFAULT_PARTITION_COLLECTION);
+		_defaultPartition = new EdgeIndexGraphEngine(db);
+		refreshPartitions();
+	}
+
+	public String getPartitionKey() {
+		return _partitionKey;
+	}
+
+	/**
+	 * Returns the engine of each partition by the value it holds, numbers
+	 * as a Long if they are whole and a Double if not. Settings such as the
+	 * traversal mode are made on these engines one by one.
+	 * @return the partitions known to this engine
+	 */
+	public synchronized Map<Object, EdgeIndexGraphEngine> getPartitions() {
+		return new HashMap<Object, EdgeIndexGraphEngine>(_partitions);
+	}
+
+	/**
+	 * Returns the engine over the edges without the partition key.
+	 */
+	public EdgeIndexGraphEngine getDefaultPartition() {
+		return _defaultPartition;
+	}
+
+	/**
+	 * Load the partitions created by other engines since this one was
+	 * opened or last refreshed, and check again whether graph_edges holds
+	 * edges with the key.
+	 */
+	public synchronized void refreshPartitions() {
+
+		DBCursor cursor = _partitionColl.find();
+		try{
+			for(DBObject partition : cursor){
+				Object value = partitionValue(partition.get(EdgeIndexGraphEngine.ID_KEY));
+				if(_partitions.containsKey(value) == false)
+					_partitions.put(value, openPartition(
+							(String) partition.get(PARTITION_NAME_KEY)));
+			}
+		}
+		finally{
+			cursor.close();
+		}
+
+		_defaultHasKeyedEdges = _defaultPartition.getEdgeCollection().findOne(
+				new BasicDBObject(_partitionKey, new BasicDBObject("$exists", true))) != null;
+	}
+
+	@Override
+	public synchronized void setMetrics(GraphMetrics metrics) {
+		this._metrics = metrics;
+		_defaultPartition.setMetrics(metrics);
+		for(EdgeIndexGraphEngine partition : _partitions.values())
+			partition.setMetrics(metrics);
+	}
+
+	@Override
+	public DBObject addEdge(DBObject sourceVertexId, DBObject targetVertexId, DBObject edgeData) {
+		return partitionOf(edgeData).addEdge(sourceVertexId, targetVertexId, edgeData);
+	}
+
+	@Override
+	public EdgeWriter openEdgeWriter(BulkLoadOptions options) {
+		return new PartitionedEdgeWriter(options);
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(DBObject vertexId) {
+		return getEdges(vertexId, null);
+	}
+
+	@Override
+	public Collection<DBObject> getEdges(final DBObject vertexId, final EdgeFilter filter) {
+
+		List<DBObject> edges = new ArrayList<DBObject>();
+		for(Collection<DBObject> partitionEdges : fanOut(route(filter),
+				new PartitionCall<Collection<DBObject>>(){
+			public Collection<DBObject> call(EdgeIndexGraphEngine partition) {
+				return partition.getEdges(vertexId, filter);
+			}
+		})){
+			edges.addAll(partitionEdges);
+		}
+
+		return edges;
+	}
+
+	@Override
+	public GraphCursor<DBObject> streamEdges(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+
+		// each partition's query is only sent once the ones before are read
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.isEmpty())
+			return new EmptyGraphCursor<DBObject>();
+
+		List<GraphCursor<DBObject>> cursors = new ArrayList<GraphCursor<DBObject>>();
+		for(EdgeIndexGraphEngine partition : partitions)
+			cursors.add(partition.streamEdges(vertexId, filter, batchSize, limit));
+		return ChainedGraphCursor.chain(cursors, limit);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(DBObject vertexId) {
+		return getNeighbors(vertexId, null);
+	}
+
+	@Override
+	public Collection<Relationship> getNeighbors(final DBObject vertexId, final EdgeFilter filter) {
+
+		List<Relationship> neighbors = new ArrayList<Relationship>();
+		for(Collection<Relationship> partitionNeighbors : fanOut(route(filter),
+				new PartitionCall<Collection<Relationship>>(){
+			public Collection<Relationship> call(EdgeIndexGraphEngine partition) {
+				return partition.getNeighbors(vertexId, filter);
+			}
+		})){
+			neighbors.addAll(partitionNeighbors);
+		}
+
+		return neighbors;
+	}
+
+	@Override
+	public Map<DBObject, List<Relationship>> getNeighbors(
+			final Collection<DBObject> vertexIds, final EdgeFilter filter) {
+
+		Map<DBObject, List<Relationship>> expansion =
+				new LinkedHashMap<DBObject, List<Relationship>>();
+		for(DBObject vertexId : vertexIds)
+			expansion.put(vertexId, new ArrayList<Relationship>());
+
+		for(Map<DBObject, List<Relationship>> partitionExpansion : fanOut(route(filter),
+				new PartitionCall<Map<DBObject, List<Relationship>>>(){
+			public Map<DBObject, List<Relationship>> call(EdgeIndexGraphEngine partition) {
+				return partition.getNeighbors(vertexIds, filter);
+			}
+		})){
+			for(Map.Entry<DBObject, List<Relationship>> entry : partitionExpansion.entrySet()){
+				if(entry.getValue() != null)
+					expansion.get(entry.getKey()).addAll(entry.getValue());
+			}
+		}
+
+		return expansion;
+	}
+
+	@Override
+	public GraphCursor<Relationship> streamNeighbors(DBObject vertexId,
+			EdgeFilter filter, int batchSize, int limit) {
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.isEmpty())
+			return new EmptyGraphCursor<Relationship>();
+
+		List<GraphCursor<Relationship>> cursors = new ArrayList<GraphCursor<Relationship>>();
+		for(EdgeIndexGraphEngine partition : partitions)
+			cursors.add(partition.streamNeighbors(vertexId, filter, batchSize, limit));
+		return ChainedGraphCursor.chain(cursors, limit);
+	}
+
+	@Override
+	public NeighborPage getNeighborPage(DBObject vertexId, EdgeFilter filter,
+			int pageSize, String continuationToken) {
+
+		if(pageSize <= 0)
+			throw new IllegalArgumentException("pageSize must be positive");
+
+		// pages run through the partitions in turn, ordered by collection
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		int current = 0;
+		String partitionToken = null;
+		if(continuationToken != null){
+			BSONObject position = ContinuationTokens.decode(continuationToken);
+			current = partitions.size();
+			for(int i = 0; i < partitions.size(); i++){
+				if(partitions.get(i).getEdgeCollection().getName().equals(
+						position.get(PAGE_PARTITION_KEY)))
+					current = i;
+			}
+			partitionToken = (String) position.get(PAGE_TOKEN_KEY);
+		}
+
+		List<Relationship> relationships = new ArrayList<Relationship>();
+		for(; current < partitions.size(); current++){
+			NeighborPage page = partitions.get(current).getNeighborPage(vertexId,
+					filter, pageSize - relationships.size(), partitionToken);
+			relationships.addAll(page.getRelationships());
+			partitionToken = page.getContinuationToken();
+			if(page.hasMore() || relationships.size() == pageSize)
+				break;
+		}
+
+		if(current == partitions.size())
+			return new NeighborPage(relationships, null);
+
+		if(partitionToken == null){
+			// this partition is done, the next page starts with the next one
+			if(++current == partitions.size())
+				return new NeighborPage(relationships, null);
+		}
+
+		BasicDBObject position = new BasicDBObject(PAGE_PARTITION_KEY,
+				partitions.get(current).getEdgeCollection().getName());
+		if(partitionToken != null)
+			position.append(PAGE_TOKEN_KEY, partitionToken);
+		return new NeighborPage(relationships, ContinuationTokens.encode(position));
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, PathListener listener) {
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.size() == 1)
+			return partitions.get(0).findPaths(fromVertexId, targetVertexId,
+					filter, degreeLimit, listener);
+
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(listener));
+	}
+
+	@Override
+	public Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId, EdgeFilter filter,
+			int degreeLimit, TraversalOptions options, TraversalListener listener) {
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.size() == 1)
+			return partitions.get(0).findPaths(fromVertexId, targetVertexId,
+					filter, degreeLimit, options, listener);
+
+		return findPaths(fromVertexId, targetVertexId, filter, degreeLimit,
+				new TraversalControl(options, listener));
+	}
+
+	private Collection<List<Relationship>> findPaths(
+			DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, int degreeLimit, TraversalControl control) {
+
+		// level by level, so each frontier is one query per partition
+		new FrontierPathFinder(this, _metrics).findPathsBreadthFirst(fromVertexId,
+				targetVertexId, filter, degreeLimit, control);
+
+		return control.complete();
+	}
+
+	@Override
+	public List<Relationship> shortestPath(DBObject fromVertexId,
+			DBObject targetVertexId, EdgeFilter filter, int degreeLimit) {
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.size() == 1)
+			return partitions.get(0).shortestPath(fromVertexId, targetVertexId,
+					filter, degreeLimit);
+
+		return new FrontierPathFinder(this, _metrics).findShortestPath(
+				fromVertexId, targetVertexId, filter, degreeLimit);
+	}
+
+	@Override
+	public List<List<Relationship>> kShortestPaths(DBObject fromVertexId,
+			DBObject targetVertexId, int k, EdgeFilter filter, int degreeLimit) {
+
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.size() == 1)
+			return partitions.get(0).kShortestPaths(fromVertexId, targetVertexId,
+					k, filter, degreeLimit);
+
+		return new FrontierPathFinder(this, _metrics).findShortestPaths(
+				fromVertexId, targetVertexId, k, filter, degreeLimit);
+	}
+
+	@Override
+	public WeightedPath cheapestPath(DBObject fromVertexId, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic) {
+
+		List<EdgeIndexGraphEngine> partitions = route(filter);
+		if(partitions.size() == 1)
+			return partitions.get(0).cheapestPath(fromVertexId, targetVertexId,
+					filter, cost, heuristic);
+
+		return new WeightedPathFinder(this, _metrics).findCheapestPath(
+				fromVertexId, targetVertexId, filter, cost, heuristic);
+	}
+
+	/**
+	 * Returns the partition holding edges with the given data, creating
+	 * it if this is the first edge with its value of the key.
+	 */
+	private EdgeIndexGraphEngine partitionOf(DBObject edgeData) {
+
+		Object value = edgeData == null ? null : edgeData.get(_partitionKey);
+		if(value == null)
+			return _defaultPartition;
+
+		synchronized(this){
+			EdgeIndexGraphEngine partition = _partitions.get(partitionValue(value));
+			if(partition == null){
+				partition = openPartition(createPartition(value));
+				_partitions.put(partitionValue(value), partition);
+			}
+			return partition;
+		}
+	}
+
+	/**
+	 * Returns the partition of a value, looking it up in the registry if
+	 * another engine has created it since this one last refreshed.
+	 * @return the partition, or null if the value has none
+	 */
+	private synchronized EdgeIndexGraphEngine existingPartition(Object value) {
+
+		EdgeIndexGraphEngine partition = _partitions.get(partitionValue(value));
+		if(partition == null){
+			DBObject registered = _partitionColl.findOne(
+					new BasicDBObject(EdgeIndexGraphEngine.ID_KEY, value));
+			if(registered != null){
+				partition = openPartition((String) registered.get(PARTITION_NAME_KEY));
+				_partitions.put(partitionValue(value), partition);
+			}
+		}
+		return partition;
+	}
+
+	/**
+	 * Returns the value as it is known in the map of partitions. Numbers
+	 * of any type with the same value are the same key, as they are to the
+	 * server.
+	 */
+	private static Object partitionValue(Object value) {
+
+		if(value instanceof Number == false)
+			return value;
+
+		Number number = (Number) value;
+		double real = number.doubleValue();
+		if(real == Math.rint(real) && Double.isInfinite(real) == false)
+			return Long.valueOf(number.longValue());
+		return Double.valueOf(real);
+	}
+
+	private String createPartition(Object value) {
+
+		DBObject existing = _partitionColl.findOne(
+				new BasicDBObject(EdgeIndexGraphEngine.ID_KEY, value));
+		if(existing != null)
+			return (String) existing.get(PARTITION_NAME_KEY);
+
+		// the value is kept in the registry, the name need only be unique
+		String base = EdgeIndexGraphEngine.DEFAULT_EDGE_COLLECTION + "_" +
+				value.toString().replaceAll("[^A-Za-z0-9_]", "_");
+		String name = base;
+		for(int suffix = 2; _partitionColl.findOne(
+				new BasicDBObject(PARTITION_NAME_KEY, name)) != null; suffix++)
+			name = base + "_" + suffix;
+
+		try{
+			_partitionColl.insert(new BasicDBObject(EdgeIndexGraphEngine.ID_KEY, value)
+					.append(PARTITION_NAME_KEY, name), WriteConcern.ACKNOWLEDGED);
+		}
+		catch(MongoException.DuplicateKey e){
+			// another engine created the partition first
+			return (String) _partitionColl.findOne(new BasicDBObject(
+					EdgeIndexGraphEngine.ID_KEY, value)).get(PARTITION_NAME_KEY);
+		}
+		return name;
+	}
+
+	private EdgeIndexGraphEngine openPartition(String collectionName) {
+		EdgeIndexGraphEngine partition = new EdgeIndexGraphEngine(_db, collectionName);
+		partition.setMetrics(_metrics);
+		return partition;
+	}
+
+	/**
+	 * Returns the partitions which may hold edges matching the filter, in
+	 * order of their collection names with the default partition first.
+	 */
+	private List<EdgeIndexGraphEngine> route(EdgeFilter filter) {
+
+		Object constraint = filter == null || filter.getQuery() == null ?
+				null : filter.getQuery().get(_partitionKey);
+		Collection<?> values = null;
+		if(constraint instanceof DBObject){
+			DBObject operators = (DBObject) constraint;
+			if(operators.keySet().size() == 1 && operators.get("$in") instanceof Collection)
+				values = (Collection<?>) operators.get("$in");
+			else if(operators.keySet().isEmpty() == false &&
+					operators.keySet().iterator().next().startsWith("$"))
+				values = null;
+			else
+				values = Collections.singletonList(constraint);
+		}
+		else if(constraint != null)
+			values = Collections.singletonList(constraint);
+
+		TreeMap<String, EdgeIndexGraphEngine> routed = new TreeMap<String, EdgeIndexGraphEngine>();
+		boolean readDefault;
+		synchronized(this){
+			readDefault = values == null || _defaultHasKeyedEdges;
+			if(values == null){
+				for(EdgeIndexGraphEngine partition : _partitions.values())
+					routed.put(partition.getEdgeCollection().getName(), partition);
+			}
+			else{
+				for(Object value : values){
+					EdgeIndexGraphEngine partition = existingPartition(value);
+					if(partition != null)
+						routed.put(partition.getEdgeCollection().getName(), partition);
+				}
+			}
+		}
+
+		List<EdgeIndexGraphEngine> partitions = new ArrayList<EdgeIndexGraphEngine>();
+		if(readDefault)
+			partitions.add(_defaultPartition);
+		partitions.addAll(routed.values());
+		return partitions;
+	}
+
+	/**
+	 * Make the same call on each partition at once, returning the results
+	 * in the order of the partitions.
+	 */
+	private <T> List<T> fanOut(List<EdgeIndexGraphEngine> partitions, PartitionCall<T> call) {
+
+		List<T> results = new ArrayList<T>(partitions.size());
+		if(partitions.size() == 1){
+			results.add(call.call(partitions.get(0)));
+			return results;
+		}
+
+		List<PartitionTask<T>> tasks = new ArrayList<PartitionTask<T>>(partitions.size());
+		for(EdgeIndexGraphEngine partition : partitions){
+			PartitionTask<T> task = new PartitionTask<T>(partition, call);
+			ForkJoinPool.commonPool().execute(task);
+			tasks.add(task);
+		}
+
+		for(PartitionTask<T> task : tasks)
+			results.add(task.join());
+		return results;
+	}
+
+	private interface PartitionCall<T> {
+		T call(EdgeIndexGraphEngine partition);
+	}
+
+	/**
+	 * Runs a call on one partition from the common pool, which is told
+	 * the call blocks so it can keep its other threads busy meanwhile.
+	 */
+	private static class PartitionTask<T> extends RecursiveTask<T>
+			implements ForkJoinPool.ManagedBlocker {
+
+		private static final long serialVersionUID = 1L;
+
+		private final EdgeIndexGraphEngine _partition;
+		private final PartitionCall<T> _call;
+		private T _result = null;
+		private boolean _done = false;
+
+		PartitionTask(EdgeIndexGraphEngine partition, PartitionCall<T> call) {
+			this._partition = partition;
+			this._call = call;
+		}
+
+		@Override
+		protected T compute() {
+			try{
+				ForkJoinPool.managedBlock(this);
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new MongoException("Interrupted reading partition", e);
+			}
+			return _result;
+		}
+
+		public boolean block() {
+			_result = _call.call(_partition);
+			_done = true;
+			return true;
+		}
+
+		public boolean isReleasable() {
+			return _done;
+		}
+	}
+
+	/**
+	 * Passes each edge to a writer opened on its partition, opening the
+	 * writers as their partitions are first reached.
+	 */
+	private class PartitionedEdgeWriter implements EdgeWriter {
+
+		private final BulkLoadOptions _options;
+		private final Map<EdgeIndexGraphEngine, EdgeWriter> _writers =
+				new LinkedHashMap<EdgeIndexGraphEngine, EdgeWriter>();
+		private final long _startTime = System.currentTimeMillis();
+		private long _endTime = 0;
+		private WriteConcern _writeConcern = null;
+
+		PartitionedEdgeWriter(BulkLoadOptions options) {
+			this._options = options;
+		}
+
+		@Override
+		public void add(DBObject sourceId, DBObject destinationId, DBObject edgeData) {
+
+			EdgeIndexGraphEngine partition = partitionOf(edgeData);
+			EdgeWriter writer = _writers.get(partition);
+			if(writer == null){
+				writer = partition.openEdgeWriter(_options);
+				if(_writeConcern != null)
+					writer.setWriteConcern(_writeConcern);
+				_writers.put(partition, writer);
+			}
+			writer.add(sourceId, destinationId, edgeData);
+		}
+
+		@Override
+		public void setWriteConcern(WriteConcern writeConcern) {
+			if(writeConcern == null)
+				throw new IllegalArgumentException("writeConcern must not be null");
+			_writeConcern = writeConcern;
+			for(EdgeWriter writer : _writers.values())
+				writer.setWriteConcern(writeConcern);
+		}
+
+		@Override
+		public void flush() {
+			for(EdgeWriter writer : _writers.values())
+				writer.flush();
+		}
+
+		@Override
+		public BulkLoadResult getResult() {
+
+			long written = 0;
+			long failed = 0;
+			int batches = 0;
+			long elapsed = (_endTime > 0 ? _endTime : System.currentTimeMillis()) - _startTime;
+			List<BatchFailure> failures = new ArrayList<BatchFailure>();
+			for(EdgeWriter writer : _writers.values()){
+				BulkLoadResult result = writer.getResult();
+				written += result.getEdgesWritten();
+				failed += result.getEdgesFailed();
+				batches += result.getBatchesWritten();
+				failures.addAll(result.getFailures());
+			}
+			return new BulkLoadResult(written, failed, batches, failures, elapsed);
+		}
+
+		@Override
+		public void close() {
+			for(EdgeWriter writer : _writers.values())
+				writer.close();
+			_endTime = System.currentTimeMillis();
+		}
+	}
+}
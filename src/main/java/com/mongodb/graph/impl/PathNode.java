@@ -0,0 +1,92 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.Relationship;
+
+/**
+ *	A node in a tree of partial paths built up during a traversal. Each
+ *	node refers to its parent rather than copying the path so far, which
+ *	lets many partial paths share a common prefix. The root node has no
+ *	relationship and represents the vertex the traversal started from.
+ */
+class PathNode {
+
+	private final PathNode _parent;
+	private final Relationship _relationship;
+	private final DBObject _vertexId;
+	private final int _length;
+
+	/**
+	 * Construct the root node for a traversal.
+	 * @param startVertexId the vertex from which the traversal begins
+	 */
+	PathNode(DBObject startVertexId) {
+		this._parent = null;
+		this._relationship = null;
+		this._vertexId = startVertexId;
+		this._length = 0;
+	}
+
+	/**
+	 * Construct a node which extends the path of its parent by one hop.
+	 * @param parent the path being extended
+	 * @param relationship the hop, relative to the parent's vertex
+	 */
+	PathNode(PathNode parent, Relationship relationship) {
+		this._parent = parent;
+		this._relationship = relationship;
+		this._vertexId = relationship.getRelatedId();
+		this._length = parent._length + 1;
+	}
+
+	PathNode getParent() {
+		return _parent;
+	}
+
+	Relationship getRelationship() {
+		return _relationship;
+	}
+
+	DBObject getVertexId() {
+		return _vertexId;
+	}
+
+	/**
+	 * @return the number of hops from the root to this node
+	 */
+	int length() {
+		return _length;
+	}
+
+	/**
+	 * Returns true if the vertex appears anywhere on the path from the
+	 * root to this node, including the root itself.
+	 */
+	boolean contains(DBObject vertexId) {
+		for(PathNode node = this; node != null; node = node._parent){
+			if(node._vertexId.equals(vertexId))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Materialize the path from the root to this node as a list of
+	 * relationships, each relative to the previous vertex in the list.
+	 */
+	List<Relationship> toPath() {
+		Relationship[] hops = new Relationship[_length];
+		for(PathNode node = this; node._parent != null; node = node._parent)
+			hops[node._length - 1] = node._relationship;
+
+		List<Relationship> path = new ArrayList<Relationship>(_length);
+		for(Relationship hop : hops)
+			path.add(hop);
+
+		return path;
+	}
+}
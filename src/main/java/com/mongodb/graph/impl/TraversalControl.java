@@ -0,0 +1,217 @@
+package com.mongodb.graph.impl;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.PathListener;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.TraversalAction;
+import com.mongodb.graph.TraversalListener;
+import com.mongodb.graph.TraversalOptions;
+
+/**
+ *	The state shared by every step of one path search. It collects the
+ *	results, passes them to the listener and decides when the search must
+ *	stop, whether because the listener asked or because a limit of the
+ *	TraversalOptions was reached. Searches check it before every edge they
+ *	examine and unwind, closing their cursors, once it has stopped.
+ *	A search may share one control between several threads, listeners are
+ *	then still called by one thread at a time, as are metrics passed
+ *	through serialize().
+ */
+class TraversalControl {
+
+	private final int _maxResults;
+	private final long _maxEdgesScanned;
+	private final long _deadlineNanos;
+	private final boolean _hasDeadline;
+	private final Future<?> _cancellation;
+	private final TraversalListener _listener;
+	private final PathListener _pathListener;
+	private final List<List<Relationship>> _resultList = new LinkedList<List<Relationship>>();
+
+	private long _edgesScanned = 0;
+	private volatile boolean _stopped = false;
+
+	/**
+	 * Control for an unlimited search reporting to a PathListener.
+	 */
+	TraversalControl(PathListener listener) {
+		this(null, null, listener);
+	}
+
+	/**
+	 * Control for a search within the given limits.
+	 * @param options the limits, or null for none. The time limit starts now.
+	 * @param listener the listener steering the search, may be null
+	 */
+	TraversalControl(TraversalOptions options, TraversalListener listener) {
+		this(options, listener, null);
+	}
+
+	private TraversalControl(TraversalOptions options,
+			TraversalListener listener, PathListener pathListener) {
+
+		_maxResults = options != null ? options.getMaxResults() : 0;
+		_maxEdgesScanned = options != null ? options.getMaxEdgesScanned() : 0;
+		_hasDeadline = options != null && options.getTimeLimitMillis() > 0;
+		_deadlineNanos = _hasDeadline ?
+				System.nanoTime() + options.getTimeLimitMillis() * 1000000L : 0;
+		_cancellation = options != null ? options.getCancellation() : null;
+		_listener = listener;
+		_pathListener = pathListener;
+	}
+
+	/**
+	 * Returns true once the search must stop, checking the deadline and
+	 * the cancellation of the options.
+	 */
+	boolean isStopped() {
+		if(_stopped == false && _hasDeadline && System.nanoTime() - _deadlineNanos >= 0)
+			_stopped = true;
+		if(_stopped == false && _cancellation != null && _cancellation.isCancelled())
+			_stopped = true;
+		return _stopped;
+	}
+
+	void stop() {
+		_stopped = true;
+	}
+
+	/**
+	 * Count an edge about to be examined.
+	 * @return false if the search must stop instead
+	 */
+	synchronized boolean scanEdge() {
+		_edgesScanned++;
+		if(_maxEdgesScanned > 0 && _edgesScanned > _maxEdgesScanned)
+			_stopped = true;
+		return isStopped() == false;
+	}
+
+	/**
+	 * Returns the milliseconds left before the deadline, at least 1, or 0
+	 * if the search has no deadline.
+	 */
+	long getRemainingMillis() {
+		if(_hasDeadline == false)
+			return 0;
+		return Math.max(1, (_deadlineNanos - System.nanoTime()) / 1000000L);
+	}
+
+	/**
+	 * Returns the most results the search may still find, or 0 if there is
+	 * no limit.
+	 */
+	synchronized int getRemainingResults() {
+		return _maxResults == 0 ? 0 : Math.max(1, _maxResults - _resultList.size());
+	}
+
+	/**
+	 * Returns true if a listener wants to see branches as they are reached.
+	 */
+	boolean watchesBranches() {
+		return _listener != null;
+	}
+
+	/**
+	 * Add a path to the results and report it.
+	 * @return false if the search must stop now
+	 */
+	synchronized boolean foundPath(List<Relationship> path) {
+
+		_resultList.add(path);
+		if(_pathListener != null)
+			_pathListener.handlePath(path);
+		if(_listener != null && _listener.handlePath(path) == TraversalAction.STOP)
+			_stopped = true;
+		if(_maxResults > 0 && _resultList.size() >= _maxResults)
+			_stopped = true;
+
+		return isStopped() == false;
+	}
+
+	/**
+	 * Add a path to the results and report it, unless the search has 
+	 * already stopped, as it may have on another thread.
+	 * @return true if the path was added
+	 */
+	synchronized boolean offerPath(List<Relationship> path) {
+
+		if(_stopped)
+			return false;
+		foundPath(path);
+		return true;
+	}
+
+	/**
+	 * Ask whether a branch which has not reached the target may be extended.
+	 * @return false if the branch is pruned or the search must stop
+	 */
+	synchronized boolean extendBranch(List<Relationship> branch) {
+
+		if(isStopped())
+			return false;
+		if(_listener == null)
+			return true;
+
+		TraversalAction action = _listener.handleBranch(Collections.unmodifiableList(branch));
+		if(action == TraversalAction.STOP)
+			_stopped = true;
+		return action == TraversalAction.CONTINUE;
+	}
+
+	/**
+	 * Returns metrics which pass every call on while holding the lock of
+	 * this control, so threads sharing it never call them at once.
+	 * @param metrics the metrics of the engine, may be null
+	 * @return the serialized metrics, or null if metrics is null
+	 */
+	GraphMetrics serialize(final GraphMetrics metrics) {
+
+		if(metrics == null)
+			return null;
+		return new GraphMetrics(){
+			public void roundTrip() {
+				synchronized(TraversalControl.this){
+					metrics.roundTrip();
+				}
+			}
+			public void batchFetched(int documents) {
+				synchronized(TraversalControl.this){
+					metrics.batchFetched(documents);
+				}
+			}
+			public void edgesScanned(int edges) {
+				synchronized(TraversalControl.this){
+					metrics.edgesScanned(edges);
+				}
+			}
+			public void verticesExpanded(int level, int vertices) {
+				synchronized(TraversalControl.this){
+					metrics.verticesExpanded(level, vertices);
+				}
+			}
+		};
+	}
+
+	List<List<Relationship>> getResultList() {
+		return _resultList;
+	}
+
+	/**
+	 * Tell the listener the search is over and return the results.
+	 */
+	synchronized List<List<Relationship>> complete() {
+
+		if(_pathListener != null)
+			_pathListener.complete();
+		if(_listener != null)
+			_listener.complete(_stopped == false);
+
+		return _resultList;
+	}
+}
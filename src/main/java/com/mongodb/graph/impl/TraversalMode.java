@@ -0,0 +1,41 @@
+package com.mongodb.graph.impl;
+
+/*
+ * Enumeration used to select the strategy an engine uses to
+ * traverse the graph when searching for paths. All modes return
+ * the same set of paths, they differ in how the edge store is
+ * queried along the way.
+ */
+public enum TraversalMode {
+
+	/*
+	 * Recursive walk that queries the edges of each visited
+	 * vertex individually. Paths are found in depth first order.
+	 */
+	DEPTH_FIRST,
+
+	/*
+	 * Level synchronous walk that queries the edges of the whole
+	 * frontier in a single batched query per level. Paths are found
+	 * in order of increasing length.
+	 */
+	BREADTH_FIRST,
+
+	/*
+	 * Level synchronous walk that grows one frontier from the start
+	 * vertex and another from the target vertex, each for half the
+	 * degree limit, and joins them where they meet. Paths are found
+	 * in order of increasing length.
+	 */
+	BIDIRECTIONAL,
+
+	/*
+	 * Depth first walk whose sibling branches are explored at the same
+	 * time on the common fork/join pool, with a cap on the queries in
+	 * flight. Paths are reported as they are found, the results come
+	 * back in depth first order. A search cut short by a limit on its
+	 * results or edges scanned keeps the paths found before the limit,
+	 * which vary from run to run with the timing of the branches.
+	 */
+	PARALLEL
+}
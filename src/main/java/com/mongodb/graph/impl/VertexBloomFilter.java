@@ -0,0 +1,245 @@
+package com.mongodb.graph.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ *	Bloom filter of every vertex which is the source or destination of an
+ *	edge. A vertex the filter has never seen has no edges, so queries about
+ *	it can be answered without a round trip. A vertex it has seen may still
+ *	have no edges, with the false positive rate the filter was sized for.
+ *
+ *	The filter is split into blocks of BLOCK_BITS bits and all the bits for
+ *	a vertex fall in one block, chosen by its hash. Adding a vertex then
+ *	changes at most one block, which is persisted as a document of its
+ *	non zero 64 bit words so only the changed words are written. The
+ *	parameters of the filter are kept in a document of their own, and a
+ *	filter loaded with different parameters is rebuilt from the edges.
+ *
+ *	New bits are ORed into their words with $bit, so several engines may add
+ *	to the filter of one edge collection without losing each other's bits.
+ *	Servers without $bit get the words with $set from the copy held in
+ *	memory instead, and then one engine must maintain the filter. Other
+ *	engines may load it to answer queries and reload it to see later edges.
+ */
+class VertexBloomFilter {
+
+	static final String DEFAULT_FILTER_COLLECTION = "graph_vertex_filter";
+	private static final int BLOCK_WORDS = 1024;
+	private static final int BLOCK_BITS = BLOCK_WORDS * 64;
+	private static final String ID_KEY = "_id";
+	private static final String WORDS_KEY = "w";
+	private static final String PARAMS_ID = "params";
+	private static final String BLOCKS_KEY = "blocks";
+	private static final String HASHES_KEY = "hashes";
+
+	private final DBCollection _filterColl;
+	private final int _blockCount;
+	private final int _hashCount;
+	private final long[] _words;
+	private boolean _setWords = false;
+
+	/**
+	 * Size a filter for a number of vertices at a false positive rate.
+	 * @param filterColl the collection the filter is persisted in
+	 * @param expectedVertices the number of vertices expected in the graph
+	 * @param falsePositiveRate the chance that a vertex without edges is 
+	 * reported as present, between 0 and 1
+	 */
+	VertexBloomFilter(DBCollection filterColl, long expectedVertices, double falsePositiveRate) {
+
+		if(expectedVertices <= 0)
+			throw new IllegalArgumentException("expectedVertices must be positive");
+		if(falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+
+		// the usual optimum, m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes
+		double bits = -expectedVertices * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		long blocks = (long) Math.ceil(bits / BLOCK_BITS);
+		if(blocks * BLOCK_WORDS > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("filter too large for " + expectedVertices + " vertices");
+
+		_filterColl = filterColl;
+		_blockCount = (int) blocks;
+		_hashCount = Math.max(1, (int) Math.round(bits / expectedVertices * Math.log(2)));
+		_words = new long[_blockCount * BLOCK_WORDS];
+	}
+
+	/**
+	 * Read the persisted filter into memory.
+	 * @return false if there is no persisted filter with these parameters,
+	 * in which case the filter is left empty
+	 */
+	synchronized boolean load() {
+
+		clear();
+		DBObject params = _filterColl.findOne(new BasicDBObject(ID_KEY, PARAMS_ID));
+		if(params == null || ((Number) params.get(BLOCKS_KEY)).intValue() != _blockCount
+				|| ((Number) params.get(HASHES_KEY)).intValue() != _hashCount)
+			return false;
+
+		DBCursor blocks = _filterColl.find(new BasicDBObject(ID_KEY,
+				new BasicDBObject("$ne", PARAMS_ID)));
+		try{
+			for(DBObject block : blocks){
+				int base = ((Number) block.get(ID_KEY)).intValue() * BLOCK_WORDS;
+				DBObject words = (DBObject) block.get(WORDS_KEY);
+				if(words == null)
+					continue;
+				for(String word : words.keySet())
+					_words[base + Integer.parseInt(word)] = ((Number) words.get(word)).longValue();
+			}
+		}
+		finally{
+			blocks.close();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Rebuild the filter from every edge in an edge collection, replacing
+	 * whatever was persisted.
+	 */
+	synchronized void rebuild(DBCollection edgeColl, String sourceKey, String destKey) {
+
+		clear();
+		DBCursor edges = edgeColl.find(new BasicDBObject(), 
+				new BasicDBObject(ID_KEY, false).append(sourceKey, true).append(destKey, true));
+		try{
+			for(DBObject edge : edges){
+				setBits((DBObject) edge.get(sourceKey), null);
+				setBits((DBObject) edge.get(destKey), null);
+			}
+		}
+		finally{
+			edges.close();
+		}
+
+		// the parameters go last, a partly written filter is never loaded
+		_filterColl.drop();
+		for(int block = 0; block < _blockCount; block++){
+			BasicDBObject words = new BasicDBObject();
+			for(int word = 0; word < BLOCK_WORDS; word++){
+				long value = _words[block * BLOCK_WORDS + word];
+				if(value != 0)
+					words.append(Integer.toString(word), value);
+			}
+			if(words.isEmpty() == false)
+				_filterColl.insert(new BasicDBObject(ID_KEY, block).append(WORDS_KEY, words));
+		}
+		_filterColl.insert(new BasicDBObject(ID_KEY, PARAMS_ID)
+				.append(BLOCKS_KEY, _blockCount).append(HASHES_KEY, _hashCount));
+	}
+
+	/**
+	 * Returns false if the vertex is certainly not the end of any edge.
+	 */
+	synchronized boolean mightContain(DBObject vertexId) {
+
+		long hash = VertexKeys.keyOf(vertexId);
+		int base = blockOf(hash) * BLOCK_WORDS;
+		long step = step(hash);
+		long probe = VertexKeys.mix(hash);
+		for(int i = 0; i < _hashCount; i++, probe += step){
+			int bit = (int) (probe & (BLOCK_BITS - 1));
+			if((_words[base + (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Add vertices to the filter, then persist the words which changed with
+	 * one update per block. Vertices must be added before their edges are
+	 * written, so that a failure in between can only leave a false positive.
+	 */
+	synchronized void add(Collection<DBObject> vertexIds) {
+
+		Map<Integer, Map<Integer, Long>> changes = new HashMap<Integer, Map<Integer, Long>>();
+		for(DBObject vertexId : vertexIds){
+			if(vertexId != null)
+				setBits(vertexId, changes);
+		}
+
+		for(Map.Entry<Integer, Map<Integer, Long>> change : changes.entrySet()){
+			BasicDBObject block = new BasicDBObject(ID_KEY, change.getKey());
+			if(_setWords == false){
+				BasicDBObject masks = new BasicDBObject();
+				for(Map.Entry<Integer, Long> word : change.getValue().entrySet())
+					masks.append(WORDS_KEY + "." + word.getKey(),
+							new BasicDBObject("or", word.getValue()));
+				try{
+					_filterColl.update(block, new BasicDBObject("$bit", masks), true, false);
+					continue;
+				}
+				catch(MongoException e){
+					// the server has no $bit, the words are set whole from now on
+					_setWords = true;
+				}
+			}
+
+			int base = change.getKey() * BLOCK_WORDS;
+			BasicDBObject words = new BasicDBObject();
+			for(int word : change.getValue().keySet())
+				words.append(WORDS_KEY + "." + word, _words[base + word]);
+			_filterColl.update(block, new BasicDBObject("$set", words), true, false);
+		}
+	}
+
+	private void setBits(DBObject vertexId, Map<Integer, Map<Integer, Long>> changes) {
+
+		long hash = VertexKeys.keyOf(vertexId);
+		int block = blockOf(hash);
+		int base = block * BLOCK_WORDS;
+		long step = step(hash);
+		long probe = VertexKeys.mix(hash);
+
+		for(int i = 0; i < _hashCount; i++, probe += step){
+			int bit = (int) (probe & (BLOCK_BITS - 1));
+			int word = bit >>> 6;
+			long mask = 1L << bit;
+			if((_words[base + word] & mask) != 0)
+				continue;
+
+			_words[base + word] |= mask;
+			if(changes == null)
+				continue;
+
+			// the new bits of each changed word, by block
+			Map<Integer, Long> blockChanges = changes.get(block);
+			if(blockChanges == null){
+				blockChanges = new TreeMap<Integer, Long>();
+				changes.put(block, blockChanges);
+			}
+			Long newBits = blockChanges.get(word);
+			blockChanges.put(word, newBits == null ? mask : newBits | mask);
+		}
+	}
+
+	private void clear() {
+		Arrays.fill(_words, 0L);
+	}
+
+	private int blockOf(long hash) {
+		return (int) ((hash >>> 1) % _blockCount);
+	}
+
+	/**
+	 * The probes of a vertex step through its block by an odd amount, so
+	 * they only repeat after visiting every bit.
+	 */
+	private static long step(long hash) {
+		return VertexKeys.mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+	}
+}
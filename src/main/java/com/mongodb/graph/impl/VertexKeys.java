@@ -0,0 +1,97 @@
+package com.mongodb.graph.impl;
+
+import java.util.Date;
+
+import org.bson.BSONObject;
+import org.bson.types.ObjectId;
+
+import com.mongodb.DBObject;
+
+/**
+ *	Fixed width 64 bit keys for vertex ids, which are arbitrary documents.
+ *	Equal ids always have equal keys, but different ids may share a key,
+ *	so a key match must still be confirmed against the full ids.
+ */
+final class VertexKeys {
+
+	private VertexKeys() {
+	}
+
+	/**
+	 * Returns the key of a vertex id, a 64 bit FNV-1a over its fields. 
+	 * Numbers are hashed by value, as the server matches an int against a
+	 * long or double of equal value.
+	 */
+	static long keyOf(DBObject vertexId) {
+		return mix(hashValue(0xCBF29CE484222325L, vertexId));
+	}
+
+	private static long hashValue(long hash, Object value) {
+
+		// lists first, a decoded array is also a BSONObject
+		if(value instanceof Iterable){
+			hash = hashLong(hash, 'a');
+			for(Object element : (Iterable<?>) value)
+				hash = hashValue(hash, element);
+			return hashLong(hash, 'e');
+		}
+		else if(value instanceof BSONObject){
+			BSONObject document = (BSONObject) value;
+			hash = hashLong(hash, 'o');
+			for(String key : document.keySet()){
+				hash = hashString(hash, key);
+				hash = hashValue(hash, document.get(key));
+			}
+			return hashLong(hash, 'e');
+		}
+		else if(value instanceof Number){
+			double number = ((Number) value).doubleValue();
+			return number == Math.rint(number) && Math.abs(number) < 0x1p63 ?
+					hashLong(hashLong(hash, 'i'), (long) number) :
+					hashLong(hashLong(hash, 'd'), Double.doubleToLongBits(number));
+		}
+		else if(value instanceof Date){
+			return hashLong(hashLong(hash, 't'), ((Date) value).getTime());
+		}
+		else if(value instanceof ObjectId){
+			for(byte b : ((ObjectId) value).toByteArray())
+				hash = hashByte(hash, b);
+			return hash;
+		}
+		else if(value == null){
+			return hashLong(hash, 'n');
+		}
+
+		return hashString(hashLong(hash, 's'), value.toString());
+	}
+
+	private static long hashString(long hash, String value) {
+		for(int i = 0; i < value.length(); i++){
+			char c = value.charAt(i);
+			hash = hashByte(hashByte(hash, c >>> 8), c);
+		}
+		return hashByte(hash, 0);
+	}
+
+	private static long hashLong(long hash, long value) {
+		for(int shift = 0; shift < 64; shift += 8)
+			hash = hashByte(hash, (int) (value >>> shift));
+		return hash;
+	}
+
+	private static long hashByte(long hash, int b) {
+		return (hash ^ (b & 0xFF)) * 0x100000001B3L;
+	}
+
+	/**
+	 * The finalizer of MurmurHash3, to spread FNV's weak low bits.
+	 */
+	static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,164 @@
+package com.mongodb.graph.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mongodb.DBObject;
+import com.mongodb.graph.CostHeuristic;
+import com.mongodb.graph.EdgeCost;
+import com.mongodb.graph.EdgeFilter;
+import com.mongodb.graph.GraphEngine;
+import com.mongodb.graph.GraphMetrics;
+import com.mongodb.graph.Relationship;
+import com.mongodb.graph.WeightedPath;
+
+/**
+ *	Cheapest path search by Dijkstra's algorithm, or A* when a heuristic is
+ *	given. Vertices are numbered as they are reached so that the queue and
+ *	the best costs live in primitive arrays.
+ *
+ *	The search settles one vertex at a time, but a round trip per vertex
+ *	would dominate the run time. So when the settled vertex has not been
+ *	expanded yet, the vertices nearest the top of the queue are expanded
+ *	along with it in one call to GraphEngine.getNeighbors(Collection,
+ *	EdgeFilter). Most of them are settled soon after and find their edges
+ *	already fetched. This only changes when edges are read, not the order
+ *	in which vertices are settled.
+ */
+class WeightedPathFinder {
+
+	private static final int DEFAULT_EXPANSION_BATCH = 64;
+	private static final EdgeCost UNIT_COST = new EdgeCost(){
+		public double cost(DBObject edge) {
+			return 1.0;
+		}
+	};
+
+	private final GraphEngine _engine;
+	private final GraphMetrics _metrics;
+	private final int _expansionBatch;
+
+	/**
+	 * @param engine the engine which answers each expansion
+	 * @param metrics the receiver for the vertices expanded, may be null
+	 */
+	WeightedPathFinder(GraphEngine engine, GraphMetrics metrics) {
+		this(engine, metrics, DEFAULT_EXPANSION_BATCH);
+	}
+
+	WeightedPathFinder(GraphEngine engine, GraphMetrics metrics, int expansionBatch) {
+		this._engine = engine;
+		this._metrics = metrics;
+		this._expansionBatch = Math.max(1, expansionBatch);
+	}
+
+	/**
+	 * Find the path of lowest total cost.
+	 * @return the path, or null if the target cannot be reached
+	 */
+	WeightedPath findCheapestPath(DBObject startVertex, DBObject targetVertexId,
+			EdgeFilter filter, EdgeCost cost, CostHeuristic heuristic){
+
+		if(startVertex == null || targetVertexId == null || startVertex.equals(targetVertexId))
+			return null;
+
+		if(cost == null)
+			cost = UNIT_COST;
+
+		EdgeFilter expansionFilter = FrontierPathFinder.directedFilter(
+				filter, FrontierPathFinder.getAllowedDirection(filter));
+
+		// Per vertex state, indexed by the number each vertex gets when reached
+		Map<DBObject, Integer> slots = new HashMap<DBObject, Integer>();
+		List<DBObject> vertices = new ArrayList<DBObject>();
+		List<PathNode> branches = new ArrayList<PathNode>();
+		double[] costs = new double[64];
+		double[] estimates = new double[64];
+		BitSet settled = new BitSet();
+
+		IndexedMinHeap queue = new IndexedMinHeap(64);
+		Map<DBObject, List<Relationship>> fetched = new HashMap<DBObject, List<Relationship>>();
+
+		slots.put(startVertex, 0);
+		vertices.add(startVertex);
+		branches.add(new PathNode(startVertex));
+		estimates[0] = heuristic == null ? 0 : heuristic.estimate(startVertex, targetVertexId);
+		queue.offer(0, estimates[0]);
+
+		while(queue.isEmpty() == false){
+			int slot = queue.poll();
+			settled.set(slot);
+
+			DBObject vertexId = vertices.get(slot);
+			if(vertexId.equals(targetVertexId))
+				return new WeightedPath(branches.get(slot).toPath(), costs[slot]);
+
+			List<Relationship> hops = fetched.remove(vertexId);
+			if(hops == null){
+				fetchAhead(vertexId, queue, vertices, fetched, expansionFilter,
+						branches.get(slot).length());
+				hops = fetched.remove(vertexId);
+				if(hops == null)
+					continue;
+			}
+
+			for(Relationship current : hops){
+				double edgeCost = cost.cost(current.getEdge());
+				if(edgeCost < 0 || Double.isNaN(edgeCost))
+					throw new IllegalArgumentException("edge cost must not be negative : " + edgeCost);
+
+				DBObject relatedId = current.getRelatedId();
+				Integer relatedSlot = slots.get(relatedId);
+				if(relatedSlot == null){
+					relatedSlot = vertices.size();
+					slots.put(relatedId, relatedSlot);
+					vertices.add(relatedId);
+					branches.add(null);
+					if(relatedSlot == costs.length){
+						costs = Arrays.copyOf(costs, relatedSlot * 2);
+						estimates = Arrays.copyOf(estimates, relatedSlot * 2);
+					}
+					costs[relatedSlot] = Double.POSITIVE_INFINITY;
+					estimates[relatedSlot] = heuristic == null ? 0 :
+						heuristic.estimate(relatedId, targetVertexId);
+				}
+				else if(settled.get(relatedSlot)){
+					continue;
+				}
+
+				double relatedCost = costs[slot] + edgeCost;
+				if(relatedCost < costs[relatedSlot]){
+					costs[relatedSlot] = relatedCost;
+					branches.set(relatedSlot, new PathNode(branches.get(slot), current));
+					queue.offer(relatedSlot, relatedCost + estimates[relatedSlot]);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Expand a vertex together with the unexpanded vertices nearest the top
+	 * of the queue, keeping their edges until they are settled.
+	 */
+	private void fetchAhead(DBObject vertexId, IndexedMinHeap queue, List<DBObject> vertices,
+			Map<DBObject, List<Relationship>> fetched, EdgeFilter expansionFilter, int level){
+
+		List<DBObject> batch = new ArrayList<DBObject>(_expansionBatch);
+		batch.add(vertexId);
+		for(int position = 0; position < queue.size() && batch.size() < _expansionBatch; position++){
+			DBObject queued = vertices.get(queue.slotAt(position));
+			if(fetched.containsKey(queued) == false)
+				batch.add(queued);
+		}
+
+		if(_metrics != null)
+			_metrics.verticesExpanded(level, batch.size());
+		fetched.putAll(_engine.getNeighbors(batch, expansionFilter));
+	}
+}
@@ -0,0 +1,59 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.AdjacencyBucketGraphEngine;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AdjacencyBucketGraphEngineTest extends GraphTestBase{
+
+    public AdjacencyBucketGraphEngineTest() throws Exception {
+
+    	startEngine("buckets", AdjacencyBucketGraphEngineTest.class.getSimpleName(),
+    			AdjacencyBucketGraphEngine.class);
+    }
+
+    @Test
+    public void testEdgesSpanBuckets() throws Exception {
+
+    	// enough edges for acme to fill more than two IN buckets
+    	int hires = AdjacencyBucketGraphEngine.BUCKET_SIZE * 2 + 50;
+    	EdgeWriter writer = engine.openEdgeWriter(new BulkLoadOptions(300, null));
+    	for(int i = 0; i < hires - 1; i++)
+    		writer.add(new PersonVertex("Hire" + i).graphId(), acme.graphId(),
+    				new WorksForEdge(new Date(i), null));
+    	writer.close();
+    	engine.addEdge(sam.graphId(), acme.graphId(), new WorksForEdge(new Date(900), null));
+
+    	// bob's edge, the loaded ones and sam's, read past the default limit
+    	int streamed = 0;
+    	GraphCursor<DBObject> edges = engine.streamEdges(
+    			acme.graphId(), new EdgeFilter(Direction.IN), 200, 0);
+    	for(DBObject edge : edges)
+    		streamed++;
+    	edges.close();
+    	assertEquals(hires + 1, streamed);
+    	assertEquals(3, database.getCollection("graph_buckets").count(
+    			new BasicDBObject("_v", acme.graphId()).append("_dir", Direction.IN.name())));
+
+    	// paging walks across bucket boundaries without repeats
+    	Set<DBObject> seen = new HashSet<DBObject>();
+    	String token = null;
+    	do{
+    		NeighborPage page = engine.getNeighborPage(acme.graphId(),
+    				new EdgeFilter(Direction.IN), 170, token);
+    		for(Relationship hop : page.getRelationships())
+    			assertTrue(seen.add(hop.getRelatedId()));
+    		token = page.getContinuationToken();
+    	} while(token != null);
+    	assertEquals(hires + 1, seen.size());
+    }
+}
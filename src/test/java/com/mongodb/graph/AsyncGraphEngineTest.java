@@ -0,0 +1,117 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.ExecutorAsyncGraphEngine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncGraphEngineTest extends GraphTestBase{
+
+	private final ExecutorAsyncGraphEngine async;
+
+    public AsyncGraphEngineTest() throws Exception {
+
+    	startEngine("async", AsyncGraphEngineTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	async = new ExecutorAsyncGraphEngine(engine, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+    	async.shutdown();
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+
+    	CompletableFuture<Collection<Relationship>> neighbors = async.getNeighbors(bob.graphId(), null);
+    	CompletableFuture<Collection<DBObject>> edges = async.getEdges(ford.graphId(), null);
+    	CompletableFuture<Map<DBObject, List<Relationship>>> batch = async.getNeighbors(
+    			Arrays.<DBObject>asList(alice.graphId(), sam.graphId()), null);
+    	assertEquals(3, neighbors.get(10, TimeUnit.SECONDS).size());
+    	assertEquals(2, edges.get(10, TimeUnit.SECONDS).size());
+    	assertEquals(1, batch.get(10, TimeUnit.SECONDS).get(sam.graphId()).size());
+
+    	// an edge added through the async engine is seen by the next query
+    	async.addEdge(alice.graphId(), ford.graphId(), new BasicDBObject("type", "client"))
+    			.get(10, TimeUnit.SECONDS);
+    	Collection<List<Relationship>> paths = async.findPaths(
+    			alice.graphId(), ford.graphId(), null, 5, null, null).get(10, TimeUnit.SECONDS);
+    	assertEquals(2, paths.size());
+    }
+
+    @Test
+    public void testListenerError() throws Exception {
+
+    	CompletableFuture<Collection<List<Relationship>>> paths = async.findPaths(
+    			alice.graphId(), ford.graphId(), null, 5, null, new TraversalListener(){
+					public TraversalAction handlePath(List<Relationship> path) {
+						throw new IllegalStateException("rejected");
+					}
+					public TraversalAction handleBranch(List<Relationship> branch) {
+						return TraversalAction.CONTINUE;
+					}
+					public void complete(boolean exhaustive) {}
+    	});
+
+    	try{
+    		paths.get(10, TimeUnit.SECONDS);
+    		fail();
+    	}
+    	catch(ExecutionException e){
+    		assertTrue(e.getCause() instanceof IllegalStateException);
+    	}
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+    	// hold the search on its first branch until it is cancelled
+    	final CountDownLatch reached = new CountDownLatch(1);
+    	final CountDownLatch cancelled = new CountDownLatch(1);
+    	final Boolean[] exhaustive = new Boolean[1];
+    	final CountDownLatch completed = new CountDownLatch(1);
+    	CompletableFuture<Collection<List<Relationship>>> paths = async.findPaths(
+    			alice.graphId(), ford.graphId(), null, 5, null, new TraversalListener(){
+					public TraversalAction handlePath(List<Relationship> path) {
+						return TraversalAction.CONTINUE;
+					}
+					public TraversalAction handleBranch(List<Relationship> branch) {
+						reached.countDown();
+						try{
+							cancelled.await(10, TimeUnit.SECONDS);
+						}
+						catch(InterruptedException e){
+							Thread.currentThread().interrupt();
+						}
+						return TraversalAction.CONTINUE;
+					}
+					public void complete(boolean result) {
+						exhaustive[0] = result;
+						completed.countDown();
+					}
+    	});
+
+    	assertTrue(reached.await(10, TimeUnit.SECONDS));
+    	assertTrue(paths.cancel(false));
+    	cancelled.countDown();
+
+    	// the path to ford was never reported
+    	assertTrue(completed.await(10, TimeUnit.SECONDS));
+    	assertEquals(Boolean.FALSE, exhaustive[0]);
+    }
+}
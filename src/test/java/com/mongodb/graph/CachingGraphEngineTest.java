@@ -0,0 +1,183 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.graph.impl.CachingGraphEngine;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public class CachingGraphEngineTest extends GraphTestBase{
+
+	private final GraphEngine delegate;
+	private final CachingGraphEngine cache;
+
+    public CachingGraphEngineTest() throws Exception {
+
+    	startEngine("cache", CachingGraphEngineTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	delegate = engine;
+    	cache = new CachingGraphEngine(delegate, 3, 0);
+    	engine = cache;
+    }
+
+    @Test
+    public void testNeighborsServedFromCache() throws Exception {
+
+    	Collection<Relationship> first = engine.getNeighbors(bob.graphId());
+    	Collection<Relationship> second = engine.getNeighbors(bob.graphId());
+    	assertEquals(3, first.size());
+    	assertEquals(first, second);
+    	assertEquals(1, cache.getMissCount());
+    	assertEquals(1, cache.getHitCount());
+
+    	// edges come from the same entry, another filter is another entry
+    	assertEquals(3, engine.getEdges(bob.graphId()).size());
+    	assertEquals(2, cache.getHitCount());
+    	assertEquals(2, engine.getNeighbors(bob.graphId(),
+    			new EdgeFilter(Direction.OUT)).size());
+    	assertEquals(2, cache.getMissCount());
+    	assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testKeysCopied() throws Exception {
+
+    	BasicDBObject query = new BasicDBObject("relation", "Father");
+    	assertEquals(1, engine.getNeighbors(alice.graphId(),
+    			new EdgeFilter(Direction.OUT, query, null)).size());
+
+    	// changing the caller's query leaves the cached entry where it was
+    	query.put("relation", "Mother");
+    	assertEquals(1, engine.getNeighbors(alice.graphId(), new EdgeFilter(Direction.OUT,
+    			new BasicDBObject("relation", "Father"), null)).size());
+    	assertEquals(1, cache.getHitCount());
+    	assertEquals(0, engine.getNeighbors(alice.graphId(),
+    			new EdgeFilter(Direction.OUT, query, null)).size());
+    	assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testAddEdgeInvalidatesEndpoints() throws Exception {
+
+    	engine.getNeighbors(alice.graphId());
+    	engine.getNeighbors(ford.graphId());
+    	engine.getNeighbors(sam.graphId());
+
+    	engine.addEdge(alice.graphId(), ford.graphId(),
+    			new WorksForEdge(new Date(700), null));
+
+    	assertEquals(1, cache.size());
+    	assertEquals(2, engine.getNeighbors(alice.graphId()).size());
+    	assertEquals(3, engine.getNeighbors(ford.graphId()).size());
+    	assertEquals(1, engine.getNeighbors(sam.graphId()).size());
+    	assertEquals(5, cache.getMissCount());
+    	assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testWriterInvalidatesOnFlush() throws Exception {
+
+    	assertEquals(1, engine.getNeighbors(sam.graphId()).size());
+
+    	EdgeWriter writer = engine.openEdgeWriter(new BulkLoadOptions());
+    	writer.add(sam.graphId(), acme.graphId(), new WorksForEdge(new Date(600), null));
+
+    	// the edge is still buffered, so this read caches the old list
+    	assertEquals(1, engine.getNeighbors(sam.graphId()).size());
+
+    	writer.flush();
+    	assertEquals(2, engine.getNeighbors(sam.graphId()).size());
+    	writer.close();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+
+    	engine.getNeighbors(bob.graphId());
+    	engine.getNeighbors(alice.graphId());
+    	engine.getNeighbors(sam.graphId());
+    	engine.getNeighbors(bob.graphId());
+    	engine.getNeighbors(ford.graphId());
+
+    	// alice was used least recently when ford was added
+    	assertEquals(1, cache.getEvictionCount());
+    	assertEquals(3, cache.size());
+
+    	long misses = cache.getMissCount();
+    	engine.getNeighbors(bob.graphId());
+    	assertEquals(misses, cache.getMissCount());
+    	engine.getNeighbors(alice.graphId());
+    	assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void testFilteredInMemory() throws Exception {
+
+    	EdgeFilter later = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("start_date", new BasicDBObject("$gte", new Date(400))),
+    			new BasicDBObject("start_date", true));
+    	Collection<Relationship> expected = delegate.getNeighbors(bob.graphId(), later);
+    	assertEquals(1, expected.size());
+
+    	// once the unfiltered list is cached, filters are applied to it
+    	engine.getNeighbors(bob.graphId());
+    	long misses = cache.getMissCount();
+    	assertEquals(expected, engine.getNeighbors(bob.graphId(), later));
+    	assertEquals(misses, cache.getMissCount());
+
+    	// queries only the server can evaluate still go to the engine
+    	EdgeFilter scripted = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("$where", "true"), null);
+    	try{
+    		engine.getNeighbors(bob.graphId(), scripted);
+    	}
+    	catch(RuntimeException e){
+    		// the test server may not run scripts
+    	}
+    	assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+
+    	CachingGraphEngine expiring = new CachingGraphEngine(delegate, 10, 20);
+    	expiring.getNeighbors(bob.graphId());
+    	expiring.getNeighbors(bob.graphId());
+    	assertEquals(1, expiring.getHitCount());
+
+    	Thread.sleep(50);
+    	assertEquals(3, expiring.getNeighbors(bob.graphId()).size());
+    	assertEquals(1, expiring.getExpirationCount());
+    	assertEquals(2, expiring.getMissCount());
+    }
+
+    @Test
+    public void testFindPathsThroughCache() throws Exception {
+
+    	CachingGraphEngine large = new CachingGraphEngine(delegate);
+    	EdgeFilter filter = new EdgeFilter(Direction.BOTH);
+
+    	// alice->bob->ford<-sam
+    	Collection<List<Relationship>> expected = delegate.findPaths(
+    			alice.graphId(), sam.graphId(), filter, 3, null);
+    	assertEquals(1, expected.size());
+    	Collection<List<Relationship>> paths = large.findPaths(
+    			alice.graphId(), sam.graphId(), filter, 3, null);
+    	assertEquals(expected.size(), paths.size());
+    	assertTrue(paths.containsAll(expected));
+
+    	// the second search is answered entirely from the cache
+    	long misses = large.getMissCount();
+    	assertEquals(expected.size(), large.findPaths(
+    			alice.graphId(), sam.graphId(), filter, 3, null).size());
+    	assertEquals(misses, large.getMissCount());
+    	assertTrue(large.getHitCount() > 0);
+    }
+}
@@ -0,0 +1,126 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.GraphLookupGraphEngine;
+import com.mongodb.graph.test.utils.PersonVertex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(Parameterized.class)
+public class CompactKeysTest extends GraphTestBase{
+
+	private PersonVertex eve = new PersonVertex("Eve");
+
+    public CompactKeysTest(String testName, Class<? extends GraphEngine> impl)
+            throws Exception {
+
+    	startEngine(testName, CompactKeysTest.class.getSimpleName(), impl);
+    }
+
+    @Parameters
+    public static Collection<Object[]> createInputValues() {
+        return Arrays.asList(new Object[][] {
+            /*[0]*/ {"edgeindex", EdgeIndexGraphEngine.class},
+            /*[1]*/ {"graphlookup", GraphLookupGraphEngine.class}
+        });
+    }
+
+    @Before
+    public void enableCompactKeys() throws Exception {
+
+    	// the test graph is already loaded, so its edges are given keys
+    	((EdgeIndexGraphEngine) engine).enableCompactKeys();
+
+    	// an edge written as if eve shared a key with bob
+    	DBObject bobKeys = database.getCollection("graph_edges").findOne(
+    			new BasicDBObject("_s", bob.graphId()));
+    	database.getCollection("graph_edges").insert(new BasicDBObject("_s", eve.graphId())
+    			.append("_d", sam.graphId()).append("type", "friend")
+    			.append("_sk", bobKeys.get("_sk")).append("_dk", bobKeys.get("_sk")));
+    }
+
+    @Test
+    public void testModeDetected() throws Exception {
+
+    	assertTrue(((EdgeIndexGraphEngine) engine).isCompactKeys());
+    	assertEquals(0, database.getCollection("graph_edges").count(
+    			new BasicDBObject("_sk", new BasicDBObject("$exists", false))));
+
+    	// another engine on the collection keeps writing keys
+    	EdgeIndexGraphEngine other = new EdgeIndexGraphEngine(database);
+    	assertTrue(other.isCompactKeys());
+    	DBObject edge = other.addEdge(sam.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+    	assertNull(edge.get("_sk"));
+    	assertNotNull(database.getCollection("graph_edges").findOne(
+    			new BasicDBObject("_id", edge.get("_id"))).get("_sk"));
+    	assertEquals(2, engine.getNeighbors(sam.graphId()).size());
+    }
+
+    @Test
+    public void testSharedKeys() throws Exception {
+
+    	// eve's edge is found by the key of bob, but not returned for him
+		assertEquals(3, engine.getNeighbors(bob.graphId()).size());
+		assertEquals(2, engine.getNeighbors(bob.graphId(), new EdgeFilter(Direction.OUT)).size());
+		assertEquals(3, engine.getNeighbors(Arrays.<DBObject>asList(bob.graphId(), sam.graphId()),
+				null).get(bob.graphId()).size());
+
+		// pages seek on the keys
+		Set<DBObject> related = new HashSet<DBObject>();
+		String token = null;
+		do{
+			NeighborPage page = engine.getNeighborPage(bob.graphId(),
+					new EdgeFilter(Direction.BOTH), 1, token);
+			for(Relationship hop : page.getRelationships())
+				assertTrue(related.add(hop.getRelatedId()));
+			token = page.getContinuationToken();
+		} while(token != null);
+		assertEquals(3, related.size());
+
+		// the keys stay in the collection
+		for(DBObject edge : engine.getEdges(bob.graphId()))
+			assertKeysHidden(edge);
+		for(Relationship hop : engine.getNeighbors(bob.graphId()))
+			assertKeysHidden(hop.getEdge());
+    }
+
+    @Test
+    public void testPaths() throws Exception {
+
+		Collection<List<Relationship>> paths = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 5, null);
+		assertEquals(1, paths.size());
+		assertEquals(2, paths.iterator().next().size());
+		for(Relationship hop : paths.iterator().next())
+			assertKeysHidden(hop.getEdge());
+
+		// there is no path through eve's edge from bob to sam
+		assertEquals(0, engine.findPaths(alice.graphId(), sam.graphId(), null, 5, null).size());
+		assertNull(engine.shortestPath(bob.graphId(), sam.graphId(), null, 5));
+
+		if(engine instanceof GraphLookupGraphEngine){
+			GraphLookupGraphEngine lookup = (GraphLookupGraphEngine) engine;
+			assertEquals(3, lookup.getNeighborhood(alice.graphId(), null, 3).size());
+			assertFalse(lookup.isReachable(alice.graphId(), sam.graphId(), null, 3));
+		}
+    }
+
+    private static void assertKeysHidden(DBObject edge) {
+    	assertFalse(edge.containsField("_sk"));
+    	assertFalse(edge.containsField("_dk"));
+    }
+}
@@ -0,0 +1,161 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+import static com.mongodb.graph.test.utils.FilteredDBObject.withoutId;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.CsrSnapshotGraphEngine;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+public class CsrSnapshotGraphEngineTest extends GraphTestBase{
+
+    public CsrSnapshotGraphEngineTest() throws Exception {
+
+    	startEngine("csr", CsrSnapshotGraphEngineTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    }
+
+    @Test
+    public void testSnapshotMatchesCollection() throws Exception {
+
+    	// sam->acme and a self loop give ford both directions and a loop
+        engine.addEdge(sam.graphId(), acme.graphId(), new WorksForEdge(new Date(600), null));
+        engine.addEdge(ford.graphId(), ford.graphId(), new FamilyEdge("Subsidiary"));
+
+    	CsrSnapshotGraphEngine snapshot = new CsrSnapshotGraphEngine(database);
+    	assertEquals(5, snapshot.getVertexCount());
+    	assertEquals(6, snapshot.getEdgeCount());
+
+    	for(VertexDataObject vertex : new VertexDataObject[]{bob, alice, sam, acme, ford}){
+    		for(Direction direction : Direction.values()){
+    			EdgeFilter filter = new EdgeFilter(direction);
+    			assertEquals(new HashSet<Relationship>(engine.getNeighbors(vertex.graphId(), filter)),
+    					new HashSet<Relationship>(snapshot.getNeighbors(vertex.graphId(), filter)));
+    		}
+    	}
+
+    	assertEquals(0, snapshot.getEdges(new PersonVertex("Nobody").graphId()).size());
+    }
+
+    @Test
+    public void testSnapshotFindPaths() throws Exception {
+
+    	CsrSnapshotGraphEngine snapshot = new CsrSnapshotGraphEngine(database);
+
+		// alice->father->bob->workedat->ford<-workedat<-sam
+		List<Relationship> correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(bob.graphId(), withoutId(alice_bob), Direction.OUT));
+		correctPath.add(new Relationship(ford.graphId(), withoutId(bob_ford), Direction.OUT));
+		correctPath.add(new Relationship(sam.graphId(), withoutId(sam_ford), Direction.IN));
+
+		EdgeFilter bothFilter = new EdgeFilter(Direction.BOTH);
+		Collection<List<Relationship>> result = snapshot.findPaths(
+				alice.graphId(), sam.graphId(), bothFilter, 3, null);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(correctPath));
+
+		assertEquals(0, snapshot.findPaths(
+				alice.graphId(), sam.graphId(), bothFilter, 2, null).size());
+		assertEquals(0, snapshot.findPaths(
+				alice.graphId(), sam.graphId(), null, 10, null).size());
+
+		// edge ids are only returned when asked for
+		bothFilter.setIncludeEdgeIds(true);
+		result = snapshot.findPaths(alice.graphId(), bob.graphId(), bothFilter, 1, null);
+		assertEquals(alice_bob.get(ID_KEY), result.iterator().next().get(0).getEdge().get(ID_KEY));
+    }
+
+    @Test
+    public void testSnapshotPages() throws Exception {
+
+    	for(int i = 0; i < 5; i++){
+        	engine.addEdge(bob.graphId(), new PersonVertex("Friend" + i).graphId(),
+        			new FamilyEdge("Cousin"));
+    	}
+
+    	CsrSnapshotGraphEngine snapshot = new CsrSnapshotGraphEngine(database);
+    	List<Relationship> paged = new ArrayList<Relationship>();
+    	NeighborPage page = null;
+    	do{
+    		page = snapshot.getNeighborPage(bob.graphId(), null, 3,
+    				page == null ? null : page.getContinuationToken());
+    		paged.addAll(page.getRelationships());
+    	}
+    	while(page.hasMore());
+
+    	assertEquals(8, paged.size());
+    	assertEquals(new ArrayList<Relationship>(snapshot.getNeighbors(bob.graphId())), paged);
+    	assertEquals(2, snapshot.getNeighborPage(bob.graphId(), null, 6,
+    			snapshot.getNeighborPage(bob.graphId(), null, 6, null)
+    			.getContinuationToken()).getRelationships().size());
+    }
+
+    @Test
+    public void testSnapshotIsReadOnly() throws Exception {
+
+    	CsrSnapshotGraphEngine snapshot = new CsrSnapshotGraphEngine(database);
+    	try{
+    		snapshot.addEdge(bob.graphId(), sam.graphId(), new FamilyEdge("Brother"));
+    		fail("snapshot accepted an edge");
+    	}
+    	catch(UnsupportedOperationException e){
+    	}
+
+    	try{
+    		snapshot.getEdges(bob.graphId(), new EdgeFilter(Direction.OUT,
+    				new BasicDBObject("$where", "this.start_date > 0"), null));
+    		fail("snapshot accepted a query it cannot evaluate");
+    	}
+    	catch(IllegalArgumentException e){
+    	}
+    }
+
+    @Test
+    public void testSnapshotFilters() throws Exception {
+
+    	CsrSnapshotGraphEngine snapshot = new CsrSnapshotGraphEngine(database);
+    	EdgeFilter later = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("start_date", new BasicDBObject("$gte", new Date(400))),
+    			new BasicDBObject("start_date", true));
+    	for(VertexDataObject vertex : new VertexDataObject[]{bob, alice, sam, acme, ford}){
+    		assertEquals(new HashSet<Relationship>(engine.getNeighbors(vertex.graphId(), later)),
+    				new HashSet<Relationship>(snapshot.getNeighbors(vertex.graphId(), later)));
+    	}
+    	assertEquals(1, snapshot.getNeighbors(bob.graphId(), later).size());
+    	assertEquals(1, snapshot.getNeighborPage(bob.graphId(), later, 1, null).getRelationships().size());
+
+    	// the family edge is the only way from alice, and is filtered out
+    	EdgeFilter family = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", new BasicDBObject("$exists", false)), null);
+    	assertEquals(0, snapshot.findPaths(alice.graphId(), sam.graphId(), family, 5, null).size());
+    	assertEquals(1, snapshot.findPaths(bob.graphId(), sam.graphId(), family, 5, null).size());
+
+    	// ids are held apart from the edges, so matching them is refused
+    	BasicDBList branches = new BasicDBList();
+    	branches.add(new BasicDBObject("relation", "Father"));
+    	branches.add(new BasicDBObject(ID_KEY, bob_acme.get(ID_KEY)));
+    	DBObject[] byId = new DBObject[]{
+    		new BasicDBObject(ID_KEY, bob_acme.get(ID_KEY)),
+    		new BasicDBObject("$or", branches)
+    	};
+    	for(DBObject query : byId){
+    		try{
+    			snapshot.getNeighbors(bob.graphId(), new EdgeFilter(Direction.BOTH, query, null));
+    			fail(query.toString());
+    		}
+    		catch(IllegalArgumentException e){
+    		}
+    	}
+    }
+}
@@ -0,0 +1,142 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.CompiledEdgeFilter;
+import com.mongodb.graph.impl.EdgeFilterCompiler;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+public class EdgeFilterCompilerTest extends GraphTestBase{
+
+    public EdgeFilterCompilerTest() throws Exception {
+
+    	startEngine("compiler", EdgeFilterCompilerTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+
+    	// nested documents and arrays for dotted paths
+    	engine.addEdge(bob.graphId(), sam.graphId(), new BasicDBObject("type", "friend")
+    			.append("since", new BasicDBObject("year", 2001).append("place", "school"))
+    			.append("tags", list("close", "old"))
+    			.append("weight", 2.5));
+    	engine.addEdge(bob.graphId(), alice.graphId(), new BasicDBObject("type", "friend")
+    			.append("since", new BasicDBObject("year", 2010))
+    			.append("tags", list("new"))
+    			.append("weight", 1));
+    }
+
+    @Test
+    public void testSameAsServer() throws Exception {
+
+    	DBObject[] queries = new DBObject[]{
+    		new BasicDBObject("type", "friend"),
+    		new BasicDBObject("relation", "Father"),
+    		new BasicDBObject("since.year", new BasicDBObject("$gt", 2000).append("$lt", 2005)),
+    		new BasicDBObject("since.year", new BasicDBObject("$gte", 2010L)),
+    		new BasicDBObject("weight", new BasicDBObject("$lte", 1.0)),
+    		new BasicDBObject("weight", 2.5),
+    		new BasicDBObject("tags", "old"),
+    		new BasicDBObject("tags", new BasicDBObject("$in", list("new", "missing"))),
+    		new BasicDBObject("start_date", new BasicDBObject("$gte", new Date(300))),
+    		new BasicDBObject("start_date", new BasicDBObject("$lt", new Date(300))),
+    		new BasicDBObject("end_date", new BasicDBObject("$exists", true)),
+    		new BasicDBObject("since.place", new BasicDBObject("$exists", false)),
+    		new BasicDBObject("type", new BasicDBObject("$eq", "friend")),
+    		new BasicDBObject("type", new BasicDBObject("$ne", "friend")),
+    		new BasicDBObject("type", new BasicDBObject("$nin", list("friend"))),
+    		new BasicDBObject("type", null),
+    		new BasicDBObject("$or", list(new BasicDBObject("relation", "Father"),
+    				new BasicDBObject("weight", new BasicDBObject("$gt", 2)))),
+    		new BasicDBObject("$and", list(new BasicDBObject("type", "friend"),
+    				new BasicDBObject("tags", new BasicDBObject("$in", list("close"))))),
+    		new BasicDBObject("$nor", list(new BasicDBObject("type", "friend")))
+    	};
+
+    	List<Relationship> all = new ArrayList<Relationship>(engine.getNeighbors(bob.graphId()));
+    	assertEquals(5, all.size());
+    	for(DBObject query : queries){
+    		EdgeFilter filter = new EdgeFilter(Direction.BOTH, query, null);
+    		CompiledEdgeFilter compiled = EdgeFilterCompiler.compile(filter);
+    		assertTrue(compiled.hasQuery());
+
+    		List<Relationship> matched = new ArrayList<Relationship>();
+    		for(Relationship neighbor : all){
+    			if(compiled.matches(neighbor.getEdge()))
+    				matched.add(neighbor);
+    		}
+    		assertEquals(query.toString(), new HashSet<Relationship>(
+    				engine.getNeighbors(bob.graphId(), filter)), new HashSet<Relationship>(matched));
+    	}
+    }
+
+    @Test
+    public void testProjections() throws Exception {
+
+    	DBObject edge = new BasicDBObject("_s", bob.graphId()).append("_d", sam.graphId())
+    			.append("type", "friend").append("weight", 2)
+    			.append("since", new BasicDBObject("year", 2001).append("place", "school"));
+
+    	CompiledEdgeFilter included = EdgeFilterCompiler.compile(new EdgeFilter(Direction.OUT,
+    			null, new BasicDBObject("type", true).append("since.year", 1)));
+    	assertFalse(included.hasQuery());
+    	assertTrue(included.matches(edge));
+    	DBObject projected = included.project(edge);
+    	assertEquals(new HashSet<String>(Arrays.asList("_s", "_d", "type", "since")),
+    			projected.keySet());
+    	assertEquals(new BasicDBObject("year", 2001), projected.get("since"));
+
+    	CompiledEdgeFilter excluded = EdgeFilterCompiler.compile(new EdgeFilter(Direction.OUT,
+    			null, new BasicDBObject("weight", false).append("since.place", 0)));
+    	projected = excluded.project(edge);
+    	assertNull(projected.get("weight"));
+    	assertEquals(new BasicDBObject("year", 2001), projected.get("since"));
+    	assertEquals("friend", projected.get("type"));
+
+    	// without a projection edges are returned as they are
+    	assertSame(edge, EdgeFilterCompiler.compile(null).project(edge));
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+
+    	DBObject[] queries = new DBObject[]{
+    		new BasicDBObject("$where", "this.weight > 1"),
+    		new BasicDBObject("type", new BasicDBObject("$size", 1)),
+    		new BasicDBObject("$or", "friend"),
+    		new BasicDBObject("weight", new BasicDBObject("$gt", 1).append("other", 2))
+    	};
+    	for(DBObject query : queries){
+    		try{
+    			EdgeFilterCompiler.compile(new EdgeFilter(Direction.OUT, query, null));
+    			fail(query.toString());
+    		}
+    		catch(IllegalArgumentException e){
+    		}
+    	}
+
+    	try{
+    		EdgeFilterCompiler.compile(new EdgeFilter(Direction.OUT, null,
+    				new BasicDBObject("type", true).append("weight", false)));
+    		fail();
+    	}
+    	catch(IllegalArgumentException e){
+    	}
+    }
+
+    private static BasicDBList list(Object... values) {
+    	BasicDBList list = new BasicDBList();
+    	for(Object value : values)
+    		list.add(value);
+    	return list;
+    }
+}
@@ -0,0 +1,108 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.Date;
+
+@RunWith(Parameterized.class)
+public class EdgeWriterTest extends GraphTestBase{
+
+    public EdgeWriterTest(String testName, Class<? extends GraphEngine> impl)
+            throws Exception {
+
+    	startEngine(testName, EdgeWriterTest.class.getSimpleName(), impl);
+    }
+
+    @Test
+    public void testWriterLoadsEdges() throws Exception {
+
+    	EdgeWriter writer = engine.openEdgeWriter(
+    			new BulkLoadOptions(2, WriteConcern.ACKNOWLEDGED));
+    	writer.add(sam.graphId(), acme.graphId(), new WorksForEdge(new Date(600), null));
+    	writer.add(alice.graphId(), acme.graphId(), new WorksForEdge(new Date(700), null));
+    	writer.add(alice.graphId(), ford.graphId(), new WorksForEdge(new Date(800), null));
+
+    	// the first batch is full and has been written, the last is buffered
+    	assertEquals(2, writer.getResult().getEdgesWritten());
+    	assertEquals(2, engine.getEdges(alice.graphId()).size());
+
+    	try{
+    		writer.setWriteConcern(null);
+    		fail();
+    	}
+    	catch(IllegalArgumentException e){
+    	}
+
+    	writer.close();
+    	BulkLoadResult result = writer.getResult();
+    	assertEquals(3, result.getEdgesWritten());
+    	assertEquals(2, result.getBatchesWritten());
+    	assertEquals(0, result.getFailures().size());
+
+    	assertEquals(3, engine.getEdges(alice.graphId()).size());
+    	assertEquals(2, engine.getEdges(sam.graphId()).size());
+    	assertEquals(3, engine.getEdges(acme.graphId()).size());
+    }
+
+    @Test
+    public void testWriterDefersIndexes() throws Exception {
+
+    	BulkLoadOptions options = new BulkLoadOptions();
+    	options.setDeferIndexes(true);
+
+    	EdgeWriter writer = engine.openEdgeWriter(options);
+    	for(int i = 0; i < 10; i++){
+        	writer.add(sam.graphId(), new PersonVertex("Friend" + i).graphId(),
+        			new FamilyEdge("Cousin"));
+    	}
+    	writer.close();
+
+    	assertEquals(10, writer.getResult().getEdgesWritten());
+    	assertEquals(11, engine.getEdges(sam.graphId()).size());
+    	assertEquals(11, engine.getNeighbors(sam.graphId()).size());
+    }
+
+    @Test
+    public void testWriterReportsFailedBatch() throws Exception {
+
+    	// bucketed edges have no unique _id index for the batch to violate
+    	assumeTrue(engine instanceof EdgeIndexGraphEngine);
+
+    	EdgeWriter writer = engine.openEdgeWriter(
+    			new BulkLoadOptions(2, WriteConcern.ACKNOWLEDGED));
+
+    	// reusing the _id of an existing edge fails the first batch only. Its
+    	// batch mate holds values which do not read back equal to themselves
+    	writer.add(alice.graphId(), acme.graphId(), new BasicDBObject("start_date", new Date(700))
+    			.append("weight", 0.5f).append("badge", new byte[]{1, 2}));
+    	writer.add(sam.graphId(), acme.graphId(),
+    			new BasicDBObject(ID_KEY, bob_acme.get(ID_KEY)));
+    	writer.add(alice.graphId(), ford.graphId(), new WorksForEdge(new Date(800), null));
+    	writer.close();
+
+    	BulkLoadResult result = writer.getResult();
+    	assertEquals(1, result.getFailures().size());
+    	assertEquals(0, result.getFailures().get(0).getBatchNumber());
+    	// only the edge reusing the _id is reported, its batch mate was stored
+    	assertEquals(1, result.getFailures().get(0).getEdges().size());
+    	assertEquals(sam.graphId(), result.getFailures().get(0).getEdges().get(0).get("_s"));
+    	assertEquals(1, result.getEdgesFailed());
+    	assertEquals(2, result.getEdgesWritten());
+    	assertEquals(2, result.getBatchesWritten());
+
+    	// the rest of the load carried on after the failure
+    	assertEquals(3, engine.getEdges(alice.graphId()).size());
+    	assertEquals(1, engine.getEdges(ford.graphId(), new EdgeFilter(Direction.IN,
+    			new BasicDBObject("start_date", new Date(800)), null)).size());
+    }
+}
@@ -0,0 +1,95 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.GraphLookupGraphEngine;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class GraphLookupTest extends GraphTestBase{
+
+	private final GraphLookupGraphEngine lookup;
+
+    public GraphLookupTest() throws Exception {
+
+    	startEngine("graphlookup", GraphLookupTest.class.getSimpleName(),
+    			GraphLookupGraphEngine.class);
+    	lookup = (GraphLookupGraphEngine) engine;
+    }
+
+    @Test
+    public void testNeighborhood() throws Exception {
+
+    	// alice->bob->(acme|ford)
+    	Map<DBObject, Integer> reached = lookup.getNeighborhood(alice.graphId(), null, 3);
+    	assertEquals(3, reached.size());
+    	assertEquals(Integer.valueOf(1), reached.get(bob.graphId()));
+    	assertEquals(Integer.valueOf(2), reached.get(acme.graphId()));
+    	assertEquals(Integer.valueOf(2), reached.get(ford.graphId()));
+
+    	assertEquals(1, lookup.getNeighborhood(alice.graphId(), null, 1).size());
+
+    	// ford<-(bob|sam)<-alice
+    	reached = lookup.getNeighborhood(ford.graphId(), new EdgeFilter(Direction.IN), 5);
+    	assertEquals(3, reached.size());
+    	assertEquals(Integer.valueOf(2), reached.get(alice.graphId()));
+
+    	// acme-bob-(alice|ford)-sam
+    	reached = lookup.getNeighborhood(acme.graphId(), new EdgeFilter(Direction.BOTH), 3);
+    	assertEquals(4, reached.size());
+    	assertEquals(Integer.valueOf(3), reached.get(sam.graphId()));
+    }
+
+    @Test
+    public void testReachable() throws Exception {
+
+    	assertTrue(lookup.isReachable(alice.graphId(), ford.graphId(), null, 2));
+    	assertFalse(lookup.isReachable(alice.graphId(), ford.graphId(), null, 1));
+    	assertFalse(lookup.isReachable(alice.graphId(), sam.graphId(), null, 10));
+
+    	// only edges which started after 300 may be followed
+    	lookup.addEdge(acme.graphId(), sam.graphId(), new WorksForEdge(new Date(100), null));
+    	EdgeFilter recent = new EdgeFilter(Direction.OUT, new BasicDBObject("start_date",
+    			new BasicDBObject("$gt", new Date(300))), null);
+    	assertTrue(lookup.isReachable(bob.graphId(), sam.graphId(), null, 2));
+    	assertFalse(lookup.isReachable(bob.graphId(), sam.graphId(), recent, 2));
+    	assertTrue(lookup.isReachable(bob.graphId(), ford.graphId(), recent, 2));
+    }
+
+    @Test
+    public void testLookupTimeLimit() throws Exception {
+
+    	// a server run with test commands can make every timed query time out
+    	DB admin = database.getMongo().getDB("admin");
+    	CommandResult enabled = admin.command(new BasicDBObject("configureFailPoint",
+    			"maxTimeAlwaysTimeOut").append("mode", "alwaysOn"));
+    	assumeTrue(enabled.ok());
+    	try{
+    		// the lookup gets the time left to the search, and stops it
+    		TraversalOptions options = new TraversalOptions();
+    		options.setTimeLimit(1, TimeUnit.MINUTES);
+    		Collection<List<Relationship>> result = lookup.findPaths(
+    				alice.graphId(), ford.graphId(), null, 3, options, null);
+    		assertEquals(0, result.size());
+
+    		// without a time limit the lookup is not timed
+    		assertEquals(1, lookup.findPaths(alice.graphId(), ford.graphId(), null, 3, null).size());
+    	}
+    	finally{
+    		admin.command(new BasicDBObject("configureFailPoint",
+    				"maxTimeAlwaysTimeOut").append("mode", "off"));
+    	}
+    }
+}
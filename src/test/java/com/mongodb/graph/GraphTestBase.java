@@ -12,7 +12,9 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.graph.impl.AdjacencyBucketGraphEngine;
 import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.GraphLookupGraphEngine;
 import com.mongodb.graph.test.utils.CompanyVertex;
 import com.mongodb.graph.test.utils.FamilyEdge;
 import com.mongodb.graph.test.utils.PersonVertex;
@@ -83,7 +85,9 @@ public class GraphTestBase {
                         
         // Build the set of test params for the above configs           
         return Arrays.asList(new Object[][] {
-            /*[0]*/ {"edgeindex", EdgeIndexGraphEngine.class}        
+            /*[0]*/ {"edgeindex", EdgeIndexGraphEngine.class},
+            /*[1]*/ {"graphlookup", GraphLookupGraphEngine.class},
+            /*[2]*/ {"buckets", AdjacencyBucketGraphEngine.class}
         });
     }
 
@@ -0,0 +1,151 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.IndexAdvisor;
+import com.mongodb.graph.impl.IndexRecommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class IndexAdvisorTest extends GraphTestBase{
+
+	private final EdgeIndexGraphEngine edgeIndex;
+
+    public IndexAdvisorTest() throws Exception {
+
+    	startEngine("advisor", IndexAdvisorTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	edgeIndex = (EdgeIndexGraphEngine) engine;
+
+    	// most of bob's edges are visits, only two are clients
+    	for(int i = 0; i < 6; i++)
+    		engine.addEdge(bob.graphId(), acme.graphId(), new BasicDBObject("type", "visited"));
+    	for(int i = 0; i < 2; i++)
+    		engine.addEdge(bob.graphId(), ford.graphId(), new BasicDBObject("type", "client")
+    				.append("start_date", new Date(1000 + i)));
+    }
+
+    @Test
+    public void testRecommendations() throws Exception {
+
+    	IndexAdvisor advisor = edgeIndex.enableIndexAdvisor();
+    	assertSame(advisor, edgeIndex.enableIndexAdvisor());
+    	advisor.setSampleInterval(1);
+
+    	EdgeFilter clients = new EdgeFilter(Direction.OUT, new BasicDBObject("type", "client")
+    			.append("start_date", new BasicDBObject("$gte", new Date(0))), null);
+    	for(int i = 0; i < 3; i++)
+    		assertEquals(2, engine.getNeighbors(bob.graphId(), clients).size());
+
+    	// queries hinted to the edge index could not use a recommendation
+    	edgeIndex.setSplitDirectionScans(true);
+    	engine.getNeighbors(bob.graphId(), clients);
+    	edgeIndex.setSplitDirectionScans(false);
+    	engine.getNeighborPage(bob.graphId(), clients, 10, null);
+
+    	// unfiltered queries and those served by no single index are ignored
+    	engine.getNeighbors(bob.graphId());
+    	BasicDBList branches = new BasicDBList();
+    	branches.add(new BasicDBObject("type", "client"));
+    	branches.add(new BasicDBObject("type", "visited"));
+    	engine.getNeighbors(bob.graphId(), new EdgeFilter(Direction.OUT,
+    			new BasicDBObject("$or", branches), null));
+
+    	List<IndexRecommendation> recommendations = advisor.getRecommendations();
+    	assertEquals(1, recommendations.size());
+    	IndexRecommendation recommendation = recommendations.get(0);
+    	DBObject expectedKeys = new BasicDBObject("_s", 1).append("type", 1).append("start_date", 1);
+    	assertEquals(expectedKeys, recommendation.getIndexKeys());
+    	assertEquals(3, recommendation.getQueryCount());
+    	assertEquals(3, recommendation.getSampleCount());
+    	assertEquals(30, recommendation.getDocsExamined());
+    	assertEquals(6, recommendation.getDocsMatched());
+    	assertEquals(0.8, recommendation.getWastedRatio(), 0.001);
+    	assertFalse(recommendation.isIndexed());
+
+    	// the same fields in another order are another index
+    	DBObject reordered = new BasicDBObject("_s", 1).append("start_date", 1).append("type", 1);
+    	database.getCollection("graph_edges").ensureIndex(reordered);
+    	assertFalse(advisor.getRecommendations().get(0).isIndexed());
+    	database.getCollection("graph_edges").dropIndex(reordered);
+
+    	// both directions are read through their own vertex index
+    	engine.getNeighbors(bob.graphId(), clients.withDirection(Direction.BOTH));
+    	assertEquals(2, advisor.getRecommendations().size());
+
+    	assertEquals(0, advisor.createIndexes(1.1).size());
+    	assertEquals(2, advisor.createIndexes(0.5).size());
+    	for(IndexRecommendation indexed : advisor.getRecommendations())
+    		assertTrue(indexed.isIndexed());
+    	assertEquals(2, engine.getNeighbors(bob.graphId(), clients).size());
+
+    	advisor.reset();
+    	assertTrue(advisor.getRecommendations().isEmpty());
+    	edgeIndex.disableIndexAdvisor();
+    	assertNull(edgeIndex.getIndexAdvisor());
+    }
+
+    @Test
+    public void testIndexCreated() throws Exception {
+
+    	IndexAdvisor advisor = edgeIndex.enableIndexAdvisor();
+    	EdgeFilter clients = new EdgeFilter(Direction.OUT, new BasicDBObject("type", "client")
+    			.append("start_date", new BasicDBObject("$gte", new Date(0))), null);
+    	engine.getNeighbors(bob.graphId(), clients);
+    	List<IndexRecommendation> created = advisor.createIndexes(0.5);
+    	assertEquals(1, created.size());
+
+    	// the index leads with the field the engine queries the vertex on,
+    	// then the fields of the filter, equality before range
+    	DBObject keys = created.get(0).getIndexKeys();
+    	assertEquals(Arrays.asList("_s", "type", "start_date"),
+    			new ArrayList<String>(keys.keySet()));
+    	assertEquals(Arrays.asList("type", "start_date"), created.get(0).getFields());
+
+    	// the collection holds it with its keys in that order
+    	DBObject indexed = null;
+    	for(DBObject index : database.getCollection("graph_edges").getIndexInfo()){
+    		if(index.get("key").equals(keys))
+    			indexed = (DBObject) index.get("key");
+    	}
+    	assertNotNull(indexed);
+    	assertEquals(new ArrayList<String>(keys.keySet()),
+    			new ArrayList<String>(indexed.keySet()));
+    	assertTrue(advisor.getRecommendations().get(0).isIndexed());
+
+    	// and the query it was recommended for is answered as before
+    	assertEquals(2, engine.getNeighbors(bob.graphId(), clients).size());
+    }
+
+    @Test
+    public void testSampleInterval() throws Exception {
+
+    	IndexAdvisor advisor = edgeIndex.enableIndexAdvisor();
+    	assertEquals(IndexAdvisor.DEFAULT_SAMPLE_INTERVAL, advisor.getSampleInterval());
+    	advisor.setSampleInterval(2);
+
+    	EdgeFilter visits = new EdgeFilter(Direction.OUT, new BasicDBObject("type", "visited"), null);
+    	for(int i = 0; i < 5; i++)
+    		engine.getEdges(bob.graphId(), visits);
+
+    	IndexRecommendation recommendation = advisor.getRecommendations().get(0);
+    	assertEquals(5, recommendation.getQueryCount());
+    	assertEquals(3, recommendation.getSampleCount());
+
+    	try{
+    		advisor.setSampleInterval(0);
+    		fail();
+    	}
+    	catch(IllegalArgumentException e){
+    	}
+    }
+}
@@ -0,0 +1,121 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.InstrumentedGraphEngine;
+import com.mongodb.graph.impl.OperationStats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class InstrumentedGraphEngineTest extends GraphTestBase{
+
+	private final InstrumentedGraphEngine instrumented;
+
+    public InstrumentedGraphEngineTest() throws Exception {
+
+    	startEngine("instrumented", InstrumentedGraphEngineTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	instrumented = new InstrumentedGraphEngine(engine);
+    	engine = instrumented;
+    }
+
+    @Test
+    public void testPathTrace() throws Exception {
+
+    	TracingPathListener listener = new TracingPathListener();
+		Collection<List<Relationship>> paths = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 2, listener);
+		assertEquals(1, paths.size());
+		assertEquals(1, listener.getPathCount());
+
+		// alice is expanded, then bob, with one query each
+		QueryTrace trace = listener.getTrace();
+		assertEquals(Arrays.asList(1L, 1L), trace.getVerticesExpandedPerLevel());
+		assertEquals(2, trace.getRoundTrips());
+		assertEquals(2, trace.getBatchFetches());
+		assertEquals(3, trace.getEdgesScanned());
+		assertEquals(3, trace.getDocumentsDecoded());
+		assertTrue(trace.getElapsedNanos() > 0);
+
+		OperationStats stats = instrumented.getStats(InstrumentedGraphEngine.FIND_PATHS);
+		assertEquals(1, stats.getCount());
+		assertEquals(2, stats.getRoundTrips());
+		assertEquals(2, stats.getVerticesExpanded());
+		assertTrue(stats.getMaxLatencyMicros() >= stats.getMedianLatencyMicros());
+    }
+
+    @Test
+    public void testStatsPerOperation() throws Exception {
+
+    	// the test graph was built through the engine
+    	assertEquals(4, instrumented.getStats(InstrumentedGraphEngine.ADD_EDGE).getRoundTrips());
+
+    	engine.getNeighbors(bob.graphId());
+    	engine.getNeighbors(ford.graphId());
+    	GraphCursor<Relationship> neighbors = engine.streamNeighbors(bob.graphId(), null, 2, 0);
+    	for(Relationship neighbor : neighbors)
+    		assertNotNull(neighbor);
+
+    	OperationStats stats = instrumented.getStats(InstrumentedGraphEngine.GET_NEIGHBORS);
+    	assertEquals(2, stats.getCount());
+    	assertEquals(5, stats.getEdgesScanned());
+
+    	// three edges in batches of two
+    	stats = instrumented.getStats(InstrumentedGraphEngine.STREAM_NEIGHBORS);
+    	assertEquals(1, stats.getCount());
+    	assertEquals(2, stats.getBatchFetches());
+    	assertEquals(3, stats.getDocumentsDecoded());
+
+    	stats.reset();
+    	assertEquals(0, stats.getCount());
+    	assertEquals(0, stats.getMaxLatencyMicros());
+    }
+
+    @Test
+    public void testDisabledAndForwarded() throws Exception {
+
+    	final long[] roundTrips = new long[1];
+    	instrumented.setMetrics(new GraphMetrics(){
+			public void roundTrip() { roundTrips[0]++; }
+			public void batchFetched(int documents) { roundTrips[0]++; }
+			public void edgesScanned(int edges) {}
+			public void verticesExpanded(int level, int vertices) {}
+    	});
+
+    	engine.getEdges(bob.graphId());
+    	assertEquals(1, roundTrips[0]);
+    	assertEquals(1, instrumented.getStats(InstrumentedGraphEngine.GET_EDGES).getCount());
+
+    	// still forwarded, but no longer traced
+    	instrumented.setEnabled(false);
+    	engine.getEdges(bob.graphId());
+    	assertEquals(2, roundTrips[0]);
+    	assertEquals(1, instrumented.getStats(InstrumentedGraphEngine.GET_EDGES).getCount());
+    }
+
+    @Test
+    public void testMBeans() throws Exception {
+
+    	engine.getNeighbors(bob.graphId());
+    	instrumented.registerMBeans("test");
+    	try{
+    		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    		ObjectName name = new ObjectName(
+    				"com.mongodb.graph:type=GraphEngine,name=\"test\",operation=getNeighbors");
+    		assertEquals(1L, server.getAttribute(name, "Count"));
+    		assertEquals(3L, server.getAttribute(name, "EdgesScanned"));
+    	}
+    	finally{
+    		instrumented.unregisterMBeans();
+    	}
+    }
+}
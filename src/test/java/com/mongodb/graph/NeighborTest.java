@@ -11,8 +11,12 @@ import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.graph.test.utils.*;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 @RunWith(Parameterized.class)
 public class NeighborTest extends GraphTestBase{
@@ -116,4 +120,117 @@ public class NeighborTest extends GraphTestBase{
 		assertTrue(result.contains(bob_acme));
     	
    }
+
+    @Test
+    public void testStreamEdges() throws Exception { 	
+		
+    	// a batch size of one needs a round trip for every edge
+    	Collection<DBObject> result = new ArrayList<DBObject>();
+    	GraphCursor<DBObject> cursor = engine.streamEdges(bob.graphId(), null, 1, 0);
+    	for(DBObject edge : cursor)
+    		result.add(edge);
+    	
+		assertEquals(3, result.size());
+		assertTrue(result.contains(withoutId(bob_acme)));
+		assertTrue(result.contains(withoutId(bob_ford)));
+		assertTrue(result.contains(withoutId(alice_bob)));
+		assertFalse(cursor.hasNext());
+		
+		cursor = engine.streamEdges(bob.graphId(), new EdgeFilter(Direction.IN), 1, 0);
+		assertTrue(cursor.hasNext());
+		assertEquals(withoutId(alice_bob), cursor.next());
+		assertFalse(cursor.hasNext());
+   }
+
+    @Test
+    public void testStreamNeighborsLimit() throws Exception { 	
+		
+    	GraphCursor<Relationship> cursor = engine.streamNeighbors(
+    			bob.graphId(), new EdgeFilter(Direction.OUT), 1, 1);
+    	assertTrue(cursor.hasNext());
+    	Relationship first = cursor.next();
+    	assertEquals(Direction.OUT, first.getDirection());
+    	assertFalse(cursor.hasNext());
+    	
+    	// closing part way through releases the cursor
+    	cursor = engine.streamNeighbors(bob.graphId(), null, 1, 0);
+    	assertTrue(cursor.hasNext());
+    	cursor.next();
+    	cursor.close();
+    	assertFalse(cursor.hasNext());
+   }
+
+    @Test
+    public void testNeighborPages() throws Exception { 	
+		
+    	// several edges to the same vertex share an index key, so
+    	// pages must be able to end part way through them
+    	for(int i = 0; i < 4; i++){
+    		engine.addEdge(bob.graphId(), acme.graphId(), 
+    				new WorksForEdge(new Date(1000 + i), null));
+    	}
+    	engine.addEdge(sam.graphId(), bob.graphId(), new FamilyEdge("Brother"));
+    	
+    	for(Direction direction : Direction.values()){
+	    	EdgeFilter idFilter = new EdgeFilter(direction);
+			idFilter.setIncludeEdgeIds(true);
+			Collection<Relationship> expected = engine.getNeighbors(bob.graphId(), idFilter);
+			
+			for(int pageSize = 1; pageSize <= 3; pageSize++){
+		    	List<Relationship> result = new ArrayList<Relationship>();
+		    	String token = null;
+		    	do{
+		    		NeighborPage page = engine.getNeighborPage(
+		    				bob.graphId(), idFilter, pageSize, token);
+		    		assertTrue(page.getRelationships().size() <= pageSize);
+		    		result.addAll(page.getRelationships());
+		    		token = page.getContinuationToken();
+		    	} while(token != null);
+		    	
+		    	assertEquals(expected.size(), result.size());
+		    	assertEquals(new HashSet<Relationship>(expected), new HashSet<Relationship>(result));
+			}
+    	}
+    	
+    	NeighborPage page = engine.getNeighborPage(bob.graphId(), null, 100, null);
+    	assertEquals(8, page.getRelationships().size());
+    	assertFalse(page.hasMore());
+   }
+
+    @Test
+    public void testGetNeighborsMany() throws Exception { 	
+		
+		PersonVertex ghost = new PersonVertex("Nobody");
+		List<DBObject> vertexIds = new ArrayList<DBObject>();
+		vertexIds.add(bob.graphId());
+		vertexIds.add(sam.graphId());
+		vertexIds.add(ford.graphId());
+		vertexIds.add(ghost.graphId());
+		
+    	BasicDBObject query = new BasicDBObject("start_date", 
+    			new BasicDBObject("$gt", new Date(250)));
+		
+		EdgeFilter[] filters = new EdgeFilter[]{ null, 
+				new EdgeFilter(Direction.OUT), new EdgeFilter(Direction.IN),
+				new EdgeFilter(Direction.BOTH, query, null) };
+		
+		// every vertex matches its own single lookup, in one call
+		for(EdgeFilter filter : filters){
+			Map<DBObject, List<Relationship>> result = 
+					engine.getNeighbors(vertexIds, filter);
+			assertEquals(4, result.size());
+			
+			for(DBObject vertexId : vertexIds){
+				Collection<Relationship> expected = engine.getNeighbors(vertexId, filter);
+				assertEquals(expected.size(), result.get(vertexId).size());
+				assertEquals(new HashSet<Relationship>(expected), 
+						new HashSet<Relationship>(result.get(vertexId)));
+			}
+		}
+		
+		Map<DBObject, List<Relationship>> result = engine.getNeighbors(vertexIds, null);
+		assertEquals(3, result.get(bob.graphId()).size());
+		assertEquals(2, result.get(ford.graphId()).size());
+		assertEquals(0, result.get(ghost.graphId()).size());
+   }
 }
@@ -0,0 +1,149 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.PartitionedGraphEngine;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PartitionedGraphEngineTest extends GraphTestBase{
+
+	private final PartitionedGraphEngine partitioned;
+
+    public PartitionedGraphEngineTest() throws Exception {
+
+    	// family edges are partitioned by relation, work edges have none
+    	startEngine("partitioned", PartitionedGraphEngineTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	partitioned = new PartitionedGraphEngine(database, "relation");
+    	engine = partitioned;
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+
+    	assertEquals(3, database.getCollection("graph_edges").count());
+    	assertEquals(1, database.getCollection("graph_edges_Father").count());
+    	assertEquals(1, partitioned.getPartitions().size());
+
+    	// no constraint on the key reads every partition
+    	assertEquals(3, engine.getNeighbors(bob.graphId()).size());
+    	assertEquals(3, engine.getEdges(bob.graphId()).size());
+
+    	EdgeFilter father = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", "Father"), null);
+    	Collection<Relationship> neighbors = engine.getNeighbors(bob.graphId(), father);
+    	assertEquals(1, neighbors.size());
+    	assertEquals(alice.graphId(), neighbors.iterator().next().getRelatedId());
+
+    	BasicDBList values = new BasicDBList();
+    	values.add("Father");
+    	values.add("Mother");
+    	EdgeFilter parents = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", new BasicDBObject("$in", values)), null);
+    	assertEquals(1, engine.getNeighbors(bob.graphId(), parents).size());
+
+    	EdgeFilter unknown = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", "Sister"), null);
+    	assertEquals(0, engine.getNeighbors(bob.graphId(), unknown).size());
+
+    	EdgeFilter notFather = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", new BasicDBObject("$ne", "Father")), null);
+    	assertEquals(2, engine.getNeighbors(bob.graphId(), notFather).size());
+    	assertEquals(3, engine.getNeighbors(Arrays.<DBObject>asList(bob.graphId(), alice.graphId()),
+    			new EdgeFilter(Direction.BOTH)).get(bob.graphId()).size());
+
+    	int streamed = 0;
+    	for(Relationship neighbor : engine.streamNeighbors(bob.graphId(), null, 1, 2))
+    		streamed++;
+    	assertEquals(2, streamed);
+    }
+
+    @Test
+    public void testRoutingMisses() throws Exception {
+
+    	// a partition created by another engine is found without a refresh
+    	PartitionedGraphEngine other = new PartitionedGraphEngine(database, "relation");
+    	other.addEdge(sam.graphId(), bob.graphId(), new BasicDBObject("relation", "Brother"));
+    	assertEquals(1, engine.getNeighbors(bob.graphId(), new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", "Brother"), null)).size());
+    	assertEquals(2, partitioned.getPartitions().size());
+
+    	// numbers of another type find the partition of the same value
+    	engine.addEdge(sam.graphId(), ford.graphId(), new BasicDBObject("relation", 1));
+    	engine.addEdge(sam.graphId(), acme.graphId(), new BasicDBObject("relation", 1L));
+    	assertEquals(3, partitioned.getPartitions().size());
+    	assertEquals(2, engine.getNeighbors(sam.graphId(), new EdgeFilter(Direction.OUT,
+    			new BasicDBObject("relation", 1.0), null)).size());
+
+    	// edges with the key left in graph_edges are still read
+    	database.getCollection("graph_edges").insert(new BasicDBObject("_s", bob.graphId())
+    			.append("_d", sam.graphId()).append("relation", "Father"));
+    	EdgeFilter father = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("relation", "Father"), null);
+    	assertEquals(1, engine.getNeighbors(bob.graphId(), father).size());
+    	partitioned.refreshPartitions();
+    	assertEquals(2, engine.getNeighbors(bob.graphId(), father).size());
+    }
+
+    @Test
+    public void testPathsAcrossPartitions() throws Exception {
+
+    	// alice reaches ford through a family edge and then a work edge
+    	Collection<List<Relationship>> paths = engine.findPaths(
+    			alice.graphId(), ford.graphId(), null, 5, null);
+    	assertEquals(1, paths.size());
+    	assertEquals(2, paths.iterator().next().size());
+    	assertEquals(2, engine.shortestPath(alice.graphId(), ford.graphId(), null, 5).size());
+
+    	// a filter naming one partition is searched by that partition alone
+    	EdgeFilter father = new EdgeFilter(Direction.OUT,
+    			new BasicDBObject("relation", "Father"), null);
+    	assertEquals(0, engine.findPaths(alice.graphId(), ford.graphId(), father, 5, null).size());
+    	assertEquals(1, engine.findPaths(alice.graphId(), bob.graphId(), father, 5, null).size());
+    }
+
+    @Test
+    public void testPagesAndWriter() throws Exception {
+
+    	EdgeWriter writer = engine.openEdgeWriter(new BulkLoadOptions(10, WriteConcern.ACKNOWLEDGED));
+    	writer.add(sam.graphId(), bob.graphId(), new BasicDBObject("relation", "Brother"));
+    	writer.add(sam.graphId(), alice.graphId(), new BasicDBObject("relation", "Uncle"));
+    	writer.add(sam.graphId(), acme.graphId(), new BasicDBObject("since", 2010));
+    	writer.close();
+    	assertEquals(3, writer.getResult().getEdgesWritten());
+    	assertEquals(3, partitioned.getPartitions().size());
+
+    	// another engine finds the partitions through the registry
+    	PartitionedGraphEngine reopened = new PartitionedGraphEngine(database, "relation");
+    	assertEquals(3, reopened.getPartitions().size());
+    	assertEquals(2, reopened.getNeighbors(bob.graphId(), new EdgeFilter(Direction.IN)).size());
+
+    	// pages run on through every partition
+    	Set<Relationship> paged = new HashSet<Relationship>();
+    	String token = null;
+    	int pages = 0;
+    	do{
+    		NeighborPage page = engine.getNeighborPage(bob.graphId(), null, 2, token);
+    		assertTrue(page.getRelationships().size() <= 2);
+    		paged.addAll(page.getRelationships());
+    		token = page.getContinuationToken();
+    		pages++;
+    	}
+    	while(token != null);
+    	assertEquals(4, paged.size());
+    	assertEquals(new HashSet<Relationship>(engine.getNeighbors(bob.graphId())), paged);
+    	assertTrue(pages >= 2);
+    }
+}
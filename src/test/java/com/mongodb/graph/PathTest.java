@@ -9,12 +9,15 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import com.mongodb.graph.test.utils.*;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(Parameterized.class)
 public class PathTest extends GraphTestBase{
@@ -127,4 +130,130 @@ public class PathTest extends GraphTestBase{
 		assertTrue(result.contains(correctPath));		
    }
 
+    @Test
+    public void testShortestPath() throws Exception {
+
+		EdgeFilter bothFilter = new EdgeFilter(Direction.BOTH);
+
+		// alice->father->bob->workedat->ford
+		List<Relationship> correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(bob.graphId(), withoutId(alice_bob), Direction.OUT));
+		correctPath.add(new Relationship(ford.graphId(), withoutId(bob_ford), Direction.OUT));
+		assertEquals(correctPath, engine.shortestPath(alice.graphId(), ford.graphId(), null, 10));
+
+		// Nothing directional (OUT only) from alice to sam
+		assertNull(engine.shortestPath(alice.graphId(), sam.graphId(), null, 10));
+
+		// sam is three hops away either way
+		assertNull(engine.shortestPath(alice.graphId(), sam.graphId(), bothFilter, 2));
+		assertEquals(3, engine.shortestPath(alice.graphId(), sam.graphId(), bothFilter, 3).size());
+    }
+
+    @Test
+    public void testKShortestPaths() throws Exception {
+
+    	// alice also gets straight to ford
+    	DBObject alice_ford = engine.addEdge(alice.graphId(), ford.graphId(),
+    			new BasicDBObject("type", "client"));
+
+    	List<List<Relationship>> result =
+    			engine.kShortestPaths(alice.graphId(), ford.graphId(), 1, null, 10);
+		List<Relationship> correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(ford.graphId(), withoutId(alice_ford), Direction.OUT));
+		assertEquals(1, result.size());
+		assertEquals(correctPath, result.get(0));
+
+		// shortest first
+		result = engine.kShortestPaths(alice.graphId(), ford.graphId(), 2, null, 10);
+		assertEquals(2, result.size());
+		assertEquals(correctPath, result.get(0));
+		assertEquals(2, result.get(1).size());
+
+		// there are only two
+		result = engine.kShortestPaths(alice.graphId(), ford.graphId(), 5, null, 10);
+		assertEquals(2, result.size());
+		result = engine.kShortestPaths(alice.graphId(), sam.graphId(), 5, null, 10);
+		assertEquals(0, result.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testKShortestPathsNeedsK() throws Exception {
+    	engine.kShortestPaths(alice.graphId(), ford.graphId(), 0, null, 10);
+    }
+
+    @Test
+    public void testCheapestPath() throws Exception {
+
+    	// alice can drive straight to ford, or go through bob
+    	DBObject alice_ford = engine.addEdge(alice.graphId(), ford.graphId(),
+    			new BasicDBObject("miles", 10));
+
+    	// edges without miles cost 1, so bob is cheaper
+		WeightedPath result = engine.cheapestPath(alice.graphId(), ford.graphId(), null,
+				new FieldEdgeCost("miles"), null);
+		List<Relationship> correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(bob.graphId(), withoutId(alice_bob), Direction.OUT));
+		correctPath.add(new Relationship(ford.graphId(), withoutId(bob_ford), Direction.OUT));
+		assertEquals(correctPath, result.getPath());
+		assertEquals(2.0, result.getCost(), 0.0);
+
+		// and dearer when they cost 20, with or without a heuristic
+		CostHeuristic none = new CostHeuristic(){
+			public double estimate(DBObject vertexId, DBObject targetVertexId) {
+				return 0;
+			}
+		};
+		result = engine.cheapestPath(alice.graphId(), ford.graphId(), null,
+				new FieldEdgeCost("miles", 20), none);
+		assertEquals(1, result.getPath().size());
+		assertEquals(withoutId(alice_ford), result.getPath().get(0).getEdge());
+		assertEquals(10.0, result.getCost(), 0.0);
+
+		// a short drive through acme is cheapest, which a heuristic holding the
+		// true remaining miles, never more and dropping by no more than an
+		// edge costs, still finds
+		DBObject alice_acme = engine.addEdge(alice.graphId(), acme.graphId(),
+				new BasicDBObject("miles", 3));
+		DBObject acme_ford = engine.addEdge(acme.graphId(), ford.graphId(),
+				new BasicDBObject("miles", 3));
+		final Map<DBObject, Double> remaining = new HashMap<DBObject, Double>();
+		remaining.put(alice.graphId(), 6.0);
+		remaining.put(bob.graphId(), 20.0);
+		remaining.put(acme.graphId(), 3.0);
+		remaining.put(ford.graphId(), 0.0);
+		final int[] estimates = new int[1];
+		CostHeuristic miles = new CostHeuristic(){
+			public double estimate(DBObject vertexId, DBObject targetVertexId) {
+				estimates[0]++;
+				Double estimate = remaining.get(vertexId);
+				return estimate == null ? 0 : estimate;
+			}
+		};
+		result = engine.cheapestPath(alice.graphId(), ford.graphId(), null,
+				new FieldEdgeCost("miles", 20), miles);
+		correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(acme.graphId(), withoutId(alice_acme), Direction.OUT));
+		correctPath.add(new Relationship(ford.graphId(), withoutId(acme_ford), Direction.OUT));
+		assertEquals(correctPath, result.getPath());
+		assertEquals(6.0, result.getCost(), 0.0);
+		assertTrue(estimates[0] > 0);
+		assertEquals(result.getCost(), engine.cheapestPath(alice.graphId(), ford.graphId(),
+				null, new FieldEdgeCost("miles", 20), null).getCost(), 0.0);
+
+		// a null cost counts hops
+		result = engine.cheapestPath(alice.graphId(), sam.graphId(), 
+				new EdgeFilter(Direction.BOTH), null, null);
+		assertEquals(2.0, result.getCost(), 0.0);
+
+		assertNull(engine.cheapestPath(alice.graphId(), sam.graphId(), null, null, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCheapestPathNegativeCost() throws Exception {
+    	engine.cheapestPath(alice.graphId(), ford.graphId(), null, new EdgeCost(){
+			public double cost(DBObject edge) {
+				return -1;
+			}
+    	}, null);
+    }
 }
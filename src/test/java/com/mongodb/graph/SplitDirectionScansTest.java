@@ -0,0 +1,95 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.TraversalMode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+@RunWith(Parameterized.class)
+public class SplitDirectionScansTest extends GraphTestBase{
+
+	private final EdgeIndexGraphEngine edgeIndex;
+
+    public SplitDirectionScansTest(String testName, TraversalMode mode)
+            throws Exception {
+
+    	startEngine(testName, SplitDirectionScansTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	edgeIndex = (EdgeIndexGraphEngine) engine;
+    	edgeIndex.setTraversalMode(mode);
+
+    	// a self loop and a second way from bob to sam
+    	engine.addEdge(bob.graphId(), bob.graphId(), new BasicDBObject("type", "self"));
+    	engine.addEdge(sam.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+    }
+
+    @Parameters
+    public static Collection<Object[]> createInputValues() {
+        return Arrays.asList(new Object[][] {
+            /*[0]*/ {"depthfirst", TraversalMode.DEPTH_FIRST},
+            /*[1]*/ {"parallel", TraversalMode.PARALLEL}
+        });
+    }
+
+    @Test
+    public void testSameEdges() throws Exception {
+
+    	EdgeFilter both = new EdgeFilter(Direction.BOTH);
+    	EdgeFilter filtered = new EdgeFilter(Direction.BOTH,
+    			new BasicDBObject("type", new BasicDBObject("$ne", "self")), null);
+
+    	for(EdgeFilter filter : new EdgeFilter[]{null, both, filtered}){
+    		edgeIndex.setSplitDirectionScans(false);
+    		List<DBObject> expected = edgeIndex.getEdges(bob.graphId(), filter);
+    		List<Relationship> expectedNeighbors = edgeIndex.getNeighbors(bob.graphId(), filter);
+
+    		edgeIndex.setSplitDirectionScans(true);
+    		List<DBObject> actual = edgeIndex.getEdges(bob.graphId(), filter);
+    		assertEquals(expected.size(), actual.size());
+    		assertEquals(new HashSet<DBObject>(expected), new HashSet<DBObject>(actual));
+    		assertEquals(new HashSet<Relationship>(expectedNeighbors),
+    				new HashSet<Relationship>(edgeIndex.getNeighbors(bob.graphId(), filter)));
+    	}
+
+    	// the self loop is read once, with the outgoing edges
+    	edgeIndex.setSplitDirectionScans(true);
+    	assertTrue(edgeIndex.isSplitDirectionScans());
+    	assertEquals(4, edgeIndex.getEdges(bob.graphId()).size());
+    	assertEquals(3, edgeIndex.getEdges(bob.graphId(), filtered).size());
+
+    	// the limit covers both directions
+    	GraphCursor<DBObject> edges = edgeIndex.streamEdges(bob.graphId(), null, 1, 3);
+    	int count = 0;
+    	for(DBObject edge : edges)
+    		count++;
+    	assertEquals(3, count);
+    }
+
+    @Test
+    public void testSamePaths() throws Exception {
+
+    	EdgeFilter both = new EdgeFilter(Direction.BOTH);
+    	edgeIndex.setSplitDirectionScans(false);
+    	Collection<List<Relationship>> expected = engine.findPaths(
+    			alice.graphId(), sam.graphId(), both, 5, null);
+
+    	edgeIndex.setSplitDirectionScans(true);
+    	Collection<List<Relationship>> actual = engine.findPaths(
+    			alice.graphId(), sam.graphId(), both, 5, null);
+    	assertEquals(2, actual.size());
+    	assertEquals(new HashSet<List<Relationship>>(expected),
+    			new HashSet<List<Relationship>>(actual));
+    }
+}
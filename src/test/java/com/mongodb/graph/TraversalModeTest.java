@@ -0,0 +1,221 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+import static com.mongodb.graph.test.utils.FilteredDBObject.withoutId;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.impl.TraversalMode;
+import com.mongodb.graph.test.utils.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+@RunWith(Parameterized.class)
+public class TraversalModeTest extends GraphTestBase{
+
+	private final TraversalMode mode;
+
+    public TraversalModeTest(String testName, TraversalMode mode)
+            throws Exception {
+
+    	startEngine(testName, TraversalModeTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	this.mode = mode;
+    }
+
+    @Parameters
+    public static Collection<Object[]> createInputValues() {
+
+        return Arrays.asList(new Object[][] {
+            /*[0]*/ {"depthfirst", TraversalMode.DEPTH_FIRST},
+            /*[1]*/ {"breadthfirst", TraversalMode.BREADTH_FIRST},
+            /*[2]*/ {"bidirectional", TraversalMode.BIDIRECTIONAL},
+            /*[3]*/ {"parallel", TraversalMode.PARALLEL}
+        });
+    }
+
+    @Test
+    public void testModeMatchesDepthFirst() throws Exception {
+
+    	// Add a second route between the people so there are
+    	// several paths of different lengths to find
+        engine.addEdge(sam.graphId(), acme.graphId(),
+        		new WorksForEdge(new Date(600), null));
+        engine.addEdge(alice.graphId(), ford.graphId(),
+        		new WorksForEdge(new Date(700), null));
+
+    	BasicDBObject query = new BasicDBObject("start_date",
+    			new BasicDBObject("$gt", new Date(300)));
+
+        // alice->bob->(ford|acme)<-sam, alice->ford<-sam, alice->ford<-bob->acme<-sam
+        assertEquals(4, assertSamePaths(
+        		alice.graphId(), sam.graphId(), new EdgeFilter(Direction.BOTH), 5));
+        assertSamePaths(alice.graphId(), ford.graphId(), new EdgeFilter(Direction.BOTH), 2);
+        assertSamePaths(bob.graphId(), sam.graphId(), new EdgeFilter(Direction.BOTH), 4);
+        assertSamePaths(alice.graphId(), ford.graphId(), null, 10);
+        assertSamePaths(ford.graphId(), alice.graphId(), new EdgeFilter(Direction.IN), 10);
+        assertSamePaths(bob.graphId(), sam.graphId(),
+        		new EdgeFilter(Direction.BOTH, query, null), 4);
+    }
+
+    @Test
+    public void testMaxConcurrentQueries() throws Exception {
+
+    	EdgeIndexGraphEngine edgeEngine = (EdgeIndexGraphEngine) engine;
+    	edgeEngine.setTraversalMode(mode);
+    	edgeEngine.setMaxConcurrentQueries(1);
+    	assertEquals(1, edgeEngine.getMaxConcurrentQueries());
+
+    	// one query at a time still finds every path
+    	Collection<List<Relationship>> result = engine.findPaths(
+    			alice.graphId(), sam.graphId(), new EdgeFilter(Direction.BOTH), 5, null);
+    	assertEquals(1, result.size());
+    }
+
+    @Test
+    public void testMetricsCalledSerially() throws Exception {
+
+    	EdgeIndexGraphEngine edgeEngine = (EdgeIndexGraphEngine) engine;
+    	SerialMetrics expected = new SerialMetrics();
+    	edgeEngine.setMetrics(expected);
+    	edgeEngine.setTraversalMode(TraversalMode.DEPTH_FIRST);
+    	engine.findPaths(alice.graphId(), sam.graphId(), new EdgeFilter(Direction.BOTH), 5, null);
+
+    	// plain counters lose no updates, even with sibling branches read at once
+    	SerialMetrics actual = new SerialMetrics();
+    	edgeEngine.setMetrics(actual);
+    	edgeEngine.setTraversalMode(mode);
+    	edgeEngine.setMaxConcurrentQueries(4);
+    	engine.findPaths(alice.graphId(), sam.graphId(), new EdgeFilter(Direction.BOTH), 5, null);
+
+    	assertFalse(actual.overlapped);
+    	if(mode == TraversalMode.PARALLEL){
+    		assertEquals(expected.verticesExpanded, actual.verticesExpanded);
+    		assertEquals(expected.edgesScanned, actual.edgesScanned);
+    	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoConcurrentQueries() throws Exception {
+    	((EdgeIndexGraphEngine) engine).setMaxConcurrentQueries(0);
+    }
+
+    @Test
+    public void testFindPathsDegreeLimit() throws Exception {
+
+    	EdgeFilter bothFilter = new EdgeFilter(Direction.BOTH);
+    	((EdgeIndexGraphEngine) engine).setTraversalMode(mode);
+
+		// Not enough hops to find 3 degree
+    	Collection<List<Relationship>> result =
+    			engine.findPaths(alice.graphId(), sam.graphId(), bothFilter, 2, null);
+		assertEquals(0, result.size());
+
+		// alice->father->bob->workedat->ford<-workedat<-sam
+		List<Relationship> correctPath = new ArrayList<Relationship>();
+		correctPath.add(new Relationship(bob.graphId(), withoutId(alice_bob), Direction.OUT));
+		correctPath.add(new Relationship(ford.graphId(), withoutId(bob_ford), Direction.OUT));
+		correctPath.add(new Relationship(sam.graphId(), withoutId(sam_ford), Direction.IN));
+
+		result = engine.findPaths(alice.graphId(), sam.graphId(), bothFilter, 3, null);
+		assertEquals(1, result.size());
+		assertTrue(result.contains(correctPath));
+    }
+
+    private int assertSamePaths(DBObject from, DBObject to,
+    		EdgeFilter filter, int degreeLimit) {
+
+    	EdgeIndexGraphEngine edgeEngine = (EdgeIndexGraphEngine) engine;
+
+    	edgeEngine.setTraversalMode(TraversalMode.DEPTH_FIRST);
+    	Collection<List<Relationship>> expected =
+    			engine.findPaths(from, to, filter, degreeLimit, null);
+
+    	edgeEngine.setTraversalMode(mode);
+    	CollectingListener listener = new CollectingListener();
+    	Collection<List<Relationship>> actual =
+    			engine.findPaths(from, to, filter, degreeLimit, listener);
+
+    	assertEquals(expected.size(), actual.size());
+    	assertEquals(new HashSet<List<Relationship>>(expected),
+    			new HashSet<List<Relationship>>(actual));
+    	assertEquals(new HashSet<List<Relationship>>(expected),
+    			new HashSet<List<Relationship>>(listener.paths));
+    	assertEquals(expected.size(), listener.paths.size());
+    	assertTrue(listener.completed);
+
+    	// the parallel search keeps the depth first order
+    	if(mode == TraversalMode.PARALLEL)
+    		assertEquals(new ArrayList<List<Relationship>>(expected),
+    				new ArrayList<List<Relationship>>(actual));
+    	return actual.size();
+    }
+
+    private static class SerialMetrics implements GraphMetrics {
+
+    	private volatile boolean calling = false;
+    	private volatile boolean overlapped = false;
+    	private int verticesExpanded = 0;
+    	private int edgesScanned = 0;
+
+    	private void enter() {
+    		if(calling)
+    			overlapped = true;
+    		calling = true;
+    		Thread.yield();
+    	}
+
+		@Override
+		public void roundTrip() {
+			enter();
+			calling = false;
+		}
+
+		@Override
+		public void batchFetched(int documents) {
+			enter();
+			calling = false;
+		}
+
+		@Override
+		public void edgesScanned(int edges) {
+			enter();
+			edgesScanned += edges;
+			calling = false;
+		}
+
+		@Override
+		public void verticesExpanded(int level, int vertices) {
+			enter();
+			verticesExpanded += vertices;
+			calling = false;
+		}
+    }
+
+    private static class CollectingListener implements PathListener {
+
+    	private final List<List<Relationship>> paths = new ArrayList<List<Relationship>>();
+    	private boolean completed = false;
+
+		@Override
+		public void handlePath(List<Relationship> path) {
+			paths.add(path);
+		}
+
+		@Override
+		public void complete() {
+			completed = true;
+		}
+    }
+}
@@ -0,0 +1,189 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(Parameterized.class)
+public class TraversalOptionsTest extends GraphTestBase{
+
+    public TraversalOptionsTest(String testName, Class<? extends GraphEngine> impl)
+            throws Exception {
+
+    	startEngine(testName, TraversalOptionsTest.class.getSimpleName(), impl);
+
+    	// give alice three ways to reach ford
+    	engine.addEdge(alice.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+    	engine.addEdge(acme.graphId(), ford.graphId(), new BasicDBObject("type", "supplier"));
+    }
+
+    /**
+     * Records what the search reports and answers every path and branch
+     * with the same actions.
+     */
+    private static class RecordingListener implements TraversalListener{
+
+    	final TraversalAction pathAction;
+    	final HopMatcher pruneAt;
+    	final List<List<Relationship>> paths = new ArrayList<List<Relationship>>();
+    	final List<List<Relationship>> branches = new ArrayList<List<Relationship>>();
+    	Boolean exhaustive = null;
+
+    	RecordingListener(TraversalAction pathAction, HopMatcher pruneAt){
+    		this.pathAction = pathAction;
+    		this.pruneAt = pruneAt;
+    	}
+
+		public TraversalAction handlePath(List<Relationship> path) {
+			paths.add(path);
+			return pathAction;
+		}
+
+		public TraversalAction handleBranch(List<Relationship> branch) {
+			branches.add(branch);
+			Relationship last = branch.get(branch.size() - 1);
+			if(pruneAt != null && pruneAt.matches(last))
+				return TraversalAction.PRUNE;
+			return TraversalAction.CONTINUE;
+		}
+
+		public void complete(boolean exhaustive) {
+			this.exhaustive = exhaustive;
+		}
+    }
+
+    private interface HopMatcher{
+    	boolean matches(Relationship hop);
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, new TraversalOptions(), listener);
+		assertEquals(3, result.size());
+		assertEquals(3, listener.paths.size());
+		assertEquals(Boolean.TRUE, listener.exhaustive);
+
+		// branches kept by the listener are not changed by the search
+		Set<DBObject> firstHops = new HashSet<DBObject>();
+		for(List<Relationship> branch : listener.branches){
+			if(branch.size() == 1)
+				firstHops.add(branch.get(0).getRelatedId());
+		}
+		assertEquals(new HashSet<DBObject>(Arrays.asList(bob.graphId(), acme.graphId())), firstHops);
+
+		// no options and no listener is the same search
+		result = engine.findPaths(alice.graphId(), ford.graphId(), null, 10, null, null);
+		assertEquals(3, result.size());
+    }
+
+    @Test
+    public void testMaxResults() throws Exception {
+
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, new TraversalOptions(2), listener);
+		assertEquals(2, result.size());
+		assertEquals(2, listener.paths.size());
+		assertEquals(Boolean.FALSE, listener.exhaustive);
+    }
+
+    @Test
+    public void testListenerStops() throws Exception {
+
+    	RecordingListener listener = new RecordingListener(TraversalAction.STOP, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, null, listener);
+		assertEquals(1, result.size());
+		assertEquals(Boolean.FALSE, listener.exhaustive);
+    }
+
+    @Test
+    public void testListenerPrunes() throws Exception {
+
+    	// never go through bob, which leaves alice->acme->ford
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE,
+    			new HopMatcher(){
+					public boolean matches(Relationship hop) {
+						return hop.getRelatedId().equals(bob.graphId());
+					}
+    	});
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, null, listener);
+		assertEquals(1, result.size());
+		List<Relationship> path = result.iterator().next();
+		assertEquals(2, path.size());
+		assertEquals(acme.graphId(), path.get(0).getRelatedId());
+
+		// pruning is not stopping, the search still ran to the end
+		assertEquals(Boolean.TRUE, listener.exhaustive);
+    }
+
+    @Test
+    public void testEdgeBudget() throws Exception {
+
+    	TraversalOptions options = new TraversalOptions();
+    	options.setMaxEdgesScanned(1);
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, options, listener);
+		assertTrue(result.size() < 3);
+		assertEquals(Boolean.FALSE, listener.exhaustive);
+    }
+
+    @Test
+    public void testTimeLimit() throws Exception {
+
+    	// a generous limit does not cut the search short
+    	TraversalOptions options = new TraversalOptions();
+    	options.setTimeLimit(1, TimeUnit.MINUTES);
+    	assertEquals(60000, options.getTimeLimitMillis());
+
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, options, listener);
+		assertEquals(3, result.size());
+		assertEquals(Boolean.TRUE, listener.exhaustive);
+    }
+
+    @Test
+    public void testCancellation() throws Exception {
+
+    	// a future which is not cancelled does not stop the search
+    	CompletableFuture<Object> cancellation = new CompletableFuture<Object>();
+    	TraversalOptions options = new TraversalOptions();
+    	options.setCancellation(cancellation);
+    	assertSame(cancellation, options.getCancellation());
+		assertEquals(3, engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, options, null).size());
+
+		// once it is, no edge is examined
+    	cancellation.cancel(false);
+    	RecordingListener listener = new RecordingListener(TraversalAction.CONTINUE, null);
+		Collection<List<Relationship>> result = engine.findPaths(
+				alice.graphId(), ford.graphId(), null, 10, options, listener);
+		assertEquals(0, result.size());
+		assertEquals(Boolean.FALSE, listener.exhaustive);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLimit() throws Exception {
+    	new TraversalOptions().setMaxEdgesScanned(-1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class TwoPhaseTraversalTest extends GraphTestBase{
+
+	private final EdgeIndexGraphEngine edgeIndex;
+
+    public TwoPhaseTraversalTest() throws Exception {
+
+    	startEngine("twophase", TwoPhaseTraversalTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	edgeIndex = (EdgeIndexGraphEngine) engine;
+
+    	// give alice three ways to reach ford
+    	engine.addEdge(alice.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+    	engine.addEdge(acme.graphId(), ford.graphId(), new BasicDBObject("type", "supplier"));
+    }
+
+    @Test
+    public void testSamePaths() throws Exception {
+
+    	EdgeFilter projected = new EdgeFilter(Direction.BOTH, null, new BasicDBObject("type", true));
+    	EdgeFilter withIds = new EdgeFilter(Direction.OUT);
+    	withIds.setIncludeEdgeIds(true);
+
+    	for(EdgeFilter filter : new EdgeFilter[]{null, projected, withIds}){
+    		edgeIndex.setTwoPhaseTraversal(false);
+    		Collection<List<Relationship>> expected = engine.findPaths(
+    				alice.graphId(), ford.graphId(), filter, 5, null);
+
+    		edgeIndex.setTwoPhaseTraversal(true);
+    		Collection<List<Relationship>> actual = engine.findPaths(
+    				alice.graphId(), ford.graphId(), filter, 5, null);
+    		assertEquals(new ArrayList<List<Relationship>>(expected),
+    				new ArrayList<List<Relationship>>(actual));
+    	}
+    }
+
+    @Test
+    public void testLimitsAndBranches() throws Exception {
+
+    	edgeIndex.setTwoPhaseTraversal(true);
+    	assertTrue(edgeIndex.isTwoPhaseTraversal());
+
+    	// branches carry only the ends of their edges, results the whole edge
+    	final List<List<Relationship>> branches = new ArrayList<List<Relationship>>();
+    	final List<List<Relationship>> paths = new ArrayList<List<Relationship>>();
+    	TraversalListener listener = new TraversalListener(){
+			public TraversalAction handlePath(List<Relationship> path) {
+				paths.add(path);
+				return TraversalAction.CONTINUE;
+			}
+			public TraversalAction handleBranch(List<Relationship> branch) {
+				branches.add(new ArrayList<Relationship>(branch));
+				return TraversalAction.CONTINUE;
+			}
+			public void complete(boolean exhaustive) {}
+    	};
+
+    	Collection<List<Relationship>> result = engine.findPaths(alice.graphId(),
+    			ford.graphId(), null, 5, new TraversalOptions(2), listener);
+    	assertEquals(2, result.size());
+    	assertEquals(2, paths.size());
+    	assertFalse(branches.isEmpty());
+    	assertEquals(3, branches.get(0).get(0).getEdge().keySet().size());
+    	for(List<Relationship> path : paths){
+    		for(Relationship hop : path){
+    			assertTrue(hop.getEdge().keySet().size() > 2);
+    			assertNull(hop.getEdge().get("_id"));
+    		}
+    	}
+    }
+}
@@ -0,0 +1,110 @@
+package com.mongodb.graph;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.graph.impl.EdgeIndexGraphEngine;
+import com.mongodb.graph.test.utils.PersonVertex;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class VertexFilterTest extends GraphTestBase{
+
+	private final EdgeIndexGraphEngine edgeIndex;
+	private int batchesFetched = 0;
+	private final GraphMetrics counter = new GraphMetrics(){
+		public void roundTrip() { batchesFetched++; }
+		public void batchFetched(int documents) { batchesFetched++; }
+		public void edgesScanned(int edges) {}
+		public void verticesExpanded(int level, int vertices) {}
+	};
+
+    public VertexFilterTest() throws Exception {
+
+    	startEngine("filter", VertexFilterTest.class.getSimpleName(),
+    			EdgeIndexGraphEngine.class);
+    	edgeIndex = (EdgeIndexGraphEngine) engine;
+    	edgeIndex.setMetrics(counter);
+    }
+
+    @Test
+    public void testUnknownVertices() throws Exception {
+
+    	// built from the edges already in the graph
+    	edgeIndex.enableVertexFilter(1000, 0.001);
+    	assertTrue(edgeIndex.isVertexFilterEnabled());
+    	batchesFetched = 0;
+
+		PersonVertex ghost = new PersonVertex("Nobody");
+		assertEquals(0, engine.getEdges(ghost.graphId()).size());
+		assertEquals(0, engine.getNeighbors(ghost.graphId()).size());
+		assertFalse(engine.getNeighborPage(ghost.graphId(), null, 10, null).hasMore());
+		assertNull(engine.shortestPath(ghost.graphId(), bob.graphId(), null, 5));
+		assertEquals(0, batchesFetched);
+
+		// the listener still hears the search is over
+		TracingPathListener listener = new TracingPathListener();
+		Collection<List<Relationship>> paths = engine.findPaths(
+				bob.graphId(), ghost.graphId(), null, 10, listener);
+		assertEquals(0, paths.size());
+		assertEquals(0, batchesFetched);
+
+		// known vertices are still looked up, unknown ones only get an entry
+		Map<DBObject, List<Relationship>> neighbors = engine.getNeighbors(
+				Arrays.<DBObject>asList(bob.graphId(), ghost.graphId()), null);
+		assertEquals(3, neighbors.get(bob.graphId()).size());
+		assertEquals(0, neighbors.get(ghost.graphId()).size());
+		assertEquals(3, engine.getNeighbors(bob.graphId()).size());
+		assertEquals(1, engine.findPaths(alice.graphId(), ford.graphId(), null, 10, null).size());
+    }
+
+    @Test
+    public void testFilterUpdated() throws Exception {
+
+    	edgeIndex.enableVertexFilter(1000, 0.001);
+
+    	// added one at a time and in batches
+		PersonVertex carol = new PersonVertex("Carol");
+		PersonVertex dave = new PersonVertex("Dave");
+		engine.addEdge(carol.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+		EdgeWriter writer = engine.openEdgeWriter(null);
+		writer.add(dave.graphId(), acme.graphId(), new BasicDBObject("type", "client"));
+		writer.close();
+
+		assertEquals(1, engine.getEdges(carol.graphId()).size());
+		assertEquals(1, engine.getEdges(dave.graphId()).size());
+		assertEquals(3, engine.getEdges(acme.graphId()).size());
+
+		// another engine loads the persisted filter rather than rebuilding
+		// it, so bob is still looked up once his edges are gone
+		database.getCollection("graph_edges").remove(new BasicDBObject());
+		EdgeIndexGraphEngine other = new EdgeIndexGraphEngine(database);
+		other.setMetrics(counter);
+		other.enableVertexFilter(1000, 0.001);
+		batchesFetched = 0;
+		assertEquals(0, other.getEdges(bob.graphId()).size());
+		assertTrue(batchesFetched > 0);
+
+		// as are the vertices added since the filter was built
+		batchesFetched = 0;
+		assertEquals(0, other.getEdges(carol.graphId()).size());
+		assertTrue(batchesFetched > 0);
+
+		// a filter of a different size is rebuilt from the edges
+		other.enableVertexFilter(100000, 0.01);
+		other.addEdge(carol.graphId(), dave.graphId(), new BasicDBObject("type", "friend"));
+		batchesFetched = 0;
+		assertEquals(0, other.getEdges(bob.graphId()).size());
+		assertEquals(0, batchesFetched);
+		assertEquals(1, other.getEdges(dave.graphId()).size());
+
+		other.disableVertexFilter();
+		assertFalse(other.isVertexFilterEnabled());
+    }
+}